@@ -50,23 +50,46 @@ public class AppConfig {
         properties.setProperty("ui.notes.list.width", "280");
         properties.setProperty("ui.notes.list.max.items", "500");
         properties.setProperty("ui.notes.list.min.height", "44");
+        properties.setProperty("ui.notes.page.size", "50");
         
         // 自動保存設定
         properties.setProperty("autosave.debounce.ms", "600");
+        properties.setProperty("autosave.coalesce.window.ms", "1500");
         properties.setProperty("search.debounce.ms", "300");
         
         // データベース設定
         properties.setProperty("database.path", "data/app.db");
         properties.setProperty("database.connection.timeout.ms", "30000");
+        properties.setProperty("database.statement.cache.size", "32");
+        properties.setProperty("database.validation.mode", "idle");
+        properties.setProperty("database.validation.idle.ms", "30000");
+        properties.setProperty("database.validation.interval.ms", "60000");
+        properties.setProperty("database.group.commit.enabled", "false");
+        properties.setProperty("database.group.commit.max.batch", "64");
+        properties.setProperty("database.group.commit.max.delay.ms", "5");
+        properties.setProperty("database.migration.chunk.size", "500");
+        properties.setProperty("database.migration.chunk.delay.ms", "50");
         
         // 検索設定
         properties.setProperty("search.notes.limit", "300");
         properties.setProperty("search.events.limit", "200");
+        properties.setProperty("search.notes.ranked.limit", "50");
+        properties.setProperty("search.notes.rank.title.weight", "10.0");
+        properties.setProperty("search.notes.rank.body.weight", "1.0");
+        properties.setProperty("search.notes.memory.index.enabled", "true");
+        properties.setProperty("search.notes.cache.size", "64");
+        properties.setProperty("notes.cache.max.bytes", "8388608");
         
         // 予定設定
         properties.setProperty("event.default.duration.minutes", "90");
         properties.setProperty("event.min.duration.minutes", "5");
         properties.setProperty("event.snap.minutes", "15");
+        properties.setProperty("event.range.cache.size", "8");
+        
+        // インポート設定
+        properties.setProperty("import.batch.size", "500");
+        properties.setProperty("import.queue.capacity", "1000");
+        properties.setProperty("import.note.max.bytes", "1048576");
         
         // ログ設定
         properties.setProperty("log.level", "INFO");
@@ -115,11 +138,25 @@ public class AppConfig {
         return getIntProperty("ui.notes.list.min.height", 44);
     }
 
+    /**
+     * メモ一覧の無限スクロールで1回に読み込む件数
+     */
+    public int getNotesPageSize() {
+        return getIntProperty("ui.notes.page.size", 50);
+    }
+
     // 自動保存設定
     public double getAutosaveDebounceMs() {
         return getDoubleProperty("autosave.debounce.ms", 600.0);
     }
 
+    /**
+     * 同じメモへの更新をまとめるウィンドウ（0 以下で無効）
+     */
+    public int getAutosaveCoalesceWindowMs() {
+        return getIntProperty("autosave.coalesce.window.ms", 1500);
+    }
+
     public double getSearchDebounceMs() {
         return getDoubleProperty("search.debounce.ms", 300.0);
     }
@@ -133,11 +170,128 @@ public class AppConfig {
         return getIntProperty("database.connection.timeout.ms", 30000);
     }
 
+    public int getDatabaseStatementCacheSize() {
+        return getIntProperty("database.statement.cache.size", 32);
+    }
+
+    public String getDatabaseValidationMode() {
+        return getStringProperty("database.validation.mode", "idle");
+    }
+
+    public int getDatabaseValidationIdleMs() {
+        return getIntProperty("database.validation.idle.ms", 30000);
+    }
+
+    public int getDatabaseValidationIntervalMs() {
+        return getIntProperty("database.validation.interval.ms", 60000);
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return getBooleanProperty("database.group.commit.enabled", false);
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return getIntProperty("database.group.commit.max.batch", 64);
+    }
+
+    public int getGroupCommitMaxDelayMs() {
+        return getIntProperty("database.group.commit.max.delay.ms", 5);
+    }
+
+    /**
+     * バックグラウンド移行で1トランザクションあたりに処理する行数
+     */
+    public int getDatabaseMigrationChunkSize() {
+        return getIntProperty("database.migration.chunk.size", 500);
+    }
+
+    /**
+     * バックグラウンド移行のチャンク間の待ち時間（前景の書き込みに譲るため）
+     */
+    public int getDatabaseMigrationChunkDelayMs() {
+        return getIntProperty("database.migration.chunk.delay.ms", 50);
+    }
+
+    public int getDatabaseBackupPagesPerStep() {
+        return getIntProperty("database.backup.pages.per.step", 256);
+    }
+
+    public int getDatabasePoolLeakThresholdMs() {
+        return getIntProperty("database.pool.leak.threshold.ms", 60000);
+    }
+
+    public boolean isDatabasePoolJmxEnabled() {
+        return getBooleanProperty("database.pool.jmx.enabled", true);
+    }
+
+    public int getDatabasePoolMinIdle() {
+        return getIntProperty("database.pool.min.idle", 1);
+    }
+
+    public int getDatabasePoolIdleTimeoutMs() {
+        return getIntProperty("database.pool.idle.timeout.ms", 60000);
+    }
+
+    public int getDatabasePoolGrowAfterMs() {
+        return getIntProperty("database.pool.grow.after.ms", 2);
+    }
+
+    /**
+     * 読み取りクエリの種類ごとの制限時間（lookup / list / search / scan、0 で無制限）
+     */
+    public int getDatabaseQueryTimeoutMs(String queryClass) {
+        int defaultValue = switch (queryClass) {
+            case "lookup" -> 2000;
+            case "list", "search" -> 5000;
+            default -> 0;
+        };
+        return getIntProperty("database.query.timeout." + queryClass + ".ms", defaultValue);
+    }
+
     // 検索設定
     public int getSearchNotesLimit() {
         return getIntProperty("search.notes.limit", 300);
     }
 
+    /**
+     * ランク付き検索で返す上位件数
+     */
+    public int getSearchNotesRankedLimit() {
+        return getIntProperty("search.notes.ranked.limit", 50);
+    }
+
+    /**
+     * bm25 でのタイトル列の重み
+     */
+    public double getSearchNotesRankTitleWeight() {
+        return getDoubleProperty("search.notes.rank.title.weight", 10.0);
+    }
+
+    /**
+     * bm25 での本文列の重み
+     */
+    public double getSearchNotesRankBodyWeight() {
+        return getDoubleProperty("search.notes.rank.body.weight", 1.0);
+    }
+
+    /**
+     * 入力中の検索をメモリ上の索引で答えるか（SQLite は引き続き正本）
+     */
+    public boolean isSearchNotesMemoryIndexEnabled() {
+        return getBooleanProperty("search.notes.memory.index.enabled", true);
+    }
+
+    /**
+     * 入力中の検索と一覧のページの結果キャッシュに、それぞれ保持するエントリ数（0 で無効）
+     */
+    public int getSearchNotesCacheSize() {
+        return getIntProperty("search.notes.cache.size", 64);
+    }
+
+    public long getNotesCacheMaxBytes() {
+        return getIntProperty("notes.cache.max.bytes", 8 * 1024 * 1024);
+    }
+
     public int getSearchEventsLimit() {
         return getIntProperty("search.events.limit", 200);
     }
@@ -155,6 +309,23 @@ public class AppConfig {
         return getIntProperty("event.snap.minutes", 15);
     }
 
+    public int getEventRangeCacheSize() {
+        return getIntProperty("event.range.cache.size", 8);
+    }
+
+    // インポート設定
+    public int getImportBatchSize() {
+        return getIntProperty("import.batch.size", 500);
+    }
+
+    public int getImportQueueCapacity() {
+        return getIntProperty("import.queue.capacity", 1000);
+    }
+
+    public int getImportNoteMaxBytes() {
+        return getIntProperty("import.note.max.bytes", 1024 * 1024);
+    }
+
     // ログ設定
     public String getLogLevel() {
         return getStringProperty("log.level", "INFO");
@@ -183,6 +354,14 @@ public class AppConfig {
         }
     }
 
+    private boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
     private double getDoubleProperty(String key, double defaultValue) {
         try {
             return Double.parseDouble(properties.getProperty(key, String.valueOf(defaultValue)));
@@ -0,0 +1,30 @@
+package app.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 起動後にチャンク単位で進める移行処理（大きな FTS・索引テーブルの再構築など）。
+ * <p>
+ * バージョン付き移行が {@link SchemaMigrator#enqueueBackground} で登録し、
+ * 保守スレッドが短いトランザクションで少しずつ進める。進捗（カーソル）はデータベースに保存されるため、
+ * 途中で終了しても次回起動時に続きから再開する。
+ *
+ * @param name 一意な名前（進捗テーブルのキー）
+ * @param chunk 1チャンク分の処理
+ */
+public record BackgroundMigration(String name, Chunk chunk) {
+    /** 処理が完了したことを示すカーソル値 */
+    public static final long DONE = -1L;
+
+    @FunctionalInterface
+    public interface Chunk {
+        /**
+         * @param conn トランザクション中の接続
+         * @param cursor 前回返したカーソル（初回は 0）
+         * @param chunkSize 1回で処理する最大行数
+         * @return 次回のカーソル、完了した場合は {@link #DONE}
+         */
+        long run(Connection conn, long cursor, int chunkSize) throws SQLException;
+    }
+}
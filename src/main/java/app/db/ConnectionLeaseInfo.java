@@ -0,0 +1,10 @@
+package app.db;
+
+/**
+ * 貸し出し中の接続
+ * @param thread 借りたスレッド名
+ * @param heldMillis 借りてからの経過時間
+ * @param acquiredAt 借りた場所のスタックトレース（リーク検出が無効なら空）
+ */
+public record ConnectionLeaseInfo(String thread, long heldMillis, StackTraceElement[] acquiredAt) {
+}
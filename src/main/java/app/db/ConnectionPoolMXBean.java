@@ -0,0 +1,61 @@
+package app.db;
+
+/**
+ * 接続プールの JMX 公開用インターフェース（{@code app.hiyori:type=ConnectionPool}）。
+ * 時間はすべてミリ秒。
+ */
+public interface ConnectionPoolMXBean {
+    int getMaxPoolSize();
+
+    int getOpenConnections();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getWaitingThreads();
+
+    double getUtilization();
+
+    long getAcquireCount();
+
+    long getAcquireTimeouts();
+
+    double getAcquireWaitAverageMillis();
+
+    double getAcquireWaitP50Millis();
+
+    double getAcquireWaitP95Millis();
+
+    double getAcquireWaitP99Millis();
+
+    double getAcquireWaitMaxMillis();
+
+    double getHoldTimeAverageMillis();
+
+    double getHoldTimeP95Millis();
+
+    double getHoldTimeMaxMillis();
+
+    long getReplacements();
+
+    long getConnectionsOpened();
+
+    long getIdleConnectionsClosed();
+
+    long getValidationCount();
+
+    long getValidationFailures();
+
+    long getLeaksDetected();
+
+    /**
+     * 制限時間を超えて中断された読み取りクエリの回数
+     */
+    long getQueryTimeouts();
+
+    /**
+     * 貸し出し中の接続（「スレッド名 経過ms」と借りた場所）
+     */
+    String[] getActiveLeases();
+}
@@ -0,0 +1,144 @@
+package app.db;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Database} のプール統計を JMX に公開する
+ */
+final class ConnectionPoolMonitor implements ConnectionPoolMXBean {
+    private final Database database;
+
+    ConnectionPoolMonitor(Database database) {
+        this.database = database;
+    }
+
+    private PoolStats stats() {
+        return database.getPoolStats();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return stats().maxPoolSize();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return stats().open();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return stats().active();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return stats().idle();
+    }
+
+    @Override
+    public int getWaitingThreads() {
+        return stats().waiting();
+    }
+
+    @Override
+    public double getUtilization() {
+        return stats().utilization();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return stats().acquireWait().count();
+    }
+
+    @Override
+    public long getAcquireTimeouts() {
+        return stats().acquireTimeouts();
+    }
+
+    @Override
+    public double getAcquireWaitAverageMillis() {
+        return stats().acquireWait().averageMillis();
+    }
+
+    @Override
+    public double getAcquireWaitP50Millis() {
+        return stats().acquireWait().percentileMillis(50);
+    }
+
+    @Override
+    public double getAcquireWaitP95Millis() {
+        return stats().acquireWait().percentileMillis(95);
+    }
+
+    @Override
+    public double getAcquireWaitP99Millis() {
+        return stats().acquireWait().percentileMillis(99);
+    }
+
+    @Override
+    public double getAcquireWaitMaxMillis() {
+        return stats().acquireWait().maxMillis();
+    }
+
+    @Override
+    public double getHoldTimeAverageMillis() {
+        return stats().holdTime().averageMillis();
+    }
+
+    @Override
+    public double getHoldTimeP95Millis() {
+        return stats().holdTime().percentileMillis(95);
+    }
+
+    @Override
+    public double getHoldTimeMaxMillis() {
+        return stats().holdTime().maxMillis();
+    }
+
+    @Override
+    public long getReplacements() {
+        return stats().replacements();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return stats().connectionsOpened();
+    }
+
+    @Override
+    public long getIdleConnectionsClosed() {
+        return stats().idleClosed();
+    }
+
+    @Override
+    public long getValidationCount() {
+        return stats().validationCount();
+    }
+
+    @Override
+    public long getValidationFailures() {
+        return stats().validationFailures();
+    }
+
+    @Override
+    public long getLeaksDetected() {
+        return stats().leaksDetected();
+    }
+
+    @Override
+    public long getQueryTimeouts() {
+        return database.getQueryTimeouts();
+    }
+
+    @Override
+    public String[] getActiveLeases() {
+        return database.getActiveLeases().stream()
+                .map(lease -> lease.thread() + " " + lease.heldMillis() + " ms"
+                        + Arrays.stream(lease.acquiredAt())
+                        .map(frame -> "\n\tat " + frame)
+                        .collect(Collectors.joining()))
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,24 @@
+package app.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * プール管理下の接続ごとの付随情報（ステートメントキャッシュと利用・検証の時刻、実行中のクエリの期限）
+ */
+final class ConnectionState {
+    final StatementCache statementCache;
+    volatile long lastUsedNanos;
+    volatile long lastValidatedNanos;
+    volatile boolean suspect;
+    volatile boolean queryOnly;
+    // Read by the connection's progress handler on the thread running the statement
+    volatile QueryDeadline deadline;
+    volatile boolean progressHandlerInstalled;
+
+    ConnectionState(int statementCacheSize, AtomicLong evictionCounter) {
+        this.statementCache = new StatementCache(statementCacheSize, evictionCounter);
+        long now = System.nanoTime();
+        this.lastUsedNanos = now;
+        this.lastValidatedNanos = now;
+    }
+}
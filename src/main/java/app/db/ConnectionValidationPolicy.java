@@ -0,0 +1,80 @@
+package app.db;
+
+import app.config.AppConfig;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * プールから接続を貸し出す際の検証ポリシー。
+ * <ul>
+ *   <li>{@link Mode#ALWAYS}: 貸し出しのたびに {@code SELECT 1} で検証する（従来の挙動）</li>
+ *   <li>{@link Mode#IDLE}: 一定時間以上アイドルだった接続、またはエラーが報告された接続のみ検証する</li>
+ *   <li>{@link Mode#ON_ERROR}: エラーが報告された接続のみ検証する</li>
+ *   <li>{@link Mode#BACKGROUND}: 貸し出し時はエラー報告分のみ検証し、アイドル接続はバックグラウンドで定期検証する</li>
+ * </ul>
+ */
+public final class ConnectionValidationPolicy {
+
+    public enum Mode {
+        ALWAYS, IDLE, ON_ERROR, BACKGROUND;
+
+        static Mode parse(String value, Mode defaultMode) {
+            if (value == null || value.isBlank()) {
+                return defaultMode;
+            }
+            try {
+                return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                return defaultMode;
+            }
+        }
+    }
+
+    private final Mode mode;
+    private final long idleThresholdNanos;
+    private final long backgroundIntervalMs;
+
+    public ConnectionValidationPolicy(Mode mode, long idleThresholdMs, long backgroundIntervalMs) {
+        this.mode = mode;
+        this.idleThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleThresholdMs));
+        this.backgroundIntervalMs = Math.max(100, backgroundIntervalMs);
+    }
+
+    public static ConnectionValidationPolicy fromConfig(AppConfig config) {
+        return new ConnectionValidationPolicy(
+                Mode.parse(config.getDatabaseValidationMode(), Mode.IDLE),
+                config.getDatabaseValidationIdleMs(),
+                config.getDatabaseValidationIntervalMs());
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getBackgroundIntervalMs() {
+        return backgroundIntervalMs;
+    }
+
+    /**
+     * 貸し出し時に検証が必要かどうか
+     */
+    boolean shouldValidateOnCheckout(ConnectionState state, long nowNanos) {
+        if (state.suspect) {
+            return true;
+        }
+        return switch (mode) {
+            case ALWAYS -> true;
+            case IDLE -> nowNanos - state.lastUsedNanos >= idleThresholdNanos;
+            case ON_ERROR, BACKGROUND -> false;
+        };
+    }
+
+    /**
+     * バックグラウンド検証の対象かどうか（最後の検証から一定時間経過した接続）
+     */
+    boolean shouldValidateInBackground(ConnectionState state, long nowNanos) {
+        return state.suspect
+                || nowNanos - state.lastValidatedNanos >= TimeUnit.MILLISECONDS.toNanos(backgroundIntervalMs);
+    }
+}
@@ -1,15 +1,42 @@
 package app.db;
 
 import app.config.AppConfig;
+import app.exception.DataAccessException;
 import app.exception.DatabaseException;
+import app.exception.QueryCancelledException;
+import app.exception.QueryTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sqlite.ProgressHandler;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Database {
@@ -17,13 +44,61 @@ public class Database {
     private final String url;
     private final int busyTimeoutMs;
     private final int maxPoolSize;
-    private final BlockingQueue<Connection> connectionPool;
+    // Idle connections, most recently released first (LIFO keeps the hot ones warm and lets the rest age out)
+    private final BlockingDeque<Connection> connectionPool;
+    // Pool connections currently open, idle or leased (grows lazily up to maxPoolSize)
+    private final AtomicInteger openConnections = new AtomicInteger();
     private final AtomicBoolean isInitialized = new AtomicBoolean(false);
     private final ReentrantReadWriteLock poolLock = new ReentrantReadWriteLock();
     private final AtomicBoolean closing = new AtomicBoolean(false);
+    private final int statementCacheSize;
+    private final Map<Connection, ConnectionState> connectionStates = new ConcurrentHashMap<>();
+    private final Set<Connection> writerConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+    private final ConnectionValidationPolicy validationPolicy;
+    private final AtomicLong validationCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private volatile ScheduledExecutorService maintenanceExecutor;
+    private final SchemaMigrator migrator;
+    private final int migrationChunkSize;
+    private final long migrationChunkDelayMs;
+    // The single-writer lock: TransactionManager holds it for each write transaction, background migration chunks too
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    // How long a migration chunk waits for the writer lock before yielding to the next scheduled run
+    private static final long MIGRATION_WRITE_LOCK_WAIT_MS = 1000;
+    // Online backup: wait between retries when a step hits SQLITE_BUSY/LOCKED, and how often to retry
+    private static final int BACKUP_BUSY_SLEEP_MS = 50;
+    private static final int BACKUP_BUSY_RETRIES = 100;
+    // FTS5 default for the 'automerge' option, which NotesDao pauses during imports
+    static final int FTS_DEFAULT_AUTOMERGE = 4;
+    private final LatencyHistogram acquireWait = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong replacements = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final long leakThresholdNanos;
+    private final int minIdle;
+    private final long idleTimeoutNanos;
+    private final long growAfterNanos;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong idleClosed = new AtomicLong();
+    private static final long ACQUIRE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // At the ceiling, waiters re-check this often whether closed connections left room to grow
+    private static final long CEILING_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile ObjectName mbeanName;
+    // Per QueryClass ordinal; 0 means no limit
+    private final long[] queryTimeoutMillis = new long[QueryClass.values().length];
+    private final AtomicLongArray queryTimeouts = new AtomicLongArray(QueryClass.values().length);
+    // SQLite VM instructions between deadline checks (a few microseconds of work each)
+    private static final int PROGRESS_HANDLER_STEPS = 1000;
 
     private int resolvePoolSize() {
-        final int defaultSize = 4; // conservative default for local/CI
+        // Ceiling of the elastic pool: readers run in parallel under WAL, so allow one per core (writes use a dedicated connection)
+        final int defaultSize = Math.max(4, Runtime.getRuntime().availableProcessors());
         final int maxCap = 16;     // avoid accidental explosion
         Integer override = null;
         String prop = System.getProperty("db.pool.size");
@@ -51,10 +126,33 @@ public class Database {
     }
 
     public Database(String path) {
+        this(path, SchemaMigrator.standard());
+    }
+
+    /**
+     * @param migrator 初期化時に適用するスキーマ移行
+     */
+    public Database(String path, SchemaMigrator migrator) {
         this.url = "jdbc:sqlite:" + path;
+        this.migrator = migrator;
+        this.migrationChunkSize = Math.max(1, AppConfig.getInstance().getDatabaseMigrationChunkSize());
+        this.migrationChunkDelayMs = Math.max(0, AppConfig.getInstance().getDatabaseMigrationChunkDelayMs());
         this.busyTimeoutMs = AppConfig.getInstance().getDatabaseConnectionTimeoutMs();
+        this.statementCacheSize = Math.max(1, AppConfig.getInstance().getDatabaseStatementCacheSize());
+        this.validationPolicy = ConnectionValidationPolicy.fromConfig(AppConfig.getInstance());
         this.maxPoolSize = resolvePoolSize();
-        this.connectionPool = new LinkedBlockingQueue<>(maxPoolSize);
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, AppConfig.getInstance().getDatabasePoolLeakThresholdMs()));
+        this.connectionPool = new LinkedBlockingDeque<>(maxPoolSize);
+        this.minIdle = Math.max(1, Math.min(maxPoolSize, AppConfig.getInstance().getDatabasePoolMinIdle()));
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, AppConfig.getInstance().getDatabasePoolIdleTimeoutMs()));
+        this.growAfterNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, AppConfig.getInstance().getDatabasePoolGrowAfterMs()));
+        for (QueryClass queryClass : QueryClass.values()) {
+            queryTimeoutMillis[queryClass.ordinal()] =
+                    Math.max(0, AppConfig.getInstance().getDatabaseQueryTimeoutMs(queryClass.key()));
+        }
     }
 
     public void initialize() throws DatabaseException {
@@ -67,27 +165,16 @@ public class Database {
                 }
                 
                 try {
-                    logger.info("Initializing database connection pool to: {} (size: {})", url, maxPoolSize);
-                    
-                    // Initialize pool with connections
-                    int createdConnections = 0;
-                    for (int i = 0; i < maxPoolSize; i++) {
-                        try {
-                            Connection conn = createConnection();
-                            if (connectionPool.offer(conn)) {
-                                createdConnections++;
-                            } else {
-                                conn.close();
-                                logger.warn("Connection pool full during initialization, closing excess connection");
-                            }
-                        } catch (SQLException e) {
-                            logger.error("Failed to create connection {} during initialization", i, e);
-                            // Continue trying to create other connections
-                        }
-                    }
+                    logger.info("Initializing database connection pool to: {} (max size: {})", url, maxPoolSize);
                     
-                    if (createdConnections == 0) {
-                        throw new DatabaseException("Failed to create any database connections during initialization");
+                    // Open a single connection; the pool grows on demand
+                    openConnections.incrementAndGet();
+                    try {
+                        connectionPool.offerFirst(createConnection());
+                        connectionsOpened.incrementAndGet();
+                    } catch (SQLException e) {
+                        openConnections.decrementAndGet();
+                        throw new DatabaseException("Failed to create a database connection during initialization", e);
                     }
                     
                     // Create schema using one connection from pool
@@ -98,7 +185,10 @@ public class Database {
                         releaseConnection(schemaConn);
                     }
                     
-                    logger.info("Database initialized successfully with {} connections", createdConnections);
+                    startMaintenance();
+                    registerMBean();
+                    logger.info("Database initialized successfully (max pool size: {}, validation: {})",
+                            maxPoolSize, validationPolicy.getMode());
                 } catch (Exception e) {
                     logger.error("Failed to initialize database", e);
                     close();
@@ -109,48 +199,131 @@ public class Database {
         }
     }
 
+    /**
+     * 汎用の接続をプールから取得する（書き込み可能）
+     */
     public Connection getConnection() throws DatabaseException {
+        return withQueryOnly(acquire(), false);
+    }
+
+    /**
+     * 読み取り専用（PRAGMA query_only=ON）の接続をプールから取得する。
+     * query_only の切り替えは接続の状態が変わる時だけ行う。
+     */
+    public Connection getReadConnection() throws DatabaseException {
+        return withQueryOnly(acquire(), true);
+    }
+
+    private Connection withQueryOnly(Connection conn, boolean queryOnly) throws DatabaseException {
+        ConnectionState state = stateOf(conn);
+        if (state.queryOnly == queryOnly) {
+            return conn;
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute(queryOnly ? "PRAGMA query_only=ON" : "PRAGMA query_only=OFF");
+            state.queryOnly = queryOnly;
+            return conn;
+        } catch (SQLException e) {
+            reportConnectionError(conn);
+            releaseConnection(conn);
+            throw new DatabaseException("接続モードの切り替えに失敗しました", e);
+        }
+    }
+
+    /**
+     * プールに属さない書き込み専用の接続を開く。TransactionManager が唯一の書き込み経路として保持する。
+     * 開いた接続は {@link #close()} 時にも閉じられる。
+     */
+    Connection openWriterConnection() throws DatabaseException {
+        if (!isInitialized.get() || closing.get()) {
+            throw new DatabaseException("Database not available");
+        }
+        try {
+            Connection conn = createConnection();
+            writerConnections.add(conn);
+            logger.debug("Opened dedicated writer connection");
+            return conn;
+        } catch (SQLException e) {
+            throw new DatabaseException("書き込み用接続の作成に失敗しました", e);
+        }
+    }
+
+    void closeWriterConnection(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        writerConnections.remove(conn);
+        discardConnectionState(conn);
+        closeQuietly(conn);
+    }
+
+    private Connection acquire() throws DatabaseException {
         if (!isInitialized.get()) {
             throw new DatabaseException("Database not initialized");
         }
         if (closing.get()) {
             throw new DatabaseException("Database is closing");
         }
+        QueryScope scope = QueryScope.current();
+        if (scope != null && scope.isCancelled()) {
+            throw new DatabaseException("Query was cancelled");
+        }
+        if (scope != null && scope.isExpired()) {
+            throw new DatabaseException("Query deadline passed before a connection was acquired");
+        }
         poolLock.readLock().lock();
         try {
             if (!isInitialized.get() || closing.get()) {
                 throw new DatabaseException("Database not available");
             }
+            long waitStart = System.nanoTime();
+            long deadline = waitStart + ACQUIRE_TIMEOUT_NANOS;
+            if (scope != null && scope.hasDeadline() && scope.deadlineNanos() - deadline < 0) {
+                // A caller's deadline also bounds the wait for a connection
+                deadline = scope.deadlineNanos();
+            }
             while (true) {
-                Connection conn = connectionPool.poll(5, TimeUnit.SECONDS);
+                Connection conn = connectionPool.pollFirst();
+                if (conn == null) {
+                    conn = awaitConnection(deadline);
+                }
                 if (conn == null) {
-                    throw new DatabaseException("Connection pool exhausted - timeout waiting for connection");
+                    acquireTimeouts.incrementAndGet();
+                    throw new DatabaseException(String.format(
+                            "Connection pool exhausted - timeout waiting for connection (active=%d, idle=%d, waiting=%d)",
+                            leases.size(), connectionPool.size(), waiting.get()));
                 }
                 
                 // Validate connection
                 try {
                     if (conn.isClosed()) {
                         logger.warn("Closed connection found in pool, creating new one");
-                        conn = createConnection();
-                        return conn;
+                        discardConnectionState(conn);
+                        replacements.incrementAndGet();
+                        return lease(createConnection(), waitStart);
                     }
                     
-                    // Additional validation - test connection with simple query
-                    if (!isConnectionValid(conn)) {
+                    // Validate with a query only when the policy asks for it (idle too long, error reported, ...)
+                    ConnectionState state = stateOf(conn);
+                    if (validationPolicy.shouldValidateOnCheckout(state, System.nanoTime())
+                            && !validate(conn, state)) {
                         logger.warn("Invalid connection found in pool, creating new one");
+                        discardConnectionState(conn);
                         try {
                             conn.close();
                         } catch (SQLException e) {
                             logger.warn("Failed to close invalid connection", e);
                         }
-                        conn = createConnection();
-                        return conn;
+                        replacements.incrementAndGet();
+                        return lease(createConnection(), waitStart);
                     }
                     
-                    return conn;
+                    return lease(conn, waitStart);
                 } catch (SQLException e) {
                     // If validation fails with SQLException, try to get another connection
                     logger.warn("Connection validation failed, trying next connection", e);
+                    openConnections.decrementAndGet();
+                    discardConnectionState(conn);
                     try {
                         conn.close();
                     } catch (SQLException closeEx) {
@@ -167,10 +340,60 @@ public class Database {
         }
     }
 
+    /**
+     * 待機中の接続が空くのを待つ。database.pool.grow.after.ms 待っても空かなければ、上限未満なら新しい接続を開く。
+     * @return 接続（期限までに得られなければ null）
+     */
+    private Connection awaitConnection(long deadline) throws InterruptedException, DatabaseException {
+        waiting.incrementAndGet();
+        try {
+            long slice = growAfterNanos;
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                Connection conn = connectionPool.pollFirst(Math.min(slice, remaining), TimeUnit.NANOSECONDS);
+                if (conn != null) {
+                    return conn;
+                }
+                conn = tryGrow();
+                if (conn != null) {
+                    return conn;
+                }
+                slice = CEILING_RECHECK_NANOS;
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    // Opens one more pool connection unless the pool is at maxPoolSize
+    private Connection tryGrow() throws DatabaseException {
+        int open;
+        do {
+            open = openConnections.get();
+            if (open >= maxPoolSize) {
+                return null;
+            }
+        } while (!openConnections.compareAndSet(open, open + 1));
+        try {
+            Connection conn = createConnection();
+            connectionsOpened.incrementAndGet();
+            logger.debug("Connection pool grew to {} connections ({} threads waiting)", open + 1, waiting.get());
+            return conn;
+        } catch (SQLException e) {
+            openConnections.decrementAndGet();
+            throw new DatabaseException("データベース接続の作成に失敗しました", e);
+        }
+    }
+
     public void releaseConnection(Connection conn) {
         if (conn != null) {
+            endLease(conn);
             // If database is closing or not initialized, do not return connections to pool
             if (closing.get() || !isInitialized.get()) {
+                discardConnectionState(conn);
                 try {
                     if (!conn.isClosed()) conn.close();
                 } catch (SQLException e) {
@@ -179,30 +402,35 @@ public class Database {
                 return;
             }
 
-            boolean needsReplacement = false;
+            boolean dropped = false;
             boolean shouldOffer = false;
             synchronized (conn) {
                 try {
                     if (conn.isClosed()) {
                         logger.debug("Attempted to release closed connection");
-                        needsReplacement = true;
+                        discardConnectionState(conn);
+                        dropped = true;
                     } else {
                         resetConnection(conn);
+                        stateOf(conn).lastUsedNanos = System.nanoTime();
                         shouldOffer = true;
                     }
                 } catch (SQLException e) {
                     logger.warn("Failed to release connection", e);
+                    discardConnectionState(conn);
                     try {
                         conn.close();
                     } catch (SQLException closeEx) {
                         logger.warn("Failed to close connection during release", closeEx);
                     }
-                    needsReplacement = true;
+                    dropped = true;
                     shouldOffer = false;
                 }
 
                 if (shouldOffer) {
-                    if (!connectionPool.offer(conn)) {
+                    if (!connectionPool.offerFirst(conn)) {
+                        dropped = true;
+                        discardConnectionState(conn);
                         try {
                             conn.close();
                         } catch (SQLException e) {
@@ -213,20 +441,624 @@ public class Database {
                 }
             }
 
-            if (needsReplacement && isInitialized.get() && !closing.get()) {
+            if (dropped) {
+                // A new connection is opened when demand needs it
+                openConnections.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 接続ごとのキャッシュから PreparedStatement を取得する（無ければ作成してキャッシュする）。
+     * 返されたステートメントは接続に紐づいて再利用されるため、呼び出し側で close してはならない。
+     * ResultSet は必ず close すること。
+     * @param conn このスレッドが貸し出しを受けている接続
+     * @param sql SQL文（キャッシュのキー）
+     */
+    public PreparedStatement prepareCached(Connection conn, String sql) throws SQLException {
+        return prepareCached(conn, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * 生成キーの取得有無を指定して PreparedStatement を取得する
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} または {@link Statement#NO_GENERATED_KEYS}
+     */
+    public PreparedStatement prepareCached(Connection conn, String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K|" + sql : sql;
+        StatementCache cache = stateOf(conn).statementCache;
+        PreparedStatement ps = cache.get(key);
+        if (ps != null) {
+            statementCacheHits.incrementAndGet();
+            ps.clearParameters();
+            return ps;
+        }
+        statementCacheMisses.incrementAndGet();
+        ps = conn.prepareStatement(sql, autoGeneratedKeys);
+        cache.put(key, ps);
+        return ps;
+    }
+
+    /**
+     * PreparedStatement キャッシュの統計を取得する
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        int cached = 0;
+        for (ConnectionState state : connectionStates.values()) {
+            cached += state.statementCache.size();
+        }
+        return new StatementCacheStats(statementCacheHits.get(), statementCacheMisses.get(),
+                statementCacheEvictions.get(), cached);
+    }
+
+    /**
+     * 接続でエラーが発生したことを報告する。次回の貸し出し時に検証される。
+     */
+    public void reportConnectionError(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        ConnectionState state = connectionStates.get(conn);
+        if (state != null) {
+            state.suspect = true;
+        }
+    }
+
+    public ConnectionValidationPolicy getValidationPolicy() {
+        return validationPolicy;
+    }
+
+    /**
+     * 検証クエリの実行回数
+     */
+    public long getValidationCount() {
+        return validationCount.get();
+    }
+
+    /**
+     * 検証に失敗した回数
+     */
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    ConnectionState stateOf(Connection conn) {
+        return connectionStates.computeIfAbsent(conn,
+                c -> new ConnectionState(statementCacheSize, statementCacheEvictions));
+    }
+
+    private Connection lease(Connection conn, long waitStartNanos) throws DatabaseException {
+        long now = System.nanoTime();
+        ConnectionState state = stateOf(conn);
+        state.lastUsedNanos = now;
+        acquireWait.record(now - waitStartNanos);
+        if (!state.progressHandlerInstalled) {
+            installProgressHandler(conn, state);
+        }
+        QueryScope scope = QueryScope.current();
+        // The stack is captured cheaply here and only rendered if the lease is reported as a leak
+        leases.put(conn, new Lease(now, Thread.currentThread().getName(),
+                leakThresholdNanos > 0 ? new Throwable("Connection acquired here") : null, scope));
+        if (scope != null && !scope.attach(conn)) {
+            // Cancelled while this thread was waiting for the connection
+            releaseConnection(conn);
+            throw new DatabaseException("Query was cancelled");
+        }
+        return conn;
+    }
+
+    private void endLease(Connection conn) {
+        disarmDeadline(conn);
+        Lease lease = leases.remove(conn);
+        if (lease == null) {
+            return;
+        }
+        if (lease.scope != null) {
+            lease.scope.detach(conn);
+        }
+        long held = System.nanoTime() - lease.acquiredNanos;
+        holdTime.record(held);
+        if (lease.reported) {
+            logger.info("Connection reported as leaked was returned by {} after {} ms",
+                    lease.thread, TimeUnit.NANOSECONDS.toMillis(held));
+        }
+    }
+
+    /**
+     * 接続プールの統計（取得待ち時間・貸し出し時間の分布、使用中・待機中の接続数、置き換え・検証失敗・リーク検出の回数）
+     */
+    public PoolStats getPoolStats() {
+        return new PoolStats(maxPoolSize, openConnections.get(), leases.size(), connectionPool.size(), waiting.get(),
+                acquireWait.snapshot(), holdTime.snapshot(), acquireTimeouts.get(), replacements.get(),
+                connectionsOpened.get(), idleClosed.get(),
+                validationCount.get(), validationFailures.get(), leaksDetected.get());
+    }
+
+    // Lets SQLite abort the running statement with SQLITE_INTERRUPT once the armed deadline has passed or its scope is cancelled
+    private void installProgressHandler(Connection conn, ConnectionState state) {
+        try {
+            ProgressHandler.setHandler(conn, PROGRESS_HANDLER_STEPS, new ProgressHandler() {
+                @Override
+                protected int progress() {
+                    QueryDeadline deadline = state.deadline;
+                    return deadline != null && deadline.shouldInterrupt() ? 1 : 0;
+                }
+            });
+            state.progressHandlerInstalled = true;
+        } catch (SQLException e) {
+            logger.warn("Failed to install query deadline handler, queries on this connection are not time-bounded", e);
+        }
+    }
+
+    /**
+     * この接続でこれから実行する読み取りに期限を設定する。期限は種類ごとの制限時間と、
+     * このスレッドの {@link QueryScope} の期限のうち早い方で、{@link #disarmDeadline} まで有効。
+     * 範囲が取り消された場合も、実行の開始前後を問わず中断される。
+     * プール外の書き込み用接続には設定しない（書き込みを途中で中断しないため）。
+     */
+    void armDeadline(Connection conn, QueryClass queryClass) {
+        ConnectionState state = connectionStates.get(conn);
+        if (state == null || !state.progressHandlerInstalled) {
+            return;
+        }
+        long timeoutMillis = queryTimeoutMillis[queryClass.ordinal()];
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        QueryScope scope = QueryScope.current();
+        if (scope != null && scope.hasDeadline()
+                && (timeoutMillis == 0 || scope.deadlineNanos() - deadlineNanos < 0)) {
+            timeoutMillis = scope.timeoutMillis();
+            deadlineNanos = scope.deadlineNanos();
+        }
+        state.deadline = timeoutMillis > 0 || scope != null
+                ? new QueryDeadline(queryClass, timeoutMillis, deadlineNanos, scope)
+                : null;
+    }
+
+    void disarmDeadline(Connection conn) {
+        ConnectionState state = connectionStates.get(conn);
+        if (state != null) {
+            state.deadline = null;
+        }
+    }
+
+    /**
+     * SQLite が中断（SQLITE_INTERRUPT）を報告した例外を、呼び出し元の取り消しか期限切れの例外に変える。
+     * {@link #disarmDeadline} の前に呼ぶこと。
+     * @return 取り消し・期限切れでなければ null
+     */
+    DataAccessException interruption(Connection conn, SQLException e) {
+        if (e.getErrorCode() != SQLiteErrorCode.SQLITE_INTERRUPT.code) {
+            return null;
+        }
+        if (QueryScope.isCancellation(e)) {
+            return new QueryCancelledException(e);
+        }
+        ConnectionState state = conn != null ? connectionStates.get(conn) : null;
+        QueryDeadline deadline = state != null ? state.deadline : null;
+        if (deadline == null || !deadline.isExpired()) {
+            return null;
+        }
+        queryTimeouts.incrementAndGet(deadline.queryClass().ordinal());
+        logger.warn("{} query interrupted after its {} ms time limit", deadline.queryClass(), deadline.timeoutMillis());
+        return new QueryTimeoutException(deadline.timeoutMillis(), e);
+    }
+
+    /**
+     * 読み取りクエリの種類ごとの制限時間（ミリ秒、0 で無制限）
+     */
+    public long getQueryTimeoutMillis(QueryClass queryClass) {
+        return queryTimeoutMillis[queryClass.ordinal()];
+    }
+
+    /**
+     * 制限時間を超えて中断された読み取りクエリの回数
+     */
+    public long getQueryTimeouts(QueryClass queryClass) {
+        return queryTimeouts.get(queryClass.ordinal());
+    }
+
+    /**
+     * 制限時間を超えて中断された読み取りクエリの回数（全種類の合計）
+     */
+    public long getQueryTimeouts() {
+        long total = 0;
+        for (int i = 0; i < queryTimeouts.length(); i++) {
+            total += queryTimeouts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 貸し出し中の接続（長く借りられているものから順）
+     */
+    public List<ConnectionLeaseInfo> getActiveLeases() {
+        long now = System.nanoTime();
+        return leases.values().stream()
+                .sorted(Comparator.comparingLong(lease -> lease.acquiredNanos))
+                .map(lease -> new ConnectionLeaseInfo(lease.thread,
+                        TimeUnit.NANOSECONDS.toMillis(now - lease.acquiredNanos),
+                        lease.origin != null ? lease.origin.getStackTrace() : new StackTraceElement[0]))
+                .toList();
+    }
+
+    /**
+     * database.pool.leak.threshold.ms を超えて返されていない接続を、借りた場所のスタックトレース付きで警告する（1貸し出しにつき1回）
+     * @return 新たに検出した数
+     */
+    int detectLeaks() {
+        if (leakThresholdNanos <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        int found = 0;
+        for (Lease lease : leases.values()) {
+            long held = now - lease.acquiredNanos;
+            if (!lease.reported && held > leakThresholdNanos) {
+                lease.reported = true;
+                leaksDetected.incrementAndGet();
+                found++;
+                logger.warn("Connection held by {} for {} ms (threshold {} ms), possible leak", lease.thread,
+                        TimeUnit.NANOSECONDS.toMillis(held), TimeUnit.NANOSECONDS.toMillis(leakThresholdNanos),
+                        lease.origin);
+            }
+        }
+        return found;
+    }
+
+    private void registerMBean() {
+        if (!AppConfig.getInstance().isDatabasePoolJmxEnabled()) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("app.hiyori:type=ConnectionPool,name=" + ObjectName.quote(url));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                // Another Database instance is open on the same file
+                logger.debug("Connection pool MBean {} is already registered", name);
+                return;
+            }
+            server.registerMBean(new ConnectionPoolMonitor(this), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            logger.warn("Failed to register connection pool MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        ObjectName name = mbeanName;
+        mbeanName = null;
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.debug("Failed to unregister connection pool MBean", e);
+        }
+    }
+
+    private boolean validate(Connection conn, ConnectionState state) {
+        validationCount.incrementAndGet();
+        if (isConnectionValid(conn)) {
+            state.lastValidatedNanos = System.nanoTime();
+            state.suspect = false;
+            return true;
+        }
+        validationFailures.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * アイドル中の接続をバックグラウンドで検証する。
+     * プールから一時的に取り出して検証し、無効なものは新しい接続に置き換える。
+     */
+    private void validateIdleConnections() {
+        if (closing.get() || !isInitialized.get()) {
+            return;
+        }
+        poolLock.readLock().lock();
+        try {
+            int idle = connectionPool.size();
+            for (int i = 0; i < idle && !closing.get(); i++) {
+                Connection conn = connectionPool.poll();
+                if (conn == null) {
+                    break;
+                }
+                ConnectionState state = stateOf(conn);
+                boolean valid;
                 try {
-                    Connection replacement = createConnection();
-                    if (!connectionPool.offer(replacement)) {
-                        replacement.close();
-                        logger.debug("Connection pool full while adding replacement, closed connection");
-                    }
+                    valid = !conn.isClosed()
+                            && (!validationPolicy.shouldValidateInBackground(state, System.nanoTime())
+                                || validate(conn, state));
                 } catch (SQLException e) {
-                    logger.warn("Failed to create replacement connection", e);
+                    valid = false;
+                }
+                if (valid) {
+                    if (!connectionPool.offer(conn)) {
+                        discardConnectionState(conn);
+                        closeQuietly(conn);
+                    }
+                    continue;
+                }
+                logger.warn("Background validation found an invalid connection, closing it");
+                openConnections.decrementAndGet();
+                discardConnectionState(conn);
+                closeQuietly(conn);
+            }
+        } finally {
+            poolLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * database.pool.idle.timeout.ms より長く使われていない待機中の接続を閉じる（database.pool.min.idle 本は開いたまま残す）
+     * @return 閉じた数
+     */
+    int closeIdleConnections() {
+        if (closing.get() || !isInitialized.get() || idleTimeoutNanos <= 0) {
+            return 0;
+        }
+        poolLock.readLock().lock();
+        try {
+            long now = System.nanoTime();
+            int closed = 0;
+            // Releases go to the head, so the least recently used connections are at the tail
+            Iterator<Connection> it = connectionPool.descendingIterator();
+            while (it.hasNext() && openConnections.get() > minIdle) {
+                Connection conn = it.next();
+                ConnectionState state = connectionStates.get(conn);
+                if (state != null && now - state.lastUsedNanos < idleTimeoutNanos) {
+                    continue;
+                }
+                // remove() fails if a borrower took it in the meantime
+                if (connectionPool.remove(conn)) {
+                    openConnections.decrementAndGet();
+                    idleClosed.incrementAndGet();
+                    discardConnectionState(conn);
+                    closeQuietly(conn);
+                    closed++;
+                }
+            }
+            if (closed > 0) {
+                logger.debug("Closed {} idle connections, {} left open", closed, openConnections.get());
+            }
+            return closed;
+        } finally {
+            poolLock.readLock().unlock();
+        }
+    }
+
+    private void startMaintenance() {
+        boolean backgroundValidation = validationPolicy.getMode() == ConnectionValidationPolicy.Mode.BACKGROUND;
+        boolean backgroundMigration = isBackgroundMigrationPending();
+        boolean leakDetection = leakThresholdNanos > 0;
+        boolean idleShrink = idleTimeoutNanos > 0;
+        if (!backgroundValidation && !backgroundMigration && !leakDetection && !idleShrink) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hiyori-db-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        if (backgroundValidation) {
+            long interval = validationPolicy.getBackgroundIntervalMs();
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    validateIdleConnections();
+                } catch (RuntimeException e) {
+                    logger.warn("Background connection validation failed", e);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (idleShrink) {
+            long interval = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2);
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    closeIdleConnections();
+                } catch (RuntimeException e) {
+                    logger.warn("Closing idle connections failed", e);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (leakDetection) {
+            long interval = Math.max(100, TimeUnit.NANOSECONDS.toMillis(leakThresholdNanos) / 2);
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    detectLeaks();
+                } catch (RuntimeException e) {
+                    logger.warn("Connection leak detection failed", e);
                 }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (backgroundMigration) {
+            logger.info("Background schema migrations pending; running in chunks of {} rows", migrationChunkSize);
+            executor.schedule(() -> runBackgroundMigrationChunk(executor), migrationChunkDelayMs, TimeUnit.MILLISECONDS);
+        }
+        maintenanceExecutor = executor;
+    }
+
+    /**
+     * データベース全体で1つの書き込みロック。書き込みトランザクションとバックグラウンド移行のチャンクはこれを取ってから書くため、
+     * 書き込み同士が busy_timeout で競合せず、この順に並ぶ。
+     */
+    ReentrantLock writeLock() {
+        return writeLock;
+    }
+
+    // Runs one short transaction under the writer lock and reschedules itself, so foreground writers queue
+    // behind at most one chunk instead of racing it on busy_timeout
+    private void runBackgroundMigrationChunk(ScheduledExecutorService executor) {
+        boolean more;
+        long delay = migrationChunkDelayMs;
+        Connection conn = null;
+        boolean locked = false;
+        try {
+            locked = writeLock.tryLock(MIGRATION_WRITE_LOCK_WAIT_MS, TimeUnit.MILLISECONDS);
+            if (locked) {
+                conn = getConnection();
+                more = migrator.runBackgroundChunk(conn, migrationChunkSize);
+            } else {
+                logger.debug("Writer busy, background migration chunk postponed");
+                more = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (SQLException | DatabaseException | RuntimeException e) {
+            if (closing.get() || executor.isShutdown()) {
+                return;
+            }
+            logger.warn("Background schema migration chunk failed, will retry: {}", e.getMessage());
+            more = true;
+            delay = Math.max(1000, migrationChunkDelayMs * 10);
+        } finally {
+            if (conn != null) {
+                releaseConnection(conn);
+            }
+            if (locked) {
+                writeLock.unlock();
+            }
+        }
+        if (more) {
+            try {
+                executor.schedule(() -> runBackgroundMigrationChunk(executor), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Maintenance stopped; background migration resumes on next start");
             }
         }
     }
 
+    /**
+     * 未完了のバックグラウンド移行があるか
+     */
+    public boolean isBackgroundMigrationPending() {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return migrator.hasPendingBackgroundWork(conn);
+        } catch (SQLException | DatabaseException e) {
+            logger.warn("Failed to check background migrations: {}", e.getMessage());
+            return false;
+        } finally {
+            if (conn != null) {
+                releaseConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * 未完了のバックグラウンド移行を呼び出しスレッドで最後まで進める（一括取り込みの前やテスト用）
+     */
+    public void completeBackgroundMigrations() throws DatabaseException {
+        if (writeLock.isHeldByCurrentThread()) {
+            // The chunks use a pool connection and would wait on this thread's own write transaction
+            throw new DatabaseException("書き込みトランザクションの中ではバックグラウンド移行を実行できません");
+        }
+        while (true) {
+            // One chunk per lock hold, so foreground writers can interleave
+            writeLock.lock();
+            Connection conn = null;
+            try {
+                conn = getConnection();
+                if (!migrator.runBackgroundChunk(conn, migrationChunkSize)) {
+                    return;
+                }
+            } catch (SQLException e) {
+                throw new DatabaseException("バックグラウンド移行の実行に失敗しました", e);
+            } finally {
+                if (conn != null) {
+                    releaseConnection(conn);
+                }
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 稼働中のデータベースを SQLite のオンラインバックアップ API で {@code target} に複製する。
+     * <p>
+     * 読み取り接続で1つの読み取りトランザクションを開いたまま database.backup.pages.per.step ページずつ写すため、
+     * 複製は開始時点の一貫したスナップショットになり、途中の書き込みでやり直しにもならない。
+     * WAL モードなので書き込みは止めない。複製は同じフォルダの一時ファイルに作ってから置き換える。
+     * @return 複製したページ数
+     */
+    public int backupTo(Path target) throws DatabaseException {
+        int pagesPerStep = Math.max(1, AppConfig.getInstance().getDatabaseBackupPagesPerStep());
+        Path absolute = target.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Connection conn = getReadConnection();
+        int[] pageCount = {0};
+        long startNanos = System.nanoTime();
+        try {
+            Files.deleteIfExists(tmp);
+            conn.setAutoCommit(false);
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                // Pins the snapshot: backup_step reuses an open read transaction instead of restarting on writes
+                rs.next();
+            }
+            SQLiteConnection sqlite = conn.unwrap(SQLiteConnection.class);
+            int rc = sqlite.getDatabase().backup("main", tmp.toString(),
+                    (remaining, pages) -> pageCount[0] = pages,
+                    BACKUP_BUSY_SLEEP_MS, BACKUP_BUSY_RETRIES, pagesPerStep);
+            if (rc != SQLiteErrorCode.SQLITE_OK.code && rc != SQLiteErrorCode.SQLITE_DONE.code) {
+                throw new DatabaseException("バックアップが完了しませんでした (code " + rc + ")");
+            }
+            Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Backed up {} pages to {} in {} ms", pageCount[0], absolute,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+            return pageCount[0];
+        } catch (SQLException | IOException e) {
+            reportConnectionError(conn);
+            throw new DatabaseException("バックアップの作成に失敗しました", e);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.debug("Failed to end backup read transaction", e);
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                logger.warn("Failed to remove temporary backup file {}", tmp, e);
+            }
+            releaseConnection(conn);
+        }
+    }
+
+    private void stopMaintenance() {
+        ScheduledExecutorService executor = maintenanceExecutor;
+        maintenanceExecutor = null;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                // Let an in-flight migration chunk commit or roll back before its connection goes away
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    logger.warn("Database maintenance task did not stop within 5 seconds");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void discardConnectionState(Connection conn) {
+        ConnectionState state = connectionStates.remove(conn);
+        if (state != null) {
+            state.statementCache.closeAll();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            if (!conn.isClosed()) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.debug("Failed to close connection", e);
+        }
+    }
+
     private Connection createConnection() throws SQLException {
         Connection conn = DriverManager.getConnection(url);
         try (Statement st = conn.createStatement()) {
@@ -235,6 +1067,7 @@ public class Database {
             st.execute("PRAGMA synchronous=NORMAL");
             st.execute("PRAGMA busy_timeout=" + busyTimeoutMs);
         }
+        stateOf(conn);
         return conn;
     }
 
@@ -281,37 +1114,46 @@ public class Database {
     }
 
     private void createSchema(Connection conn) throws SQLException {
-        logger.debug("Creating database schema");
-        try (Statement st = conn.createStatement()) {
-            st.executeUpdate("CREATE TABLE IF NOT EXISTS notes (" +
-                    "id INTEGER PRIMARY KEY, " +
-                    "title TEXT NOT NULL, " +
-                    "body TEXT NOT NULL, " +
-                    "created_at INTEGER NOT NULL, " +
-                    "updated_at INTEGER NOT NULL)" );
-
-            st.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS notes_fts USING fts5(" +
-                    "title, body, content='notes', content_rowid='id')");
-
-            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS notes_ai AFTER INSERT ON notes BEGIN " +
-                    "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;");
-            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS notes_au AFTER UPDATE ON notes BEGIN " +
-                    "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body);" +
-                    "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;");
-            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS notes_ad AFTER DELETE ON notes BEGIN " +
-                    "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body); END;");
-
-            st.executeUpdate("CREATE TABLE IF NOT EXISTS events (" +
-                    "id INTEGER PRIMARY KEY, " +
-                    "title TEXT NOT NULL, " +
-                    "start_epoch_sec INTEGER NOT NULL, " +
-                    "end_epoch_sec INTEGER NOT NULL)" );
+        logger.debug("Migrating database schema");
+        List<Migration> applied = migrator.migrate(conn);
+        if (!applied.isEmpty()) {
+            logger.info("Database schema migrated to version {}", migrator.getLatestVersion());
+        }
+        restoreIndexMerges(conn);
+    }
 
-            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_events_start ON events(start_epoch_sec)");
+    // 'automerge' is persisted in the FTS %_config table, so an import that crashed before
+    // NotesDao.resumeIndexMerges would otherwise leave segment merging off for good
+    private void restoreIndexMerges(Connection conn) throws SQLException {
+        for (String table : List.of("notes_fts", "notes_trigram")) {
+            try (PreparedStatement exists = conn.prepareStatement(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+                exists.setString(1, table + "_config");
+                try (ResultSet rs = exists.executeQuery()) {
+                    if (!rs.next()) {
+                        continue;
+                    }
+                }
+            }
+            try (Statement st = conn.createStatement()) {
+                boolean paused;
+                try (ResultSet rs = st.executeQuery("SELECT v FROM " + table + "_config WHERE k = 'automerge'")) {
+                    paused = rs.next() && rs.getInt(1) == 0;
+                }
+                if (paused) {
+                    st.executeUpdate("INSERT INTO " + table + "(" + table + ", rank) VALUES('automerge', "
+                            + FTS_DEFAULT_AUTOMERGE + ")");
+                    logger.warn("Full-text automerge on {} was left paused by an interrupted import; restored to {}",
+                            table, FTS_DEFAULT_AUTOMERGE);
+                }
+            }
         }
     }
 
     public void close() {
+        // Outside the pool lock: a running maintenance task needs it to release its connection
+        stopMaintenance();
+        unregisterMBean();
         poolLock.writeLock().lock();
         try {
             if (!isInitialized.get() && connectionPool.isEmpty()) {
@@ -331,9 +1173,14 @@ public class Database {
                 logger.warn("Failed to perform WAL checkpoint during shutdown", e);
             }
             
+            for (Connection writer : writerConnections) {
+                closeWriterConnection(writer);
+            }
+
             // Close all connections
             Connection conn;
             while ((conn = connectionPool.poll()) != null) {
+                discardConnectionState(conn);
                 try {
                     if (!conn.isClosed()) {
                         conn.close();
@@ -342,6 +1189,12 @@ public class Database {
                     logger.warn("Failed to close connection during shutdown", e);
                 }
             }
+            // Leased connections that were never released still own cached statements
+            for (Connection leaked : connectionStates.keySet()) {
+                discardConnectionState(leaked);
+            }
+            leases.clear();
+            openConnections.set(0);
             isInitialized.set(false);
             logger.info("Database connection pool closed");
         } finally {
@@ -349,4 +1202,19 @@ public class Database {
             poolLock.writeLock().unlock();
         }
     }
+
+    private static final class Lease {
+        final long acquiredNanos;
+        final String thread;
+        final Throwable origin;
+        final QueryScope scope;
+        volatile boolean reported;
+
+        Lease(long acquiredNanos, String thread, Throwable origin, QueryScope scope) {
+            this.acquiredNanos = acquiredNanos;
+            this.thread = thread;
+            this.origin = origin;
+            this.scope = scope;
+        }
+    }
 }
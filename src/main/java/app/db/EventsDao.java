@@ -8,34 +8,58 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 public class EventsDao {
     private static final Logger logger = LoggerFactory.getLogger(EventsDao.class);
     private final Database db;
     private final TransactionManager transactionManager;
+    // Both paths return (start, id) order, which EventRangeCache and the UI rely on
+    // R*Tree candidates are re-checked against the real columns (the R*Tree stores rounded floats)
+    private static final String LIST_BETWEEN_RTREE_SQL =
+            "SELECT e.id, e.title, e.start_epoch_sec, e.end_epoch_sec FROM events_rtree r " +
+            "JOIN events e ON e.id = r.id " +
+            "WHERE r.end_sec > ? AND r.start_sec < ? AND e.end_epoch_sec > ? AND e.start_epoch_sec < ? " +
+            "ORDER BY e.start_epoch_sec, e.id";
+    private static final String LIST_BETWEEN_SCAN_SQL =
+            "SELECT id, title, start_epoch_sec, end_epoch_sec FROM events " +
+            "WHERE end_epoch_sec > ? AND start_epoch_sec < ? ORDER BY start_epoch_sec, id";
+    private volatile boolean intervalIndexReady = false;
+    // Rows per executeBatch call in the bulk APIs
+    private static final int BATCH_SIZE = 500;
 
     public EventsDao(Database db, TransactionManager transactionManager) { 
         this.db = db;
-        this.transactionManager = transactionManager;
+        this.transactionManager = Objects.requireNonNull(transactionManager, "transactionManager");
     }
 
-    private Connection getConnection() throws DataAccessException {
-        // Check if we're in a transaction and have a connection available
-        if (transactionManager != null && transactionManager.isInTransaction()) {
-            Connection txConn = transactionManager.getCurrentConnection();
-            logger.debug("In transaction, using existing connection");
-            return txConn;
-        }
-        logger.debug("Not in transaction, getting new connection");
-        // Otherwise get a new connection
+    // Writes only run inside inTransaction: on the writer connection, under the database write lock
+    private Connection getWriteConnection() throws DataAccessException {
+        return transactionManager.getCurrentConnection();
+    }
+
+    // Reads join the caller's transaction, otherwise they borrow a query_only connection from the pool
+    private Connection getReadConnection() throws DataAccessException {
         try {
-            return db.getConnection();
+            if (transactionManager.isInTransaction()) {
+                return transactionManager.getCurrentConnection();
+            }
+            return db.getReadConnection();
         } catch (app.exception.DatabaseException e) {
             throw new DataAccessException("Failed to get database connection", e);
         }
     }
 
-    private void closeResources(ResultSet rs, PreparedStatement ps, Connection conn) {
+    // Reads run under the time limit of their kind until closeResources
+    private Connection getConnection(QueryClass queryClass) throws DataAccessException {
+        Connection conn = getReadConnection();
+        db.armDeadline(conn, queryClass);
+        return conn;
+    }
+
+    // PreparedStatement は接続ごとにキャッシュされるため close せず、ResultSet のみ閉じる
+    private void closeResources(ResultSet rs, Connection conn) {
         if (rs != null) {
             try {
                 rs.close();
@@ -43,123 +67,378 @@ public class EventsDao {
                 logger.warn("Failed to close ResultSet", e);
             }
         }
-        if (ps != null) {
-            try {
-                ps.close();
-            } catch (SQLException e) {
-                logger.warn("Failed to close PreparedStatement", e);
-            }
+        if (conn != null) {
+            db.disarmDeadline(conn);
         }
         // Only release connection if not in transaction
-        if (conn != null && (transactionManager == null || !transactionManager.isInTransaction())) {
+        if (conn != null && !transactionManager.isInTransaction()) {
             db.releaseConnection(conn);
         }
     }
 
     public List<Event> listBetween(long startEpochSec, long endEpochSec) throws DataAccessException {
         logger.debug("Listing events between {} and {}", startEpochSec, endEpochSec);
-        String sql = "SELECT id, title, start_epoch_sec, end_epoch_sec FROM events " +
-                "WHERE end_epoch_sec > ? AND start_epoch_sec < ? ORDER BY start_epoch_sec";
         
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getConnection(QueryClass.LIST);
+            boolean indexed = isIntervalIndexReady(conn);
+            ps = db.prepareCached(conn, indexed ? LIST_BETWEEN_RTREE_SQL : LIST_BETWEEN_SCAN_SQL);
             ps.setLong(1, startEpochSec);
             ps.setLong(2, endEpochSec);
+            if (indexed) {
+                ps.setLong(3, startEpochSec);
+                ps.setLong(4, endEpochSec);
+            }
             rs = ps.executeQuery();
             List<Event> list = new ArrayList<>();
             while (rs.next()) list.add(map(rs));
-            logger.debug("Retrieved {} events", list.size());
+            logger.debug("Retrieved {} events (interval index: {})", list.size(), indexed);
             return list;
         } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
             logger.error("Failed to list events between {} and {}", startEpochSec, endEpochSec, e);
             throw new DataAccessException("予定の一覧取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
-    public long insert(String title, long start, long end) throws DataAccessException {
-        logger.debug("Inserting new event: {}", title);
-        String sql = "INSERT INTO events(title, start_epoch_sec, end_epoch_sec) VALUES(?,?,?)";
-        
+    /**
+     * R*Tree 索引が作成済みかつ既存行のバックフィルが完了しているか。
+     * 一度使えると分かれば以降は確認しない。
+     */
+    private boolean isIntervalIndexReady(Connection conn) throws SQLException {
+        if (intervalIndexReady) {
+            return true;
+        }
+        PreparedStatement ps = db.prepareCached(conn,
+                "SELECT 1 FROM sqlite_master WHERE type='table' AND name='events_rtree'");
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) {
+                return false;
+            }
+        }
+        if (SchemaMigrator.isBackgroundComplete(conn, SchemaMigrations.EVENTS_RTREE_BACKFILL)) {
+            logger.debug("Events interval index is ready");
+            intervalIndexReady = true;
+        }
+        return intervalIndexReady;
+    }
+
+    /**
+     * 指定時刻以降に開始する予定をキーセット方式で1ページ取得する（start_epoch_sec, id の昇順）
+     * @param after 直前のページの最後の行（先頭ページは null）
+     */
+    public List<Event> pageFrom(long fromEpochSec, KeysetCursor after, int limit) throws DataAccessException {
+        logger.debug("Paging events from {} after {} (limit {})", fromEpochSec, after, limit);
+        String sql = "SELECT id, title, start_epoch_sec, end_epoch_sec FROM events WHERE start_epoch_sec >= ? " +
+                (after != null ? "AND (start_epoch_sec, id) > (?, ?) " : "") +
+                "ORDER BY start_epoch_sec, id LIMIT ?";
+
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, title);
-            ps.setLong(2, start);
-            ps.setLong(3, end);
-            ps.executeUpdate();
-            rs = ps.getGeneratedKeys();
-            if (rs.next()) {
-                long id = rs.getLong(1);
-                logger.debug("Event inserted with ID: {}", id);
-                return id;
+            conn = getConnection(QueryClass.LIST);
+            ps = db.prepareCached(conn, sql);
+            int i = 1;
+            ps.setLong(i++, fromEpochSec);
+            if (after != null) {
+                ps.setLong(i++, after.sortKey());
+                ps.setLong(i++, after.id());
             }
-            logger.error("Failed to get generated key for inserted event");
-            throw new DataAccessException("予定の挿入後にIDの取得に失敗しました");
+            ps.setInt(i, Math.max(limit, 1));
+            rs = ps.executeQuery();
+            List<Event> list = new ArrayList<>();
+            while (rs.next()) list.add(map(rs));
+            return list;
         } catch (SQLException e) {
-            logger.error("Failed to insert event: {}", title, e);
-            throw new DataAccessException("予定の挿入に失敗しました", e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to page events from {}", fromEpochSec, e);
+            throw new DataAccessException("予定の一覧取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
-    public void update(Event ev) throws DataAccessException {
-        logger.debug("Updating event ID: {}", ev.getId());
-        String sql = "UPDATE events SET title=?, start_epoch_sec=?, end_epoch_sec=? WHERE id=?";
-        
+    /**
+     * 全予定を ID の昇順に1件ずつ {@code action} に渡す（エクスポート用）。
+     * 結果は前方向のカーソルで読むため、件数にかかわらず一度に保持するのは1件だけ。
+     * @return 渡した件数
+     */
+    public long forEachEvent(Consumer<Event> action) throws DataAccessException {
+        String sql = "SELECT id, title, start_epoch_sec, end_epoch_sec FROM events ORDER BY id";
         Connection conn = null;
-        PreparedStatement ps = null;
+        ResultSet rs = null;
+        long count = 0;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setString(1, ev.getTitle());
-            ps.setLong(2, ev.getStartEpochSec());
-            ps.setLong(3, ev.getEndEpochSec());
-            ps.setLong(4, ev.getId());
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0) {
-                logger.warn("No rows affected when updating event ID: {}", ev.getId());
-                throw new DataAccessException("更新対象の予定が見つかりませんでした (ID: " + ev.getId() + ")");
-            }
-            logger.debug("Event updated successfully");
+            conn = getConnection(QueryClass.SCAN);
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                action.accept(map(rs));
+                count++;
+            }
+            return count;
         } catch (SQLException e) {
-            logger.error("Failed to update event ID: {}", ev.getId(), e);
-            throw new DataAccessException("予定の更新に失敗しました", e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to stream events after {} rows", count, e);
+            throw new DataAccessException("予定の読み出しに失敗しました", e);
         } finally {
-            closeResources(null, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
+    public long insert(String title, long start, long end) throws DataAccessException {
+        logger.debug("Inserting new event: {}", title);
+        String sql = "INSERT INTO events(title, start_epoch_sec, end_epoch_sec) VALUES(?,?,?)";
+        
+        return inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, sql, Statement.RETURN_GENERATED_KEYS);
+                ps.setString(1, title);
+                ps.setLong(2, start);
+                ps.setLong(3, end);
+                ps.executeUpdate();
+                rs = ps.getGeneratedKeys();
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    logger.debug("Event inserted with ID: {}", id);
+                    return id;
+                }
+                logger.error("Failed to get generated key for inserted event");
+                throw new DataAccessException("予定の挿入後にIDの取得に失敗しました");
+            } catch (SQLException e) {
+                logger.error("Failed to insert event: {}", title, e);
+                throw new DataAccessException("予定の挿入に失敗しました", e);
+            } finally {
+                closeResources(rs, conn);
+            }
+        });
+    }
+
+    public void update(Event ev) throws DataAccessException {
+        logger.debug("Updating event ID: {}", ev.getId());
+        String sql = "UPDATE events SET title=?, start_epoch_sec=?, end_epoch_sec=? WHERE id=?";
+        
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, sql);
+                ps.setString(1, ev.getTitle());
+                ps.setLong(2, ev.getStartEpochSec());
+                ps.setLong(3, ev.getEndEpochSec());
+                ps.setLong(4, ev.getId());
+                int rowsAffected = ps.executeUpdate();
+                if (rowsAffected == 0) {
+                    logger.warn("No rows affected when updating event ID: {}", ev.getId());
+                    throw new DataAccessException("更新対象の予定が見つかりませんでした (ID: " + ev.getId() + ")");
+                }
+                logger.debug("Event updated successfully");
+            } catch (SQLException e) {
+                logger.error("Failed to update event ID: {}", ev.getId(), e);
+                throw new DataAccessException("予定の更新に失敗しました", e);
+            } finally {
+                closeResources(null, conn);
+            }
+            return null;
+        });
+    }
+
     public void delete(long id) throws DataAccessException {
         logger.debug("Deleting event ID: {}", id);
         String sql = "DELETE FROM events WHERE id=?";
         
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setLong(1, id);
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0) {
-                logger.warn("No rows affected when deleting event ID: {}", id);
-                throw new DataAccessException("削除対象の予定が見つかりませんでした (ID: " + id + ")");
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, sql);
+                ps.setLong(1, id);
+                int rowsAffected = ps.executeUpdate();
+                if (rowsAffected == 0) {
+                    logger.warn("No rows affected when deleting event ID: {}", id);
+                    throw new DataAccessException("削除対象の予定が見つかりませんでした (ID: " + id + ")");
+                }
+                logger.debug("Event deleted successfully");
+            } catch (SQLException e) {
+                logger.error("Failed to delete event ID: {}", id, e);
+                throw new DataAccessException("予定の削除に失敗しました", e);
+            } finally {
+                closeResources(null, conn);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 複数の予定を addBatch / executeBatch で一括挿入する。トランザクション外で呼ばれた場合は1つのトランザクションで実行する。
+     * ID は書き込みロックを持ったまま現在の最大値の続きから挿入順に割り当て、各予定にも設定する。
+     * @return 割り当てた ID（{@code events} と同じ順）
+     */
+    public List<Long> insertAll(List<Event> events) throws DataAccessException {
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        logger.debug("Inserting {} events in batches", events.size());
+        return inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                long nextId = maxId(conn) + 1;
+                ps = db.prepareCached(conn, "INSERT INTO events(id, title, start_epoch_sec, end_epoch_sec) VALUES (?,?,?,?)");
+                List<Long> ids = new ArrayList<>(events.size());
+                for (Event ev : events) {
+                    long id = nextId++;
+                    ps.setLong(1, id);
+                    ps.setString(2, ev.getTitle());
+                    ps.setLong(3, ev.getStartEpochSec());
+                    ps.setLong(4, ev.getEndEpochSec());
+                    ps.addBatch();
+                    ids.add(id);
+                    if (ids.size() % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+                for (int i = 0; i < events.size(); i++) {
+                    events.get(i).setId(ids.get(i));
+                }
+                logger.debug("Inserted {} events (IDs {}..{})", ids.size(), ids.get(0), ids.get(ids.size() - 1));
+                return ids;
+            } catch (SQLException e) {
+                logger.error("Failed to insert {} events", events.size(), e);
+                throw new DataAccessException("予定の一括挿入に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
+    }
+
+    /**
+     * 複数の予定を addBatch / executeBatch で一括更新する。1件でも見つからない場合は例外を投げる
+     * （トランザクション外で呼ばれた場合は1つのトランザクションで実行するため、すべてロールバックされる）。
+     */
+    public void updateAll(List<Event> events) throws DataAccessException {
+        if (events.isEmpty()) {
+            return;
+        }
+        logger.debug("Updating {} events in batches", events.size());
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, "UPDATE events SET title=?, start_epoch_sec=?, end_epoch_sec=? WHERE id=?");
+                for (int start = 0; start < events.size(); start += BATCH_SIZE) {
+                    List<Event> chunk = events.subList(start, Math.min(events.size(), start + BATCH_SIZE));
+                    for (Event ev : chunk) {
+                        ps.setString(1, ev.getTitle());
+                        ps.setLong(2, ev.getStartEpochSec());
+                        ps.setLong(3, ev.getEndEpochSec());
+                        ps.setLong(4, ev.getId());
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            long id = chunk.get(i).getId();
+                            logger.warn("No rows affected when updating event ID: {}", id);
+                            throw new DataAccessException("更新対象の予定が見つかりませんでした (ID: " + id + ")");
+                        }
+                    }
+                }
+                return null;
+            } catch (SQLException e) {
+                logger.error("Failed to update {} events", events.size(), e);
+                throw new DataAccessException("予定の一括更新に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
+    }
+
+    /**
+     * 複数の予定を addBatch / executeBatch で一括削除する。1件でも見つからない場合は例外を投げる
+     * （トランザクション外で呼ばれた場合は1つのトランザクションで実行するため、すべてロールバックされる）。
+     */
+    public void deleteAll(List<Long> ids) throws DataAccessException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        logger.debug("Deleting {} events in batches", ids.size());
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, "DELETE FROM events WHERE id=?");
+                for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+                    List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+                    for (long id : chunk) {
+                        ps.setLong(1, id);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            logger.warn("No rows affected when deleting event ID: {}", chunk.get(i));
+                            throw new DataAccessException("削除対象の予定が見つかりませんでした (ID: " + chunk.get(i) + ")");
+                        }
+                    }
+                }
+                return null;
+            } catch (SQLException e) {
+                logger.error("Failed to delete {} events", ids.size(), e);
+                throw new DataAccessException("予定の一括削除に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
+    }
+
+    private long maxId(Connection conn) throws SQLException {
+        try (ResultSet rs = db.prepareCached(conn, "SELECT COALESCE(MAX(id), 0) FROM events").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // The transaction manager nests, so a caller's transaction is joined rather than committed early
+    private <T> T inTransaction(ThrowingSupplier<T> operation) throws DataAccessException {
+        return transactionManager.executeInTransaction(operation);
+    }
+
+    // A cached statement outlives this call; a batch left behind by a failure must not run with the next one
+    private static void clearBatch(PreparedStatement ps) {
+        if (ps != null) {
+            try {
+                ps.clearBatch();
+            } catch (SQLException e) {
+                logger.warn("Failed to clear statement batch", e);
             }
-            logger.debug("Event deleted successfully");
-        } catch (SQLException e) {
-            logger.error("Failed to delete event ID: {}", id, e);
-            throw new DataAccessException("予定の削除に失敗しました", e);
-        } finally {
-            closeResources(null, ps, conn);
         }
     }
 
@@ -172,8 +451,8 @@ public class EventsDao {
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getConnection(QueryClass.SEARCH);
+            ps = db.prepareCached(conn, sql);
             ps.setString(1, "%" + escapeLikeQuery(query) + "%");
             ps.setInt(2, limit);
             rs = ps.executeQuery();
@@ -182,10 +461,14 @@ public class EventsDao {
             logger.debug("Search returned {} events", list.size());
             return list;
         } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
             logger.error("Failed to search events by title: '{}'", query, e);
             throw new DataAccessException("予定の検索に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
@@ -197,8 +480,8 @@ public class EventsDao {
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getConnection(QueryClass.LOOKUP);
+            ps = db.prepareCached(conn, sql);
             ps.setLong(1, id);
             rs = ps.executeQuery();
             if (rs.next()) {
@@ -209,10 +492,14 @@ public class EventsDao {
             logger.debug("Event not found with ID: {}", id);
             return null;
         } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
             logger.error("Failed to get event ID: {}", id, e);
             throw new DataAccessException("予定の取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
@@ -0,0 +1,210 @@
+package app.db;
+
+import app.config.AppConfig;
+import app.exception.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 書き込みをまとめてコミットするライター（グループコミット）。
+ * <p>
+ * 呼び出し側は変更処理をキューに投入して {@link CompletableFuture} を受け取る。
+ * 専用スレッドが最大 {@code maxBatchSize} 件、または最初の投入から {@code maxDelayMs} ミリ秒分の変更を
+ * 1つのトランザクションで実行し、コミット後に各 Future を完了させる。
+ * 個々の変更はセーブポイント内で実行されるため、1件の失敗が同じバッチの他の変更を巻き戻すことはない。
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+    private static final long IDLE_POLL_MS = 200;
+
+    private final TransactionManager transactionManager;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingMutation<?>> queue = new LinkedBlockingQueue<>();
+    // Enqueueing and stopping both happen under this lock, so nothing is added once close() has flipped running
+    private final Object submitLock = new Object();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong committedBatches = new AtomicLong();
+    private final AtomicLong committedMutations = new AtomicLong();
+    private final Thread writerThread;
+
+    public GroupCommitWriter(TransactionManager transactionManager, int maxBatchSize, long maxDelayMs) {
+        this.transactionManager = transactionManager;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.writerThread = new Thread(this::runLoop, "hiyori-group-commit");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        logger.info("Group commit writer started (maxBatch={}, maxDelayMs={})", this.maxBatchSize, maxDelayMs);
+    }
+
+    public static GroupCommitWriter fromConfig(TransactionManager transactionManager, AppConfig config) {
+        return new GroupCommitWriter(transactionManager,
+                config.getGroupCommitMaxBatchSize(), config.getGroupCommitMaxDelayMs());
+    }
+
+    /**
+     * 変更処理を投入する。返される Future はその変更を含むトランザクションのコミット後に完了する。
+     * @param mutation 書き込みトランザクション内で実行される処理
+     */
+    public <T> CompletableFuture<T> submit(ThrowingSupplier<T> mutation) {
+        PendingMutation<T> pending = new PendingMutation<>(mutation);
+        synchronized (submitLock) {
+            if (running.get()) {
+                queue.add(pending);
+                return pending.future;
+            }
+        }
+        pending.future.completeExceptionally(new DataAccessException("書き込みキューは停止しています"));
+        return pending.future;
+    }
+
+    /**
+     * 投入済みの変更がすべてコミット（または失敗）するまで待つ
+     */
+    public void flush() throws DataAccessException {
+        CompletableFuture<Void> marker = submit(() -> null);
+        try {
+            marker.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("書き込みキューのフラッシュが中断されました", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("書き込みキューのフラッシュに失敗しました", e.getCause());
+        }
+    }
+
+    public long getCommittedBatches() {
+        return committedBatches.get();
+    }
+
+    public long getCommittedMutations() {
+        return committedMutations.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * 新規投入を止め、キューに残った変更をすべて書き込んでからスレッドを停止する。
+     * 30秒待っても書き込みが終わらない場合は、残りの変更を書き込み用スレッドに任せたまま戻る。
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            if (!running.compareAndSet(true, false)) {
+                return;
+            }
+        }
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            // The writer may be committing these right now; failing them here would report committed writes as lost
+            logger.warn("Group commit writer still busy after 30 s, leaving {} queued mutations to it", queue.size());
+            return;
+        }
+        // Only reached when the writer thread stopped early (interrupted) and left entries behind
+        PendingMutation<?> leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.future.completeExceptionally(new DataAccessException("書き込みキューは停止しています"));
+        }
+        logger.info("Group commit writer stopped ({} batches, {} mutations)",
+                committedBatches.get(), committedMutations.get());
+    }
+
+    private void runLoop() {
+        List<PendingMutation<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running.get() || !queue.isEmpty()) {
+            try {
+                PendingMutation<?> first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingMutation<?> next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || !running.get()) {
+                            break;
+                        }
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    batch.add(next);
+                }
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commitBatch(List<PendingMutation<?>> batch) {
+        try {
+            transactionManager.executeInTransaction(() -> {
+                for (PendingMutation<?> pending : batch) {
+                    pending.runInSavepoint(transactionManager);
+                }
+            });
+            committedBatches.incrementAndGet();
+            committedMutations.addAndGet(batch.size());
+            for (PendingMutation<?> pending : batch) {
+                pending.complete();
+            }
+            logger.debug("Group commit: {} mutations in one transaction", batch.size());
+        } catch (DataAccessException | RuntimeException e) {
+            logger.warn("Group commit of {} mutations failed", batch.size(), e);
+            for (PendingMutation<?> pending : batch) {
+                pending.future.completeExceptionally(pending.error != null ? pending.error : e);
+            }
+        }
+    }
+
+    private static final class PendingMutation<T> {
+        final ThrowingSupplier<T> mutation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+        Exception error;
+
+        PendingMutation(ThrowingSupplier<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        void runInSavepoint(TransactionManager transactionManager) throws DataAccessException {
+            try {
+                result = transactionManager.executeInSavepoint(mutation);
+            } catch (DataAccessException | RuntimeException e) {
+                error = e;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
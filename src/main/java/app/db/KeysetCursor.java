@@ -0,0 +1,9 @@
+package app.db;
+
+/**
+ * キーセットページングの位置（直前のページの最後の行）。
+ * @param sortKey 並び順の第1キー（メモは updated_at、予定は start_epoch_sec）
+ * @param id 同じ sortKey の行を区別する第2キー
+ */
+public record KeysetCursor(long sortKey, long id) {
+}
@@ -0,0 +1,33 @@
+package app.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 所要時間の分布を2のべき乗のマイクロ秒境界で数える軽量なヒストグラム（スレッドセーフ、ロックなし）。
+ * バケット i には 2^(i-1) µs 以上 2^i µs 未満を数え、最後のバケットはそれ以上すべてを数える。
+ */
+final class LatencyHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencySnapshot.BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        long micros = value / 1000;
+        int bucket = Math.min(LatencySnapshot.BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    LatencySnapshot snapshot() {
+        long[] buckets = new long[LatencySnapshot.BUCKETS];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = counts.get(i);
+        }
+        return new LatencySnapshot(count.get(), totalNanos.get(), maxNanos.get(), buckets);
+    }
+}
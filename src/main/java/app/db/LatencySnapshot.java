@@ -0,0 +1,46 @@
+package app.db;
+
+/**
+ * 所要時間のヒストグラムの集計値。百分位は該当バケットの上限（実測の最大値を超えない）で近似する。
+ * @param count 記録した回数
+ * @param totalNanos 合計（ナノ秒）
+ * @param maxNanos 最大（ナノ秒）
+ * @param bucketCounts バケットごとの回数（バケット i の上限は {@link #upperBoundMicros(int)}）
+ */
+public record LatencySnapshot(long count, long totalNanos, long maxNanos, long[] bucketCounts) {
+    // Up to 2^23 µs (about 8.4 s); the last bucket counts everything slower
+    static final int BUCKETS = 25;
+
+    /**
+     * バケット {@code bucket} の上限（マイクロ秒、最後のバケットは {@link Long#MAX_VALUE}）
+     */
+    public static long upperBoundMicros(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public double averageMillis() {
+        return count == 0 ? 0.0 : totalNanos / 1_000_000.0 / count;
+    }
+
+    public double maxMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    /**
+     * @param percentile 0〜100
+     */
+    public double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i) / 1000.0, maxMillis());
+            }
+        }
+        return maxMillis();
+    }
+}
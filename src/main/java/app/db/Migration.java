@@ -0,0 +1,20 @@
+package app.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * バージョン付きのスキーマ移行ステップ。
+ * {@link SchemaMigrator} が {@code PRAGMA user_version} と比較し、未適用のものを1トランザクションずつ適用する。
+ *
+ * @param version 適用後のスキーマバージョン（1 以上、昇順で一意）
+ * @param description ログ・ドライラン表示用の説明
+ * @param step 実行する処理（トランザクション内で呼ばれるため commit/rollback はしないこと）
+ */
+public record Migration(int version, String description, Step step) {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+}
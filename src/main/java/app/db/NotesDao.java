@@ -2,36 +2,71 @@ package app.db;
 
 import app.exception.DataAccessException;
 import app.model.Note;
+import app.model.NoteSearchResult;
+import app.model.NoteSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class NotesDao {
     private static final Logger logger = LoggerFactory.getLogger(NotesDao.class);
     private final Database db;
     private final TransactionManager transactionManager;
+    // FTS5 snippet() length in tokens (1..64)
+    private static final int SNIPPET_TOKENS = 16;
+    // Characters of context kept before the first LIKE match
+    private static final int LIKE_SNIPPET_LEAD = 20;
+    // Substring match of one term in the title or the body (rows aliased as n)
+    private static final String LIKE_TERM_CONDITION = "(n.title LIKE ? ESCAPE '\\' OR n.body LIKE ? ESCAPE '\\') ";
+    private final SearchPlanner searchPlanner;
+    // Rows per executeBatch call in the bulk APIs
+    private static final int BATCH_SIZE = 500;
 
     public NotesDao(Database db, TransactionManager transactionManager) { 
         this.db = db;
-        this.transactionManager = transactionManager;
+        this.transactionManager = Objects.requireNonNull(transactionManager, "transactionManager");
+        this.searchPlanner = new SearchPlanner(db);
     }
 
-    private Connection getConnection() throws DataAccessException {
+    /**
+     * 検索方式の選択と、方式ごとの実行時間・ヒット率の統計
+     */
+    public SearchPlanner getSearchPlanner() {
+        return searchPlanner;
+    }
+
+    // Writes only run inside inTransaction: on the writer connection, under the database write lock
+    private Connection getWriteConnection() throws DataAccessException {
+        return transactionManager.getCurrentConnection();
+    }
+
+    // Reads join the caller's transaction, otherwise they borrow a query_only connection from the pool
+    private Connection getReadConnection() throws DataAccessException {
         try {
-            // If in transaction, use the transaction connection
-            if (transactionManager != null && transactionManager.isInTransaction()) {
+            if (transactionManager.isInTransaction()) {
                 return transactionManager.getCurrentConnection();
             }
-            return db.getConnection();
+            return db.getReadConnection();
         } catch (app.exception.DatabaseException e) {
             throw new DataAccessException("Failed to get database connection", e);
         }
     }
 
-    private void closeResources(ResultSet rs, PreparedStatement ps, Connection conn) {
+    // Reads run under the time limit of their kind until closeResources
+    private Connection getConnection(QueryClass queryClass) throws DataAccessException {
+        Connection conn = getReadConnection();
+        db.armDeadline(conn, queryClass);
+        return conn;
+    }
+
+    // PreparedStatement は接続ごとにキャッシュされるため close せず、ResultSet のみ閉じる
+    private void closeResources(ResultSet rs, Connection conn) {
         if (rs != null) {
             try {
                 rs.close();
@@ -39,22 +74,19 @@ public class NotesDao {
                 logger.warn("Failed to close ResultSet", e);
             }
         }
-        if (ps != null) {
-            try {
-                ps.close();
-            } catch (SQLException e) {
-                logger.warn("Failed to close PreparedStatement", e);
-            }
+        if (conn != null) {
+            db.disarmDeadline(conn);
         }
         // Only release connection if not in transaction
-        if (conn != null && (transactionManager == null || !transactionManager.isInTransaction())) {
+        if (conn != null && !transactionManager.isInTransaction()) {
             db.releaseConnection(conn);
         }
     }
 
     public List<Note> listRecent(int limit) throws DataAccessException {
         logger.debug("Listing recent notes with limit: {}", limit);
-        String baseSql = "SELECT id, title, body, created_at, updated_at FROM notes ORDER BY updated_at DESC";
+        // Ties keep insertion order (id ASC) here and in the keyset pages and searches, all served by idx_notes_updated_desc_id
+        String baseSql = "SELECT id, title, body, created_at, updated_at FROM notes ORDER BY updated_at DESC, id ASC";
         boolean hasLimit = limit > 0;
         String sql = hasLimit ? baseSql + " LIMIT ?" : baseSql;
         
@@ -62,8 +94,8 @@ public class NotesDao {
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getConnection(QueryClass.LIST);
+            ps = db.prepareCached(conn, sql);
             if (hasLimit) {
                 ps.setInt(1, limit);
             }
@@ -73,187 +105,708 @@ public class NotesDao {
             logger.debug("Retrieved {} notes", list.size());
             return list;
         } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
             logger.error("Failed to list recent notes", e);
             throw new DataAccessException("メモの一覧取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
-    public long insert(Note n) throws DataAccessException {
-        logger.debug("Inserting new note: {}", n.getTitle());
-        String sql = "INSERT INTO notes(title, body, created_at, updated_at) VALUES (?,?,?,?)";
-        
+    /**
+     * 最近のメモの一覧を本文抜きの射影で取得する（本文は先頭 {@link NoteSummary#SNIPPET_LENGTH} 文字のみ）
+     * @param limit 取得上限（0以下で無制限）
+     */
+    public List<NoteSummary> listRecentSummaries(int limit) throws DataAccessException {
+        logger.debug("Listing recent note summaries with limit: {}", limit);
+        String baseSql = "SELECT id, title, substr(body, 1, ?) AS snippet, updated_at FROM notes ORDER BY updated_at DESC, id ASC";
+        boolean hasLimit = limit > 0;
+        String sql = hasLimit ? baseSql + " LIMIT ?" : baseSql;
+
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, n.getTitle());
-            ps.setString(2, n.getBody());
-            ps.setLong(3, n.getCreatedAt());
-            ps.setLong(4, n.getUpdatedAt());
-            ps.executeUpdate();
-            rs = ps.getGeneratedKeys();
-            if (rs.next()) {
-                long id = rs.getLong(1);
-                n.setId(id);
-                logger.debug("Note inserted with ID: {}", id);
-                // FTSインデックスはトリガーで同期される
-                return id;
+            conn = getConnection(QueryClass.LIST);
+            ps = db.prepareCached(conn, sql);
+            ps.setInt(1, NoteSummary.SNIPPET_LENGTH);
+            if (hasLimit) {
+                ps.setInt(2, limit);
             }
-            logger.error("Failed to get generated key for inserted note");
-            throw new DataAccessException("メモの挿入後にIDの取得に失敗しました");
+            rs = ps.executeQuery();
+            List<NoteSummary> list = collectSummaries(rs);
+            logger.debug("Retrieved {} note summaries", list.size());
+            return list;
         } catch (SQLException e) {
-            logger.error("Failed to insert note", e);
-            throw new DataAccessException("メモの挿入に失敗しました", e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to list recent note summaries", e);
+            throw new DataAccessException("メモの一覧取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
-    public void update(Note n) throws DataAccessException {
-        logger.debug("Updating note ID: {}", n.getId());
-        
-        // notesテーブルを更新
-        String sql = "UPDATE notes SET title=?, body=?, updated_at=? WHERE id=?";
-        
+    /**
+     * 最近のメモをキーセット方式で1ページ取得する（updated_at の降順、同時刻は ID の昇順）
+     * @param after 直前のページの最後の行（先頭ページは null）
+     */
+    public List<NoteSummary> pageRecentSummaries(KeysetCursor after, int limit) throws DataAccessException {
+        logger.debug("Paging recent note summaries after {} (limit {})", after, limit);
+        String sql = "SELECT id, title, substr(body, 1, ?) AS snippet, updated_at FROM notes " +
+                (after != null ? "WHERE updated_at <= ? AND (updated_at < ? OR id > ?) " : "") +
+                "ORDER BY updated_at DESC, id ASC LIMIT ?";
+        return querySummaries(QueryClass.LIST, sql, ps -> {
+            int i = 1;
+            ps.setInt(i++, NoteSummary.SNIPPET_LENGTH);
+            if (after != null) {
+                ps.setLong(i++, after.sortKey());
+                ps.setLong(i++, after.sortKey());
+                ps.setLong(i++, after.id());
+            }
+            ps.setInt(i, Math.max(limit, 1));
+        }, "メモの一覧取得に失敗しました");
+    }
+
+    /**
+     * クエリの検索方式を決める（キーセット方式の検索で、先頭ページの方式を後続ページでも使うため）
+     */
+    public SearchStrategy planSearch(String query) throws DataAccessException {
         Connection conn = null;
-        PreparedStatement ps = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setString(1, n.getTitle());
-            ps.setString(2, n.getBody());
-            ps.setLong(3, n.getUpdatedAt());
-            ps.setLong(4, n.getId());
-            int rowsAffected = ps.executeUpdate();
-            
-            if (rowsAffected == 0) {
-                logger.warn("No rows affected when updating note ID: {}", n.getId());
-                throw new DataAccessException("更新対象のメモが見つかりませんでした (ID: " + n.getId() + ")");
+            conn = getConnection(QueryClass.SEARCH);
+            return searchPlanner.plan(conn, query);
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to plan search for query: '{}'", query, e);
+            throw new DataAccessException("メモの検索に失敗しました", e);
+        } finally {
+            closeResources(null, conn);
+        }
+    }
+
+    /**
+     * 指定した方式でメモを検索し、キーセット方式で1ページ取得する（updated_at の降順、同時刻は ID の昇順）
+     * @param after 直前のページの最後の行（先頭ページは null）
+     */
+    public List<NoteSummary> pageSearchSummaries(SearchStrategy strategy, String query, KeysetCursor after, int limit)
+            throws DataAccessException {
+        String sql = "SELECT n.id, n.title, substr(n.body, 1, ?) AS snippet, n.updated_at " +
+                searchSource(strategy, query) +
+                (after != null ? "AND n.updated_at <= ? AND (n.updated_at < ? OR n.id > ?) " : "") +
+                "ORDER BY n.updated_at DESC, n.id ASC LIMIT ?";
+        long start = System.nanoTime();
+        List<NoteSummary> rows = querySummaries(QueryClass.SEARCH, sql, ps -> {
+            int i = 1;
+            ps.setInt(i++, NoteSummary.SNIPPET_LENGTH);
+            i = bindSearch(ps, i, strategy, query);
+            if (after != null) {
+                ps.setLong(i++, after.sortKey());
+                ps.setLong(i++, after.sortKey());
+                ps.setLong(i++, after.id());
             }
-            
-            // FTSインデックス更新はデータベーストリガーに任せる
-            logger.debug("Note updated successfully");
+            ps.setInt(i, Math.max(limit, 1));
+        }, "メモの検索に失敗しました");
+        searchPlanner.record(strategy, System.nanoTime() - start, rows.size());
+        return rows;
+    }
+
+
+    private List<NoteSummary> querySummaries(QueryClass queryClass, String sql, ParameterBinder binder, String errorMessage)
+            throws DataAccessException {
+        Connection conn = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection(queryClass);
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            binder.bind(ps);
+            rs = ps.executeQuery();
+            return collectSummaries(rs);
         } catch (SQLException e) {
-            logger.error("Failed to update note ID: {}", n.getId(), e);
-            throw new DataAccessException("メモの更新に失敗しました", e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to query note summaries", e);
+            throw new DataAccessException(errorMessage, e);
         } finally {
-            closeResources(null, ps, conn);
+            closeResources(rs, conn);
         }
     }
 
-    public List<Note> searchNotes(String query, int limit) throws DataAccessException {
-        if (query == null || query.isBlank()) return listRecent(limit);
-        logger.debug("Searching notes with query: '{}', limit: {}", query, limit);
-        String sql = "SELECT n.id, n.title, n.body, n.created_at, n.updated_at " +
-                "FROM notes_fts JOIN notes n ON n.id = notes_fts.rowid " +
-                "WHERE notes_fts MATCH ? ORDER BY n.updated_at DESC LIMIT ?";
-        
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * ID の昇順に、{@code afterId} より後のメモを最大 {@code limit} 件取得する（全件を順に読むためのキーセット走査）
+     */
+    public List<Note> listAfterId(long afterId, int limit) throws DataAccessException {
+        String sql = "SELECT id, title, body, created_at, updated_at FROM notes WHERE id > ? ORDER BY id LIMIT ?";
         Connection conn = null;
-        PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            String escaped = escapeFts(query);
-            ps.setString(1, escaped);
+            conn = getConnection(QueryClass.SCAN);
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            ps.setLong(1, afterId);
             ps.setInt(2, Math.max(limit, 1));
             rs = ps.executeQuery();
-            List<Note> ftsResults = executeAndCollect(rs);
-            if (!ftsResults.isEmpty()) {
-                return ftsResults;
+            List<Note> list = new ArrayList<>();
+            while (rs.next()) {
+                list.add(map(rs));
             }
+            return list;
         } catch (SQLException e) {
-            logger.warn("FTS search failed for query '{}', falling back to LIKE", query, e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to list notes after ID: {}", afterId, e);
+            throw new DataAccessException("メモの一覧取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
         }
-
-        return fallbackSearchWithLike(query, limit);
     }
 
-    private static String escapeFts(String q) {
-        if (q == null || q.trim().isEmpty()) {
-            return "";
+    /**
+     * 全メモを ID の昇順に1件ずつ {@code action} に渡す（エクスポート用）。
+     * 結果は前方向のカーソルで読むため、件数にかかわらず一度に保持するのは1件だけ。
+     * 複数の読み取りで同じ時点を見るには {@link TransactionManager#executeInSnapshot} の中で呼ぶ。
+     * @return 渡した件数
+     */
+    public long forEachNote(Consumer<Note> action) throws DataAccessException {
+        String sql = "SELECT id, title, body, created_at, updated_at FROM notes ORDER BY id";
+        Connection conn = null;
+        ResultSet rs = null;
+        long count = 0;
+        try {
+            conn = getConnection(QueryClass.SCAN);
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                action.accept(map(rs));
+                count++;
+            }
+            return count;
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to stream notes after {} rows", count, e);
+            throw new DataAccessException("メモの読み出しに失敗しました", e);
+        } finally {
+            closeResources(rs, conn);
         }
+    }
+
+    public long insert(Note n) throws DataAccessException {
+        logger.debug("Inserting new note: {}", n.getTitle());
+        String sql = "INSERT INTO notes(title, body, created_at, updated_at) VALUES (?,?,?,?)";
         
-        // Enhanced FTS5 escape to prevent injection
-        String trimmed = q.trim();
-        
-        // Remove or escape dangerous FTS5 operators and characters
-        String escaped = trimmed
-                .replace("\"", "\"\"")  // Escape quotes
-                .replace("-", " ")      // Remove NOT operator
-                .replace("+", " ")      // Remove MUST operator
-                .replace("(", " ")      // Remove grouping
-                .replace(")", " ")
-                .replace("[", " ")
-                .replace("]", " ")
-                .replace("{", " ")
-                .replace("}", " ")
-                .replace("^", " ")      // Remove boost operator
-                .replace("~", " ")      // Remove fuzzy operator
-                .replace("*", " ")      // Remove wildcard (we'll add it back safely)
-                .replace(":", " ");     // Remove field search
+        return inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, sql, Statement.RETURN_GENERATED_KEYS);
+                ps.setString(1, n.getTitle());
+                ps.setString(2, n.getBody());
+                ps.setLong(3, n.getCreatedAt());
+                ps.setLong(4, n.getUpdatedAt());
+                ps.executeUpdate();
+                rs = ps.getGeneratedKeys();
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    n.setId(id);
+                    logger.debug("Note inserted with ID: {}", id);
+                    // FTSインデックスはトリガーで同期される
+                    return id;
+                }
+                logger.error("Failed to get generated key for inserted note");
+                throw new DataAccessException("メモの挿入後にIDの取得に失敗しました");
+            } catch (SQLException e) {
+                logger.error("Failed to insert note", e);
+                throw new DataAccessException("メモの挿入に失敗しました", e);
+            } finally {
+                closeResources(rs, conn);
+            }
+        });
+    }
+
+    /**
+     * メモのタイトル・本文・更新日時を書き込む
+     * @return 書き込み後に保存されている行（作成日時を含む）
+     */
+    public Note update(Note n) throws DataAccessException {
+        logger.debug("Updating note ID: {}", n.getId());
         
-        // Clean up multiple spaces
-        escaped = escaped.replaceAll("\\s+", " ").trim();
+        // notesテーブルを更新し、保存された行をそのまま返す
+        String sql = "UPDATE notes SET title=?, body=?, updated_at=? WHERE id=? " +
+                "RETURNING id, title, body, created_at, updated_at";
         
-        if (escaped.isEmpty()) {
-            return "";
+        return inTransaction(() -> {
+            Connection conn = null;
+            ResultSet rs = null;
+            try {
+                conn = getWriteConnection();
+                PreparedStatement ps = db.prepareCached(conn, sql);
+                ps.setString(1, n.getTitle());
+                ps.setString(2, n.getBody());
+                ps.setLong(3, n.getUpdatedAt());
+                ps.setLong(4, n.getId());
+                rs = ps.executeQuery();
+                
+                if (!rs.next()) {
+                    logger.warn("No rows affected when updating note ID: {}", n.getId());
+                    throw new DataAccessException("更新対象のメモが見つかりませんでした (ID: " + n.getId() + ")");
+                }
+                
+                // FTSインデックス更新はデータベーストリガーに任せる
+                logger.debug("Note updated successfully");
+                return map(rs);
+            } catch (SQLException e) {
+                logger.error("Failed to update note ID: {}", n.getId(), e);
+                throw new DataAccessException("メモの更新に失敗しました", e);
+            } finally {
+                closeResources(rs, conn);
+            }
+        });
+    }
+
+    /**
+     * 複数のメモを addBatch / executeBatch で一括挿入する。トランザクション外で呼ばれた場合は1つのトランザクションで実行する。
+     * ID は書き込みロックを持ったまま現在の最大値の続きから挿入順に割り当て、各メモにも設定する。
+     * @return 割り当てた ID（{@code notes} と同じ順）
+     */
+    public List<Long> insertAll(List<Note> notes) throws DataAccessException {
+        if (notes.isEmpty()) {
+            return List.of();
         }
-        
-        // Safe FTS5 query with proper quoting
-        if (escaped.contains(" ")) {
-            // Multi-word phrase - use exact phrase matching
-            return "\"" + escaped + "\"";
-        } else {
-            // Single word - use prefix matching
-            return escaped + "*";
+        logger.debug("Inserting {} notes in batches", notes.size());
+        return inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                long nextId = maxId(conn) + 1;
+                ps = db.prepareCached(conn, "INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (?,?,?,?,?)");
+                List<Long> ids = new ArrayList<>(notes.size());
+                for (Note n : notes) {
+                    long id = nextId++;
+                    ps.setLong(1, id);
+                    ps.setString(2, n.getTitle());
+                    ps.setString(3, n.getBody());
+                    ps.setLong(4, n.getCreatedAt());
+                    ps.setLong(5, n.getUpdatedAt());
+                    ps.addBatch();
+                    ids.add(id);
+                    if (ids.size() % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+                for (int i = 0; i < notes.size(); i++) {
+                    notes.get(i).setId(ids.get(i));
+                }
+                logger.debug("Inserted {} notes (IDs {}..{})", ids.size(), ids.get(0), ids.get(ids.size() - 1));
+                return ids;
+            } catch (SQLException e) {
+                logger.error("Failed to insert {} notes", notes.size(), e);
+                throw new DataAccessException("メモの一括挿入に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
+    }
+
+    /**
+     * 複数のメモを addBatch / executeBatch で一括更新する。1件でも見つからない場合は例外を投げる
+     * （トランザクション外で呼ばれた場合は1つのトランザクションで実行するため、すべてロールバックされる）。
+     */
+    public void updateAll(List<Note> notes) throws DataAccessException {
+        if (notes.isEmpty()) {
+            return;
         }
+        logger.debug("Updating {} notes in batches", notes.size());
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, "UPDATE notes SET title=?, body=?, updated_at=? WHERE id=?");
+                for (int start = 0; start < notes.size(); start += BATCH_SIZE) {
+                    List<Note> chunk = notes.subList(start, Math.min(notes.size(), start + BATCH_SIZE));
+                    for (Note n : chunk) {
+                        ps.setString(1, n.getTitle());
+                        ps.setString(2, n.getBody());
+                        ps.setLong(3, n.getUpdatedAt());
+                        ps.setLong(4, n.getId());
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            long id = chunk.get(i).getId();
+                            logger.warn("No rows affected when updating note ID: {}", id);
+                            throw new DataAccessException("更新対象のメモが見つかりませんでした (ID: " + id + ")");
+                        }
+                    }
+                }
+                return null;
+            } catch (SQLException e) {
+                logger.error("Failed to update {} notes", notes.size(), e);
+                throw new DataAccessException("メモの一括更新に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
     }
 
-    private List<Note> executeAndCollect(ResultSet rs) throws SQLException {
-        List<Note> list = new ArrayList<>();
-        while (rs.next()) {
-            list.add(map(rs));
+    /**
+     * 複数のメモを addBatch / executeBatch で一括削除する。1件でも見つからない場合は例外を投げる
+     * （トランザクション外で呼ばれた場合は1つのトランザクションで実行するため、すべてロールバックされる）。
+     */
+    public void deleteAll(List<Long> ids) throws DataAccessException {
+        if (ids.isEmpty()) {
+            return;
         }
-        logger.debug("Search returned {} notes", list.size());
-        return list;
+        logger.debug("Deleting {} notes in batches", ids.size());
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, "DELETE FROM notes WHERE id=?");
+                for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+                    List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+                    for (long id : chunk) {
+                        ps.setLong(1, id);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            logger.warn("No rows affected when deleting note ID: {}", chunk.get(i));
+                            throw new DataAccessException("削除対象のメモが見つかりませんでした (ID: " + chunk.get(i) + ")");
+                        }
+                    }
+                }
+                return null;
+            } catch (SQLException e) {
+                logger.error("Failed to delete {} notes", ids.size(), e);
+                throw new DataAccessException("メモの一括削除に失敗しました", e);
+            } finally {
+                clearBatch(ps);
+                closeResources(null, conn);
+            }
+        });
     }
 
-    private List<Note> fallbackSearchWithLike(String query, int limit) throws DataAccessException {
-        String base = "SELECT id, title, body, created_at, updated_at FROM notes " +
-                "WHERE (title LIKE ? ESCAPE '\\' OR body LIKE ? ESCAPE '\\') ORDER BY updated_at DESC";
-        boolean hasLimit = limit > 0;
-        String sql = hasLimit ? base + " LIMIT ?" : base;
-        
+    /**
+     * 大量挿入の間、全文検索索引（notes_fts と notes_trigram）のセグメント自動併合を止める。
+     * 各行は挿入時に索引されるため検索結果は変わらない。{@link #resumeIndexMerges} で必ず再開すること
+     * （設定はデータベースに保存されるため、再開前に異常終了した場合は次回の {@link Database#initialize} で既定値に戻る）。
+     */
+    public void pauseIndexMerges() throws DataAccessException {
+        setAutomerge(0, false);
+    }
+
+    /**
+     * セグメント自動併合を既定値に戻す
+     * @param optimize true の場合、止めていた間に増えたセグメントをまとめて併合する
+     */
+    public void resumeIndexMerges(boolean optimize) throws DataAccessException {
+        setAutomerge(Database.FTS_DEFAULT_AUTOMERGE, optimize);
+    }
+
+    private void setAutomerge(int automerge, boolean optimize) throws DataAccessException {
+        inTransaction(() -> {
+            Connection conn = null;
+            try {
+                conn = getWriteConnection();
+                List<String> tables = new ArrayList<>(List.of("notes_fts"));
+                if (searchPlanner.isTrigramIndexPresent(conn)) {
+                    tables.add("notes_trigram");
+                }
+                try (Statement st = conn.createStatement()) {
+                    for (String table : tables) {
+                        st.executeUpdate("INSERT INTO " + table + "(" + table + ", rank) VALUES('automerge', " + automerge + ")");
+                        if (optimize) {
+                            st.executeUpdate("INSERT INTO " + table + "(" + table + ") VALUES('optimize')");
+                        }
+                    }
+                }
+                logger.debug("Set full-text automerge to {} on {} (optimize: {})", automerge, tables, optimize);
+                return null;
+            } catch (SQLException e) {
+                logger.error("Failed to change full-text index merge settings", e);
+                throw new DataAccessException("全文検索索引の設定変更に失敗しました", e);
+            } finally {
+                closeResources(null, conn);
+            }
+        });
+    }
+
+    private long maxId(Connection conn) throws SQLException {
+        try (ResultSet rs = db.prepareCached(conn, "SELECT COALESCE(MAX(id), 0) FROM notes").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // The transaction manager nests, so a caller's transaction is joined rather than committed early
+    private <T> T inTransaction(ThrowingSupplier<T> operation) throws DataAccessException {
+        return transactionManager.executeInTransaction(operation);
+    }
+
+    // A cached statement outlives this call; a batch left behind by a failure must not run with the next one
+    private static void clearBatch(PreparedStatement ps) {
+        if (ps != null) {
+            try {
+                ps.clearBatch();
+            } catch (SQLException e) {
+                logger.warn("Failed to clear statement batch", e);
+            }
+        }
+    }
+
+    /**
+     * メモを検索する。検索方式（FTS / トライグラム / LIKE）は {@link SearchPlanner} が事前に1つ選び、
+     * 同じ接続で1回だけ実行する。
+     */
+    public List<Note> searchNotes(String query, int limit) throws DataAccessException {
+        if (query == null || query.isBlank()) return listRecent(limit);
+        logger.debug("Searching notes with query: '{}', limit: {}", query, limit);
+
         Connection conn = null;
-        PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            String escaped = escapeLikePattern(query);
-            String pattern = "%" + escaped + "%";
-            ps.setString(1, pattern);
-            ps.setString(2, pattern);
-            if (hasLimit) {
-                ps.setInt(3, limit);
-            }
+            conn = getConnection(QueryClass.SEARCH);
+            SearchStrategy strategy = searchPlanner.plan(conn, query);
+            String sql = "SELECT n.id, n.title, n.body, n.created_at, n.updated_at " +
+                    searchSource(strategy, query) + "ORDER BY n.updated_at DESC, n.id ASC LIMIT ?";
+            long start = System.nanoTime();
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            int i = bindSearch(ps, 1, strategy, query);
+            ps.setInt(i, limit > 0 ? limit : -1);
             rs = ps.executeQuery();
             List<Note> list = executeAndCollect(rs);
-            logger.debug("Fallback LIKE search returned {} notes", list.size());
+            searchPlanner.record(strategy, System.nanoTime() - start, list.size());
+            return list;
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to search notes for query: '{}'", query, e);
+            throw new DataAccessException("メモの検索に失敗しました", e);
+        } finally {
+            closeResources(rs, conn);
+        }
+    }
+
+    /**
+     * メモを検索し、本文抜きの射影で返す（検索方式の選び方は {@link #searchNotes} と同じ）
+     */
+    public List<NoteSummary> searchSummaries(String query, int limit) throws DataAccessException {
+        if (query == null || query.isBlank()) return listRecentSummaries(limit);
+        logger.debug("Searching note summaries with query: '{}', limit: {}", query, limit);
+
+        Connection conn = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection(QueryClass.SEARCH);
+            SearchStrategy strategy = searchPlanner.plan(conn, query);
+            String sql = "SELECT n.id, n.title, substr(n.body, 1, ?) AS snippet, n.updated_at " +
+                    searchSource(strategy, query) + "ORDER BY n.updated_at DESC, n.id ASC LIMIT ?";
+            long start = System.nanoTime();
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            ps.setInt(1, NoteSummary.SNIPPET_LENGTH);
+            int i = bindSearch(ps, 2, strategy, query);
+            ps.setInt(i, limit > 0 ? limit : -1);
+            rs = ps.executeQuery();
+            List<NoteSummary> list = collectSummaries(rs);
+            searchPlanner.record(strategy, System.nanoTime() - start, list.size());
+            return list;
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to search note summaries for query: '{}'", query, e);
+            throw new DataAccessException("メモの検索に失敗しました", e);
+        } finally {
+            closeResources(rs, conn);
+        }
+    }
+
+    /**
+     * 関連度順に上位 {@code limit} 件を返す。本文は返さず、一致箇所周辺の抜粋とハイライトのみを返す。
+     * FTS / トライグラム索引では bm25 順、LIKE では最初の一致箇所周辺を抜粋する（rank は 0、更新日時の新しい順）。
+     * @param titleWeight bm25 のタイトル列の重み
+     * @param bodyWeight bm25 の本文列の重み
+     */
+    public List<NoteSearchResult> searchRanked(String query, int limit, double titleWeight, double bodyWeight)
+            throws DataAccessException {
+        if (query == null || query.isBlank()) {
+            return new ArrayList<>();
+        }
+        logger.debug("Ranked search with query: '{}', limit: {}", query, limit);
+        Connection conn = null;
+        try {
+            conn = getConnection(QueryClass.SEARCH);
+            SearchStrategy strategy = searchPlanner.plan(conn, query);
+            long start = System.nanoTime();
+            List<NoteSearchResult> list = strategy == SearchStrategy.LIKE
+                    ? searchRankedWithLike(conn, query.trim(), limit)
+                    : searchRankedWithFts(conn, strategy, query, limit, titleWeight, bodyWeight);
+            searchPlanner.record(strategy, System.nanoTime() - start, list.size());
             return list;
         } catch (SQLException e) {
-            logger.error("Failed LIKE fallback search for query: '{}'", query, e);
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed ranked search for query: '{}'", query, e);
             throw new DataAccessException("メモの検索に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(null, conn);
+        }
+    }
+
+    private List<NoteSearchResult> searchRankedWithFts(Connection conn, SearchStrategy strategy, String query, int limit,
+                                                       double titleWeight, double bodyWeight) throws SQLException {
+        String t = strategy.ftsTable();
+        String sql = "SELECT n.id, n.title, n.updated_at, " +
+                "highlight(" + t + ", 0, ?, ?) AS title_hl, " +
+                "snippet(" + t + ", 1, ?, ?, ?, ?) AS snip, " +
+                "bm25(" + t + ", ?, ?) AS rank " +
+                "FROM " + t + " JOIN notes n ON n.id = " + t + ".rowid " +
+                "WHERE " + t + " MATCH ? " + shortTermConditions(strategy, query) + "ORDER BY rank LIMIT ?";
+        PreparedStatement ps = db.prepareCached(conn, sql);
+        ps.setString(1, NoteSearchResult.HIGHLIGHT_START);
+        ps.setString(2, NoteSearchResult.HIGHLIGHT_END);
+        ps.setString(3, NoteSearchResult.HIGHLIGHT_START);
+        ps.setString(4, NoteSearchResult.HIGHLIGHT_END);
+        ps.setString(5, NoteSearchResult.ELLIPSIS);
+        ps.setInt(6, SNIPPET_TOKENS);
+        ps.setDouble(7, titleWeight);
+        ps.setDouble(8, bodyWeight);
+        ps.setString(9, SearchPlanner.matchExpression(strategy, query));
+        int i = bindShortTerms(ps, 10, strategy, query);
+        ps.setInt(i, Math.max(limit, 1));
+        List<NoteSearchResult> list = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                list.add(new NoteSearchResult(rs.getLong("id"), rs.getString("title"),
+                        rs.getString("title_hl"), nullToEmpty(rs.getString("snip")),
+                        rs.getDouble("rank"), rs.getLong("updated_at")));
+            }
         }
+        return list;
+    }
+
+    private List<NoteSearchResult> searchRankedWithLike(Connection conn, String query, int limit) throws SQLException {
+        String sql = "SELECT id, title, updated_at, length(body) AS body_len, " +
+                "max(1, instr(lower(body), lower(?)) - ?) AS snip_start, " +
+                "substr(body, max(1, instr(lower(body), lower(?)) - ?), ?) AS snip " +
+                "FROM notes WHERE (title LIKE ? ESCAPE '\\' OR body LIKE ? ESCAPE '\\') " +
+                "ORDER BY updated_at DESC, id ASC LIMIT ?";
+        String pattern = "%" + escapeLikePattern(query) + "%";
+        PreparedStatement ps = db.prepareCached(conn, sql);
+        ps.setString(1, query);
+        ps.setInt(2, LIKE_SNIPPET_LEAD);
+        ps.setString(3, query);
+        ps.setInt(4, LIKE_SNIPPET_LEAD);
+        ps.setInt(5, NoteSummary.SNIPPET_LENGTH);
+        ps.setString(6, pattern);
+        ps.setString(7, pattern);
+        ps.setInt(8, Math.max(limit, 1));
+        // ASCII-only case folding, matching SQLite's LIKE
+        Pattern highlight = Pattern.compile(Pattern.quote(query), Pattern.CASE_INSENSITIVE);
+        List<NoteSearchResult> list = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String title = nullToEmpty(rs.getString("title"));
+                String snip = nullToEmpty(rs.getString("snip"));
+                int start = rs.getInt("snip_start");
+                if (start > 1) {
+                    snip = NoteSearchResult.ELLIPSIS + snip;
+                }
+                if (start - 1 + NoteSummary.SNIPPET_LENGTH < rs.getInt("body_len")) {
+                    snip = snip + NoteSearchResult.ELLIPSIS;
+                }
+                list.add(new NoteSearchResult(rs.getLong("id"), title, NoteSearchResult.highlight(title, highlight),
+                        NoteSearchResult.highlight(snip, highlight), 0.0, rs.getLong("updated_at")));
+            }
+        }
+        return list;
+    }
+
+    // FROM/WHERE for the chosen strategy with rows aliased as n; ends with a space so conditions can follow
+    private static String searchSource(SearchStrategy strategy, String query) {
+        String t = strategy.ftsTable();
+        if (t == null) {
+            return "FROM notes n WHERE " + LIKE_TERM_CONDITION;
+        }
+        return "FROM " + t + " JOIN notes n ON n.id = " + t + ".rowid WHERE " + t + " MATCH ? " +
+                shortTermConditions(strategy, query);
+    }
+
+    // Terms too short for the trigram index, checked with LIKE on the rows the MATCH already narrowed down
+    private static String shortTermConditions(SearchStrategy strategy, String query) {
+        return ("AND " + LIKE_TERM_CONDITION).repeat(SearchPlanner.shortTerms(strategy, query).size());
+    }
+
+    // Binds the parameters of searchSource starting at index; returns the next free index
+    private static int bindSearch(PreparedStatement ps, int index, SearchStrategy strategy, String query) throws SQLException {
+        if (strategy == SearchStrategy.LIKE) {
+            return bindLikeTerm(ps, index, query.trim());
+        }
+        ps.setString(index++, SearchPlanner.matchExpression(strategy, query));
+        return bindShortTerms(ps, index, strategy, query);
+    }
+
+    private static int bindShortTerms(PreparedStatement ps, int index, SearchStrategy strategy, String query)
+            throws SQLException {
+        for (String term : SearchPlanner.shortTerms(strategy, query)) {
+            index = bindLikeTerm(ps, index, term);
+        }
+        return index;
+    }
+
+    // Binds both placeholders of LIKE_TERM_CONDITION
+    private static int bindLikeTerm(PreparedStatement ps, int index, String term) throws SQLException {
+        String pattern = "%" + escapeLikePattern(term) + "%";
+        ps.setString(index++, pattern);
+        ps.setString(index++, pattern);
+        return index;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+
+    private List<Note> executeAndCollect(ResultSet rs) throws SQLException {
+        List<Note> list = new ArrayList<>();
+        while (rs.next()) {
+            list.add(map(rs));
+        }
+        logger.debug("Search returned {} notes", list.size());
+        return list;
     }
 
     public Note getById(long id) throws DataAccessException {
@@ -264,8 +817,8 @@ public class NotesDao {
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getConnection(QueryClass.LOOKUP);
+            ps = db.prepareCached(conn, sql);
             ps.setLong(1, id);
             rs = ps.executeQuery();
             if (rs.next()) {
@@ -276,10 +829,47 @@ public class NotesDao {
             logger.debug("Note not found with ID: {}", id);
             return null;
         } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
             logger.error("Failed to get note by ID: {}", id, e);
             throw new DataAccessException("メモの取得に失敗しました", e);
         } finally {
-            closeResources(rs, ps, conn);
+            closeResources(rs, conn);
+        }
+    }
+
+    /**
+     * 指定された ID のメモをまとめて取得する（存在しない ID は無視され、順序は保証しない）
+     */
+    public List<Note> listByIds(List<Long> ids) throws DataAccessException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // One cached statement for any number of IDs: they are passed as a JSON array
+        String sql = "SELECT id, title, body, created_at, updated_at FROM notes WHERE id IN (SELECT value FROM json_each(?))";
+        Connection conn = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection(QueryClass.LOOKUP);
+            PreparedStatement ps = db.prepareCached(conn, sql);
+            ps.setString(1, ids.toString());
+            rs = ps.executeQuery();
+            List<Note> list = new ArrayList<>(ids.size());
+            while (rs.next()) {
+                list.add(map(rs));
+            }
+            return list;
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            logger.error("Failed to get {} notes by ID", ids.size(), e);
+            throw new DataAccessException("メモの取得に失敗しました", e);
+        } finally {
+            closeResources(rs, conn);
         }
     }
 
@@ -289,24 +879,27 @@ public class NotesDao {
         // notesテーブルから削除
         String sql = "DELETE FROM notes WHERE id=?";
         
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setLong(1, id);
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0) {
-                logger.warn("No rows affected when deleting note ID: {}", id);
-                throw new DataAccessException("削除対象のメモが見つかりませんでした (ID: " + id + ")");
+        inTransaction(() -> {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getWriteConnection();
+                ps = db.prepareCached(conn, sql);
+                ps.setLong(1, id);
+                int rowsAffected = ps.executeUpdate();
+                if (rowsAffected == 0) {
+                    logger.warn("No rows affected when deleting note ID: {}", id);
+                    throw new DataAccessException("削除対象のメモが見つかりませんでした (ID: " + id + ")");
+                }
+                logger.debug("Note deleted successfully");
+            } catch (SQLException e) {
+                logger.error("Failed to delete note ID: {}", id, e);
+                throw new DataAccessException("メモの削除に失敗しました", e);
+            } finally {
+                closeResources(null, conn);
             }
-            logger.debug("Note deleted successfully");
-        } catch (SQLException e) {
-            logger.error("Failed to delete note ID: {}", id, e);
-            throw new DataAccessException("メモの削除に失敗しました", e);
-        } finally {
-            closeResources(null, ps, conn);
-        }
+            return null;
+        });
     }
 
     private static String escapeLikePattern(String value) {
@@ -318,6 +911,16 @@ public class NotesDao {
                     .replace("_", "\\_");
     }
 
+    private static List<NoteSummary> collectSummaries(ResultSet rs) throws SQLException {
+        List<NoteSummary> list = new ArrayList<>();
+        while (rs.next()) {
+            String snippet = rs.getString("snippet");
+            list.add(new NoteSummary(rs.getLong("id"), rs.getString("title"),
+                    snippet != null ? snippet : "", rs.getLong("updated_at")));
+        }
+        return list;
+    }
+
     private static Note map(ResultSet rs) throws SQLException {
         Note n = new Note();
         n.setId(rs.getLong("id"));
@@ -0,0 +1,30 @@
+package app.db;
+
+/**
+ * 接続プールの統計情報（db.pool.size を決めるための実測値）
+ * @param maxPoolSize プールの上限
+ * @param open 開いている接続数（貸し出し中と待機中の合計）
+ * @param active 貸し出し中の接続数
+ * @param idle プールで待機中の接続数
+ * @param waiting 接続が空くのを待っているスレッド数
+ * @param acquireWait 接続の取得にかかった時間（待ち時間を含む）
+ * @param holdTime 接続を借りてから返すまでの時間
+ * @param acquireTimeouts 待ちきれずに失敗した取得の回数
+ * @param replacements 閉じた・無効な接続を新しい接続に置き換えた回数
+ * @param connectionsOpened 開いた接続の累計（起動時の1本と、取得待ちで増やした分）
+ * @param idleClosed 使われないまま database.pool.idle.timeout.ms を過ぎて閉じた接続の累計
+ * @param validationCount 検証クエリの実行回数
+ * @param validationFailures 検証に失敗した回数
+ * @param leaksDetected しきい値を超えて借りられたままの貸し出しを検出した回数
+ */
+public record PoolStats(int maxPoolSize, int open, int active, int idle, int waiting,
+                        LatencySnapshot acquireWait, LatencySnapshot holdTime,
+                        long acquireTimeouts, long replacements, long connectionsOpened, long idleClosed,
+                        long validationCount, long validationFailures, long leaksDetected) {
+    /**
+     * プールのうち貸し出し中の割合（0〜1）
+     */
+    public double utilization() {
+        return maxPoolSize == 0 ? 0.0 : (double) active / maxPoolSize;
+    }
+}
@@ -0,0 +1,28 @@
+package app.db;
+
+/**
+ * DAO の読み取りクエリの種類。種類ごとに制限時間（database.query.timeout.&lt;種類&gt;.ms、0 で無制限）を設定できる。
+ */
+public enum QueryClass {
+    /** ID による1件の取得 */
+    LOOKUP("lookup"),
+    /** 一覧・ページの取得 */
+    LIST("list"),
+    /** 検索（FTS / トライグラム / LIKE） */
+    SEARCH("search"),
+    /** エクスポートや索引の構築などの全件走査 */
+    SCAN("scan");
+
+    private final String key;
+
+    QueryClass(String key) {
+        this.key = key;
+    }
+
+    /**
+     * 設定キーに使う名前（database.query.timeout.&lt;key&gt;.ms）
+     */
+    public String key() {
+        return key;
+    }
+}
@@ -0,0 +1,20 @@
+package app.db;
+
+/**
+ * 接続で実行中の読み取りクエリの期限と取り消しの範囲。接続の進行ハンドラが参照し、
+ * 期限を過ぎたか範囲が取り消されていれば SQLite の中で中断する。
+ * @param queryClass クエリの種類
+ * @param timeoutMillis 制限時間（0 で無制限。例外とログに出す値）
+ * @param deadlineNanos 期限（{@link System#nanoTime()} 基準）
+ * @param scope 実行しているスレッドの {@link QueryScope}（無ければ null）
+ */
+record QueryDeadline(QueryClass queryClass, long timeoutMillis, long deadlineNanos, QueryScope scope) {
+    boolean isExpired() {
+        return timeoutMillis > 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    // Also catches a cancel() that came before the statement started, which sqlite3_interrupt alone misses
+    boolean shouldInterrupt() {
+        return isExpired() || (scope != null && scope.isCancelled());
+    }
+}
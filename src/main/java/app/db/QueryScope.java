@@ -0,0 +1,197 @@
+package app.db;
+
+import app.exception.DataAccessException;
+import app.exception.QueryCancelledException;
+import app.exception.QueryTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 取り消し可能な読み取りの範囲。
+ * <p>
+ * {@link #run} の中でこのスレッドがプールから借りた接続を記録し、{@link #cancel()} が呼ばれると
+ * それらの接続で実行中の SQL を sqlite3_interrupt で中断する。中断された処理と、取り消し後に接続を借りようとした処理は
+ * {@link QueryCancelledException} で終わる。接続は返却の前に範囲から外すため、返却後の接続を中断することはない。
+ * DAO の読み取りはプール接続の進行ハンドラでも取り消しを確かめるため、SQL の開始直前に取り消された場合も中断される。
+ * 書き込み用接続（{@link TransactionManager#executeInTransaction}）は対象外で、書き込みは取り消されない。
+ * <p>
+ * 制限時間付きで作った範囲では、接続の取得待ちと、範囲内の DAO の読み取りのそれぞれが期限までに終わらなければ
+ * {@link QueryTimeoutException} で終わる（DAO の種類ごとの制限時間の方が早ければそちらが優先される）。
+ * <p>
+ * コルーチンからは {@link #supplyAsync} の Future を await すると、コルーチンの取り消しが Future の取り消しを経てクエリに伝わる。
+ */
+public final class QueryScope {
+    private static final Logger logger = LoggerFactory.getLogger(QueryScope.class);
+    private static final ThreadLocal<QueryScope> current = new ThreadLocal<>();
+
+    private final Set<Connection> connections = new HashSet<>();
+    private boolean cancelled;
+    // 0 when the scope has no deadline
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+
+    public QueryScope() {
+        this(0);
+    }
+
+    /**
+     * @param timeoutMillis 作成時点からの制限時間（0 以下で無制限）
+     */
+    public QueryScope(long timeoutMillis) {
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+    }
+
+    /**
+     * このスレッドで実行中の範囲（無ければ null）
+     */
+    static QueryScope current() {
+        return current.get();
+    }
+
+    /**
+     * {@code operation} をこの範囲の中で実行する
+     * @throws QueryCancelledException 取り消された場合（開始前に取り消されていた場合を含む）
+     * @throws QueryTimeoutException 期限を過ぎた場合
+     */
+    public <T> T run(ThrowingSupplier<T> operation) throws DataAccessException {
+        if (isCancelled()) {
+            throw new QueryCancelledException("クエリはキャンセルされました");
+        }
+        if (isExpired()) {
+            throw new QueryTimeoutException(timeoutMillis, null);
+        }
+        QueryScope previous = current.get();
+        current.set(this);
+        try {
+            return operation.get();
+        } catch (DataAccessException e) {
+            // The interrupted statement surfaces as whatever the DAO or transaction wrapped it in
+            if (isCancelled() && !(e instanceof QueryCancelledException)) {
+                throw new QueryCancelledException(e);
+            }
+            // e.g. the pool wait ran into the deadline
+            if (isExpired() && !(e instanceof QueryTimeoutException) && !(e instanceof QueryCancelledException)) {
+                throw new QueryTimeoutException(timeoutMillis, e);
+            }
+            throw e;
+        } finally {
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * 範囲を取り消し、借りている接続で実行中の SQL を中断する
+     * @return 今回の呼び出しで取り消した場合は true（既に取り消し済みなら false）
+     */
+    public synchronized boolean cancel() {
+        if (cancelled) {
+            return false;
+        }
+        cancelled = true;
+        for (Connection conn : connections) {
+            try {
+                conn.unwrap(SQLiteConnection.class).getDatabase().interrupt();
+            } catch (SQLException e) {
+                logger.debug("Failed to interrupt a cancelled query", e);
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean hasDeadline() {
+        return timeoutMillis > 0;
+    }
+
+    /**
+     * 期限を過ぎているか（期限の無い範囲では常に false）
+     */
+    public boolean isExpired() {
+        return hasDeadline() && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * 借りた接続を記録する
+     * @return 取り消し済みなら false（呼び出し側は接続を返却して中断する）
+     */
+    synchronized boolean attach(Connection conn) {
+        if (cancelled) {
+            return false;
+        }
+        connections.add(conn);
+        return true;
+    }
+
+    // Called before the connection goes back to the pool, under the same lock as cancel()
+    synchronized void detach(Connection conn) {
+        connections.remove(conn);
+    }
+
+    /**
+     * SQLite が中断（SQLITE_INTERRUPT）を報告した例外で、このスレッドの範囲が取り消されているか
+     */
+    public static boolean isCancellation(SQLException e) {
+        QueryScope scope = current.get();
+        return scope != null && scope.isCancelled() && e.getErrorCode() == SQLiteErrorCode.SQLITE_INTERRUPT.code;
+    }
+
+    /**
+     * {@code operation} を新しい範囲の中で {@code executor} 上で実行する。
+     * 返した Future を {@link CompletableFuture#cancel} すると範囲が取り消され、実行中のクエリが中断される。
+     */
+    public static <T> CompletableFuture<T> supplyAsync(ThrowingSupplier<T> operation, Executor executor) {
+        QueryScope scope = new QueryScope();
+        CancellableFuture<T> future = new CancellableFuture<>(scope);
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(scope.run(operation));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    private static final class CancellableFuture<T> extends CompletableFuture<T> {
+        private final QueryScope scope;
+
+        CancellableFuture(QueryScope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            scope.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
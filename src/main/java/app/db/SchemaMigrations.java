@@ -0,0 +1,200 @@
+package app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * アプリケーションのスキーマ移行一覧。
+ * 新しい移行は末尾にバージョンを1つ進めて追加すること（適用済みの移行は変更しない）。
+ */
+final class SchemaMigrations {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    static final String EVENTS_RTREE_BACKFILL = "events_rtree_backfill";
+    static final String NOTES_TRIGRAM_BACKFILL = "notes_trigram_backfill";
+
+    // FTS is only re-indexed when the indexed columns actually change (not for updated_at-only updates)
+    static final String NOTES_AU_TRIGGER =
+            "CREATE TRIGGER notes_au AFTER UPDATE OF title, body ON notes " +
+            "WHEN old.title IS NOT new.title OR old.body IS NOT new.body BEGIN " +
+            "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body);" +
+            "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;";
+
+    private SchemaMigrations() {
+    }
+
+    static List<Migration> versioned() {
+        return List.of(
+                new Migration(1, "baseline schema (notes, notes_fts, events)", SchemaMigrations::baseline),
+                new Migration(2, "skip FTS re-index when note title/body are unchanged", conn -> exec(conn,
+                        "DROP TRIGGER IF EXISTS notes_au",
+                        NOTES_AU_TRIGGER)),
+                new Migration(3, "R*Tree interval index for events", SchemaMigrations::eventsIntervalIndex),
+                // Composite indexes matching the keyset page order; idx_events_start is a prefix of the new one.
+                // Notes list everywhere in (updated_at DESC, id ASC) order, which a forward scan of the notes index serves
+                new Migration(4, "keyset pagination indexes", conn -> exec(conn,
+                        "CREATE INDEX IF NOT EXISTS idx_notes_updated_desc_id ON notes(updated_at DESC, id)",
+                        "CREATE INDEX IF NOT EXISTS idx_events_start_id ON events(start_epoch_sec, id)",
+                        "DROP INDEX IF EXISTS idx_events_start")),
+                new Migration(5, "trigram FTS index for Japanese search", SchemaMigrations::notesTrigramIndex)
+        );
+    }
+
+    static List<BackgroundMigration> background() {
+        return List.of(
+                new BackgroundMigration(EVENTS_RTREE_BACKFILL, SchemaMigrations::backfillEventsRtree),
+                new BackgroundMigration(NOTES_TRIGRAM_BACKFILL, SchemaMigrations::backfillNotesTrigram)
+        );
+    }
+
+    // Schema as it existed before versioning; IF NOT EXISTS keeps it a no-op on existing databases
+    private static void baseline(Connection conn) throws SQLException {
+        exec(conn,
+                "CREATE TABLE IF NOT EXISTS notes (" +
+                        "id INTEGER PRIMARY KEY, " +
+                        "title TEXT NOT NULL, " +
+                        "body TEXT NOT NULL, " +
+                        "created_at INTEGER NOT NULL, " +
+                        "updated_at INTEGER NOT NULL)",
+                "CREATE VIRTUAL TABLE IF NOT EXISTS notes_fts USING fts5(" +
+                        "title, body, content='notes', content_rowid='id')",
+                "CREATE TRIGGER IF NOT EXISTS notes_ai AFTER INSERT ON notes BEGIN " +
+                        "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;",
+                "CREATE TRIGGER IF NOT EXISTS notes_au AFTER UPDATE ON notes BEGIN " +
+                        "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body);" +
+                        "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;",
+                "CREATE TRIGGER IF NOT EXISTS notes_ad AFTER DELETE ON notes BEGIN " +
+                        "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body); END;",
+                "CREATE TABLE IF NOT EXISTS events (" +
+                        "id INTEGER PRIMARY KEY, " +
+                        "title TEXT NOT NULL, " +
+                        "start_epoch_sec INTEGER NOT NULL, " +
+                        "end_epoch_sec INTEGER NOT NULL)",
+                "CREATE INDEX IF NOT EXISTS idx_events_start ON events(start_epoch_sec)");
+    }
+
+    // R*Tree stores 32-bit floats but rounds bounds outward, so it is an exact superset filter;
+    // EventsDao re-checks the real columns. Existing rows are copied in the background.
+    private static void eventsIntervalIndex(Connection conn) throws SQLException {
+        try {
+            exec(conn, "CREATE VIRTUAL TABLE IF NOT EXISTS events_rtree USING rtree(id, start_sec, end_sec)");
+        } catch (SQLException e) {
+            // SQLite built without the R*Tree module: EventsDao keeps using the start-time index
+            logger.warn("R*Tree module unavailable, events interval index disabled: {}", e.getMessage());
+            return;
+        }
+        exec(conn,
+                "CREATE TRIGGER IF NOT EXISTS events_rtree_ai AFTER INSERT ON events BEGIN " +
+                        "INSERT OR REPLACE INTO events_rtree(id, start_sec, end_sec) VALUES " +
+                        "(new.id, min(new.start_epoch_sec, new.end_epoch_sec), max(new.start_epoch_sec, new.end_epoch_sec)); END;",
+                "CREATE TRIGGER IF NOT EXISTS events_rtree_au AFTER UPDATE OF start_epoch_sec, end_epoch_sec ON events BEGIN " +
+                        "INSERT OR REPLACE INTO events_rtree(id, start_sec, end_sec) VALUES " +
+                        "(new.id, min(new.start_epoch_sec, new.end_epoch_sec), max(new.start_epoch_sec, new.end_epoch_sec)); END;",
+                "CREATE TRIGGER IF NOT EXISTS events_rtree_ad AFTER DELETE ON events BEGIN " +
+                        "DELETE FROM events_rtree WHERE id = old.id; END;");
+        SchemaMigrator.enqueueBackground(conn, EVENTS_RTREE_BACKFILL);
+    }
+
+    private static long backfillEventsRtree(Connection conn, long cursor, int chunkSize) throws SQLException {
+        long last = cursor;
+        try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT id, start_epoch_sec, end_epoch_sec FROM events WHERE id > ? ORDER BY id LIMIT ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT OR REPLACE INTO events_rtree(id, start_sec, end_sec) VALUES (?, ?, ?)")) {
+            select.setLong(1, cursor);
+            select.setInt(2, chunkSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    long start = rs.getLong(2);
+                    long end = rs.getLong(3);
+                    insert.setLong(1, last);
+                    insert.setLong(2, Math.min(start, end));
+                    insert.setLong(3, Math.max(start, end));
+                    insert.executeUpdate();
+                }
+            }
+        }
+        return last == cursor ? BackgroundMigration.DONE : last;
+    }
+
+    // unicode61 does not segment CJK text, so Japanese queries cannot hit notes_fts. The trigram tokenizer
+    // indexes every 3-character substring instead. Existing notes are listed in notes_trigram_pending and
+    // indexed in the background; the triggers skip the 'delete' step for rows that are not indexed yet
+    // (deleting unindexed content would corrupt the external-content index).
+    private static void notesTrigramIndex(Connection conn) throws SQLException {
+        try {
+            exec(conn, "CREATE VIRTUAL TABLE IF NOT EXISTS notes_trigram USING fts5(" +
+                    "title, body, content='notes', content_rowid='id', tokenize='trigram')");
+        } catch (SQLException e) {
+            // SQLite older than 3.34 has no trigram tokenizer: Japanese search keeps using LIKE
+            logger.warn("FTS5 trigram tokenizer unavailable, Japanese search index disabled: {}", e.getMessage());
+            return;
+        }
+        exec(conn,
+                "CREATE TABLE IF NOT EXISTS notes_trigram_pending (id INTEGER PRIMARY KEY)",
+                "INSERT OR IGNORE INTO notes_trigram_pending(id) SELECT id FROM notes",
+                "CREATE TRIGGER IF NOT EXISTS notes_trigram_ai AFTER INSERT ON notes BEGIN " +
+                        "INSERT INTO notes_trigram(rowid, title, body) VALUES (new.id, new.title, new.body); END;",
+                "CREATE TRIGGER IF NOT EXISTS notes_trigram_au AFTER UPDATE OF title, body ON notes " +
+                        "WHEN old.title IS NOT new.title OR old.body IS NOT new.body BEGIN " +
+                        "INSERT INTO notes_trigram(notes_trigram, rowid, title, body) " +
+                        "SELECT 'delete', old.id, old.title, old.body " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM notes_trigram_pending WHERE id = old.id);" +
+                        "DELETE FROM notes_trigram_pending WHERE id = old.id;" +
+                        "INSERT INTO notes_trigram(rowid, title, body) VALUES (new.id, new.title, new.body); END;",
+                "CREATE TRIGGER IF NOT EXISTS notes_trigram_ad AFTER DELETE ON notes BEGIN " +
+                        "INSERT INTO notes_trigram(notes_trigram, rowid, title, body) " +
+                        "SELECT 'delete', old.id, old.title, old.body " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM notes_trigram_pending WHERE id = old.id);" +
+                        "DELETE FROM notes_trigram_pending WHERE id = old.id; END;");
+        SchemaMigrator.enqueueBackground(conn, NOTES_TRIGRAM_BACKFILL);
+    }
+
+    private static long backfillNotesTrigram(Connection conn, long cursor, int chunkSize) throws SQLException {
+        long last = cursor;
+        try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT p.id, n.title, n.body FROM notes_trigram_pending p JOIN notes n ON n.id = p.id " +
+                     "WHERE p.id > ? ORDER BY p.id LIMIT ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO notes_trigram(rowid, title, body) VALUES (?, ?, ?)");
+             PreparedStatement done = conn.prepareStatement(
+                     "DELETE FROM notes_trigram_pending WHERE id = ?")) {
+            select.setLong(1, cursor);
+            select.setInt(2, chunkSize);
+            // Read the whole chunk first: rows are removed from notes_trigram_pending as they are indexed
+            List<Object[]> rows = new ArrayList<>(chunkSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3)});
+                }
+            }
+            for (Object[] row : rows) {
+                last = (Long) row[0];
+                insert.setLong(1, last);
+                insert.setString(2, (String) row[1]);
+                insert.setString(3, (String) row[2]);
+                insert.executeUpdate();
+                done.setLong(1, last);
+                done.executeUpdate();
+            }
+        }
+        return last == cursor ? BackgroundMigration.DONE : last;
+    }
+
+    static void exec(Connection conn, String... statements) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : statements) {
+                st.executeUpdate(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code PRAGMA user_version} に基づくスキーマ移行エンジン。
+ * <p>
+ * 未適用の {@link Migration} をバージョン順に1つずつトランザクション内で適用し、同じトランザクションで
+ * user_version を進める（途中で失敗しても適用済みのバージョンまでは確定し、失敗したステップは巻き戻る）。
+ * 時間のかかる再構築は {@link BackgroundMigration} として登録し、起動後にチャンク単位で進める。
+ */
+public class SchemaMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+    static final String BACKGROUND_TABLE = "schema_background_migrations";
+
+    private final List<Migration> migrations;
+    private final Map<String, BackgroundMigration> backgroundMigrations = new LinkedHashMap<>();
+
+    public SchemaMigrator(List<Migration> migrations, List<BackgroundMigration> backgroundMigrations) {
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort(Comparator.comparingInt(Migration::version));
+        int previous = 0;
+        for (Migration m : sorted) {
+            if (m.version() <= previous) {
+                throw new IllegalArgumentException("Migration versions must be positive and unique: " + m.version());
+            }
+            previous = m.version();
+        }
+        this.migrations = List.copyOf(sorted);
+        for (BackgroundMigration b : backgroundMigrations) {
+            if (this.backgroundMigrations.put(b.name(), b) != null) {
+                throw new IllegalArgumentException("Duplicate background migration: " + b.name());
+            }
+        }
+    }
+
+    /**
+     * アプリケーション標準の移行一覧を持つ移行エンジン
+     */
+    public static SchemaMigrator standard() {
+        return new SchemaMigrator(SchemaMigrations.versioned(), SchemaMigrations.background());
+    }
+
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version();
+    }
+
+    public int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * 未適用の移行を返す
+     * @throws SQLException データベースのバージョンがこのアプリケーションより新しい場合
+     */
+    public List<Migration> pending(Connection conn) throws SQLException {
+        int current = getCurrentVersion(conn);
+        if (current > getLatestVersion()) {
+            throw new SQLException("Database schema version " + current
+                    + " is newer than the supported version " + getLatestVersion());
+        }
+        List<Migration> result = new ArrayList<>();
+        for (Migration m : migrations) {
+            if (m.version() > current) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 未適用の移行をすべて適用する
+     * @return 適用した移行
+     */
+    public List<Migration> migrate(Connection conn) throws SQLException {
+        List<Migration> toApply = pending(conn);
+        if (toApply.isEmpty()) {
+            logger.debug("Database schema is up to date (version {})", getLatestVersion());
+            return toApply;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            ensureBackgroundTable(conn);
+            conn.commit();
+            for (Migration m : toApply) {
+                long start = System.nanoTime();
+                try {
+                    m.step().apply(conn);
+                    setUserVersion(conn, m.version());
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration to version " + m.version() + " (" + m.description() + ") failed", e);
+                }
+                logger.info("Applied schema migration {}: {} ({} ms)", m.version(), m.description(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return toApply;
+    }
+
+    /**
+     * ドライラン: 未適用の移行を1つのトランザクションで実行してからロールバックし、適用される内容を返す。
+     * バックグラウンド移行は登録されるだけで実行されない。
+     * @return 適用される予定の移行
+     * @throws SQLException いずれかの移行が失敗する場合
+     */
+    public List<Migration> dryRun(Connection conn) throws SQLException {
+        List<Migration> toApply = pending(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            ensureBackgroundTable(conn);
+            for (Migration m : toApply) {
+                try {
+                    m.step().apply(conn);
+                } catch (SQLException | RuntimeException e) {
+                    throw new SQLException("Migration to version " + m.version() + " (" + m.description() + ") failed", e);
+                }
+                logger.info("[dry-run] Would apply schema migration {}: {}", m.version(), m.description());
+            }
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+        return toApply;
+    }
+
+    /**
+     * バックグラウンド移行を登録する（移行ステップ内から呼ぶ）。既に登録済みの場合は最初からやり直す。
+     */
+    public static void enqueueBackground(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT OR REPLACE INTO " + BACKGROUND_TABLE + "(name, cursor, completed) VALUES (?, 0, 0)")) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 未完了のバックグラウンド移行があるか
+     */
+    public boolean hasPendingBackgroundWork(Connection conn) throws SQLException {
+        return nextBackgroundTask(conn) != null;
+    }
+
+    /**
+     * 未完了のバックグラウンド移行を1チャンク分進める
+     * @return まだ処理が残っている場合 true
+     */
+    public boolean runBackgroundChunk(Connection conn, int chunkSize) throws SQLException {
+        PendingTask task = nextBackgroundTask(conn);
+        if (task == null) {
+            return false;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            // Take the write lock before the chunk reads anything, so the transaction never has to
+            // upgrade from a stale read snapshot (which fails immediately instead of honouring busy_timeout)
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE " + BACKGROUND_TABLE + " SET cursor=cursor WHERE name=?")) {
+                ps.setString(1, task.migration.name());
+                ps.executeUpdate();
+            }
+            long next = task.migration.chunk().run(conn, task.cursor, Math.max(1, chunkSize));
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE " + BACKGROUND_TABLE + " SET cursor=?, completed=? WHERE name=?")) {
+                ps.setLong(1, next == BackgroundMigration.DONE ? task.cursor : next);
+                ps.setInt(2, next == BackgroundMigration.DONE ? 1 : 0);
+                ps.setString(3, task.migration.name());
+                ps.executeUpdate();
+            }
+            conn.commit();
+            if (next == BackgroundMigration.DONE) {
+                logger.info("Background migration '{}' completed", task.migration.name());
+            }
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return hasPendingBackgroundWork(conn);
+    }
+
+    /**
+     * 名前を指定したバックグラウンド移行が完了しているか（未登録の場合も完了扱い）
+     */
+    public static boolean isBackgroundComplete(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT completed FROM " + BACKGROUND_TABLE + " WHERE name=?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return !rs.next() || rs.getInt(1) != 0;
+            }
+        } catch (SQLException e) {
+            if (e.getMessage() != null && e.getMessage().contains("no such table")) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    private PendingTask nextBackgroundTask(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT name, cursor FROM " + BACKGROUND_TABLE
+                     + " WHERE completed=0 ORDER BY rowid")) {
+            while (rs.next()) {
+                BackgroundMigration migration = backgroundMigrations.get(rs.getString(1));
+                if (migration != null) {
+                    return new PendingTask(migration, rs.getLong(2));
+                }
+                logger.warn("Unknown background migration '{}' skipped", rs.getString(1));
+            }
+            return null;
+        } catch (SQLException e) {
+            if (e.getMessage() != null && e.getMessage().contains("no such table")) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static void ensureBackgroundTable(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + BACKGROUND_TABLE + " (" +
+                    "name TEXT PRIMARY KEY, " +
+                    "cursor INTEGER NOT NULL DEFAULT 0, " +
+                    "completed INTEGER NOT NULL DEFAULT 0)");
+        }
+    }
+
+    private static void setUserVersion(Connection conn, int version) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            // PRAGMA does not accept bind parameters; version is an int so this cannot be injected
+            st.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    private record PendingTask(BackgroundMigration migration, long cursor) {
+    }
+}
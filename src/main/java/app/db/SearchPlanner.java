@@ -0,0 +1,228 @@
+package app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * メモ検索の実行方式をクエリの特徴から事前に1つ選び、方式ごとの実行時間とヒット率を集計する。
+ * <p>
+ * <ul>
+ *   <li>日本語（漢字・かな）を含み3文字以上の語がある: トライグラム索引（バックフィル完了後）。
+ *       3文字未満の語は、索引で絞り込んだメモに対する LIKE で照合する（{@link #shortTerms}）</li>
+ *   <li>日本語を含むがトライグラム索引を使えない（すべての語が3文字未満など）: LIKE
+ *       （unicode61 は日本語を分かち書きしないため）。件数の上限と検索の制限時間の範囲で走査する</li>
+ *   <li>英数字と空白のみ: notes_fts</li>
+ *   <li>記号を含む（トークナイザが落とす文字の一致が必要）: LIKE</li>
+ * </ul>
+ * FTS で0件だった場合に LIKE で検索し直すことはしない。
+ */
+public class SearchPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(SearchPlanner.class);
+    // The trigram tokenizer cannot match terms shorter than three characters
+    private static final int TRIGRAM_MIN_TERM_LENGTH = 3;
+
+    private final Database db;
+    private final Map<SearchStrategy, Counters> counters = new EnumMap<>(SearchStrategy.class);
+    private volatile boolean trigramIndexReady = false;
+
+    public SearchPlanner(Database db) {
+        this.db = db;
+        for (SearchStrategy strategy : SearchStrategy.values()) {
+            counters.put(strategy, new Counters());
+        }
+    }
+
+    /**
+     * クエリの検索方式を決める
+     * @param conn 検索に使う接続（トライグラム索引の準備状況の確認に使う）
+     */
+    public SearchStrategy plan(Connection conn, String query) throws SQLException {
+        String q = query != null ? query.trim() : "";
+        SearchStrategy strategy;
+        if (containsJapanese(q)) {
+            strategy = trigramMatch(q) != null && isTrigramIndexReady(conn) ? SearchStrategy.TRIGRAM : SearchStrategy.LIKE;
+        } else if (isPlainWords(q) && !ftsMatch(q).isEmpty()) {
+            strategy = SearchStrategy.FTS;
+        } else {
+            strategy = SearchStrategy.LIKE;
+        }
+        logger.debug("Search plan for query '{}': {}", q, strategy);
+        return strategy;
+    }
+
+    /**
+     * 検索方式に応じた MATCH 式（LIKE の場合は null）
+     */
+    public static String matchExpression(SearchStrategy strategy, String query) {
+        return switch (strategy) {
+            case FTS -> ftsMatch(query);
+            case TRIGRAM -> trigramMatch(query);
+            case LIKE -> null;
+        };
+    }
+
+    /**
+     * 検索1回分の結果を記録する
+     */
+    public void record(SearchStrategy strategy, long elapsedNanos, int rows) {
+        Counters c = counters.get(strategy);
+        c.queries.increment();
+        if (rows > 0) {
+            c.hitQueries.increment();
+        }
+        c.rows.add(rows);
+        c.totalNanos.add(elapsedNanos);
+        logger.debug("{} search returned {} rows in {} us", strategy, rows, elapsedNanos / 1_000);
+    }
+
+    /**
+     * 検索方式ごとの統計を取得する
+     */
+    public Map<SearchStrategy, SearchStrategyStats> getStats() {
+        Map<SearchStrategy, SearchStrategyStats> stats = new EnumMap<>(SearchStrategy.class);
+        counters.forEach((strategy, c) -> stats.put(strategy, new SearchStrategyStats(
+                c.queries.sum(), c.hitQueries.sum(), c.rows.sum(), c.totalNanos.sum())));
+        return stats;
+    }
+
+    /**
+     * トライグラム索引が作成済みかつ既存メモのバックフィルが完了しているか。
+     * 一度使えると分かれば以降は確認しない。
+     */
+    private boolean isTrigramIndexReady(Connection conn) throws SQLException {
+        if (trigramIndexReady) {
+            return true;
+        }
+        if (!isTrigramIndexPresent(conn)) {
+            return false;
+        }
+        if (SchemaMigrator.isBackgroundComplete(conn, SchemaMigrations.NOTES_TRIGRAM_BACKFILL)) {
+            logger.debug("Notes trigram index is ready");
+            trigramIndexReady = true;
+        }
+        return trigramIndexReady;
+    }
+
+    /**
+     * トライグラム索引のテーブルが作成済みか（バックフィルの完了は問わない）
+     */
+    boolean isTrigramIndexPresent(Connection conn) throws SQLException {
+        PreparedStatement ps = db.prepareCached(conn,
+                "SELECT 1 FROM sqlite_master WHERE type='table' AND name='notes_trigram'");
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * トライグラム索引用の MATCH 式（3文字以上の語ごとに引用した部分文字列の AND）
+     * @return 日本語を含まない、または3文字以上の語が無い場合は null
+     */
+    static String trigramMatch(String query) {
+        if (query == null || !containsJapanese(query)) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.codePointCount(0, term.length()) < TRIGRAM_MIN_TERM_LENGTH) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term.replace("\"", "\"\"")).append('"');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * トライグラム索引では照合できない3文字未満の語。{@link SearchStrategy#TRIGRAM} では、
+     * MATCH で絞り込んだメモに対してこれらの語を LIKE で照合する（語どうしは AND）。
+     */
+    public static List<String> shortTerms(SearchStrategy strategy, String query) {
+        if (strategy != SearchStrategy.TRIGRAM) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String term : query.trim().split("\\s+")) {
+            if (!term.isEmpty() && term.codePointCount(0, term.length()) < TRIGRAM_MIN_TERM_LENGTH) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 漢字・ひらがな・カタカナを含むか
+     */
+    public static boolean containsJapanese(String text) {
+        return text.codePoints().anyMatch(cp -> {
+            Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+            return script == Character.UnicodeScript.HAN
+                    || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA;
+        });
+    }
+
+    private static boolean isPlainWords(String text) {
+        return text.codePoints().allMatch(cp -> Character.isLetterOrDigit(cp) || Character.isWhitespace(cp));
+    }
+
+    static String ftsMatch(String q) {
+        if (q == null || q.trim().isEmpty()) {
+            return "";
+        }
+        
+        // Enhanced FTS5 escape to prevent injection
+        String trimmed = q.trim();
+        
+        // Remove or escape dangerous FTS5 operators and characters
+        String escaped = trimmed
+                .replace("\"", "\"\"")  // Escape quotes
+                .replace("-", " ")      // Remove NOT operator
+                .replace("+", " ")      // Remove MUST operator
+                .replace("(", " ")      // Remove grouping
+                .replace(")", " ")
+                .replace("[", " ")
+                .replace("]", " ")
+                .replace("{", " ")
+                .replace("}", " ")
+                .replace("^", " ")      // Remove boost operator
+                .replace("~", " ")      // Remove fuzzy operator
+                .replace("*", " ")      // Remove wildcard (we'll add it back safely)
+                .replace(":", " ");     // Remove field search
+        
+        // Clean up multiple spaces
+        escaped = escaped.replaceAll("\\s+", " ").trim();
+        
+        if (escaped.isEmpty()) {
+            return "";
+        }
+        
+        // Safe FTS5 query with proper quoting
+        if (escaped.contains(" ")) {
+            // Multi-word phrase - use exact phrase matching
+            return "\"" + escaped + "\"";
+        } else {
+            // Single word - use prefix matching (quoted so words like AND/OR/NOT are not operators)
+            return "\"" + escaped + "\"*";
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder queries = new LongAdder();
+        final LongAdder hitQueries = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+    }
+}
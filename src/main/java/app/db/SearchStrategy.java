@@ -0,0 +1,26 @@
+package app.db;
+
+/**
+ * メモ検索の実行方式
+ */
+public enum SearchStrategy {
+    /** notes_fts（unicode61、単語の前方一致） */
+    FTS("notes_fts"),
+    /** notes_trigram（日本語の部分文字列一致） */
+    TRIGRAM("notes_trigram"),
+    /** notes 表の LIKE 走査 */
+    LIKE(null);
+
+    private final String ftsTable;
+
+    SearchStrategy(String ftsTable) {
+        this.ftsTable = ftsTable;
+    }
+
+    /**
+     * 検索する FTS 表の名前（LIKE の場合は null）
+     */
+    public String ftsTable() {
+        return ftsTable;
+    }
+}
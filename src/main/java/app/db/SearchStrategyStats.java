@@ -0,0 +1,18 @@
+package app.db;
+
+/**
+ * 検索方式ごとの統計情報
+ * @param queries 実行したクエリ数
+ * @param hitQueries 1件以上ヒットしたクエリ数
+ * @param rows 返した行数の合計
+ * @param totalNanos 実行時間の合計（ナノ秒）
+ */
+public record SearchStrategyStats(long queries, long hitQueries, long rows, long totalNanos) {
+    public double hitRate() {
+        return queries == 0 ? 0.0 : (double) hitQueries / queries;
+    }
+
+    public double averageMillis() {
+        return queries == 0 ? 0.0 : totalNanos / 1_000_000.0 / queries;
+    }
+}
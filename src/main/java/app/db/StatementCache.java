@@ -0,0 +1,80 @@
+package app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接続ごとの PreparedStatement キャッシュ（LRU）。
+ * 1つの接続は同時に1スレッドにしか貸し出されないため、内部での同期は最小限にとどめる。
+ */
+final class StatementCache {
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+    private final int capacity;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final AtomicLong evictionCounter;
+
+    StatementCache(int capacity, AtomicLong evictionCounter) {
+        this.capacity = capacity;
+        this.evictionCounter = evictionCounter;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    closeQuietly(eldest.getValue());
+                    evictionCounter.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized PreparedStatement get(String key) {
+        PreparedStatement ps = statements.get(key);
+        if (ps == null) {
+            return null;
+        }
+        try {
+            if (ps.isClosed()) {
+                statements.remove(key);
+                return null;
+            }
+        } catch (SQLException e) {
+            statements.remove(key);
+            return null;
+        }
+        return ps;
+    }
+
+    synchronized void put(String key, PreparedStatement ps) {
+        PreparedStatement previous = statements.put(key, ps);
+        if (previous != null && previous != ps) {
+            closeQuietly(previous);
+        }
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    synchronized void closeAll() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close cached PreparedStatement", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package app.db;
+
+/**
+ * PreparedStatement キャッシュの統計情報
+ */
+public record StatementCacheStats(long hits, long misses, long evictions, int cachedStatements) {
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
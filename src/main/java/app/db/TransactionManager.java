@@ -1,24 +1,34 @@
 package app.db;
 
 import app.exception.DataAccessException;
+import app.exception.QueryCancelledException;
+import app.exception.QueryTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * データベーストランザクション管理クラス
+ * <p>
+ * 書き込みトランザクションは専用の書き込み接続1本で直列に実行し、
+ * 読み取り専用トランザクションは query_only のプール接続で並行に実行する（WAL により書き込みと並行可能）。
  */
 public class TransactionManager {
     private static final Logger logger = LoggerFactory.getLogger(TransactionManager.class);
     private final Database database;
-    private final ReentrantLock writeLock = new ReentrantLock(true);
+    // Shared with every other writer on the database (background migrations included)
+    private final ReentrantLock writeLock;
     private final ThreadLocal<TxContext> contextHolder = new ThreadLocal<>();
+    // guarded by writeLock
+    private Connection writerConnection;
 
     public TransactionManager(Database database) {
         this.database = database;
+        this.writeLock = database.writeLock();
     }
 
     /**
@@ -59,18 +69,29 @@ public class TransactionManager {
             newContext = true;
         }
         
+        if (ctx.readOnly && ctx.depth > 0) {
+            throw new DataAccessException("読み取り専用トランザクション内で書き込みトランザクションは開始できません");
+        }
+
         boolean outermost = ctx.depth == 0;
         if (outermost) {
             try {
                 writeLock.lock();
-                ctx.connection = database.getConnection();
+                ctx.connection = writerConnection();
                 ctx.originalAutoCommit = ctx.connection.getAutoCommit();
                 ctx.connection.setAutoCommit(false);
             } catch (SQLException e) {
+                discardWriterConnection();
                 writeLock.unlock();
+                if (newContext) {
+                    contextHolder.remove();
+                }
                 throw new DataAccessException("トランザクションの開始に失敗しました", e);
             } catch (app.exception.DatabaseException e) {
                 writeLock.unlock();
+                if (newContext) {
+                    contextHolder.remove();
+                }
                 throw new DataAccessException("データベース接続の取得に失敗しました", e);
             }
         }
@@ -90,6 +111,7 @@ public class TransactionManager {
         } finally {
             ctx.depth--;
             if (outermost) {
+                boolean connectionBroken = false;
                 try {
                     if (ctx.rollbackOnly || failure != null) {
                         ctx.connection.rollback();
@@ -99,6 +121,7 @@ public class TransactionManager {
                         logger.debug("Transaction committed successfully");
                     }
                 } catch (SQLException e) {
+                    connectionBroken = true;
                     DataAccessException ex = new DataAccessException(
                         ctx.rollbackOnly ? "トランザクションのロールバックに失敗しました" : "トランザクションのコミットに失敗しました", e);
                     if (failure != null) {
@@ -112,6 +135,7 @@ public class TransactionManager {
                             ctx.connection.setAutoCommit(ctx.originalAutoCommit);
                         }
                     } catch (SQLException e) {
+                        connectionBroken = true;
                         DataAccessException ex = new DataAccessException("自動コミット設定の復元に失敗しました", e);
                         if (failure != null) {
                             failure.addSuppressed(ex);
@@ -119,8 +143,9 @@ public class TransactionManager {
                             failure = ex;
                         }
                     } finally {
-                        if (ctx.connection != null) {
-                            database.releaseConnection(ctx.connection);
+                        // The writer connection stays open for the next transaction unless it is in a bad state
+                        if (connectionBroken) {
+                            discardWriterConnection();
                         }
                         ctx.reset();
                         writeLock.unlock();
@@ -148,6 +173,43 @@ public class TransactionManager {
         });
     }
 
+    /**
+     * 現在の書き込みトランザクション内でセーブポイントを切って処理を実行する。
+     * 処理が失敗した場合はセーブポイントまでロールバックし、外側のトランザクションは継続可能なまま例外を返す。
+     * @param operation 実行する処理
+     * @throws DataAccessException 処理中にエラーが発生した場合（外側のトランザクションはロールバック対象にならない）
+     */
+    <T> T executeInSavepoint(ThrowingSupplier<T> operation) throws DataAccessException {
+        TxContext ctx = contextHolder.get();
+        if (ctx == null || ctx.depth == 0 || ctx.readOnly) {
+            throw new DataAccessException("セーブポイントは書き込みトランザクション内でのみ使用できます");
+        }
+        boolean rollbackOnlyBefore = ctx.rollbackOnly;
+        Savepoint savepoint;
+        try {
+            savepoint = ctx.connection.setSavepoint();
+        } catch (SQLException e) {
+            throw new DataAccessException("セーブポイントの作成に失敗しました", e);
+        }
+        try {
+            T result = operation.get();
+            ctx.connection.releaseSavepoint(savepoint);
+            return result;
+        } catch (SQLException e) {
+            throw new DataAccessException("セーブポイントの解放に失敗しました", e);
+        } catch (DataAccessException | RuntimeException e) {
+            try {
+                ctx.connection.rollback(savepoint);
+                ctx.connection.releaseSavepoint(savepoint);
+                // A nested executeInTransaction marks the whole transaction rollback-only; undo that
+                ctx.rollbackOnly = rollbackOnlyBefore;
+            } catch (SQLException rollbackEx) {
+                e.addSuppressed(rollbackEx);
+            }
+            throw e;
+        }
+    }
+
     /**
      * 読み取り専用トランザクション内で処理を実行する
      * @param operation 実行する処理
@@ -156,28 +218,64 @@ public class TransactionManager {
      * @throws DataAccessException 処理中にエラーが発生した場合
      */
     public <T> T executeInReadOnlyTransaction(ThrowingSupplier<T> operation) throws DataAccessException {
+        return executeRead(operation, false);
+    }
+
+    /**
+     * 1つの読み取りトランザクション（スナップショット）の中で処理を実行する。
+     * 処理中の読み取りはすべて開始時点のデータを見るため、複数の表にまたがる読み出しでも一貫する。
+     * WAL モードでは書き込みを妨げないが、終わるまでチェックポイントは WAL を縮められない。
+     * @param operation 実行する処理
+     * @param <T> 戻り値の型
+     * @return 処理の結果
+     * @throws DataAccessException 処理中にエラーが発生した場合
+     */
+    public <T> T executeInSnapshot(ThrowingSupplier<T> operation) throws DataAccessException {
+        return executeRead(operation, true);
+    }
+
+    private <T> T executeRead(ThrowingSupplier<T> operation, boolean snapshot) throws DataAccessException {
         TxContext current = contextHolder.get();
         if (current != null && current.depth > 0) {
+            if (current.readOnly) {
+                // Nested read inside a read: reuse the same read connection
+                current.depth++;
+                try {
+                    return operation.get();
+                } finally {
+                    current.depth--;
+                }
+            }
             return executeInTransaction(operation);
         }
 
         TxContext readContext = new TxContext();
+        readContext.readOnly = true;
         Connection conn = null;
         try {
-            conn = database.getConnection();
+            conn = database.getReadConnection();
             readContext.connection = conn;
             readContext.originalAutoCommit = conn.getAutoCommit();
             readContext.depth = 1;
             contextHolder.set(readContext);
+            if (snapshot) {
+                // BEGIN (deferred): the first SELECT pins the snapshot, restoring auto-commit ends it
+                conn.setAutoCommit(false);
+            }
 
-            // SQLite JDBC does not support toggling read-only after connection creation.
-            // For compatibility across drivers, we skip setReadOnly here.
+            // SQLite JDBC does not support toggling read-only after connection creation,
+            // so read connections are protected with PRAGMA query_only instead of setReadOnly.
             return operation.get();
         } catch (app.exception.DatabaseException e) {
             throw new DataAccessException("データベース接続の取得に失敗しました", e);
+        } catch (QueryCancelledException | QueryTimeoutException e) {
+            // The statement was interrupted on purpose; the connection itself is fine
+            throw e;
         } catch (DataAccessException e) {
+            database.reportConnectionError(conn);
             throw e;
         } catch (Exception e) {
+            database.reportConnectionError(conn);
             throw new DataAccessException("読み取り専用トランザクションの実行に失敗しました", e);
         } finally {
             contextHolder.remove();
@@ -192,14 +290,44 @@ public class TransactionManager {
         }
     }
 
+    /**
+     * 書き込み用接続を閉じる（アプリケーション終了時）
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            discardWriterConnection();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Must be called with writeLock held
+    private Connection writerConnection() throws SQLException, app.exception.DatabaseException {
+        if (writerConnection == null || writerConnection.isClosed()) {
+            writerConnection = database.openWriterConnection();
+        }
+        return writerConnection;
+    }
+
+    // Must be called with writeLock held
+    private void discardWriterConnection() {
+        if (writerConnection != null) {
+            database.closeWriterConnection(writerConnection);
+            writerConnection = null;
+        }
+    }
+
     private static final class TxContext {
         int depth = 0;
+        boolean readOnly = false;
         boolean rollbackOnly = false;
         boolean originalAutoCommit = true;
         Connection connection = null;
 
         void reset() {
             depth = 0;
+            readOnly = false;
             rollbackOnly = false;
             originalAutoCommit = true;
             connection = null;
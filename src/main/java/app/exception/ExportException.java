@@ -0,0 +1,14 @@
+package app.exception;
+
+/**
+ * エクスポート先・バックアップ先への書き出しに関する例外
+ */
+public class ExportException extends AppException {
+    public ExportException(String message) {
+        super(message);
+    }
+
+    public ExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package app.exception;
+
+/**
+ * インポート元の読み込み・解析に関する例外
+ */
+public class ImportException extends AppException {
+    public ImportException(String message) {
+        super(message);
+    }
+
+    public ImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
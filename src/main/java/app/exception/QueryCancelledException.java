@@ -0,0 +1,18 @@
+package app.exception;
+
+/**
+ * 実行中のクエリが呼び出し元の取り消し（{@code app.db.QueryScope#cancel}）で中断された場合の例外
+ */
+public class QueryCancelledException extends DataAccessException {
+    public QueryCancelledException(String message) {
+        super(message);
+    }
+
+    public QueryCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public QueryCancelledException(Throwable cause) {
+        super("クエリはキャンセルされました", cause);
+    }
+}
@@ -0,0 +1,25 @@
+package app.exception;
+
+/**
+ * クエリが制限時間（database.query.timeout.*.ms、または呼び出し側が {@code app.db.QueryScope} に与えた期限）
+ * 内に終わらず、SQLite の中で中断された場合の例外
+ */
+public class QueryTimeoutException extends DataAccessException {
+    private final long timeoutMillis;
+
+    public QueryTimeoutException(String message, long timeoutMillis, Throwable cause) {
+        super(message, cause);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public QueryTimeoutException(long timeoutMillis, Throwable cause) {
+        this("クエリが制限時間（" + timeoutMillis + " ms）内に終わりませんでした", timeoutMillis, cause);
+    }
+
+    /**
+     * 超過した制限時間（ミリ秒）
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
@@ -0,0 +1,29 @@
+package app.model;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ランク付き検索の結果1件。本文は含まず、一致箇所周辺の抜粋だけを持つ。
+ * <p>
+ * {@code highlightedTitle} と {@code snippet} の一致箇所は {@link #HIGHLIGHT_START} と
+ * {@link #HIGHLIGHT_END} で囲まれる（表示側で装飾に置き換える）。
+ *
+ * @param rank bm25 スコア（小さいほど関連度が高い。LIKE やメモリ上の索引による結果は 0）
+ */
+public record NoteSearchResult(long id, String title, String highlightedTitle, String snippet,
+                               double rank, long updatedAt) {
+
+    public static final String HIGHLIGHT_START = "\u0002";
+    public static final String HIGHLIGHT_END = "\u0003";
+    /** 抜粋が本文の途中から・途中までであることを示す記号 */
+    public static final String ELLIPSIS = "…";
+
+    /**
+     * {@code pattern} に一致する箇所をハイライト記号で囲む
+     */
+    public static String highlight(String text, Pattern pattern) {
+        Matcher m = pattern.matcher(text);
+        return m.replaceAll(r -> Matcher.quoteReplacement(HIGHLIGHT_START + r.group() + HIGHLIGHT_END));
+    }
+}
@@ -0,0 +1,29 @@
+package app.model;
+
+/**
+ * 一覧・検索結果用のメモの軽量な射影（本文は先頭の抜粋のみ）。
+ * 本文全体が必要な場合は ID で {@link Note} を取得する。
+ */
+public record NoteSummary(long id, String title, String snippet, long updatedAt) {
+
+    /** 抜粋に含める本文の最大文字数 */
+    public static final int SNIPPET_LENGTH = 80;
+
+    public static NoteSummary of(Note note) {
+        String body = note.getBody() != null ? note.getBody() : "";
+        return new NoteSummary(note.getId(), note.getTitle(), prefix(body, SNIPPET_LENGTH), note.getUpdatedAt());
+    }
+
+    /**
+     * 先頭から {@code length} 文字を返す。SQL の substr と同じくコードポイント単位で数え、サロゲートペアを分割しない。
+     */
+    public static String prefix(String text, int length) {
+        if (text.length() <= length) {
+            return text;
+        }
+        if (text.codePointCount(0, text.length()) <= length) {
+            return text;
+        }
+        return text.substring(0, text.offsetByCodePoints(0, length));
+    }
+}
@@ -0,0 +1,19 @@
+package app.model;
+
+import java.util.List;
+
+/**
+ * キーセット方式のページング結果。
+ * @param items このページの要素
+ * @param nextPageToken 次のページを取得するための継続トークン（最終ページの場合は null）
+ */
+public record Page<T>(List<T> items, String nextPageToken) {
+
+    public Page {
+        items = List.copyOf(items);
+    }
+
+    public boolean hasMore() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,145 @@
+package app.service;
+
+import app.model.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 期間（週ビューの1週間など）ごとに読み込んだ予定を保持するキャッシュ（LRU）。
+ * <p>
+ * キーは {@link EventService#getEventsBetween} に渡された [開始, 終了) のエポック秒で、
+ * 同じ期間をもう一度開いたときはデータベースに問い合わせずに答える。
+ * 予定の作成・更新・削除はコミット後に各期間へ差分で反映する（期間を捨てて読み直さない）。
+ * 読み込み中に書き込みがあった結果は登録しない（世代番号で判定する）。予定は可変なので出し入れは複製で行う。
+ */
+public class EventRangeCache {
+    // Same order as EventsDao.listBetween, with the id as a stable tie-breaker
+    private static final Comparator<Event> BY_START =
+            Comparator.comparingLong(Event::getStartEpochSec).thenComparingLong(Event::getId);
+
+    private final int capacity;
+    private final Map<Range, List<Event>> ranges;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation = 0;
+
+    /**
+     * @param capacity 保持する期間数の上限
+     */
+    public EventRangeCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.ranges = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Range, List<Event>> eldest) {
+                return size() > EventRangeCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return 期間内の予定の複製（キャッシュに無い場合は null）
+     */
+    public synchronized List<Event> get(long startEpochSec, long endEpochSec) {
+        List<Event> events = ranges.get(new Range(startEpochSec, endEpochSec));
+        if (events == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copiesOf(events);
+    }
+
+    /**
+     * 期間がキャッシュ済みか（統計と LRU の順序には影響しない）
+     */
+    public synchronized boolean contains(long startEpochSec, long endEpochSec) {
+        return ranges.containsKey(new Range(startEpochSec, endEpochSec));
+    }
+
+    /**
+     * データベースから読み込む前に取得し、{@link #putLoaded} に渡す世代番号
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * データベースから読み込んだ期間の予定を登録する。{@code generationAtStart} 以降に書き込みがあった場合は登録しない。
+     */
+    public synchronized void putLoaded(long startEpochSec, long endEpochSec, List<Event> events, long generationAtStart) {
+        if (generationAtStart != generation) {
+            return;
+        }
+        List<Event> copies = copiesOf(events);
+        copies.sort(BY_START);
+        ranges.put(new Range(startEpochSec, endEpochSec), copies);
+    }
+
+    /**
+     * 作成・更新がコミットされた予定を各期間へ反映する（期間から外れた場合は取り除き、重なる期間には追加する）
+     */
+    public synchronized void apply(Event changed) {
+        generation++;
+        for (Map.Entry<Range, List<Event>> e : ranges.entrySet()) {
+            List<Event> events = e.getValue();
+            events.removeIf(ev -> ev.getId() == changed.getId());
+            if (e.getKey().overlaps(changed)) {
+                Event copy = copyOf(changed);
+                int at = -(Collections.binarySearch(events, copy, BY_START) + 1);
+                events.add(at, copy);
+            }
+        }
+    }
+
+    /**
+     * 削除がコミットされた予定を各期間から取り除く
+     */
+    public synchronized void remove(long eventId) {
+        generation++;
+        for (List<Event> events : ranges.values()) {
+            events.removeIf(ev -> ev.getId() == eventId);
+        }
+    }
+
+    public synchronized int size() {
+        return ranges.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static List<Event> copiesOf(List<Event> events) {
+        List<Event> copies = new ArrayList<>(events.size());
+        for (Event e : events) {
+            copies.add(copyOf(e));
+        }
+        return copies;
+    }
+
+    private static Event copyOf(Event source) {
+        Event copy = new Event();
+        copy.setId(source.getId());
+        copy.setTitle(source.getTitle());
+        copy.setStartEpochSec(source.getStartEpochSec());
+        copy.setEndEpochSec(source.getEndEpochSec());
+        return copy;
+    }
+
+    private record Range(long start, long end) {
+        // Same overlap test as EventsDao.listBetween
+        boolean overlaps(Event event) {
+            return event.getEndEpochSec() > start && event.getStartEpochSec() < end;
+        }
+    }
+}
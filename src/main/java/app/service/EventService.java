@@ -2,16 +2,22 @@ package app.service;
 
 import app.config.AppConfig;
 import app.db.EventsDao;
+import app.db.GroupCommitWriter;
+import app.db.KeysetCursor;
 import app.db.TransactionManager;
 import app.db.ThrowingRunnable;
 import app.db.ThrowingSupplier;
 import app.exception.DataAccessException;
 import app.model.Event;
+import app.model.Page;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 予定関連のビジネスロジックを担当するサービス
@@ -21,15 +27,33 @@ public class EventService {
     private final EventsDao eventsDao;
     private final TransactionManager transactionManager;
     private final AppConfig config;
+    private final GroupCommitWriter groupCommitWriter;
+    private final EventRangeCache rangeCache;
+    private final ExecutorService prefetchExecutor;
 
     public EventService(EventsDao eventsDao, TransactionManager transactionManager) {
+        this(eventsDao, transactionManager, null);
+    }
+
+    /**
+     * @param groupCommitWriter 非同期更新をまとめてコミットするライター（null の場合は同期的に書き込む）
+     */
+    public EventService(EventsDao eventsDao, TransactionManager transactionManager, GroupCommitWriter groupCommitWriter) {
         this.eventsDao = eventsDao;
         this.transactionManager = transactionManager;
+        this.groupCommitWriter = groupCommitWriter;
         this.config = AppConfig.getInstance();
+        int cacheSize = config.getEventRangeCacheSize();
+        this.rangeCache = cacheSize > 0 ? new EventRangeCache(cacheSize) : null;
+        this.prefetchExecutor = rangeCache != null ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "hiyori-event-prefetch");
+            t.setDaemon(true);
+            return t;
+        }) : null;
     }
 
     /**
-     * 指定期間の予定一覧を取得する
+     * 指定期間の予定一覧を取得する。同じ期間を読み込み済み（先読みを含む）であればデータベースに問い合わせない。
      * @param startEpochSec 開始時刻（エポック秒）
      * @param endEpochSec 終了時刻（エポック秒）
      * @return 予定のリスト
@@ -37,9 +61,74 @@ public class EventService {
      */
     public List<Event> getEventsBetween(long startEpochSec, long endEpochSec) throws DataAccessException {
         logger.debug("Getting events between {} and {}", startEpochSec, endEpochSec);
-        return transactionManager.executeInReadOnlyTransaction(() -> {
+        if (rangeCache == null) {
+            return transactionManager.executeInReadOnlyTransaction(() -> {
+                return eventsDao.listBetween(startEpochSec, endEpochSec);
+            });
+        }
+        List<Event> cached = rangeCache.get(startEpochSec, endEpochSec);
+        if (cached != null) {
+            return cached;
+        }
+        return loadRange(startEpochSec, endEpochSec);
+    }
+
+    /**
+     * 指定期間の予定をバックグラウンドで読み込み、キャッシュしておく（週ビューの前後の週など）。
+     * 読み込み済みの期間やキャッシュが無効な場合は何もしない。
+     * @return 読み込みが終わると完了する Future（失敗はログに記録し、例外では完了しない）
+     */
+    public CompletableFuture<Void> prefetchEventsBetween(long startEpochSec, long endEpochSec) {
+        if (rangeCache == null || rangeCache.contains(startEpochSec, endEpochSec)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            if (rangeCache.contains(startEpochSec, endEpochSec)) {
+                return;
+            }
+            try {
+                loadRange(startEpochSec, endEpochSec);
+                logger.debug("Prefetched events between {} and {}", startEpochSec, endEpochSec);
+            } catch (DataAccessException e) {
+                logger.warn("Failed to prefetch events between {} and {}: {}", startEpochSec, endEpochSec, e.getMessage());
+            }
+        }, prefetchExecutor);
+    }
+
+    /**
+     * 期間キャッシュ（無効な場合は null）
+     */
+    EventRangeCache getRangeCache() {
+        return rangeCache;
+    }
+
+    private List<Event> loadRange(long startEpochSec, long endEpochSec) throws DataAccessException {
+        long generation = rangeCache.generation();
+        List<Event> events = transactionManager.executeInReadOnlyTransaction(() -> {
             return eventsDao.listBetween(startEpochSec, endEpochSec);
         });
+        rangeCache.putLoaded(startEpochSec, endEpochSec, events, generation);
+        return events;
+    }
+
+    /**
+     * 指定時刻以降に開始する予定を開始時刻順にキーセット方式で1ページ取得する
+     * @param fromEpochSec この時刻以降に開始する予定が対象
+     * @param pageToken 前のページの継続トークン（先頭ページは null）
+     * @param pageSize 1ページの件数（0以下で search.events.limit）
+     * @throws IllegalArgumentException 継続トークンが不正な場合
+     */
+    public Page<Event> getEventPage(long fromEpochSec, String pageToken, int pageSize) throws DataAccessException {
+        int size = pageSize > 0 ? pageSize : config.getSearchEventsLimit();
+        KeysetCursor after = pageToken != null ? PageTokens.decode(pageToken, PageTokens.EVENTS) : null;
+        List<Event> rows = transactionManager.executeInReadOnlyTransaction(
+                () -> eventsDao.pageFrom(fromEpochSec, after, size + 1));
+        if (rows.size() <= size) {
+            return new Page<>(rows, null);
+        }
+        List<Event> items = rows.subList(0, size);
+        Event last = items.get(size - 1);
+        return new Page<>(items, PageTokens.encode(PageTokens.EVENTS, new KeysetCursor(last.getStartEpochSec(), last.getId())));
     }
 
     /**
@@ -72,7 +161,7 @@ public class EventService {
         
         logger.debug("Creating new event: '{}' from {} to {}", title, startEpochSec, endEpochSec);
         
-        return transactionManager.executeInTransaction(() -> {
+        Event created = transactionManager.executeInTransaction(() -> {
             long id = eventsDao.insert(title, startEpochSec, endEpochSec);
             
             Event event = new Event();
@@ -84,6 +173,30 @@ public class EventService {
             logger.info("Created new event with ID: {}", id);
             return event;
         });
+        afterWrite(created);
+        return created;
+    }
+
+    /**
+     * 複数の予定を1つのトランザクションで一括作成する（いずれかが失敗した場合はすべてロールバックされる）
+     * @param events 作成する予定（ID は挿入順に割り当てられ、各予定に設定される）
+     * @return 作成された予定（{@code events} と同じ順）
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     * @throws IllegalArgumentException 時間が不正な予定が含まれる場合（何も書き込まない）
+     */
+    public List<Event> createEvents(List<Event> events) throws DataAccessException {
+        if (events == null || events.isEmpty()) {
+            return List.of();
+        }
+        for (Event event : events) {
+            validateEventTimes(event.getStartEpochSec(), event.getEndEpochSec());
+        }
+        logger.debug("Creating {} events in one transaction", events.size());
+
+        transactionManager.executeInTransaction(() -> eventsDao.insertAll(events));
+        logger.info("Created {} events", events.size());
+        events.forEach(this::afterWrite);
+        return events;
     }
 
     /**
@@ -116,6 +229,68 @@ public class EventService {
             eventsDao.update(event);
             logger.info("Updated event ID: {}", event.getId());
         });
+        afterWrite(event);
+    }
+
+    /**
+     * 複数の予定を1つのトランザクションで一括更新する（いずれかが見つからない場合はすべてロールバックされる）
+     * @param events 更新する予定
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     * @throws IllegalArgumentException 時間が不正な予定が含まれる場合（何も書き込まない）
+     */
+    public void updateEvents(List<Event> events) throws DataAccessException {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        for (Event event : events) {
+            if (event == null || event.getId() <= 0) {
+                throw new IllegalArgumentException("Event and event ID must not be null or invalid");
+            }
+            validateEventTimes(event.getStartEpochSec(), event.getEndEpochSec());
+        }
+        logger.debug("Updating {} events in one transaction", events.size());
+
+        transactionManager.executeInTransaction(() -> eventsDao.updateAll(events));
+        logger.info("Updated {} events", events.size());
+        events.forEach(this::afterWrite);
+    }
+
+    /**
+     * 予定を非同期に更新する。グループコミットが有効な場合は他の更新と同じトランザクションでコミットされる。
+     * @param event 更新する予定
+     * @return コミット後に更新済みの予定で完了する Future
+     */
+    public CompletableFuture<Event> updateEventAsync(Event event) {
+        if (event == null || event.getId() <= 0) {
+            throw new IllegalArgumentException("Event and event ID must not be null or invalid");
+        }
+        
+        validateEventTimes(event.getStartEpochSec(), event.getEndEpochSec());
+        
+        if (groupCommitWriter == null) {
+            try {
+                updateEvent(event);
+                return CompletableFuture.completedFuture(event);
+            } catch (DataAccessException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        logger.debug("Queueing event update ID: {}", event.getId());
+        return groupCommitWriter.submit(() -> {
+            eventsDao.update(event);
+            logger.info("Updated event ID: {}", event.getId());
+            return event;
+        }).thenApply(updated -> {
+            afterWrite(updated);
+            return updated;
+        });
+    }
+
+    // Called after commit, so cached weeks never show a write that was rolled back
+    private void afterWrite(Event event) {
+        if (rangeCache != null) {
+            rangeCache.apply(event);
+        }
     }
 
     /**
@@ -130,6 +305,27 @@ public class EventService {
             eventsDao.delete(eventId);
             logger.info("Deleted event ID: {}", eventId);
         });
+        if (rangeCache != null) {
+            rangeCache.remove(eventId);
+        }
+    }
+
+    /**
+     * 複数の予定を1つのトランザクションで一括削除する（いずれかが見つからない場合はすべてロールバックされる）
+     * @param eventIds 削除する予定のID
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     */
+    public void deleteEvents(List<Long> eventIds) throws DataAccessException {
+        if (eventIds == null || eventIds.isEmpty()) {
+            return;
+        }
+        logger.debug("Deleting {} events in one transaction", eventIds.size());
+
+        transactionManager.executeInTransaction(() -> eventsDao.deleteAll(eventIds));
+        logger.info("Deleted {} events", eventIds.size());
+        if (rangeCache != null) {
+            eventIds.forEach(rangeCache::remove);
+        }
     }
 
     /**
@@ -162,12 +358,12 @@ public class EventService {
     }
 
     /**
-     * 予定時間の妥当性を検証する
+     * 予定時間の妥当性を検証する（{@link ImportService} も同じ規則で検証する）
      * @param startEpochSec 開始時刻
      * @param endEpochSec 終了時刻
      * @throws IllegalArgumentException 時間が不正な場合
      */
-    private void validateEventTimes(long startEpochSec, long endEpochSec) {
+    void validateEventTimes(long startEpochSec, long endEpochSec) {
         if (startEpochSec < 0 || endEpochSec < 0) {
             throw new IllegalArgumentException("Event times must be positive");
         }
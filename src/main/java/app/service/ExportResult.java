@@ -0,0 +1,10 @@
+package app.service;
+
+/**
+ * エクスポートの結果
+ * @param notes 書き出したメモ数
+ * @param events 書き出した予定数
+ * @param elapsedMillis 所要時間
+ */
+public record ExportResult(long notes, long events, long elapsedMillis) {
+}
@@ -0,0 +1,316 @@
+package app.service;
+
+import app.db.Database;
+import app.db.EventsDao;
+import app.db.NotesDao;
+import app.db.TransactionManager;
+import app.exception.DataAccessException;
+import app.exception.DatabaseException;
+import app.exception.ExportException;
+import app.model.Event;
+import app.model.Note;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * メモと予定のエクスポートとバックアップ。
+ * <p>
+ * エクスポートは1つの読み取りトランザクション（{@link TransactionManager#executeInSnapshot}）の中で
+ * メモと予定を ID 順に前方向のカーソルで読み、1件ずつ書き出す。データ量にかかわらず使うメモリは一定で、
+ * 書き出し中の変更は含まれない（開始時点のスナップショットになる）。WAL モードなので書き込みは止めない。
+ * ファイルへの書き出しは同じフォルダの一時ファイルに書いてから置き換えるため、途中で失敗しても既存のファイルは壊れない。
+ * <p>
+ * 書き出した JSON Lines・Markdown・ICS はそれぞれ {@link ImportService} でそのまま取り込める。
+ */
+public class ExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+    private static final DateTimeFormatter ICS_UTC =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    // RFC 5545: content lines are folded at 75 octets
+    private static final int ICS_LINE_OCTETS = 75;
+    private static final int MAX_FILE_TITLE_CHARS = 60;
+
+    private final NotesDao notesDao;
+    private final EventsDao eventsDao;
+    private final TransactionManager transactionManager;
+    private final Database database;
+
+    public ExportService(NotesDao notesDao, EventsDao eventsDao, TransactionManager transactionManager, Database database) {
+        this.notesDao = notesDao;
+        this.eventsDao = eventsDao;
+        this.transactionManager = transactionManager;
+        this.database = database;
+    }
+
+    /**
+     * 全メモと全予定を JSON Lines（1行1レコード、{@code "type"} が {@code "note"} または {@code "event"}）で書き出す
+     */
+    public ExportResult exportJsonl(Path file) throws ExportException, DataAccessException {
+        long startNanos = System.nanoTime();
+        long[] counts = writeAtomically(file, out -> transactionManager.executeInSnapshot(() -> new long[] {
+                notesDao.forEachNote(note -> writeLine(out, noteJson(note))),
+                eventsDao.forEachEvent(event -> writeLine(out, eventJson(event)))
+        }));
+        return finish("JSON Lines", file, counts[0], counts[1], startNanos);
+    }
+
+    /**
+     * 全メモを1メモ1ファイルの Markdown（{@code # タイトル} の見出しに続けて本文）としてフォルダに書き出す。
+     * ファイル名は「タイトル-ID.md」で、ファイルの更新日時はメモの更新日時にする。
+     */
+    public ExportResult exportMarkdown(Path folder) throws ExportException, DataAccessException {
+        long startNanos = System.nanoTime();
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            throw new ExportException("エクスポート先のフォルダを作成できませんでした: " + folder, e);
+        }
+        long notes = unwrapIo(folder, () -> transactionManager.executeInSnapshot(
+                () -> notesDao.forEachNote(note -> writeMarkdown(folder, note))));
+        return finish("Markdown", folder, notes, 0, startNanos);
+    }
+
+    /**
+     * 全予定を iCalendar（RFC 5545）の VEVENT として書き出す。日時は UTC で書く。
+     */
+    public ExportResult exportIcs(Path file) throws ExportException, DataAccessException {
+        long startNanos = System.nanoTime();
+        String stamp = ICS_UTC.format(Instant.now());
+        long events = writeAtomically(file, out -> {
+            writeIcsLine(out, "BEGIN:VCALENDAR");
+            writeIcsLine(out, "VERSION:2.0");
+            writeIcsLine(out, "PRODID:-//Hiyori//Hiyori//JA");
+            long count = transactionManager.executeInSnapshot(() -> eventsDao.forEachEvent(event -> {
+                writeIcsLine(out, "BEGIN:VEVENT");
+                writeIcsLine(out, "UID:hiyori-event-" + event.getId());
+                writeIcsLine(out, "DTSTAMP:" + stamp);
+                writeIcsLine(out, "DTSTART:" + ICS_UTC.format(Instant.ofEpochSecond(event.getStartEpochSec())));
+                writeIcsLine(out, "DTEND:" + ICS_UTC.format(Instant.ofEpochSecond(event.getEndEpochSec())));
+                writeIcsLine(out, "SUMMARY:" + escapeIcs(event.getTitle()));
+                writeIcsLine(out, "END:VEVENT");
+            }));
+            writeIcsLine(out, "END:VCALENDAR");
+            return count;
+        });
+        return finish("ICS", file, 0, events, startNanos);
+    }
+
+    /**
+     * 稼働中のデータベースを一貫したスナップショットとして {@code file} に複製する（{@link Database#backupTo}）。
+     * 書き込みは止めない。
+     * @return 複製したページ数
+     */
+    public int backup(Path file) throws ExportException {
+        try {
+            return database.backupTo(file);
+        } catch (DatabaseException e) {
+            throw new ExportException("バックアップの作成に失敗しました: " + file, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExportBody<T> {
+        T write(Writer out) throws DataAccessException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface ExportTask<T> {
+        T run() throws DataAccessException;
+    }
+
+    private static <T> T writeAtomically(Path file, ExportBody<T> body) throws ExportException, DataAccessException {
+        Path absolute = file.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try {
+            T result;
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                result = unwrapIo(file, () -> {
+                    try {
+                        return body.write(out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return result;
+        } catch (IOException e) {
+            throw new ExportException("エクスポート先に書き込めませんでした: " + file, e);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                logger.warn("Failed to remove temporary export file {}", tmp, e);
+            }
+        }
+    }
+
+    // Row callbacks cannot throw IOException; they rethrow it unchecked and the transaction wraps it
+    private static <T> T unwrapIo(Path target, ExportTask<T> task) throws ExportException, DataAccessException {
+        try {
+            return task.run();
+        } catch (UncheckedIOException e) {
+            throw new ExportException("エクスポート先に書き込めませんでした: " + target, e.getCause());
+        } catch (DataAccessException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw new ExportException("エクスポート先に書き込めませんでした: " + target, io.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private static ExportResult finish(String format, Path target, long notes, long events, long startNanos) {
+        ExportResult result = new ExportResult(notes, events, (System.nanoTime() - startNanos) / 1_000_000);
+        logger.info("Exported {} notes and {} events as {} to {} in {} ms",
+                notes, events, format, target, result.elapsedMillis());
+        return result;
+    }
+
+    private static void writeLine(Writer out, String line) {
+        try {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String noteJson(Note note) {
+        StringBuilder sb = new StringBuilder(64 + lengthOf(note.getTitle()) + lengthOf(note.getBody()));
+        sb.append("{\"type\":\"note\",\"id\":").append(note.getId());
+        sb.append(",\"title\":");
+        appendJsonString(sb, note.getTitle());
+        sb.append(",\"body\":");
+        appendJsonString(sb, note.getBody());
+        sb.append(",\"createdAt\":").append(note.getCreatedAt());
+        sb.append(",\"updatedAt\":").append(note.getUpdatedAt());
+        return sb.append('}').toString();
+    }
+
+    static String eventJson(Event event) {
+        StringBuilder sb = new StringBuilder(96 + lengthOf(event.getTitle()));
+        sb.append("{\"type\":\"event\",\"id\":").append(event.getId());
+        sb.append(",\"title\":");
+        appendJsonString(sb, event.getTitle());
+        sb.append(",\"startEpochSec\":").append(event.getStartEpochSec());
+        sb.append(",\"endEpochSec\":").append(event.getEndEpochSec());
+        return sb.append('}').toString();
+    }
+
+    private static int lengthOf(String s) {
+        return s != null ? s.length() : 0;
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void writeMarkdown(Path folder, Note note) {
+        Path file = folder.resolve(markdownFileName(note));
+        String title = note.getTitle() != null ? note.getTitle().replaceAll("[\\r\\n]+", " ").strip() : "";
+        String body = note.getBody() != null ? note.getBody() : "";
+        try {
+            // The importer reads a leading "# " heading back as the title
+            Files.writeString(file, title.isEmpty() ? body : "# " + title + "\n\n" + body, StandardCharsets.UTF_8);
+            if (note.getUpdatedAt() > 0) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(note.getUpdatedAt())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // "<title>-<id>.md": the id keeps names unique, characters invalid on Windows/macOS are replaced
+    static String markdownFileName(Note note) {
+        String title = note.getTitle() != null ? note.getTitle() : "";
+        StringBuilder sb = new StringBuilder();
+        title.strip().codePoints().limit(MAX_FILE_TITLE_CHARS).forEach(cp -> {
+            if (cp < 0x20 || "\\/:*?\"<>|".indexOf(cp) >= 0) {
+                sb.append('_');
+            } else {
+                sb.appendCodePoint(cp);
+            }
+        });
+        String name = sb.toString().strip();
+        while (name.startsWith(".")) {
+            name = name.substring(1);
+        }
+        return (name.isEmpty() ? "note" : name) + "-" + note.getId() + ".md";
+    }
+
+    static String escapeIcs(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\', ';', ',' -> sb.append('\\').append(c);
+                case '\n' -> sb.append("\\n");
+                case '\r' -> {
+                    // CRLF inside a title becomes one escaped newline
+                }
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Folds at 75 octets without splitting a UTF-8 sequence; continuation lines start with a space
+    private static void writeIcsLine(Writer out, String line) {
+        try {
+            int octets = 0;
+            int i = 0;
+            while (i < line.length()) {
+                int cp = line.codePointAt(i);
+                int size = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+                if (octets + size > ICS_LINE_OCTETS) {
+                    out.write("\r\n ");
+                    octets = 1;
+                }
+                out.write(Character.toChars(cp));
+                octets += size;
+                i += Character.charCount(cp);
+            }
+            out.write("\r\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
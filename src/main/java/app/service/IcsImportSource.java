@@ -0,0 +1,232 @@
+package app.service;
+
+import app.model.Event;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * ICS（iCalendar, RFC 5545）ファイルの VEVENT を予定として読むインポート元。
+ * <p>
+ * 1行ずつ読み、折り返し行を連結しながら VEVENT ごとに予定を作る（ファイル全体は読み込まない）。
+ * 対応するのは SUMMARY・DTSTART・DTEND・DURATION のみで、繰り返し（RRULE）は最初の1回だけを取り込む。
+ * 日付だけの DTSTART は終日予定としてシステムのタイムゾーンの0時から、TZID の無い日時もシステムのタイムゾーンで解釈する。
+ * 終了が無い場合は終日予定なら1日、それ以外は既定の長さ（event.default.duration.minutes）にする。
+ */
+class IcsImportSource implements ImportSource {
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    private final Path file;
+    private final long defaultDurationSec;
+
+    IcsImportSource(Path file, int defaultDurationMinutes) {
+        this.file = file;
+        this.defaultDurationSec = defaultDurationMinutes * 60L;
+    }
+
+    @Override
+    public void read(Sink sink) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            read(reader, sink);
+        }
+    }
+
+    void read(BufferedReader reader, Sink sink) throws IOException, InterruptedException {
+        VEvent current = null;
+        String pending = null;
+        String line;
+        while (true) {
+            line = reader.readLine();
+            // A line starting with a space or tab continues the previous one
+            if (line != null && !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                pending = pending == null ? line.substring(1) : pending + line.substring(1);
+                continue;
+            }
+            if (pending != null) {
+                current = handle(pending, current, sink);
+            }
+            if (line == null) {
+                break;
+            }
+            pending = line;
+        }
+    }
+
+    private VEvent handle(String contentLine, VEvent current, Sink sink) throws InterruptedException {
+        Property p = Property.parse(contentLine);
+        if (p == null) {
+            return current;
+        }
+        if (p.name.equals("BEGIN") && p.value.equalsIgnoreCase("VEVENT")) {
+            return new VEvent();
+        }
+        if (current == null) {
+            return null;
+        }
+        // Components nested in the event (VALARM) have their own DURATION, SUMMARY, ...
+        if (p.name.equals("BEGIN")) {
+            current.nested++;
+            return current;
+        }
+        if (p.name.equals("END")) {
+            if (current.nested == 0 && p.value.equalsIgnoreCase("VEVENT")) {
+                emit(current, sink);
+                return null;
+            }
+            current.nested = Math.max(0, current.nested - 1);
+            return current;
+        }
+        if (current.nested > 0) {
+            return current;
+        }
+        switch (p.name) {
+            case "SUMMARY" -> current.summary = unescape(p.value);
+            case "DTSTART" -> current.start = p;
+            case "DTEND" -> current.end = p;
+            case "DURATION" -> current.duration = p.value;
+            default -> {
+                // Other properties (DESCRIPTION, RRULE, alarms, ...) are not stored by Hiyori
+            }
+        }
+        return current;
+    }
+
+    private void emit(VEvent v, Sink sink) throws InterruptedException {
+        if (v.start == null) {
+            sink.skip("VEVENT without DTSTART: " + v.summary);
+            return;
+        }
+        try {
+            boolean allDay = isDate(v.start);
+            long start = toEpochSec(v.start);
+            long end;
+            if (v.end != null) {
+                end = toEpochSec(v.end);
+            } else if (v.duration != null) {
+                end = start + parseDuration(v.duration);
+            } else {
+                end = allDay ? start + 86_400 : start + defaultDurationSec;
+            }
+            Event event = new Event();
+            event.setTitle(v.summary != null && !v.summary.isBlank() ? v.summary : "無題の予定");
+            event.setStartEpochSec(start);
+            event.setEndEpochSec(end);
+            sink.event(event);
+        } catch (DateTimeException | IllegalArgumentException e) {
+            sink.skip("VEVENT '" + v.summary + "' has an unreadable date: " + e.getMessage());
+        }
+    }
+
+    private static boolean isDate(Property p) {
+        return "DATE".equalsIgnoreCase(p.param("VALUE")) || p.value.length() == 8;
+    }
+
+    static long toEpochSec(Property p) {
+        String value = p.value.trim();
+        if (isDate(p)) {
+            return LocalDate.parse(value, DATE).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        }
+        if (value.endsWith("Z") || value.endsWith("z")) {
+            return LocalDateTime.parse(value.substring(0, value.length() - 1), DATE_TIME).toEpochSecond(ZoneOffset.UTC);
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        String tzid = p.param("TZID");
+        if (tzid != null) {
+            try {
+                zone = ZoneId.of(tzid);
+            } catch (DateTimeException e) {
+                // Custom VTIMEZONE names (e.g. Outlook's "Tokyo Standard Time") fall back to the system zone
+            }
+        }
+        return LocalDateTime.parse(value, DATE_TIME).atZone(zone).toEpochSecond();
+    }
+
+    // RFC 5545 durations: P1W, P1D, PT1H30M, P1DT12H (java.time.Duration does not accept weeks)
+    static long parseDuration(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        boolean negative = v.startsWith("-");
+        if (v.startsWith("+") || v.startsWith("-")) {
+            v = v.substring(1);
+        }
+        long seconds;
+        if (v.endsWith("W")) {
+            seconds = Long.parseLong(v.substring(1, v.length() - 1)) * 7 * 86_400;
+        } else {
+            seconds = Duration.parse(v).getSeconds();
+        }
+        return negative ? -seconds : seconds;
+    }
+
+    static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class VEvent {
+        String summary;
+        Property start;
+        Property end;
+        String duration;
+        int nested;
+    }
+
+    /**
+     * 内容行 {@code NAME;PARAM=VALUE;...:value}
+     */
+    record Property(String name, String params, String value) {
+        static Property parse(String line) {
+            // The value may contain ':' (URLs), parameters may be quoted
+            boolean quoted = false;
+            int colon = -1;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ':' && !quoted) {
+                    colon = i;
+                    break;
+                }
+            }
+            if (colon < 0) {
+                return null;
+            }
+            String head = line.substring(0, colon);
+            int semicolon = head.indexOf(';');
+            String name = (semicolon >= 0 ? head.substring(0, semicolon) : head).trim().toUpperCase(Locale.ROOT);
+            String params = semicolon >= 0 ? head.substring(semicolon + 1) : "";
+            return new Property(name, params, line.substring(colon + 1));
+        }
+
+        String param(String key) {
+            for (String param : params.split(";")) {
+                int eq = param.indexOf('=');
+                if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                    String v = param.substring(eq + 1).trim();
+                    return v.length() >= 2 && v.startsWith("\"") && v.endsWith("\"") ? v.substring(1, v.length() - 1) : v;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package app.service;
+
+/**
+ * インポートの進捗（{@link ImportService} の戻り値では最終結果）
+ * @param notes 書き込んだメモ数
+ * @param events 書き込んだ予定数
+ * @param skipped 不正・大きすぎるなどの理由で読み飛ばしたレコード数
+ * @param elapsedMillis 開始からの経過時間
+ */
+public record ImportProgress(long notes, long events, long skipped, long elapsedMillis) {
+}
@@ -0,0 +1,255 @@
+package app.service;
+
+import app.config.AppConfig;
+import app.db.NotesDao;
+import app.exception.DataAccessException;
+import app.exception.ImportException;
+import app.model.Event;
+import app.model.Note;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * メモと予定のインポート。
+ * <p>
+ * 読み込み・解析は専用スレッドで行い、上限付きのキュー（import.queue.capacity）を通して
+ * 呼び出し元スレッドが検証と書き込みを行う。書き込みが追いつかない間は解析側がキューで待つため、
+ * 入力の大きさにかかわらず使うメモリは一定になる。書き込みは import.batch.size 件ずつ
+ * 1つのトランザクションで一括挿入し、バッチごとに進捗を通知する。
+ * <p>
+ * 予定は {@link EventService} と同じ規則（開始 &lt; 終了、最短時間）で検証し、違反したものは読み飛ばす。
+ * インポート中は全文検索索引のセグメント併合を止め、終了時にまとめて最適化する。
+ * 取り込んだメモはメモのキャッシュや検索索引に1件ずつ入れず、終了時に検索結果キャッシュの破棄と
+ * 検索索引の再構築を一度だけ行う。
+ */
+public class ImportService {
+    private static final Logger logger = LoggerFactory.getLogger(ImportService.class);
+    private static final Object END = new Object();
+
+    private final NoteService noteService;
+    private final EventService eventService;
+    private final NotesDao notesDao;
+    private final AppConfig config;
+
+    public ImportService(NoteService noteService, EventService eventService, NotesDao notesDao) {
+        this.noteService = noteService;
+        this.eventService = eventService;
+        this.notesDao = notesDao;
+        this.config = AppConfig.getInstance();
+    }
+
+    /**
+     * フォルダ以下の Markdown / テキストファイル（.md .markdown .txt）を1ファイル1メモとして取り込む
+     * @param progress バッチを書き込むたびに呼ばれる（null 可）
+     */
+    public ImportProgress importMarkdownFolder(Path folder, Consumer<ImportProgress> progress)
+            throws ImportException, DataAccessException {
+        return run(new MarkdownImportSource(folder, config.getImportNoteMaxBytes()), progress);
+    }
+
+    /**
+     * ICS（iCalendar）ファイルの VEVENT を予定として取り込む
+     * @param progress バッチを書き込むたびに呼ばれる（null 可）
+     */
+    public ImportProgress importIcs(Path file, Consumer<ImportProgress> progress)
+            throws ImportException, DataAccessException {
+        return run(new IcsImportSource(file, config.getEventDefaultDurationMinutes()), progress);
+    }
+
+    /**
+     * JSON ダンプ（{@code {"notes":[...], "events":[...]}}）または JSON Lines のエクスポートのメモと予定を取り込む
+     * @param progress バッチを書き込むたびに呼ばれる（null 可）
+     */
+    public ImportProgress importJson(Path file, Consumer<ImportProgress> progress)
+            throws ImportException, DataAccessException {
+        return run(new JsonImportSource(file), progress);
+    }
+
+    /**
+     * 任意のインポート元を取り込む
+     * @param progress バッチを書き込むたびに呼ばれる（null 可）
+     * @return 最終結果
+     * @throws ImportException 読み込み・解析に失敗した場合（それまでに書き込んだバッチは残る）
+     * @throws DataAccessException 書き込みに失敗した場合（失敗したバッチはロールバックされる）
+     */
+    public ImportProgress run(ImportSource source, Consumer<ImportProgress> progress)
+            throws ImportException, DataAccessException {
+        int batchSize = Math.max(1, config.getImportBatchSize());
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(Math.max(1, config.getImportQueueCapacity()));
+        Writer writer = new Writer(batchSize, progress);
+
+        Thread parser = new Thread(() -> {
+            Object last = END;
+            try {
+                source.read(new QueueSink(queue));
+            } catch (InterruptedException e) {
+                // The writer gave up; nobody is reading the queue any more
+                return;
+            } catch (IOException | RuntimeException | Error e) {
+                last = e;
+            }
+            try {
+                queue.put(last);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }, "hiyori-import-parser");
+        parser.setDaemon(true);
+
+        notesDao.pauseIndexMerges();
+        parser.start();
+        logger.info("Import started");
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                if (item instanceof Throwable e) {
+                    writer.flush();
+                    logger.error("Import source failed after {} notes and {} events", writer.notes, writer.events, e);
+                    throw new ImportException("インポート元の読み込みに失敗しました: " + e.getMessage(), e);
+                }
+                writer.accept(item);
+            }
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImportException("インポートが中断されました", e);
+        } finally {
+            parser.interrupt();
+            resumeIndexMerges(writer.notes > 0);
+            if (writer.notes > 0) {
+                refreshNoteCaches();
+            }
+        }
+        ImportProgress result = writer.progress();
+        logger.info("Import finished: {} notes, {} events, {} skipped in {} ms",
+                result.notes(), result.events(), result.skipped(), result.elapsedMillis());
+        return result;
+    }
+
+    private void resumeIndexMerges(boolean optimize) {
+        try {
+            notesDao.resumeIndexMerges(optimize);
+        } catch (DataAccessException e) {
+            // The imported rows are indexed already; only the segment layout is left unoptimized
+            logger.warn("Failed to resume full-text index merges after import: {}", e.getMessage());
+        }
+    }
+
+    // Batches bypass the per-note cache updates; a failed import still committed its earlier batches
+    private void refreshNoteCaches() {
+        try {
+            noteService.refreshAfterImport();
+        } catch (DataAccessException e) {
+            logger.warn("Failed to refresh note search caches after import: {}", e.getMessage());
+        }
+    }
+
+    private final class Writer {
+        private final int batchSize;
+        private final Consumer<ImportProgress> listener;
+        private final long startNanos = System.nanoTime();
+        private final List<Note> noteBatch = new ArrayList<>();
+        private final List<Event> eventBatch = new ArrayList<>();
+        private long notes = 0;
+        private long events = 0;
+        private long skipped = 0;
+
+        Writer(int batchSize, Consumer<ImportProgress> listener) {
+            this.batchSize = batchSize;
+            this.listener = listener;
+        }
+
+        void accept(Object item) throws DataAccessException {
+            if (item instanceof Note note) {
+                noteBatch.add(note);
+                if (noteBatch.size() >= batchSize) {
+                    flushNotes();
+                }
+            } else if (item instanceof Event event) {
+                try {
+                    eventService.validateEventTimes(event.getStartEpochSec(), event.getEndEpochSec());
+                } catch (IllegalArgumentException e) {
+                    skip("invalid event '" + event.getTitle() + "': " + e.getMessage());
+                    return;
+                }
+                eventBatch.add(event);
+                if (eventBatch.size() >= batchSize) {
+                    flushEvents();
+                }
+            } else if (item instanceof Skipped s) {
+                skip(s.reason());
+            }
+        }
+
+        void flush() throws DataAccessException {
+            flushNotes();
+            flushEvents();
+        }
+
+        private void flushNotes() throws DataAccessException {
+            if (noteBatch.isEmpty()) {
+                return;
+            }
+            noteService.importNotes(noteBatch);
+            notes += noteBatch.size();
+            noteBatch.clear();
+            report();
+        }
+
+        private void flushEvents() throws DataAccessException {
+            if (eventBatch.isEmpty()) {
+                return;
+            }
+            eventService.createEvents(eventBatch);
+            events += eventBatch.size();
+            eventBatch.clear();
+            report();
+        }
+
+        private void skip(String reason) {
+            skipped++;
+            logger.warn("Skipped import record: {}", reason);
+        }
+
+        private void report() {
+            if (listener != null) {
+                listener.accept(progress());
+            }
+        }
+
+        ImportProgress progress() {
+            return new ImportProgress(notes, events, skipped, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    private record Skipped(String reason) {
+    }
+
+    private record QueueSink(BlockingQueue<Object> queue) implements ImportSource.Sink {
+        @Override
+        public void note(Note note) throws InterruptedException {
+            queue.put(note);
+        }
+
+        @Override
+        public void event(Event event) throws InterruptedException {
+            queue.put(event);
+        }
+
+        @Override
+        public void skip(String reason) throws InterruptedException {
+            queue.put(new Skipped(reason));
+        }
+    }
+}
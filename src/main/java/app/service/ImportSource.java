@@ -0,0 +1,32 @@
+package app.service;
+
+import app.model.Event;
+import app.model.Note;
+
+import java.io.IOException;
+
+/**
+ * インポート元（Markdown フォルダ・ICS・JSON など）。レコードを1件ずつ読み、{@link Sink} へ渡す。
+ * <p>
+ * {@link ImportService} は別スレッドで {@link #read} を呼び出す。書き込みが追いつかない間は
+ * {@link Sink} の呼び出しがブロックするため、入力全体をメモリに読み込まないこと。
+ */
+@FunctionalInterface
+public interface ImportSource {
+
+    void read(Sink sink) throws IOException, InterruptedException;
+
+    /**
+     * 読み込んだレコードの受け取り先
+     */
+    interface Sink {
+        void note(Note note) throws InterruptedException;
+
+        void event(Event event) throws InterruptedException;
+
+        /**
+         * 取り込めないレコードを読み飛ばした（理由はログに記録される）
+         */
+        void skip(String reason) throws InterruptedException;
+    }
+}
@@ -0,0 +1,149 @@
+package app.service;
+
+import app.model.Event;
+import app.model.Note;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * JSON ダンプを読むインポート元。形式は
+ * <pre>
+ * {"notes": [{"title": "...", "body": "...", "createdAt": 1735689600, "updatedAt": 1735689600}, ...],
+ *  "events": [{"title": "...", "startEpochSec": 1735689600, "endEpochSec": 1735695000}, ...]}
+ * </pre>
+ * で、どちらの配列も省略できる。{@link ExportService#exportJsonl} が書く JSON Lines
+ * （1行1レコードで {@code "type": "note"} または {@code "event"} を持つオブジェクト）も同じように読める。
+ * その他のメンバー（id など）は読み飛ばし、ID は取り込み先で新しく割り当てる。
+ * 配列の要素・各行は1件ずつ読むため、ダンプ全体はメモリに載らない。
+ */
+class JsonImportSource implements ImportSource {
+    private final Path file;
+
+    JsonImportSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void read(Sink sink) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            read(reader, sink);
+        }
+    }
+
+    void read(Reader reader, Sink sink) throws IOException, InterruptedException {
+        JsonStreamReader json = new JsonStreamReader(reader);
+        // A single dump object, or one record object per line
+        while (json.peek() != JsonStreamReader.Token.END_DOCUMENT) {
+            if (json.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.skipValue();
+                sink.skip("top-level value is not an object");
+                continue;
+            }
+            Fields fields = readObject(json, sink, true);
+            if (fields.type == null) {
+                continue;
+            }
+            switch (fields.type) {
+                case "note" -> sink.note(fields.toNote());
+                case "event" -> emitEvent(fields, sink);
+                default -> sink.skip("unknown record type '" + fields.type + "'");
+            }
+        }
+    }
+
+    private static Fields readObject(JsonStreamReader json, Sink sink, boolean topLevel)
+            throws IOException, InterruptedException {
+        Fields fields = new Fields();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            boolean array = json.peek() == JsonStreamReader.Token.BEGIN_ARRAY;
+            switch (name) {
+                case "notes" -> {
+                    if (topLevel && array) {
+                        readEntries(json, sink, "note");
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                case "events" -> {
+                    if (topLevel && array) {
+                        readEntries(json, sink, "event");
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                case "type" -> fields.type = json.nextString();
+                case "title" -> fields.title = json.nextString();
+                case "body" -> fields.body = json.nextString();
+                case "createdAt" -> fields.createdAt = json.nextLong();
+                case "updatedAt" -> fields.updatedAt = json.nextLong();
+                case "startEpochSec" -> fields.start = json.nextLong();
+                case "endEpochSec" -> fields.end = json.nextLong();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return fields;
+    }
+
+    private static void readEntries(JsonStreamReader json, Sink sink, String type)
+            throws IOException, InterruptedException {
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.skipValue();
+                sink.skip(type + " entry is not an object");
+                continue;
+            }
+            Fields fields = readObject(json, sink, false);
+            if (type.equals("note")) {
+                sink.note(fields.toNote());
+            } else {
+                emitEvent(fields, sink);
+            }
+        }
+        json.endArray();
+    }
+
+    private static void emitEvent(Fields fields, Sink sink) throws InterruptedException {
+        if (fields.start == null || fields.end == null) {
+            sink.skip("event '" + fields.title + "' has no startEpochSec/endEpochSec");
+            return;
+        }
+        Event event = new Event();
+        event.setTitle(fields.title != null && !fields.title.isBlank() ? fields.title : "無題の予定");
+        event.setStartEpochSec(fields.start);
+        event.setEndEpochSec(fields.end);
+        sink.event(event);
+    }
+
+    // Members of one note, event or JSON Lines record
+    private static final class Fields {
+        String type;
+        String title;
+        String body;
+        Long createdAt;
+        Long updatedAt;
+        Long start;
+        Long end;
+
+        Note toNote() {
+            Note note = new Note();
+            note.setTitle(title);
+            note.setBody(body);
+            if (createdAt != null) {
+                note.setCreatedAt(createdAt);
+            }
+            if (updatedAt != null) {
+                note.setUpdatedAt(updatedAt);
+            }
+            return note;
+        }
+    }
+}
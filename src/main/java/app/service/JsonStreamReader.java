@@ -0,0 +1,261 @@
+package app.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * JSON を先頭から1トークンずつ読む最小限のプルパーサ（インポート用）。
+ * 配列の要素を1つずつ取り出せるため、ダンプ全体をメモリに載せずに済む。
+ * 数値は整数のみ、文字列は \\uXXXX を含むエスケープに対応する。
+ */
+class JsonStreamReader implements AutoCloseable {
+
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private final Reader in;
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+    // Next non-separator character, or -2 when it has not been read yet
+    private int peeked = -2;
+
+    JsonStreamReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * 次のトークンの種類（読み進めない）
+     */
+    Token peek() throws IOException {
+        int c = peekNonSeparator();
+        return switch (c) {
+            case -1 -> Token.END_DOCUMENT;
+            case '{' -> Token.BEGIN_OBJECT;
+            case '}' -> Token.END_OBJECT;
+            case '[' -> Token.BEGIN_ARRAY;
+            case ']' -> Token.END_ARRAY;
+            case '"' -> !scopes.isEmpty() && scopes.peek().expectName ? Token.NAME : Token.STRING;
+            case 't', 'f' -> Token.BOOLEAN;
+            case 'n' -> Token.NULL;
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    yield Token.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+            }
+        };
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+        scopes.push(new Scope(true));
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+        scopes.pop();
+        valueDone();
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+        scopes.push(new Scope(false));
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+        scopes.pop();
+        valueDone();
+    }
+
+    /**
+     * 現在のオブジェクト・配列に続きの要素があるか
+     */
+    boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    String nextName() throws IOException {
+        if (peek() != Token.NAME) {
+            throw syntaxError("expected a member name");
+        }
+        String name = readString();
+        if (peekNonSeparator() != ':') {
+            throw syntaxError("expected ':'");
+        }
+        peeked = -2;
+        scopes.peek().expectName = false;
+        return name;
+    }
+
+    /**
+     * 文字列値を読む（null の場合は null）
+     */
+    String nextString() throws IOException {
+        Token t = peek();
+        if (t == Token.NULL) {
+            readLiteral();
+            valueDone();
+            return null;
+        }
+        if (t != Token.STRING) {
+            throw syntaxError("expected a string");
+        }
+        String s = readString();
+        valueDone();
+        return s;
+    }
+
+    long nextLong() throws IOException {
+        if (peek() != Token.NUMBER) {
+            throw syntaxError("expected a number");
+        }
+        String literal = readLiteral();
+        valueDone();
+        try {
+            return Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            throw syntaxError("expected an integer but was " + literal);
+        }
+    }
+
+    /**
+     * 次の値（入れ子を含む）を読み飛ばす
+     */
+    void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT -> {
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+            }
+            case BEGIN_ARRAY -> {
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+            }
+            case STRING -> nextString();
+            case NUMBER, BOOLEAN, NULL -> {
+                readLiteral();
+                valueDone();
+            }
+            default -> throw syntaxError("expected a value");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // After a value inside an object the next string is a member name again
+    private void valueDone() {
+        Scope scope = scopes.peek();
+        if (scope != null && scope.object) {
+            scope.expectName = true;
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peekNonSeparator() != c) {
+            throw syntaxError("expected '" + c + "'");
+        }
+        peeked = -2;
+    }
+
+    // Commas are only separators here; the structure is checked by the begin/end calls
+    private int peekNonSeparator() throws IOException {
+        if (peeked == -2) {
+            int c;
+            do {
+                c = in.read();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',');
+            peeked = c;
+        }
+        return peeked;
+    }
+
+    private String readString() throws IOException {
+        peeked = -2;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw syntaxError("unterminated string");
+            }
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+            int e = in.read();
+            switch (e) {
+                case '"', '\\', '/' -> sb.append((char) e);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    char[] hex = new char[4];
+                    for (int i = 0; i < 4; i++) {
+                        int h = in.read();
+                        if (h == -1) {
+                            throw syntaxError("unterminated escape");
+                        }
+                        hex[i] = (char) h;
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(new String(hex), 16));
+                    } catch (NumberFormatException ex) {
+                        throw syntaxError("invalid unicode escape");
+                    }
+                }
+                default -> throw syntaxError("invalid escape");
+            }
+        }
+    }
+
+    // Numbers, true, false and null: read up to the next delimiter
+    private String readLiteral() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append((char) peekNonSeparator());
+        peeked = -2;
+        while (true) {
+            int c = in.read();
+            if (c == -1 || c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                peeked = c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\r' ? -2 : c;
+                break;
+            }
+            sb.append((char) c);
+        }
+        String literal = sb.toString();
+        if (Character.isLetter(literal.charAt(0)) && !literal.equals("true") && !literal.equals("false")
+                && !literal.equals("null")) {
+            throw syntaxError("unexpected literal " + literal);
+        }
+        return literal;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+
+    private static final class Scope {
+        final boolean object;
+        boolean expectName;
+
+        Scope(boolean object) {
+            this.object = object;
+            this.expectName = object;
+        }
+    }
+}
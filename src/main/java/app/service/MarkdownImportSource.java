@@ -0,0 +1,94 @@
+package app.service;
+
+import app.model.Note;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * フォルダ以下の Markdown / テキストファイルを1ファイル1メモとして読むインポート元。
+ * <p>
+ * 先頭行が見出し（{@code # タイトル}）であればそれをタイトルにして本文から除き、
+ * そうでなければ拡張子を除いたファイル名をタイトルにする。作成日時・更新日時はファイルの更新日時。
+ * フォルダは1ファイルずつ辿り、上限を超えるファイルや UTF-8 として読めないファイルは読み飛ばす。
+ */
+class MarkdownImportSource implements ImportSource {
+    private final Path folder;
+    private final long maxBytes;
+
+    MarkdownImportSource(Path folder, long maxBytes) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void read(Sink sink) throws IOException, InterruptedException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            Iterator<Path> it = paths.filter(Files::isRegularFile).filter(MarkdownImportSource::isNoteFile).iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                if (Files.size(file) > maxBytes) {
+                    sink.skip(file + " is larger than " + maxBytes + " bytes");
+                    continue;
+                }
+                String text;
+                try {
+                    text = decode(Files.readAllBytes(file));
+                } catch (CharacterCodingException e) {
+                    sink.skip(file + " is not valid UTF-8");
+                    continue;
+                }
+                sink.note(toNote(file, text, Files.getLastModifiedTime(file).toMillis() / 1000));
+            }
+        } catch (UncheckedIOException e) {
+            // Files.walk reports errors while iterating as unchecked
+            throw e.getCause();
+        }
+    }
+
+    static boolean isNoteFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return !name.startsWith(".") && (name.endsWith(".md") || name.endsWith(".markdown") || name.endsWith(".txt"));
+    }
+
+    static Note toNote(Path file, String text, long modifiedEpochSec) {
+        String title = null;
+        String body = text;
+        int lineEnd = text.indexOf('\n');
+        String firstLine = (lineEnd >= 0 ? text.substring(0, lineEnd) : text).strip();
+        if (firstLine.startsWith("# ")) {
+            title = firstLine.substring(2).strip();
+            body = lineEnd >= 0 ? text.substring(lineEnd + 1).replaceFirst("^\\r?\\n", "") : "";
+        }
+        if (title == null || title.isEmpty()) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            title = dot > 0 ? name.substring(0, dot) : name;
+        }
+        Note note = new Note();
+        note.setTitle(title);
+        note.setBody(body);
+        note.setCreatedAt(modifiedEpochSec);
+        note.setUpdatedAt(modifiedEpochSec);
+        return note;
+    }
+
+    private static String decode(byte[] bytes) throws CharacterCodingException {
+        String text = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes))
+                .toString();
+        // Byte order mark written by some Windows editors
+        return text.startsWith("\uFEFF") ? text.substring(1) : text;
+    }
+}
@@ -0,0 +1,138 @@
+package app.service;
+
+import app.model.Note;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ID をキーにしたメモのキャッシュ（LRU）。件数ではなくタイトルと本文の推定バイト数の合計で上限を設ける。
+ * <p>
+ * {@link NoteService} が読み込み時に登録し（read-through）、作成・更新・削除のコミット後に
+ * 内容を置き換える・取り除く（write-through）。メモは可変なので、出し入れはすべて複製で行う。
+ * 読み込み中に書き込みがあった場合、読み込んだ古い内容は登録しない（世代番号で判定する）。
+ */
+public class NoteCache {
+    // Object headers, the map entry and the boxed key
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long bytes = 0;
+    private long generation = 0;
+
+    /**
+     * @param maxBytes 保持するメモの推定バイト数の上限
+     */
+    public NoteCache(long maxBytes) {
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /**
+     * @return キャッシュ済みのメモの複製（無い場合は null）
+     */
+    public synchronized Note get(long noteId) {
+        Entry entry = entries.get(noteId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copyOf(entry.note);
+    }
+
+    /**
+     * データベースから読み込む前に取得し、{@link #putLoaded} に渡す世代番号
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * データベースから読み込んだメモを登録する（read-through）。
+     * {@code generationAtStart} 以降に書き込みがあった場合は登録しない。
+     */
+    public synchronized void putLoaded(Note note, long generationAtStart) {
+        if (generationAtStart == generation) {
+            store(note);
+        }
+    }
+
+    /**
+     * 書き込みがコミットされたメモで置き換える（write-through）。上限を超えた分は古いものから追い出す。
+     * 1件で上限を超えるメモは登録しない。作成日時を持たない更新はキャッシュ済みの作成日時を引き継ぐ。
+     */
+    public synchronized void put(Note note) {
+        generation++;
+        if (note == null || note.getCreatedAt() > 0) {
+            store(note);
+            return;
+        }
+        Entry previous = entries.get(note.getId());
+        if (previous == null) {
+            return;
+        }
+        Note merged = copyOf(note);
+        merged.setCreatedAt(previous.note.getCreatedAt());
+        store(merged);
+    }
+
+    public synchronized void remove(long noteId) {
+        generation++;
+        evict(noteId);
+    }
+
+    private void store(Note note) {
+        if (note == null || note.getId() <= 0) {
+            return;
+        }
+        evict(note.getId());
+        long size = sizeOf(note);
+        if (size > maxBytes) {
+            return;
+        }
+        entries.put(note.getId(), new Entry(copyOf(note), size));
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().size;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void evict(long noteId) {
+        Entry removed = entries.remove(noteId);
+        if (removed != null) {
+            bytes -= removed.size;
+        }
+    }
+
+    public synchronized NoteCacheStats getStats() {
+        return new NoteCacheStats(hits.get(), misses.get(), evictions.get(), entries.size(), bytes);
+    }
+
+    // UTF-16 in memory: two bytes per char
+    static long sizeOf(Note note) {
+        long chars = (note.getTitle() != null ? note.getTitle().length() : 0)
+                + (note.getBody() != null ? note.getBody().length() : 0);
+        return ENTRY_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    static Note copyOf(Note source) {
+        Note copy = new Note();
+        copy.setId(source.getId());
+        copy.setTitle(source.getTitle());
+        copy.setBody(source.getBody());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        return copy;
+    }
+
+    private record Entry(Note note, long size) {
+    }
+}
@@ -0,0 +1,12 @@
+package app.service;
+
+/**
+ * メモキャッシュの統計情報
+ * @param bytes キャッシュ中のメモの推定サイズの合計（バイト）
+ */
+public record NoteCacheStats(long hits, long misses, long evictions, int entries, long bytes) {
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,207 @@
+package app.service;
+
+import app.db.SearchPlanner;
+import app.model.Note;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入力中の検索（{@link NoteService#quickSearch}）と一覧のページ（{@link NoteService#getNoteSummaryPage}）の
+ * 結果キャッシュ（LRU）。
+ * <p>
+ * クエリ（前後の空白を除いたもの）・継続トークン・件数をキーにする。部分一致で検索されるクエリ
+ * （日本語や記号を含む1語）は、それを含む長いクエリ（「会議」に対する「会議室」）の先頭ページを、
+ * キャッシュ済みの結果に含まれるメモだけを読み直して絞り込むことで答えられる（{@link #supersetIds}）。
+ * ただし元の結果が件数上限で切り詰められていた場合は絞り込まない。
+ * <p>
+ * メモの作成・更新・削除では、そのメモを含むエントリと、変更後の内容が一致するエントリだけを破棄する。
+ * 検索中に書き込みがあった結果はキャッシュしない（世代番号で判定する）。
+ *
+ * @param <V> キャッシュする結果の型（不変であること）
+ */
+public class NoteSearchCache<V> {
+    private final int capacity;
+    private final Map<Key, Entry<V>> entries;
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong refinedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation = 0;
+
+    /**
+     * キャッシュのキー
+     * @param query {@link #normalize} 済みのクエリ（空の場合は最近のメモ）
+     * @param pageToken 継続トークン（先頭ページは null）
+     * @param limit 件数（ページの大きさ、または検索結果の上限）
+     */
+    public record Key(String query, String pageToken, int limit) {
+    }
+
+    /**
+     * @param capacity 保持するエントリ数の上限
+     */
+    public NoteSearchCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry<V>> eldest) {
+                return size() > NoteSearchCache.this.capacity;
+            }
+        };
+    }
+
+    public static Key key(String query, String pageToken, int limit) {
+        return new Key(normalize(query), pageToken, limit);
+    }
+
+    /**
+     * キャッシュのキーに使う正規化済みクエリ。空白の数は LIKE 検索の結果を変えるため、前後の空白だけを除く。
+     */
+    public static String normalize(String query) {
+        return query != null ? query.trim() : "";
+    }
+
+    /**
+     * 検索前に取得し、{@link #put} に渡す世代番号
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * キャッシュ済みの結果を返す
+     * @return 結果（無い場合は null）
+     */
+    public synchronized V get(Key key) {
+        Entry<V> exact = entries.get(key);
+        if (exact != null) {
+            exactHits.incrementAndGet();
+            return exact.value;
+        }
+        return null;
+    }
+
+    /**
+     * {@link #get} で見つからなかった先頭ページを絞り込みで答えるための、元になる結果のメモの ID を返す。
+     * 部分一致クエリを含む、切り詰められていない先頭ページのうち最も長いクエリのものを使う。
+     * @return 元の結果のメモの ID（結果の順。絞り込めない場合は null）
+     */
+    public synchronized long[] supersetIds(Key key) {
+        if (key.pageToken() == null && isSubstringQuery(key.query())) {
+            Entry<V> base = null;
+            for (Entry<V> e : entries.values()) {
+                String cached = e.key.query();
+                if (e.complete && e.key.pageToken() == null && isSubstringQuery(cached)
+                        && containsIgnoreCase(key.query(), cached)
+                        && (base == null || cached.length() > base.key.query().length())) {
+                    base = e;
+                }
+            }
+            if (base != null) {
+                // Touch the base so that a burst of refinements keeps it in the LRU
+                entries.get(base.key);
+                refinedHits.incrementAndGet();
+                return base.ids.clone();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 結果を保存する。{@code generationAtStart} 以降に書き込みがあった場合は保存しない。
+     * @param ids 結果に含まれるメモの ID（結果の順）
+     * @param complete 件数上限で切り詰められていない（一致するメモをすべて含む）場合 true
+     */
+    public synchronized void put(Key key, V value, long[] ids, boolean complete, long generationAtStart) {
+        if (generationAtStart != generation) {
+            return;
+        }
+        entries.put(key, new Entry<>(key, value, ids.clone(), complete));
+    }
+
+    /**
+     * 作成・更新されたメモに影響されるエントリを破棄する
+     */
+    public synchronized void invalidate(Note changed) {
+        generation++;
+        entries.values().removeIf(e -> e.contains(changed.getId()) || matches(changed, e.key.query()));
+    }
+
+    /**
+     * 削除されたメモを含むエントリを破棄する
+     */
+    public synchronized void invalidate(long deletedId) {
+        generation++;
+        entries.values().removeIf(e -> e.contains(deletedId));
+    }
+
+    /**
+     * すべてのエントリを破棄する（一括インポートの後など、影響するエントリを個別に判定しない場合）
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getExactHitCount() {
+        return exactHits.get();
+    }
+
+    public long getRefinedHitCount() {
+        return refinedHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // LIKE and the trigram index both match a one-term query as a plain substring, so a result for
+    // "会議室" is always a subset of the result for "会議". FTS word-prefix queries are only cached exactly.
+    static boolean isSubstringQuery(String query) {
+        if (query.isEmpty() || query.codePoints().anyMatch(Character::isWhitespace)) {
+            return false;
+        }
+        return SearchPlanner.containsJapanese(query)
+                || !query.codePoints().allMatch(Character::isLetterOrDigit);
+    }
+
+    // Substring match of every term: exact for substring queries and a superset of the FTS prefix match,
+    // so invalidation never leaves a stale entry behind. The empty query (recent notes) matches every note.
+    static boolean matches(Note note, String query) {
+        for (String term : query.split("\\s+")) {
+            if (!containsIgnoreCase(note.getTitle(), term) && !containsIgnoreCase(note.getBody(), term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(String text, String term) {
+        if (text == null) {
+            return term.isEmpty();
+        }
+        for (int i = 0; i + term.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Entry<V>(Key key, V value, long[] ids, boolean complete) {
+        boolean contains(long noteId) {
+            for (long id : ids) {
+                if (id == noteId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package app.service;
+
+import app.exception.DataAccessException;
+import app.model.Note;
+import app.model.NoteSearchResult;
+import app.model.NoteSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * 入力中の検索をデータベースにほとんど問い合わせずに答えるための、メモリ上の1文字・2文字組の転置索引。
+ * <p>
+ * 起動時に {@link #rebuild} で全メモから構築し、以降は {@link NoteService} の作成・更新・削除の
+ * コミット後に差分で更新する。SQLite が正本であり、この索引は読み取り専用の写しに過ぎない。
+ * <p>
+ * 各メモはスロット番号（int）で表し、1文字・2文字組ごとのポスティングはスロット番号の昇順の int 配列で持つ。
+ * メモリに持つのはポスティングとタイトル・更新日時・本文の先頭（{@link #BODY_PREFIX_LENGTH} 文字）だけで、
+ * 本文全体は持たない。1〜2文字の語はポスティングだけで一致が確定し、3文字以上の語もタイトルか本文の先頭に
+ * あれば確定する。確定しない候補だけを、結果1ページ分を上限に1回だけ SQLite から読んで確かめる。
+ * 更新・削除されたスロットは削除済みとして残し、削除済みが一定数を超えたら詰め直す。
+ */
+public class NoteSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(NoteSearchIndex.class);
+    private static final int INITIAL_CAPACITY = 64;
+    // Compact once dead slots outnumber live ones (and there are enough of them to be worth it)
+    private static final int COMPACT_MIN_DEAD = 1024;
+    private static final int REBUILD_CHUNK_SIZE = 500;
+    // Candidates read from SQLite per round trip when refining cached results
+    private static final int VERIFY_CHUNK_SIZE = 64;
+    // Characters of context kept before the first body match
+    private static final int SNIPPET_LEAD = 20;
+    /** メモごとに保持する本文の先頭の文字数（抜粋を作れる長さ） */
+    static final int BODY_PREFIX_LENGTH = 2 * NoteSummary.SNIPPET_LENGTH;
+
+    /**
+     * 再構築時にメモを ID の昇順で順に読み込む
+     */
+    @FunctionalInterface
+    public interface NoteLoader {
+        /**
+         * @return {@code afterId} より後のメモを ID の昇順で最大 {@code limit} 件
+         */
+        List<Note> load(long afterId, int limit) throws DataAccessException;
+    }
+
+    /**
+     * 索引だけでは一致を確定できない候補を SQLite から読み込む
+     */
+    @FunctionalInterface
+    public interface NoteFetcher {
+        /**
+         * @return 指定された ID のメモ（存在しない ID は含まれない。順序は問わない）
+         */
+        List<Note> fetch(List<Long> ids) throws DataAccessException;
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // One rebuild at a time; the loading itself runs without holding lock
+    private final Object rebuildMonitor = new Object();
+    private Slots slots = new Slots();
+    // Writes committed while a rebuild is loading, replayed onto the new slots before they are swapped in
+    private List<Change> changesDuringRebuild;
+    private long compactions = 0;
+    private volatile boolean ready = false;
+    private volatile long lastRebuildMillis = -1;
+
+    /**
+     * 最初の全件構築が完了しているか（完了前は検索に使わないこと）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * すべてのメモを読み直して索引を作り直す。
+     * 読み込みは別の索引に対してロックを持たずに行い、その間の {@link #put} / {@link #remove} は
+     * 今の索引に反映したうえで記録しておき、新しい索引にも適用してから入れ替える。
+     * 失敗した場合は今の索引をそのまま使い続ける。
+     */
+    public void rebuild(NoteLoader loader) throws DataAccessException {
+        synchronized (rebuildMonitor) {
+            long start = System.nanoTime();
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Slots fresh = new Slots();
+            try {
+                long lastId = 0;
+                List<Note> chunk;
+                do {
+                    chunk = loader.load(lastId, REBUILD_CHUNK_SIZE);
+                    for (Note note : chunk) {
+                        fresh.add(note);
+                        lastId = note.getId();
+                    }
+                } while (chunk.size() >= REBUILD_CHUNK_SIZE);
+            } catch (DataAccessException | RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    changesDuringRebuild = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+            int replayed;
+            int notes;
+            int grams;
+            lock.writeLock().lock();
+            try {
+                replayed = changesDuringRebuild.size();
+                for (Change change : changesDuringRebuild) {
+                    boolean compacted = change.note != null ? fresh.put(change.note) : fresh.remove(change.noteId);
+                    if (compacted) {
+                        compactions++;
+                    }
+                }
+                changesDuringRebuild = null;
+                slots = fresh;
+                notes = fresh.slotById.size();
+                grams = fresh.postingsByGram.size();
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lastRebuildMillis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Built in-memory note search index: {} notes, {} grams in {} ms ({} writes replayed)",
+                    notes, grams, lastRebuildMillis, replayed);
+        }
+    }
+
+    /**
+     * メモを追加する（既にある場合は置き換える）
+     */
+    public void put(Note note) {
+        if (note == null || note.getId() <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (slots.put(note)) {
+                compactions++;
+            }
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(new Change(note.getId(), NoteCache.copyOf(note)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * メモを取り除く
+     */
+    public void remove(long noteId) {
+        lock.writeLock().lock();
+        try {
+            if (slots.remove(noteId)) {
+                compactions++;
+            }
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(new Change(noteId, null));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 空白区切りの各語をすべて（大文字小文字を区別せず）タイトルか本文に含むメモを返す。
+     * タイトルに一致したメモを先に、それぞれ更新日時の新しい順に並べる。
+     * <p>
+     * 上位 {@code limit} 件の候補のうち索引だけで一致を確定できないものがあれば、それらだけを
+     * {@code fetcher} で1回読んで確かめる（外れた候補の分、結果が {@code limit} 件より少なくなることがある）。
+     * 本文の一致が保持している先頭より後ろにある場合、抜粋は本文の先頭になる。
+     */
+    public List<NoteSearchResult> search(String query, int limit, NoteFetcher fetcher) throws DataAccessException {
+        return searchPage(query, limit, fetcher).results();
+    }
+
+    /**
+     * {@link #search} と同じ結果に、一致するメモをすべて含むか（件数上限や確かめた候補の外れで
+     * 切り詰められていないか）を添えて返す
+     */
+    SearchPage searchPage(String query, int limit, NoteFetcher fetcher) throws DataAccessException {
+        String[] terms = query != null ? query.trim().split("\\s+") : new String[0];
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            return new SearchPage(List.of(), true);
+        }
+        Candidates candidates;
+        lock.readLock().lock();
+        try {
+            candidates = slots.candidates(terms, Math.max(limit, 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Candidate> page = candidates.page();
+        List<Long> unconfirmed = new ArrayList<>();
+        for (Candidate c : page) {
+            if (!c.confirmed) {
+                unconfirmed.add(c.id);
+            }
+        }
+        Map<Long, Note> fetched = new HashMap<>();
+        if (!unconfirmed.isEmpty()) {
+            for (Note note : fetcher.fetch(unconfirmed)) {
+                fetched.put(note.getId(), note);
+            }
+        }
+        Pattern highlight = highlightPattern(terms);
+        List<NoteSearchResult> results = new ArrayList<>(page.size());
+        for (Candidate c : page) {
+            if (c.confirmed) {
+                results.add(new NoteSearchResult(c.id, c.title, NoteSearchResult.highlight(c.title, highlight),
+                        NoteSearchResult.highlight(snippet(c.bodyPrefix, terms, c.truncated), highlight),
+                        0.0, c.updatedAt));
+                continue;
+            }
+            Note note = fetched.get(c.id);
+            if (note != null && matchesAll(note, terms)) {
+                results.add(toResult(note, terms, highlight));
+            }
+        }
+        return new SearchPage(results, !candidates.more() && results.size() < Math.max(limit, 1));
+    }
+
+    // Reads candidates in the given order and keeps those whose SQLite copy matches. NoteService refines
+    // cached results through it; the candidates are then a complete cached result, so at most one page.
+    static List<NoteSearchResult> verify(long[] ordered, String[] terms, int limit, NoteFetcher fetcher)
+            throws DataAccessException {
+        Pattern highlight = highlightPattern(terms);
+        List<NoteSearchResult> results = new ArrayList<>(Math.min(ordered.length, limit));
+        for (int from = 0; from < ordered.length && results.size() < limit; from += VERIFY_CHUNK_SIZE) {
+            int to = Math.min(ordered.length, from + VERIFY_CHUNK_SIZE);
+            List<Long> chunk = new ArrayList<>(to - from);
+            for (int c = from; c < to; c++) {
+                chunk.add(ordered[c]);
+            }
+            Map<Long, Note> byId = new HashMap<>();
+            for (Note note : fetcher.fetch(chunk)) {
+                byId.put(note.getId(), note);
+            }
+            for (Long id : chunk) {
+                Note note = byId.get(id);
+                if (note == null || !matchesAll(note, terms)) {
+                    continue;
+                }
+                results.add(toResult(note, terms, highlight));
+                if (results.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    private static NoteSearchResult toResult(Note note, String[] terms, Pattern highlight) {
+        String title = nullToEmpty(note.getTitle());
+        return new NoteSearchResult(note.getId(), title, NoteSearchResult.highlight(title, highlight),
+                NoteSearchResult.highlight(snippet(nullToEmpty(note.getBody()), terms, false), highlight),
+                0.0, note.getUpdatedAt());
+    }
+
+    private static boolean matchesAll(Note note, String[] terms) {
+        for (String term : terms) {
+            if (indexOfIgnoreCase(nullToEmpty(note.getTitle()), term) < 0
+                    && indexOfIgnoreCase(nullToEmpty(note.getBody()), term) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 索引の統計を取得する。メモリ量はオブジェクトヘッダや参照を含めた概算。
+     */
+    public NoteSearchIndexStats getStats() {
+        lock.readLock().lock();
+        try {
+            Slots s = slots;
+            long bytes = 16L * s.ids.length + 17L * s.titles.length;
+            for (int slot = 0; slot < s.slotCount; slot++) {
+                if (s.titles[slot] != null) {
+                    bytes += 120 + 2L * (s.titles[slot].length() + s.bodyPrefixes[slot].length());
+                }
+            }
+            // HashMap node + boxed keys
+            bytes += 64L * s.slotById.size();
+            for (Postings p : s.postingsByGram.values()) {
+                bytes += 96 + 4L * p.slots.length;
+            }
+            for (Postings p : s.postingsByChar.values()) {
+                bytes += 96 + 4L * p.slots.length;
+            }
+            return new NoteSearchIndexStats(s.slotById.size(), s.postingsByGram.size(), s.postingCount, bytes,
+                    lastRebuildMillis, compactions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int gram(char a, char b) {
+        return (Character.toLowerCase(a) << 16) | Character.toLowerCase(b);
+    }
+
+    private static int[] intersect(int[] candidates, Postings p) {
+        int[] out = new int[Math.min(candidates.length, p.size)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < candidates.length && j < p.size) {
+            int a = candidates[i];
+            int b = p.slots[j];
+            if (a == b) {
+                out[n++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static int indexOfIgnoreCase(String text, String term) {
+        for (int i = 0; i + term.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, term, 0, term.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // truncated: text is only the start of the body, so it always continues
+    private static String snippet(String text, String[] terms, boolean truncated) {
+        int first = -1;
+        for (String term : terms) {
+            int at = indexOfIgnoreCase(text, term);
+            if (at >= 0 && (first < 0 || at < first)) {
+                first = at;
+            }
+        }
+        int start = first > SNIPPET_LEAD ? first - SNIPPET_LEAD : 0;
+        int end = Math.min(text.length(), start + NoteSummary.SNIPPET_LENGTH);
+        String snippet = text.substring(start, end);
+        if (start > 0) {
+            snippet = NoteSearchResult.ELLIPSIS + snippet;
+        }
+        if (end < text.length() || truncated) {
+            snippet = snippet + NoteSearchResult.ELLIPSIS;
+        }
+        return snippet;
+    }
+
+    private static Pattern highlightPattern(String[] terms) {
+        StringBuilder regex = new StringBuilder();
+        for (String term : terms) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(Pattern.quote(term));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * 検索結果と、それが一致するメモをすべて含むか
+     */
+    record SearchPage(List<NoteSearchResult> results, boolean complete) {
+    }
+
+    private record Hit(int slot, boolean titleMatch, boolean confirmed) {
+    }
+
+    private record Candidates(List<Candidate> page, boolean more) {
+    }
+
+    private record Candidate(long id, String title, String bodyPrefix, boolean truncated, long updatedAt,
+                             boolean confirmed) {
+    }
+
+    // noteId with a null note is a removal
+    private record Change(long noteId, Note note) {
+    }
+
+    // The indexed notes; replaced as a whole by rebuild, otherwise only touched under the write lock
+    private static final class Slots {
+        final Map<Long, Integer> slotById = new HashMap<>();
+        final Map<Integer, Postings> postingsByGram = new HashMap<>();
+        final Map<Character, Postings> postingsByChar = new HashMap<>();
+        long[] ids = new long[INITIAL_CAPACITY];
+        long[] updatedAts = new long[INITIAL_CAPACITY];
+        // null title marks a dead slot
+        String[] titles = new String[INITIAL_CAPACITY];
+        String[] bodyPrefixes = new String[INITIAL_CAPACITY];
+        boolean[] truncated = new boolean[INITIAL_CAPACITY];
+        int slotCount = 0;
+        long postingCount = 0;
+
+        // The first `limit` live candidates that may match, in result order
+        Candidates candidates(String[] terms, int limit) {
+            int[] candidates = null;
+            for (String term : terms) {
+                if (term.length() == 1) {
+                    candidates = narrow(candidates, postingsByChar.get(Character.toLowerCase(term.charAt(0))));
+                }
+                for (int i = 0; i + 1 < term.length() && (candidates == null || candidates.length > 0); i++) {
+                    candidates = narrow(candidates, postingsByGram.get(gram(term.charAt(i), term.charAt(i + 1))));
+                }
+                if (candidates.length == 0) {
+                    return new Candidates(List.of(), false);
+                }
+            }
+            List<Hit> hits = new ArrayList<>(candidates.length);
+            for (int slot : candidates) {
+                if (titles[slot] == null) {
+                    continue;
+                }
+                boolean titleMatch = true;
+                boolean confirmed = true;
+                boolean rejected = false;
+                for (String term : terms) {
+                    boolean inTitle = indexOfIgnoreCase(titles[slot], term) >= 0;
+                    titleMatch &= inTitle;
+                    // Postings are exact for one or two characters
+                    if (inTitle || term.length() <= 2 || indexOfIgnoreCase(bodyPrefixes[slot], term) >= 0) {
+                        continue;
+                    }
+                    if (!truncated[slot]) {
+                        rejected = true;
+                        break;
+                    }
+                    confirmed = false;
+                }
+                if (!rejected) {
+                    hits.add(new Hit(slot, titleMatch, confirmed));
+                }
+            }
+            hits.sort((a, b) -> {
+                if (a.titleMatch != b.titleMatch) {
+                    return a.titleMatch ? -1 : 1;
+                }
+                int byTime = Long.compare(updatedAts[b.slot], updatedAts[a.slot]);
+                return byTime != 0 ? byTime : Long.compare(ids[a.slot], ids[b.slot]);
+            });
+            List<Candidate> page = new ArrayList<>(Math.min(hits.size(), limit));
+            for (Hit hit : hits.subList(0, Math.min(hits.size(), limit))) {
+                int slot = hit.slot;
+                page.add(new Candidate(ids[slot], titles[slot], bodyPrefixes[slot], truncated[slot],
+                        updatedAts[slot], hit.confirmed));
+            }
+            return new Candidates(page, hits.size() > limit);
+        }
+
+        private static int[] narrow(int[] candidates, Postings p) {
+            if (p == null) {
+                return new int[0];
+            }
+            return candidates == null ? Arrays.copyOf(p.slots, p.size) : intersect(candidates, p);
+        }
+
+        // Returns true if the slots were compacted
+        boolean put(Note note) {
+            Integer old = slotById.get(note.getId());
+            if (old != null) {
+                titles[old] = null;
+                bodyPrefixes[old] = null;
+            }
+            add(note);
+            return compactIfNeeded();
+        }
+
+        boolean remove(long noteId) {
+            Integer old = slotById.remove(noteId);
+            if (old == null) {
+                return false;
+            }
+            // Postings of a dead slot stay until the next compaction; search skips them
+            titles[old] = null;
+            bodyPrefixes[old] = null;
+            return compactIfNeeded();
+        }
+
+        void add(Note note) {
+            if (slotCount == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                updatedAts = Arrays.copyOf(updatedAts, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                bodyPrefixes = Arrays.copyOf(bodyPrefixes, capacity);
+                truncated = Arrays.copyOf(truncated, capacity);
+            }
+            String body = nullToEmpty(note.getBody());
+            int slot = slotCount++;
+            ids[slot] = note.getId();
+            updatedAts[slot] = note.getUpdatedAt();
+            titles[slot] = nullToEmpty(note.getTitle());
+            bodyPrefixes[slot] = NoteSummary.prefix(body, BODY_PREFIX_LENGTH);
+            truncated[slot] = bodyPrefixes[slot].length() < body.length();
+            slotById.put(note.getId(), slot);
+            addGrams(titles[slot], slot);
+            addGrams(body, slot);
+        }
+
+        // Slots only grow, so appending keeps every postings list sorted
+        private void addGrams(String text, int slot) {
+            for (int i = 0; i < text.length(); i++) {
+                Postings single = postingsByChar.computeIfAbsent(Character.toLowerCase(text.charAt(i)),
+                        k -> new Postings());
+                if (single.add(slot)) {
+                    postingCount++;
+                }
+                if (i + 1 < text.length()) {
+                    Postings p = postingsByGram.computeIfAbsent(gram(text.charAt(i), text.charAt(i + 1)),
+                            k -> new Postings());
+                    if (p.add(slot)) {
+                        postingCount++;
+                    }
+                }
+            }
+        }
+
+        // The grams cannot be recomputed without the bodies, so live slots are renumbered in order and every
+        // postings list is rewritten through the mapping (which keeps it sorted)
+        private boolean compactIfNeeded() {
+            int dead = slotCount - slotById.size();
+            if (dead < COMPACT_MIN_DEAD || dead <= slotById.size()) {
+                return false;
+            }
+            int[] newSlot = new int[slotCount];
+            int live = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (titles[slot] != null) {
+                    ids[live] = ids[slot];
+                    updatedAts[live] = updatedAts[slot];
+                    titles[live] = titles[slot];
+                    bodyPrefixes[live] = bodyPrefixes[slot];
+                    truncated[live] = truncated[slot];
+                    slotById.put(ids[live], live);
+                    newSlot[slot] = live++;
+                } else {
+                    newSlot[slot] = -1;
+                }
+            }
+            Arrays.fill(titles, live, slotCount, null);
+            Arrays.fill(bodyPrefixes, live, slotCount, null);
+            slotCount = live;
+            postingCount = remap(postingsByGram.values().iterator(), newSlot)
+                    + remap(postingsByChar.values().iterator(), newSlot);
+            logger.debug("Compacted in-memory note search index: dropped {} dead slots", dead);
+            return true;
+        }
+
+        private static long remap(Iterator<Postings> postings, int[] newSlot) {
+            long count = 0;
+            while (postings.hasNext()) {
+                Postings p = postings.next();
+                int n = 0;
+                for (int i = 0; i < p.size; i++) {
+                    int mapped = newSlot[p.slots[i]];
+                    if (mapped >= 0) {
+                        p.slots[n++] = mapped;
+                    }
+                }
+                p.size = n;
+                if (n == 0) {
+                    postings.remove();
+                }
+                count += n;
+            }
+            return count;
+        }
+    }
+
+    private static final class Postings {
+        int[] slots = new int[4];
+        int size = 0;
+
+        boolean add(int slot) {
+            if (size > 0 && slots[size - 1] == slot) {
+                return false;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+            return true;
+        }
+    }
+}
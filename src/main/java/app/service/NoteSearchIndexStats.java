@@ -0,0 +1,14 @@
+package app.service;
+
+/**
+ * メモリ上の検索索引の統計情報
+ * @param notes 索引に含まれるメモ数
+ * @param grams 異なる2文字組（バイグラム）の数
+ * @param postings ポスティングの総数
+ * @param estimatedBytes 索引が使うメモリの概算（バイト）
+ * @param lastRebuildMillis 直近の全件再構築にかかった時間（未構築の場合は -1）
+ * @param compactions 削除済みスロットを詰めた回数
+ */
+public record NoteSearchIndexStats(int notes, int grams, long postings, long estimatedBytes,
+                                   long lastRebuildMillis, long compactions) {
+}
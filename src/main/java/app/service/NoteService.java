@@ -1,17 +1,28 @@
 package app.service;
 
 import app.config.AppConfig;
+import app.db.GroupCommitWriter;
+import app.db.KeysetCursor;
 import app.db.NotesDao;
+import app.db.SearchStrategy;
 import app.db.TransactionManager;
 import app.db.ThrowingRunnable;
 import app.db.ThrowingSupplier;
 import app.exception.DataAccessException;
 import app.model.Note;
+import app.model.NoteSearchResult;
+import app.model.NoteSummary;
+import app.model.Page;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
 
 /**
  * メモ関連のビジネスロジックを担当するサービス
@@ -21,11 +32,39 @@ public class NoteService {
     private final NotesDao notesDao;
     private final TransactionManager transactionManager;
     private final AppConfig config;
+    private final GroupCommitWriter groupCommitWriter;
+    private final NoteSearchIndex searchIndex;
+    private final NoteSearchCache<List<NoteSearchResult>> searchCache;
+    private final NoteSearchCache<Page<NoteSummary>> pageCache;
+    private final NoteCache noteCache;
 
     public NoteService(NotesDao notesDao, TransactionManager transactionManager) {
+        this(notesDao, transactionManager, null);
+    }
+
+    /**
+     * @param groupCommitWriter 非同期更新をまとめてコミットするライター（null の場合は同期的に書き込む）
+     */
+    public NoteService(NotesDao notesDao, TransactionManager transactionManager, GroupCommitWriter groupCommitWriter) {
+        this(notesDao, transactionManager, groupCommitWriter, null);
+    }
+
+    /**
+     * @param searchIndex 入力中の検索に使うメモリ上の索引（null の場合は常にデータベースで検索する）。
+     *                    このサービスを通した作成・更新・削除はコミット後に索引へ反映される。
+     */
+    public NoteService(NotesDao notesDao, TransactionManager transactionManager, GroupCommitWriter groupCommitWriter,
+                       NoteSearchIndex searchIndex) {
         this.notesDao = notesDao;
         this.transactionManager = transactionManager;
+        this.groupCommitWriter = groupCommitWriter;
+        this.searchIndex = searchIndex;
         this.config = AppConfig.getInstance();
+        int cacheSize = config.getSearchNotesCacheSize();
+        this.searchCache = cacheSize > 0 ? new NoteSearchCache<>(cacheSize) : null;
+        this.pageCache = cacheSize > 0 ? new NoteSearchCache<>(cacheSize) : null;
+        long noteCacheBytes = config.getNotesCacheMaxBytes();
+        this.noteCache = noteCacheBytes > 0 ? new NoteCache(noteCacheBytes) : null;
     }
 
     /**
@@ -65,6 +104,232 @@ public class NoteService {
         });
     }
 
+    /**
+     * 入力中の検索の結果キャッシュ（無効な場合は null）
+     */
+    NoteSearchCache<List<NoteSearchResult>> getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * 一覧のページの結果キャッシュ（無効な場合は null）
+     */
+    NoteSearchCache<Page<NoteSummary>> getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * 一覧表示用に最近のメモを本文抜きで取得する（上限は ui.notes.list.max.items）
+     */
+    public List<NoteSummary> getRecentNoteSummaries() throws DataAccessException {
+        int limit = config.getNotesListMaxItems();
+        logger.debug("Getting recent note summaries with limit: {}", limit);
+        return transactionManager.executeInReadOnlyTransaction(() -> notesDao.listRecentSummaries(limit));
+    }
+
+    /**
+     * 一覧表示用にメモを検索し、本文抜きで返す。本文は選択時に {@link #getNote(long)} で取得する。
+     * @param query 検索クエリ（空の場合は最近のメモ）
+     */
+    public List<NoteSummary> searchNoteSummaries(String query) throws DataAccessException {
+        if (query == null || query.trim().isEmpty()) {
+            return getRecentNoteSummaries();
+        }
+        logger.debug("Searching note summaries with query: '{}'", query);
+        return transactionManager.executeInReadOnlyTransaction(
+                () -> notesDao.searchSummaries(query.trim(), config.getSearchNotesLimit()));
+    }
+
+    /**
+     * メモを関連度順（bm25）に検索し、上位 search.notes.ranked.limit 件を抜粋・ハイライト付きで返す。
+     * タイトルと本文の重みは search.notes.rank.title.weight / search.notes.rank.body.weight で調整する。
+     * @param query 検索クエリ（空の場合は空のリスト）
+     */
+    public List<NoteSearchResult> searchNotesRanked(String query) throws DataAccessException {
+        if (query == null || query.trim().isEmpty()) {
+            return List.of();
+        }
+        logger.debug("Ranked search for notes with query: '{}'", query);
+        return transactionManager.executeInReadOnlyTransaction(() -> notesDao.searchRanked(query.trim(),
+                config.getSearchNotesRankedLimit(),
+                config.getSearchNotesRankTitleWeight(),
+                config.getSearchNotesRankBodyWeight()));
+    }
+
+    /**
+     * 入力中の検索。メモリ上の索引が構築済みなら索引で答え（タイトル一致を優先し更新日時の新しい順）、
+     * 索引だけで一致を確定できない候補があればそれらだけを1回読んで確かめる。
+     * 索引が無い・構築中の場合は {@link #searchNotesRanked} と同じ結果を返す。
+     * <p>
+     * 結果はキャッシュされ、キャッシュ済みクエリの絞り込み（「会議」→「会議室」）は元の結果のメモだけを
+     * 読み直して答える（元の結果の順を保つ）。
+     */
+    public List<NoteSearchResult> quickSearch(String query) throws DataAccessException {
+        if (query == null || query.trim().isEmpty()) {
+            return List.of();
+        }
+        int limit = config.getSearchNotesRankedLimit();
+        if (searchCache == null) {
+            return searchUncached(query.trim(), limit).results();
+        }
+        NoteSearchCache.Key key = NoteSearchCache.key(query, null, limit);
+        List<NoteSearchResult> cached = searchCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = searchCache.generation();
+        long[] superset = searchCache.supersetIds(key);
+        NoteSearchIndex.SearchPage page;
+        if (superset != null) {
+            List<NoteSearchResult> refined = NoteSearchIndex.verify(superset, new String[]{key.query()}, limit,
+                    this::readNotes);
+            page = new NoteSearchIndex.SearchPage(refined, refined.size() < limit);
+        } else {
+            page = searchUncached(key.query(), limit);
+        }
+        List<NoteSearchResult> results = List.copyOf(page.results());
+        searchCache.put(key, results, ids(results, NoteSearchResult::id), page.complete(), generation);
+        return results;
+    }
+
+    // The index answers most queries from memory; only candidates it cannot confirm are read, in one query
+    private NoteSearchIndex.SearchPage searchUncached(String query, int limit) throws DataAccessException {
+        if (searchIndex != null && searchIndex.isReady()) {
+            return searchIndex.searchPage(query, limit, this::readNotes);
+        }
+        List<NoteSearchResult> results = searchNotesRanked(query);
+        return new NoteSearchIndex.SearchPage(results, results.size() < limit);
+    }
+
+    private List<Note> readNotes(List<Long> ids) throws DataAccessException {
+        return transactionManager.executeInReadOnlyTransaction(() -> notesDao.listByIds(ids));
+    }
+
+    /**
+     * メモリ上の検索索引を全メモから作り直す（起動時に呼ぶ。索引が無い場合は何もしない）
+     */
+    public void rebuildSearchIndex() throws DataAccessException {
+        if (searchIndex == null) {
+            return;
+        }
+        searchIndex.rebuild((afterId, limit) ->
+                transactionManager.executeInReadOnlyTransaction(() -> notesDao.listAfterId(afterId, limit)));
+    }
+
+    /**
+     * メモの一覧（クエリ指定時は検索結果）をキーセット方式で1ページ取得する。
+     * 更新日時の新しい順で、ページ間に更新があっても重複・欠落なく続きから読める。
+     * @param query 検索クエリ（空の場合は最近のメモ）
+     * @param pageToken 前のページの継続トークン（先頭ページは null）
+     * @param pageSize 1ページの件数（0以下で ui.notes.page.size）
+     * @throws IllegalArgumentException 継続トークンが不正な場合
+     */
+    public Page<NoteSummary> getNoteSummaryPage(String query, String pageToken, int pageSize) throws DataAccessException {
+        int size = pageSize > 0 ? pageSize : config.getNotesPageSize();
+        String q = query != null ? query.trim() : "";
+        // The first search page plans the strategy (FTS / trigram / LIKE); the token pins it for the following pages
+        char kind = pageToken != null ? PageTokens.kindOf(pageToken) : q.isEmpty() ? PageTokens.RECENT_NOTES : 0;
+        KeysetCursor after = pageToken != null ? PageTokens.decode(pageToken, kind) : null;
+        if ((kind == PageTokens.RECENT_NOTES) != q.isEmpty()) {
+            throw new IllegalArgumentException("Page token does not match the query");
+        }
+        SearchStrategy pinned = pageToken != null && !q.isEmpty() ? PageTokens.searchStrategy(kind) : null;
+        logger.debug("Getting note summary page: query='{}', kind={}, size={}", q, kind, size);
+        if (pageCache == null) {
+            return loadSummaryPage(q, after, pinned, size);
+        }
+        NoteSearchCache.Key key = NoteSearchCache.key(q, pageToken, size);
+        Page<NoteSummary> cached = pageCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = pageCache.generation();
+        long[] superset = pageCache.supersetIds(key);
+        Page<NoteSummary> page = superset != null ? refinePage(superset, q, size) : null;
+        if (page == null) {
+            page = loadSummaryPage(q, after, pinned, size);
+        }
+        pageCache.put(key, page, ids(page.items(), NoteSummary::id), !page.hasMore(), generation);
+        return page;
+    }
+
+    private Page<NoteSummary> loadSummaryPage(String q, KeysetCursor after, SearchStrategy pinned, int size)
+            throws DataAccessException {
+        return transactionManager.executeInReadOnlyTransaction(() -> {
+            if (q.isEmpty()) {
+                return toPage(notesDao.pageRecentSummaries(after, size + 1), size, PageTokens.RECENT_NOTES);
+            }
+            SearchStrategy strategy = pinned != null ? pinned : notesDao.planSearch(q);
+            return toPage(notesDao.pageSearchSummaries(strategy, q, after, size + 1), size,
+                    PageTokens.searchKind(strategy));
+        });
+    }
+
+    // The superset is a complete first page in (updated_at DESC, id ASC) order, so its matching notes are
+    // the refined first page in the same order; null if they no longer fit in one page
+    private Page<NoteSummary> refinePage(long[] superset, String q, int size) throws DataAccessException {
+        List<Long> ids = new ArrayList<>(superset.length);
+        for (long id : superset) {
+            ids.add(id);
+        }
+        Map<Long, Note> byId = new HashMap<>();
+        for (Note note : transactionManager.executeInReadOnlyTransaction(() -> notesDao.listByIds(ids))) {
+            byId.put(note.getId(), note);
+        }
+        List<NoteSummary> rows = new ArrayList<>();
+        for (long id : superset) {
+            Note note = byId.get(id);
+            if (note != null && NoteSearchCache.matches(note, q)) {
+                rows.add(NoteSummary.of(note));
+            }
+        }
+        return rows.size() <= size ? new Page<>(rows, null) : null;
+    }
+
+    private static <T> long[] ids(List<T> items, ToLongFunction<T> id) {
+        long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = id.applyAsLong(items.get(i));
+        }
+        return ids;
+    }
+
+    private static Page<NoteSummary> toPage(List<NoteSummary> rows, int size, char kind) {
+        if (rows.size() <= size) {
+            return new Page<>(rows, null);
+        }
+        List<NoteSummary> items = rows.subList(0, size);
+        NoteSummary last = items.get(size - 1);
+        return new Page<>(items, PageTokens.encode(kind, new KeysetCursor(last.updatedAt(), last.id())));
+    }
+
+    /**
+     * メモを1件取得する。キャッシュにあればデータベースに問い合わせない。
+     * @return メモ（存在しない場合は null）
+     */
+    public Note getNote(long noteId) throws DataAccessException {
+        if (noteCache == null) {
+            return transactionManager.executeInReadOnlyTransaction(() -> notesDao.getById(noteId));
+        }
+        Note cached = noteCache.get(noteId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = noteCache.generation();
+        Note loaded = transactionManager.executeInReadOnlyTransaction(() -> notesDao.getById(noteId));
+        if (loaded != null) {
+            noteCache.putLoaded(loaded, generation);
+        }
+        return loaded;
+    }
+
+    /**
+     * メモキャッシュの統計情報（無効な場合は null）
+     */
+    public NoteCacheStats getNoteCacheStats() {
+        return noteCache != null ? noteCache.getStats() : null;
+    }
+
     /**
      * 新しいメモを作成する
      * @param title タイトル
@@ -75,14 +340,11 @@ public class NoteService {
     public Note createNote(String title, String body) throws DataAccessException {
         logger.debug("Creating new note with title: '{}'", title);
         
-        return transactionManager.executeInTransaction(() -> {
+        Note created = transactionManager.executeInTransaction(() -> {
             Note note = new Note();
-            note.setTitle(title != null && !title.trim().isEmpty() ? title.trim() : "無題のメモ");
-            note.setBody(body != null ? body : "");
-            
-            long now = Instant.now().getEpochSecond();
-            note.setCreatedAt(now);
-            note.setUpdatedAt(now);
+            note.setTitle(title);
+            note.setBody(body);
+            prepareInsert(note, Instant.now().getEpochSecond());
             
             long id = notesDao.insert(note);
             note.setId(id);
@@ -90,36 +352,187 @@ public class NoteService {
             logger.info("Created new note with ID: {}", id);
             return note;
         });
+        afterWrite(created);
+        return created;
+    }
+
+    /**
+     * 複数のメモを1つのトランザクションで一括作成する（いずれかが失敗した場合はすべてロールバックされる）。
+     * 作成日時・更新日時が設定されていないメモには現在時刻を設定する。
+     * @param notes 作成するメモ（ID は挿入順に割り当てられ、各メモに設定される）
+     * @return 作成されたメモ（{@code notes} と同じ順）
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     */
+    public List<Note> createNotes(List<Note> notes) throws DataAccessException {
+        if (notes == null || notes.isEmpty()) {
+            return List.of();
+        }
+        logger.debug("Creating {} notes in one transaction", notes.size());
+
+        long now = Instant.now().getEpochSecond();
+        for (Note note : notes) {
+            prepareInsert(note, now);
+        }
+        transactionManager.executeInTransaction(() -> notesDao.insertAll(notes));
+        logger.info("Created {} notes", notes.size());
+        notes.forEach(this::afterWrite);
+        return notes;
+    }
+
+    /**
+     * インポート用にメモを一括作成する。{@link #createNotes} と異なり、作成したメモをキャッシュや
+     * 検索索引へ1件ずつ反映しない。インポートの最後に一度 {@link #refreshAfterImport} を呼ぶこと。
+     * @param notes 作成するメモ（ID は挿入順に割り当てられ、各メモに設定される）
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     */
+    public void importNotes(List<Note> notes) throws DataAccessException {
+        if (notes == null || notes.isEmpty()) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        for (Note note : notes) {
+            prepareInsert(note, now);
+        }
+        transactionManager.executeInTransaction(() -> notesDao.insertAll(notes));
+        logger.debug("Imported {} notes", notes.size());
+    }
+
+    /**
+     * {@link #importNotes} で取り込んだメモを検索に反映する。検索結果キャッシュをまとめて破棄し、
+     * 検索索引があれば作り直す。取り込んだメモは新しい ID なので、メモのキャッシュには影響しない。
+     */
+    public void refreshAfterImport() throws DataAccessException {
+        if (searchCache != null) {
+            searchCache.clear();
+            pageCache.clear();
+        }
+        rebuildSearchIndex();
+    }
+
+    private static void prepareInsert(Note note, long now) {
+        note.setTitle(note.getTitle() != null && !note.getTitle().trim().isEmpty() ? note.getTitle().trim() : "無題のメモ");
+        note.setBody(note.getBody() != null ? note.getBody() : "");
+        if (note.getCreatedAt() <= 0) {
+            note.setCreatedAt(now);
+        }
+        if (note.getUpdatedAt() <= 0) {
+            note.setUpdatedAt(note.getCreatedAt());
+        }
     }
 
     /**
      * メモを更新する
      * @param note 更新するメモ
+     * @return 書き込み後に保存されている内容（{@code UPDATE ... RETURNING} の行。{@code note} とは別のオブジェクト）。読み直す必要はない
      * @throws DataAccessException データアクセスエラーが発生した場合
      */
-    public void updateNote(Note note) throws DataAccessException {
+    public Note updateNote(Note note) throws DataAccessException {
         if (note == null || note.getId() <= 0) {
             throw new IllegalArgumentException("Note and note ID must not be null or invalid");
         }
         
         logger.debug("Updating note ID: {}", note.getId());
         
-        transactionManager.executeInTransaction(() -> {
-            // タイトルが空の場合はデフォルトタイトルを設定
-            if (note.getTitle() == null || note.getTitle().trim().isEmpty()) {
-                note.setTitle("無題のメモ");
+        Note stored = transactionManager.executeInTransaction(() -> applyUpdate(note));
+        afterWrite(stored);
+        return stored;
+    }
+
+    /**
+     * メモを非同期に更新する。グループコミットが有効な場合は他の更新と同じトランザクションでコミットされる。
+     * @param note 更新するメモ
+     * @return コミット後に更新済みのメモで完了する Future
+     */
+    public CompletableFuture<Note> updateNoteAsync(Note note) {
+        if (note == null || note.getId() <= 0) {
+            throw new IllegalArgumentException("Note and note ID must not be null or invalid");
+        }
+        if (groupCommitWriter == null) {
+            try {
+                return CompletableFuture.completedFuture(updateNote(note));
+            } catch (DataAccessException e) {
+                return CompletableFuture.failedFuture(e);
             }
-            
-            long previous = note.getUpdatedAt();
-            long now = Instant.now().getEpochSecond();
-            if (previous >= now) {
-                now = previous + 1;
+        }
+        logger.debug("Queueing note update ID: {}", note.getId());
+        return groupCommitWriter.submit(() -> applyUpdate(note)).thenApply(updated -> {
+            afterWrite(updated);
+            return updated;
+        });
+    }
+
+    /**
+     * 複数のメモを1つのトランザクションで更新する（いずれかが失敗した場合はすべてロールバックされる）
+     * @param notes 更新するメモ
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     */
+    public void updateNotes(List<Note> notes) throws DataAccessException {
+        if (notes == null || notes.isEmpty()) {
+            return;
+        }
+        for (Note note : notes) {
+            if (note == null || note.getId() <= 0) {
+                throw new IllegalArgumentException("Note and note ID must not be null or invalid");
             }
-            note.setUpdatedAt(now);
-            
-            notesDao.update(note);
-            logger.info("Updated note ID: {}", note.getId());
+        }
+
+        logger.debug("Updating {} notes in one transaction", notes.size());
+
+        transactionManager.executeInTransaction(() -> {
+            for (Note note : notes) {
+                prepareUpdate(note);
+            }
+            notesDao.updateAll(notes);
         });
+        logger.info("Updated {} notes", notes.size());
+        notes.forEach(this::afterWrite);
+    }
+
+    /**
+     * {@link #prepareUpdate} 済みのメモを、更新日時を変えずに1つのトランザクションで書き込む
+     * （書き込み層が再試行しても更新日時が進まないように）
+     */
+    void writePreparedUpdates(List<Note> notes) throws DataAccessException {
+        transactionManager.executeInTransaction(() -> notesDao.updateAll(notes));
+        logger.info("Updated {} notes", notes.size());
+        notes.forEach(this::afterWrite);
+    }
+
+    // Called after commit, so the index and the caches never show a write that was rolled back
+    private void afterWrite(Note note) {
+        if (noteCache != null) {
+            noteCache.put(note);
+        }
+        if (searchIndex != null) {
+            searchIndex.put(note);
+        }
+        if (searchCache != null) {
+            searchCache.invalidate(note);
+            pageCache.invalidate(note);
+        }
+    }
+
+    // Returns the row as stored (created_at included), not the caller's object
+    private Note applyUpdate(Note note) throws DataAccessException {
+        prepareUpdate(note);
+        Note stored = notesDao.update(note);
+        logger.info("Updated note ID: {}", note.getId());
+        return stored;
+    }
+
+    // Fills the default title and moves updatedAt forward (strictly past the previous value)
+    static void prepareUpdate(Note note) {
+        // タイトルが空の場合はデフォルトタイトルを設定
+        if (note.getTitle() == null || note.getTitle().trim().isEmpty()) {
+            note.setTitle("無題のメモ");
+        }
+        
+        long previous = note.getUpdatedAt();
+        long now = Instant.now().getEpochSecond();
+        if (previous >= now) {
+            now = previous + 1;
+        }
+        note.setUpdatedAt(now);
     }
 
     /**
@@ -134,6 +547,38 @@ public class NoteService {
             notesDao.delete(noteId);
             logger.info("Deleted note ID: {}", noteId);
         });
+        afterDelete(noteId);
+    }
+
+    private void afterDelete(long noteId) {
+        if (searchIndex != null) {
+            searchIndex.remove(noteId);
+        }
+        if (searchCache != null) {
+            searchCache.invalidate(noteId);
+            pageCache.invalidate(noteId);
+        }
+        if (noteCache != null) {
+            noteCache.remove(noteId);
+        }
+    }
+
+    /**
+     * 複数のメモを1つのトランザクションで一括削除する（いずれかが見つからない場合はすべてロールバックされる）
+     * @param noteIds 削除するメモのID
+     * @throws DataAccessException データアクセスエラーが発生した場合
+     */
+    public void deleteNotes(List<Long> noteIds) throws DataAccessException {
+        if (noteIds == null || noteIds.isEmpty()) {
+            return;
+        }
+        logger.debug("Deleting {} notes in one transaction", noteIds.size());
+
+        transactionManager.executeInTransaction(() -> notesDao.deleteAll(noteIds));
+        logger.info("Deleted {} notes", noteIds.size());
+        for (long noteId : noteIds) {
+            afterDelete(noteId);
+        }
     }
 
     /**
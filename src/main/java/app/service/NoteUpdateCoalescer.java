@@ -0,0 +1,229 @@
+package app.service;
+
+import app.exception.DataAccessException;
+import app.model.Note;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同じメモへの連続した更新をまとめる書き込み層。
+ * <p>
+ * {@link NoteService#updateNote} の前段に置き、ウィンドウ内に同じIDへ複数の更新が来た場合は
+ * 最新の内容だけを書き込む（FTS トリガーによる削除・再挿入の回数を減らす）。
+ * 保留中の更新はウィンドウ経過後に1つのトランザクションでまとめて書き込まれる。
+ * 上書きされた更新の Future も、最新内容の書き込みがコミットされた時点で完了する。
+ * 更新日時は受け付け時に一度だけ決め、書き込みを再試行しても同じ日時で書き込む。
+ * そのため {@link #getPending} の内容は、そのまま書き込まれる内容（保存後の状態）として表示に使える。
+ * {@link #flush()} と {@link #close()} は保留中の更新をすべて書き込んでから戻る。
+ */
+public class NoteUpdateCoalescer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(NoteUpdateCoalescer.class);
+
+    private final NoteService noteService;
+    private final long windowMs;
+    private final Map<Long, PendingUpdate> pending = new LinkedHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed = false;
+
+    public NoteUpdateCoalescer(NoteService noteService, long windowMs) {
+        this.noteService = noteService;
+        this.windowMs = Math.max(1, windowMs);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hiyori-note-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 更新を保留キューに入れる。同じIDの保留中の更新があれば内容を置き換える。
+     * @param note 更新するメモ（複製して保留するため、呼び出し後に変更してもよい）
+     * @return 書き込みコミット後に保存済みのメモで完了する Future（書き込み前にメモが削除された場合は
+     *         DataAccessException で失敗する）
+     */
+    public CompletableFuture<Note> submit(Note note) {
+        if (note == null || note.getId() <= 0) {
+            throw new IllegalArgumentException("Note and note ID must not be null or invalid");
+        }
+        Note stamped = NoteCache.copyOf(note);
+        NoteService.prepareUpdate(stamped);
+        CompletableFuture<Note> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new DataAccessException("メモの書き込みキューは停止しています"));
+                return future;
+            }
+            submittedCount.incrementAndGet();
+            PendingUpdate existing = pending.get(note.getId());
+            if (existing != null) {
+                existing.note = stamped;
+                existing.waiters.add(future);
+            } else {
+                pending.put(note.getId(), new PendingUpdate(stamped, future));
+            }
+            if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flushQuietly, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 書き込み待ちの最新内容（更新日時を設定済み）を返す（無ければ null）
+     */
+    public synchronized Note getPending(long noteId) {
+        PendingUpdate update = pending.get(noteId);
+        return update != null ? update.note : null;
+    }
+
+    /**
+     * 保留中の更新を破棄する（メモ削除時）。待機中の Future は、メモが削除されたことを示す
+     * DataAccessException で失敗する（書き込まれなかった更新が保存済みに見えないように）。
+     */
+    public void discard(long noteId) {
+        PendingUpdate removed;
+        synchronized (this) {
+            removed = pending.remove(noteId);
+        }
+        if (removed != null) {
+            logger.debug("Discarded pending update for deleted note ID: {}", noteId);
+            DataAccessException deleted = new DataAccessException(
+                    "メモが削除されたため、更新は書き込まれませんでした (ID: " + noteId + ")");
+            removed.waiters.forEach(f -> f.completeExceptionally(deleted));
+        }
+    }
+
+    /**
+     * 保留中の更新をすべて書き込む
+     * @throws DataAccessException いずれかの書き込みに失敗した場合（他の書き込みは継続される）
+     */
+    public void flush() throws DataAccessException {
+        flushLock.lock();
+        try {
+            List<PendingUpdate> batch;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            List<Note> notes = new ArrayList<>(batch.size());
+            for (PendingUpdate update : batch) {
+                notes.add(update.note);
+            }
+            DataAccessException failure = null;
+            try {
+                noteService.writePreparedUpdates(notes);
+                for (PendingUpdate update : batch) {
+                    update.completeAll();
+                }
+                writtenCount.addAndGet(batch.size());
+            } catch (DataAccessException | RuntimeException batchError) {
+                // One bad note (e.g. deleted meanwhile) must not lose the others: retry one by one
+                logger.warn("Coalesced batch of {} note updates failed, retrying individually: {}",
+                        batch.size(), batchError.getMessage());
+                for (PendingUpdate update : batch) {
+                    try {
+                        // Same updatedAt as the failed batch: a retry must not move the edit's timestamp
+                        noteService.writePreparedUpdates(List.of(update.note));
+                        writtenCount.incrementAndGet();
+                        update.completeAll();
+                    } catch (DataAccessException | RuntimeException e) {
+                        logger.warn("Failed to write coalesced update for note ID: {}", update.note.getId(), e);
+                        update.waiters.forEach(f -> f.completeExceptionally(e));
+                        if (failure == null) {
+                            failure = new DataAccessException(
+                                    "メモの書き込みに失敗しました (ID: " + update.note.getId() + ")", e);
+                        }
+                    }
+                }
+            }
+            logger.debug("Flushed {} coalesced note updates", batch.size());
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 受け付けた更新数
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * 実際に書き込んだ更新数
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * 新規受付を止め、保留中の更新をすべて書き込んでから停止する
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            logger.error("Failed to flush pending note updates on shutdown", e);
+        } finally {
+            scheduler.shutdownNow();
+        }
+        logger.info("Note update coalescer stopped ({} submitted, {} written)",
+                submittedCount.get(), writtenCount.get());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            logger.warn("Scheduled flush of note updates failed: {}", e.getMessage());
+        }
+    }
+
+    private static final class PendingUpdate {
+        Note note;
+        final List<CompletableFuture<Note>> waiters = new ArrayList<>(2);
+
+        PendingUpdate(Note note, CompletableFuture<Note> first) {
+            this.note = note;
+            this.waiters.add(first);
+        }
+
+        void completeAll() {
+            waiters.forEach(f -> f.complete(note));
+        }
+    }
+}
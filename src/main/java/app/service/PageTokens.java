@@ -0,0 +1,79 @@
+package app.service;
+
+import app.db.KeysetCursor;
+import app.db.SearchStrategy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * ページ継続トークンの符号化。
+ * トークンは不透明な文字列として扱い、呼び出し側は中身に依存しないこと。
+ */
+final class PageTokens {
+    static final char RECENT_NOTES = 'r';
+    static final char NOTES_FTS = 'f';
+    static final char NOTES_TRIGRAM = 't';
+    static final char NOTES_LIKE = 'l';
+    static final char EVENTS = 'e';
+
+    private PageTokens() {
+    }
+
+    static String encode(char kind, KeysetCursor cursor) {
+        String raw = kind + ":" + cursor.sortKey() + ":" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static char searchKind(SearchStrategy strategy) {
+        return switch (strategy) {
+            case FTS -> NOTES_FTS;
+            case TRIGRAM -> NOTES_TRIGRAM;
+            case LIKE -> NOTES_LIKE;
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException 検索用のトークン種別でない場合
+     */
+    static SearchStrategy searchStrategy(char kind) {
+        return switch (kind) {
+            case NOTES_FTS -> SearchStrategy.FTS;
+            case NOTES_TRIGRAM -> SearchStrategy.TRIGRAM;
+            case NOTES_LIKE -> SearchStrategy.LIKE;
+            default -> throw new IllegalArgumentException("Invalid page token");
+        };
+    }
+
+    static char kindOf(String token) {
+        return decodeRaw(token).charAt(0);
+    }
+
+    /**
+     * @throws IllegalArgumentException トークンが不正な場合、または種類が一致しない場合
+     */
+    static KeysetCursor decode(String token, char expectedKind) {
+        String raw = decodeRaw(token);
+        String[] parts = raw.split(":");
+        if (parts.length != 3 || parts[0].length() != 1 || parts[0].charAt(0) != expectedKind) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        try {
+            return new KeysetCursor(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token", e);
+        }
+    }
+
+    private static String decodeRaw(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            if (raw.isEmpty()) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+            return raw;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token", e);
+        }
+    }
+}
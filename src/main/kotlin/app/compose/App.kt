@@ -66,7 +66,13 @@ fun main() = application {
     var screen by remember { mutableStateOf(Screen.Home) }
 
     log.info("Starting Hiyori (Compose Desktop)…")
-    Window(onCloseRequest = ::exitApplication, title = "Hiyori (Compose)") {
+    Window(
+        onCloseRequest = {
+            BackendRegistry.shutdown()
+            exitApplication()
+        },
+        title = "Hiyori (Compose)"
+    ) {
         when (screen) {
             Screen.Home -> RootScreen(
                 dbPath = dbPath,
@@ -0,0 +1,105 @@
+package app.compose
+
+import app.config.AppConfig
+import app.db.Database
+import app.db.EventsDao
+import app.db.GroupCommitWriter
+import app.db.NotesDao
+import app.db.TransactionManager
+import app.service.EventService
+import app.service.ExportService
+import app.service.ImportService
+import app.service.NoteSearchIndex
+import app.service.NoteService
+import app.service.NoteUpdateCoalescer
+import org.slf4j.LoggerFactory
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.concurrent.thread
+
+/**
+ * Process-wide owner of the Java data layer.
+ *
+ * NoteBackend and EventBackend share one connection pool and one TransactionManager,
+ * so all writers are serialized by the same lock instead of colliding on busy_timeout.
+ */
+object BackendRegistry {
+    private val log = LoggerFactory.getLogger("BackendRegistry")
+    private val shutdownDone = AtomicBoolean(false)
+
+    val config: AppConfig by lazy { AppConfig.getInstance() }
+
+    private val databaseLazy = lazy {
+        val path = config.databasePath
+        log.info("Initializing Database at {}", path)
+        val db = Database(path).also { it.initialize() }
+        Runtime.getRuntime().addShutdownHook(Thread({ shutdown() }, "hiyori-backend-shutdown"))
+        db
+    }
+    val database: Database by databaseLazy
+
+    private val transactionManagerLazy = lazy { TransactionManager(database) }
+    val transactionManager: TransactionManager by transactionManagerLazy
+    val notesDao: NotesDao by lazy { NotesDao(database, transactionManager) }
+    val eventsDao: EventsDao by lazy { EventsDao(database, transactionManager) }
+
+    // Opt-in (database.group.commit.enabled): async updates share one transaction per batch
+    private val groupCommitWriterLazy = lazy {
+        if (config.isGroupCommitEnabled) GroupCommitWriter.fromConfig(transactionManager, config) else null
+    }
+    val groupCommitWriter: GroupCommitWriter? by groupCommitWriterLazy
+
+    // search.notes.memory.index.enabled: as-you-type search is answered from memory once the index is built
+    val noteSearchIndex: NoteSearchIndex? by lazy {
+        if (config.isSearchNotesMemoryIndexEnabled) NoteSearchIndex() else null
+    }
+
+    val noteService: NoteService by lazy {
+        NoteService(notesDao, transactionManager, groupCommitWriter, noteSearchIndex).also { svc ->
+            if (noteSearchIndex != null) {
+                // Built off the UI thread; searches use SQLite until it is ready
+                thread(name = "hiyori-search-index", isDaemon = true) {
+                    runCatching { svc.rebuildSearchIndex() }
+                        .onFailure { log.warn("Failed to build in-memory search index: {}", it.message) }
+                }
+            }
+        }
+    }
+    val eventService: EventService by lazy { EventService(eventsDao, transactionManager, groupCommitWriter) }
+
+    // Markdown folders, ICS and JSON dumps; run it off the UI thread (it blocks until the import is written)
+    val importService: ImportService by lazy { ImportService(noteService, eventService, notesDao) }
+
+    // JSON Lines / Markdown / ICS exports and online backups; reads one snapshot and never blocks writers
+    val exportService: ExportService by lazy { ExportService(notesDao, eventsDao, transactionManager, database) }
+
+    // autosave.coalesce.window.ms > 0: repeated autosaves of one note are written once per window
+    private val noteUpdateCoalescerLazy = lazy {
+        val windowMs = config.autosaveCoalesceWindowMs
+        if (windowMs > 0) NoteUpdateCoalescer(noteService, windowMs.toLong()) else null
+    }
+    val noteUpdateCoalescer: NoteUpdateCoalescer? by noteUpdateCoalescerLazy
+
+    /**
+     * Closes the pool (runs the WAL checkpoint in Database.close()). Safe to call more than once.
+     */
+    fun shutdown() {
+        if (!databaseLazy.isInitialized() || !shutdownDone.compareAndSet(false, true)) return
+        log.info("Shutting down backend")
+        if (noteUpdateCoalescerLazy.isInitialized()) {
+            // Writes edits still waiting in the coalesce window
+            runCatching { noteUpdateCoalescer?.close() }
+                .onFailure { log.warn("Failed to flush pending note updates: {}", it.message) }
+        }
+        if (groupCommitWriterLazy.isInitialized()) {
+            // Drains queued writes before the writer connection goes away
+            runCatching { groupCommitWriter?.close() }
+                .onFailure { log.warn("Failed to stop group commit writer: {}", it.message) }
+        }
+        if (transactionManagerLazy.isInitialized()) {
+            runCatching { transactionManager.close() }
+                .onFailure { log.warn("Failed to close writer connection: {}", it.message) }
+        }
+        runCatching { database.close() }
+            .onFailure { log.warn("Failed to close database: {}", it.message) }
+    }
+}
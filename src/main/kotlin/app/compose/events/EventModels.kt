@@ -50,6 +50,27 @@ data class WeekRange(
         get() = (0..6).map { start.plusDays(it.toLong()) }
     
     fun contains(date: LocalDate): Boolean = !date.isBefore(start) && !date.isAfter(end)
+
+    // [startEpochSec, endEpochSec): Monday 00:00 to the following Monday 00:00 in the system zone
+    val startEpochSec: Long
+        get() = start.atStartOfDay(ZoneId.systemDefault()).toEpochSecond()
+
+    val endEpochSec: Long
+        get() = end.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toEpochSecond()
+
+    fun overlaps(event: EventUi): Boolean = event.endEpochSec > startEpochSec && event.startEpochSec < endEpochSec
+}
+
+/**
+ * 作成・更新された予定を週の一覧へ反映する（週から外れた場合は取り除く）
+ */
+fun List<EventUi>.withEvent(event: EventUi, week: WeekRange): List<EventUi> {
+    val others = filter { it.id != event.id }
+    return if (week.overlaps(event)) {
+        (others + event).sortedWith(compareBy<EventUi>({ it.startEpochSec }, { it.id }))
+    } else {
+        others
+    }
 }
 
 /**
@@ -1,17 +1,17 @@
 package app.compose.events
 
-import app.config.AppConfig
-import app.db.Database
+import app.compose.BackendRegistry
 import app.db.EventsDao
-import app.db.TransactionManager
+import app.db.QueryScope
 import app.exception.DataAccessException
 import app.service.EventService
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asExecutor
+import kotlinx.coroutines.future.await
 import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
 import java.time.LocalDate
 import java.time.LocalDateTime
-import java.time.ZoneId
 
 /**
  * Kotlin-friendly bridge over existing Java EventService/DAO/DB layer.
@@ -19,42 +19,45 @@ import java.time.ZoneId
 object EventBackend {
     private val log = LoggerFactory.getLogger("EventBackend")
 
-    // Lazy singletons – reuse across the app lifetime
-    private val config: AppConfig by lazy { AppConfig.getInstance() }
-    private val database: Database by lazy {
-        val path = config.databasePath
-        log.info("Initializing Database at {}", path)
-        Database(path).also { it.initialize() }
-    }
-    private val tx: TransactionManager by lazy { TransactionManager(database) }
-    private val dao: EventsDao by lazy { EventsDao(database, tx) }
-    private val svc: EventService by lazy { EventService(dao, tx) }
-
-    suspend fun getEventsForWeek(weekRange: WeekRange): List<EventUi> = io {
-        val startOfDay = weekRange.start.atStartOfDay(ZoneId.systemDefault())
-        val endOfDay = weekRange.end.plusDays(1).atStartOfDay(ZoneId.systemDefault())
-        
-        val startEpochSec = startOfDay.toEpochSecond()
-        val endEpochSec = endOfDay.toEpochSecond()
-        
-        svc.getEventsBetween(startEpochSec, endEpochSec).map { it.toUi() }
+    // Shared pool / transaction manager / services owned by BackendRegistry
+    private val dao: EventsDao get() = BackendRegistry.eventsDao
+    private val svc: EventService get() = BackendRegistry.eventService
+
+    // Served from EventService's week cache when the week was loaded or prefetched before;
+    // the previous and next weeks are then prefetched in the background so flipping weeks skips the DB
+    suspend fun getEventsForWeek(weekRange: WeekRange): List<EventUi> = cancellable {
+        val events = svc.getEventsBetween(weekRange.startEpochSec, weekRange.endEpochSec).map { it.toUi() }
+        listOf(weekRange.start.minusWeeks(1), weekRange.start.plusWeeks(1)).forEach { day ->
+            val adjacent = getWeekRange(day)
+            svc.prefetchEventsBetween(adjacent.startEpochSec, adjacent.endEpochSec)
+        }
+        events
     }
 
     suspend fun create(title: String, startEpochSec: Long, endEpochSec: Long): EventUi = io {
         svc.createEvent(title, startEpochSec, endEpochSec).toUi()
     }
 
-    suspend fun update(event: EventUi): EventUi = io {
+    suspend fun update(event: EventUi): EventUi {
         val j = event.toJava()
-        svc.updateEvent(j)
+        // Completes after commit; with group commit enabled drag steps share a transaction
+        io { svc.updateEventAsync(j) }.await()
         // Return updated event (could fetch from DB for timestamps, but not necessary here)
-        event
+        return event
     }
 
     suspend fun delete(id: Long) = io {
         svc.deleteEvent(id)
     }
 
+    // Reads run in a QueryScope: when the screen moves on before the week is loaded, cancelling the
+    // coroutine interrupts the running SQLite statement and returns its pooled connection right away
+    private suspend fun <T> cancellable(block: () -> T): T = try {
+        QueryScope.supplyAsync({ block() }, Dispatchers.IO.asExecutor()).await()
+    } catch (e: DataAccessException) {
+        throw RuntimeException(e)
+    }
+
     private suspend fun <T> io(block: () -> T): T = try {
         withContext(Dispatchers.IO) { block() }
     } catch (e: DataAccessException) {
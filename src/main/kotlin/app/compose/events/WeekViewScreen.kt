@@ -42,7 +42,7 @@ fun WeekViewScreen(
     var selectedEvent by remember { mutableStateOf<EventUi?>(null) }
     var showEditDialog by remember { mutableStateOf(false) }
     
-    // Load events for the current week
+    // Load events for the current week (from EventService's week cache after the first visit)
     fun loadEvents() {
         scope.launch {
             runCatching { EventBackend.getEventsForWeek(currentWeek) }
@@ -51,6 +51,11 @@ fun WeekViewScreen(
         }
     }
     
+    // Mutations are applied to the list in place; loadEvents() only runs when the week changes
+    fun applyEvent(event: EventUi) {
+        events = events.withEvent(event, currentWeek)
+    }
+    
     // Initial load
     LaunchedEffect(currentWeek) {
         loadEvents()
@@ -90,7 +95,7 @@ fun WeekViewScreen(
                         runCatching {
                             EventBackend.create("新しい予定", startEpochSec, endEpochSec)
                         }
-                            .onSuccess { loadEvents() }
+                            .onSuccess { applyEvent(it) }
                             .onFailure { log.warn("Failed to create event: {}", it.message) }
                     }
                 }) {
@@ -126,7 +131,7 @@ fun WeekViewScreen(
                         )
                         
                         runCatching { EventBackend.update(updatedEvent) }
-                            .onSuccess { loadEvents() }
+                            .onSuccess { applyEvent(it) }
                             .onFailure { log.warn("Failed to update event: {}", it.message) }
                     }
                 },
@@ -140,7 +145,7 @@ fun WeekViewScreen(
                         )
                         
                         runCatching { EventBackend.update(updatedEvent) }
-                            .onSuccess { loadEvents() }
+                            .onSuccess { applyEvent(it) }
                             .onFailure { log.warn("Failed to resize event: {}", it.message) }
                     }
                 }
@@ -158,17 +163,18 @@ fun WeekViewScreen(
                     runCatching { EventBackend.update(updated) }
                         .onSuccess {
                             showEditDialog = false
-                            loadEvents()
+                            applyEvent(it)
                         }
                         .onFailure { log.warn("Failed to update event: {}", it.message) }
                 }
             },
             onDelete = {
                 scope.launch {
-                    runCatching { EventBackend.delete(selectedEvent!!.id) }
+                    val deletedId = selectedEvent!!.id
+                    runCatching { EventBackend.delete(deletedId) }
                         .onSuccess {
                             showEditDialog = false
-                            loadEvents()
+                            events = events.filter { it.id != deletedId }
                         }
                         .onFailure { log.warn("Failed to delete event: {}", it.message) }
                 }
@@ -1,6 +1,8 @@
 package app.compose.notes
 
 import app.model.Note as JNote
+import app.model.NoteSearchResult
+import app.model.NoteSummary
 
 // Kotlin-side UI model for Note
 data class NoteUi(
@@ -26,3 +28,40 @@ fun NoteUi.toJava(): JNote = JNote().also {
     it.createdAt = createdAt
     it.updatedAt = updatedAt
 }
+
+// List row: title plus a short body snippet; the full body is loaded on selection
+// For search hits, title/snippet may carry NoteSearchResult.HIGHLIGHT_START/END markers around matches
+data class NoteSummaryUi(
+    val id: Long = 0L,
+    val title: String = "",
+    val snippet: String = "",
+    val updatedAt: Long = 0L,
+    val highlightedTitle: String? = null,
+)
+
+data class NotePageUi(
+    val items: List<NoteSummaryUi>,
+    val nextToken: String?,
+)
+
+fun NoteSummary.toUi(): NoteSummaryUi = NoteSummaryUi(
+    id = id(),
+    title = title() ?: "",
+    snippet = snippet() ?: "",
+    updatedAt = updatedAt()
+)
+
+fun NoteUi.toSummary(): NoteSummaryUi = NoteSummaryUi(
+    id = id,
+    title = title,
+    snippet = body.take(NoteSummary.SNIPPET_LENGTH),
+    updatedAt = updatedAt
+)
+
+fun NoteSearchResult.toUi(): NoteSummaryUi = NoteSummaryUi(
+    id = id(),
+    title = title() ?: "",
+    snippet = snippet() ?: "",
+    updatedAt = updatedAt(),
+    highlightedTitle = highlightedTitle()
+)
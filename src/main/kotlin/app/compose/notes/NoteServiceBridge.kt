@@ -1,12 +1,14 @@
 package app.compose.notes
 
-import app.config.AppConfig
-import app.db.Database
-import app.db.NotesDao
-import app.db.TransactionManager
+import app.compose.BackendRegistry
+import app.db.QueryScope
 import app.exception.DataAccessException
+import app.model.NoteSummary
 import app.service.NoteService
+import app.service.NoteUpdateCoalescer
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asExecutor
+import kotlinx.coroutines.future.await
 import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
 
@@ -16,46 +18,67 @@ import org.slf4j.LoggerFactory
 object NoteBackend {
     private val log = LoggerFactory.getLogger("NoteBackend")
 
-    // Lazy singletons – reuse across the app lifetime
-    private val config: AppConfig by lazy { AppConfig.getInstance() }
-    private val database: Database by lazy {
-        val path = config.databasePath
-        log.info("Initializing Database at {}", path)
-        Database(path).also { it.initialize() }
+    // Shared pool / transaction manager / services owned by BackendRegistry
+    private val svc: NoteService get() = BackendRegistry.noteService
+    private val coalescer: NoteUpdateCoalescer? get() = BackendRegistry.noteUpdateCoalescer
+
+    // Lists hold summaries only (no full body); use load() for the selected note.
+    // One keyset page of the list (or of search results when query is not blank); pass nextToken to continue
+    suspend fun page(query: String, token: String?): NotePageUi = cancellable {
+        val page = svc.getNoteSummaryPage(query, token, 0)
+        NotePageUi(page.items().map { withPending(it).toUi() }, page.nextPageToken())
     }
-    private val tx: TransactionManager by lazy { TransactionManager(database) }
-    private val dao: NotesDao by lazy { NotesDao(database, tx) }
-    private val svc: NoteService by lazy { NoteService(dao, tx) }
 
-    suspend fun listRecent(): List<NoteUi> = io {
-        svc.recentNotes.map { it.toUi() }
+    // Top-k hits with highlighted snippets; answered from the in-memory index when it is built (SQLite only for unconfirmed hits)
+    suspend fun search(query: String): List<NoteSummaryUi> = cancellable {
+        svc.quickSearch(query).map { hit ->
+            coalescer?.getPending(hit.id())?.let { NoteSummary.of(it).toUi() } ?: hit.toUi()
+        }
     }
 
-    suspend fun search(query: String): List<NoteUi> = io {
-        svc.searchNotes(query).map { it.toUi() }
+    suspend fun load(id: Long): NoteUi? = cancellable {
+        (coalescer?.getPending(id) ?: svc.getNote(id))?.toUi()
     }
 
     suspend fun create(title: String = "", body: String = ""): NoteUi = io {
         svc.createNote(title, body).toUi()
     }
 
-    suspend fun update(note: NoteUi): NoteUi = io {
+    suspend fun update(note: NoteUi): NoteUi {
         val j = note.toJava()
-        svc.updateNote(j)
-        // NoteService updates updatedAt internally; fetch the latest row to reflect timestamps
-        try {
-            // Use dao.getById for exact refresh
-            dao.getById(note.id)?.toUi() ?: note
-        } catch (e: DataAccessException) {
-            log.warn("Failed to refresh note {} after update: {}", note.id, e.message)
-            note
+        val pending = coalescer
+        if (pending != null) {
+            // Repeated saves of the same note within the coalesce window are written once. The pending copy
+            // already carries the updatedAt it will be written with, so the UI does not wait for the flush.
+            val written = pending.submit(j)
+            written.whenComplete { _, e ->
+                if (e != null) log.warn("Coalesced save of note {} was not written: {}", j.id, e.message)
+            }
+            val accepted = pending.getPending(j.id) ?: written.await()
+            return accepted.toUi()
         }
+        // Completes after commit with the stored note (updatedAt set by NoteService), so no re-read is needed;
+        // with group commit enabled the write shares a transaction with other updates.
+        return io { svc.updateNoteAsync(j) }.await().toUi()
     }
 
     suspend fun delete(id: Long) = io {
+        coalescer?.discard(id)
         svc.deleteNote(id)
     }
 
+    // Lists read from the DB may lag behind an edit still waiting in the coalesce window
+    private fun withPending(summary: NoteSummary): NoteSummary =
+        coalescer?.getPending(summary.id())?.let { NoteSummary.of(it) } ?: summary
+
+    // Reads run in a QueryScope: cancelling the coroutine (collectLatest on a newer keystroke) cancels the
+    // future, which interrupts the running SQLite statement and returns its pooled connection right away
+    private suspend fun <T> cancellable(block: () -> T): T = try {
+        QueryScope.supplyAsync({ block() }, Dispatchers.IO.asExecutor()).await()
+    } catch (e: DataAccessException) {
+        throw RuntimeException(e)
+    }
+
     private suspend fun <T> io(block: () -> T): T = try {
         withContext(Dispatchers.IO) { block() }
     } catch (e: DataAccessException) {
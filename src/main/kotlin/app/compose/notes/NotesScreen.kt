@@ -22,9 +22,16 @@ import androidx.compose.runtime.*
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.input.key.*
+import androidx.compose.ui.text.AnnotatedString
+import androidx.compose.ui.text.SpanStyle
 import androidx.compose.ui.text.TextStyle
+import androidx.compose.ui.text.buildAnnotatedString
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.withStyle
 import androidx.compose.ui.text.input.ImeAction
 import androidx.compose.ui.unit.dp
+import app.model.NoteSearchResult
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.collectLatest
@@ -42,8 +49,11 @@ fun NotesScreen(
     val scope = rememberCoroutineScope()
 
     var query by remember { mutableStateOf("") }
-    var notes by remember { mutableStateOf(listOf<NoteUi>()) }
+    var notes by remember { mutableStateOf(listOf<NoteSummaryUi>()) }
     var selectedId by remember { mutableStateOf<Long?>(null) }
+    // Continuation token for the next page of the current list (null when fully loaded)
+    var nextToken by remember { mutableStateOf<String?>(null) }
+    var loadingMore by remember { mutableStateOf(false) }
 
     // Editor state for the selected note
     var title by remember { mutableStateOf("") }
@@ -53,12 +63,31 @@ fun NotesScreen(
     // For debounced search and autosave
     val searchFlow = remember { MutableStateFlow("") }
     var saveJob by remember { mutableStateOf<Job?>(null) }
+    var loadJob by remember { mutableStateOf<Job?>(null) }
 
+    fun showInEditor(note: NoteUi?) {
+        current = note
+        title = note?.title ?: ""
+        body = note?.body ?: ""
+    }
+
+    // The list only holds summaries; the full body is loaded when a note is selected
     fun select(id: Long?) {
+        if (id != null && id == current?.id) {
+            selectedId = id
+            return
+        }
         selectedId = id
-        current = notes.firstOrNull { it.id == id }
-        title = current?.title ?: ""
-        body = current?.body ?: ""
+        loadJob?.cancel()
+        // Clear the editor while loading so autosave never writes one note's text into another
+        showInEditor(null)
+        if (id == null) return
+        loadJob = scope.launch {
+            val loaded = runCatching { NoteBackend.load(id) }
+                .onFailure { log.warn("Load failed: {}", it.message) }
+                .getOrNull()
+            if (selectedId == id) showInEditor(loaded)
+        }
     }
 
     fun newNote() {
@@ -67,9 +96,11 @@ fun NotesScreen(
                 log.warn("Create failed: {}", e.message)
                 return@launch
             }
-            // Prepend new note and select
-            notes = listOf(created) + notes
-            select(created.id)
+            // Prepend new note and select (already complete, no load needed)
+            notes = listOf(created.toSummary()) + notes
+            selectedId = created.id
+            loadJob?.cancel()
+            showInEditor(created)
         }
     }
 
@@ -82,17 +113,19 @@ fun NotesScreen(
                 .onFailure { log.warn("Save failed: {}", it.message) }
                 .getOrNull() ?: return@launch
             // Update list item
-            notes = notes.map { if (it.id == refreshed.id) refreshed else it }
-            current = refreshed
+            val summary = refreshed.toSummary()
+            notes = notes.map { if (it.id == refreshed.id) summary else it }
+            if (current?.id == refreshed.id) current = refreshed
         }
     }
 
-    // Initial load
+    // Initial load (first page only; more pages are fetched while scrolling)
     LaunchedEffect(Unit) {
-        runCatching { NoteBackend.listRecent() }
+        runCatching { NoteBackend.page("", null) }
             .onSuccess {
-                notes = it
-                if (it.isNotEmpty()) select(it.first().id)
+                notes = it.items
+                nextToken = it.nextToken
+                if (it.items.isNotEmpty()) select(it.items.first().id)
             }
             .onFailure { log.warn("Initial load failed: {}", it.message) }
     }
@@ -102,20 +135,22 @@ fun NotesScreen(
         searchFlow
             .debounce(200)
             .collectLatest { q ->
-                val list = runCatching {
-                    if (q.isBlank()) NoteBackend.listRecent() else NoteBackend.search(q)
+                // Blank query: paged recent list. Otherwise: ranked top-k hits (single page)
+                val page = runCatching {
+                    if (q.isBlank()) NoteBackend.page(q, null) else NotePageUi(NoteBackend.search(q), null)
                 }.getOrElse { e ->
+                    // Superseded by a newer query: the backend interrupted the statement, keep the current list
+                    if (e is CancellationException) throw e
                     log.warn("Search failed: {}", e.message)
-                    emptyList()
+                    NotePageUi(emptyList(), null)
                 }
+                val list = page.items
                 notes = list
-                // Keep selection if possible
+                nextToken = page.nextToken
+                // Keep selection (and the editor contents) if possible
                 if (selectedId == null || list.none { it.id == selectedId }) {
-                    selectedId = list.firstOrNull()?.id
+                    select(list.firstOrNull()?.id)
                 }
-                current = list.firstOrNull { it.id == selectedId }
-                title = current?.title ?: ""
-                body = current?.body ?: ""
             }
     }
 
@@ -166,13 +201,33 @@ fun NotesScreen(
         Row(Modifier.fillMaxSize()) {
             // List
             val listState = rememberLazyListState()
+            // Infinite scroll: fetch the next keyset page when the last rows become visible
+            LaunchedEffect(listState) {
+                snapshotFlow { (listState.layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: -1) to nextToken }
+                    .collect { (lastVisible, token) ->
+                        if (token == null || loadingMore || lastVisible < notes.size - 10) return@collect
+                        loadingMore = true
+                        val q = query
+                        runCatching { NoteBackend.page(q, token) }
+                            .onSuccess { page ->
+                                // Drop the page if the query changed while it was loading
+                                if (q == query && nextToken == token) {
+                                    val known = notes.mapTo(HashSet()) { it.id }
+                                    notes = notes + page.items.filter { it.id !in known }
+                                    nextToken = page.nextToken
+                                }
+                            }
+                            .onFailure { log.warn("Loading more notes failed: {}", it.message) }
+                        loadingMore = false
+                    }
+            }
             Surface(tonalElevation = 1.dp, modifier = Modifier.width(300.dp).fillMaxHeight()) {
                 Box(Modifier.fillMaxSize()) {
                     LazyColumn(state = listState, modifier = Modifier.fillMaxSize().padding(end = 8.dp)) {
                         items(notes, key = { it.id }) { n ->
                             ListItem(
-                                headlineContent = { Text(n.title.ifBlank { "無題のメモ" }) },
-                                supportingContent = { Text(n.body.take(80)) },
+                                headlineContent = { Text(highlighted(n.highlightedTitle ?: n.title.ifBlank { "無題のメモ" })) },
+                                supportingContent = { Text(highlighted(n.snippet)) },
                                 modifier = Modifier.fillMaxWidth()
                                     .padding(horizontal = 4.dp)
                                     .combinedClickable(
@@ -229,5 +284,24 @@ fun NotesScreen(
     }
 }
 
+// Renders search-hit markers (NoteSearchResult.HIGHLIGHT_START/END) as bold spans
+private fun highlighted(text: String): AnnotatedString = buildAnnotatedString {
+    var rest = text
+    while (rest.isNotEmpty()) {
+        val start = rest.indexOf(NoteSearchResult.HIGHLIGHT_START)
+        if (start < 0) {
+            append(rest)
+            break
+        }
+        append(rest.substring(0, start))
+        val end = rest.indexOf(NoteSearchResult.HIGHLIGHT_END, start + 1)
+        val stop = if (end < 0) rest.length else end
+        withStyle(SpanStyle(fontWeight = FontWeight.Bold)) {
+            append(rest.substring(start + 1, stop))
+        }
+        rest = if (end < 0) "" else rest.substring(end + 1)
+    }
+}
+
 private val KeyEvent.isCtrlOrMetaPressed: Boolean
     get() = (isCtrlPressed || isMetaPressed)
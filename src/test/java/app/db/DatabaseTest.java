@@ -1,15 +1,24 @@
 package app.db;
 
+import app.config.AppConfig;
 import app.exception.DatabaseException;
 import org.junit.jupiter.api.*;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -132,4 +141,418 @@ class DatabaseTest {
         }
         db.close();
     }
+
+    @Test
+    @Order(6)
+    @DisplayName("同一接続で同じSQLを準備するとキャッシュされたステートメントが再利用される")
+    void testPreparedStatementCacheHit() throws Exception {
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+
+        Connection conn = db.getConnection();
+        try {
+            PreparedStatement first = db.prepareCached(conn, "SELECT COUNT(*) FROM notes WHERE id > ?");
+            first.setLong(1, 0);
+            try (ResultSet rs = first.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+            }
+            PreparedStatement second = db.prepareCached(conn, "SELECT COUNT(*) FROM notes WHERE id > ?");
+            assertThat(second).isSameAs(first);
+            second.setLong(1, 0);
+            try (ResultSet rs = second.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+            }
+        } finally {
+            db.releaseConnection(conn);
+        }
+
+        StatementCacheStats stats = db.getStatementCacheStats();
+        assertThat(stats.hits()).isGreaterThanOrEqualTo(1);
+        assertThat(stats.misses()).isGreaterThanOrEqualTo(1);
+        db.close();
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("キャッシュ上限を超えると古いステートメントから退避される")
+    void testPreparedStatementCacheEviction() throws Exception {
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+        int capacity = AppConfig.getInstance().getDatabaseStatementCacheSize();
+
+        Connection conn = db.getConnection();
+        try {
+            for (int i = 0; i <= capacity; i++) {
+                db.prepareCached(conn, "SELECT " + i);
+            }
+        } finally {
+            db.releaseConnection(conn);
+        }
+
+        StatementCacheStats stats = db.getStatementCacheStats();
+        assertThat(stats.evictions()).isGreaterThanOrEqualTo(1);
+        assertThat(stats.cachedStatements()).isLessThanOrEqualTo(capacity);
+        db.close();
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("idle ポリシーでは直近に使われた接続は検証クエリなしで貸し出される")
+    void testIdlePolicySkipsValidationForRecentlyUsedConnections() throws Exception {
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+        assertThat(db.getValidationPolicy().getMode()).isEqualTo(ConnectionValidationPolicy.Mode.IDLE);
+
+        for (int i = 0; i < 10; i++) {
+            Connection conn = db.getConnection();
+            db.releaseConnection(conn);
+        }
+        assertThat(db.getValidationCount()).isZero();
+
+        Connection conn = db.getConnection();
+        long leasedAt = db.stateOf(conn).lastUsedNanos;
+        db.releaseConnection(conn);
+        assertThat(db.stateOf(conn).lastUsedNanos).isGreaterThanOrEqualTo(leasedAt);
+        db.close();
+    }
+
+    @Test
+    @Order(9)
+    @DisplayName("エラーが報告された接続は次回の貸し出し時に検証される")
+    void testReportedConnectionIsValidatedOnNextCheckout() throws Exception {
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+
+        Connection conn = db.getConnection();
+        db.reportConnectionError(conn);
+        db.releaseConnection(conn);
+
+        // プール内の全接続を一巡させれば、エラー報告済みの接続も必ず貸し出される
+        List<Connection> leased = new ArrayList<>();
+        try {
+            for (int i = 0; i < 64 && db.getValidationCount() == 0; i++) {
+                leased.add(db.getConnection());
+                if (leased.size() >= 2) {
+                    db.releaseConnection(leased.remove(0));
+                }
+            }
+        } finally {
+            leased.forEach(db::releaseConnection);
+        }
+        assertThat(db.getValidationCount()).isEqualTo(1);
+        assertThat(db.getValidationFailures()).isZero();
+        db.close();
+    }
+
+    @Test
+    @Order(10)
+    @DisplayName("always ポリシーでは貸し出しのたびに検証される")
+    void testAlwaysPolicyValidatesEveryCheckout() throws Exception {
+        AppConfig config = AppConfig.getInstance();
+        config.setProperty("database.validation.mode", "always");
+        try {
+            Database db = new Database(dbFile.toString());
+            db.initialize();
+            long before = db.getValidationCount();
+            for (int i = 0; i < 3; i++) {
+                db.releaseConnection(db.getConnection());
+            }
+            assertThat(db.getValidationCount() - before).isEqualTo(3);
+            db.close();
+        } finally {
+            config.setProperty("database.validation.mode", "idle");
+        }
+    }
+
+    @Test
+    @Order(11)
+    @DisplayName("旧トリガーは移行され、updated_at だけの更新では FTS へ書き込まない")
+    void testNotesUpdateTriggerSkipsUnchangedFts() throws Exception {
+        int updates = 100;
+
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+        Connection conn = db.getConnection();
+        try (Statement st = conn.createStatement()) {
+            // 旧バージョン（スキーマバージョン 1）の無条件トリガーを再現する
+            st.executeUpdate("DROP TRIGGER notes_au");
+            st.executeUpdate("CREATE TRIGGER notes_au AFTER UPDATE ON notes BEGIN " +
+                    "INSERT INTO notes_fts(notes_fts,rowid,title,body) VALUES('delete', old.id, old.title, old.body);" +
+                    "INSERT INTO notes_fts(rowid, title, body) VALUES (new.id, new.title, new.body); END;");
+            st.executeUpdate("INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (1, 'タイトル', '本文 alpha', 0, 0)");
+            st.execute("PRAGMA user_version = 1");
+        }
+        long legacyChanges = touchUpdatedAt(conn, updates);
+        db.releaseConnection(conn);
+        db.close();
+
+        // 再初期化でトリガーが移行される
+        Database migrated = new Database(dbFile.toString());
+        migrated.initialize();
+        conn = migrated.getConnection();
+        try {
+            long conditionalChanges = touchUpdatedAt(conn, updates);
+
+            // 旧トリガー: 本体 1 行 + FTS の削除・再挿入、新トリガー: 本体 1 行のみ
+            assertThat(conditionalChanges).isEqualTo(updates);
+            assertThat(legacyChanges).isGreaterThanOrEqualTo(3L * updates);
+
+            // 本文が変わった場合は引き続き FTS が更新される
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE notes SET body=? WHERE id=1")) {
+                ps.setString(1, "本文 beta");
+                ps.executeUpdate();
+            }
+            try (Statement st = conn.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT count(*) FROM notes_fts WHERE notes_fts MATCH 'beta'")) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getInt(1)).isEqualTo(1);
+                }
+                try (ResultSet rs = st.executeQuery("SELECT count(*) FROM notes_fts WHERE notes_fts MATCH 'alpha'")) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getInt(1)).isZero();
+                }
+            }
+        } finally {
+            migrated.releaseConnection(conn);
+            migrated.close();
+        }
+    }
+
+    @Test
+    @Order(12)
+    @DisplayName("プール統計は取得待ち・貸し出し時間を記録し、使用中・待機中の接続数を JMX からも読める")
+    void testPoolStatsAndMBean() throws Exception {
+        Database db = new Database(dbFile.toString());
+        db.initialize();
+        try {
+            int size = db.getPoolStats().maxPoolSize();
+            long acquiresBefore = db.getPoolStats().acquireWait().count();
+            Connection conn = db.getConnection();
+            PoolStats leased = db.getPoolStats();
+            assertThat(leased.active()).isEqualTo(1);
+            assertThat(leased.idle()).isZero();
+            assertThat(leased.utilization()).isEqualTo(1.0 / size);
+            Thread.sleep(20);
+            db.releaseConnection(conn);
+
+            PoolStats stats = db.getPoolStats();
+            assertThat(stats.active()).isZero();
+            assertThat(stats.idle()).isEqualTo(1);
+            assertThat(stats.acquireWait().count()).isEqualTo(acquiresBefore + 1);
+            assertThat(stats.holdTime().maxMillis()).isGreaterThanOrEqualTo(20.0);
+            assertThat(stats.holdTime().percentileMillis(100)).isGreaterThanOrEqualTo(16.0);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName("app.hiyori:type=ConnectionPool,*"), null);
+            ObjectName name = names.stream()
+                    .filter(n -> n.getKeyProperty("name").contains(dbFile.getFileName().toString()))
+                    .filter(n -> n.getKeyProperty("name").contains(tempDir.getFileName().toString()))
+                    .findFirst().orElseThrow();
+            assertThat(server.getAttribute(name, "MaxPoolSize")).isEqualTo(size);
+            assertThat((Long) server.getAttribute(name, "AcquireCount")).isGreaterThanOrEqualTo(acquiresBefore + 1);
+            db.close();
+            assertThat(server.isRegistered(name)).isFalse();
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("しきい値を超えて返されない接続は借りた場所のスタックトレース付きでリークとして検出される")
+    void testLeakDetectionCapturesAcquiringStack() throws Exception {
+        AppConfig config = AppConfig.getInstance();
+        config.setProperty("database.pool.leak.threshold.ms", "10");
+        Database db = new Database(dbFile.toString());
+        try {
+            db.initialize();
+            // Otherwise a background migration chunk may hold a lease of its own while the test counts them
+            db.completeBackgroundMigrations();
+            Connection conn = db.getConnection();
+            Thread.sleep(30);
+
+            assertThat(db.detectLeaks()).isEqualTo(1);
+            // 同じ貸し出しは二度報告しない
+            assertThat(db.detectLeaks()).isZero();
+            assertThat(db.getPoolStats().leaksDetected()).isEqualTo(1);
+            List<ConnectionLeaseInfo> leases = db.getActiveLeases();
+            assertThat(leases).hasSize(1);
+            assertThat(leases.get(0).heldMillis()).isGreaterThanOrEqualTo(30);
+            assertThat(leases.get(0).acquiredAt())
+                    .anyMatch(frame -> frame.getMethodName().equals("testLeakDetectionCapturesAcquiringStack"));
+
+            db.releaseConnection(conn);
+            assertThat(db.getActiveLeases()).isEmpty();
+        } finally {
+            config.setProperty("database.pool.leak.threshold.ms", "60000");
+            db.close();
+        }
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("プールは1本の接続で起動し、同時の取得で上限まで増え、使われない接続は閉じられる")
+    void testElasticPoolGrowsAndShrinks() throws Exception {
+        AppConfig config = AppConfig.getInstance();
+        config.setProperty("database.pool.idle.timeout.ms", "1");
+        Database db = new Database(dbFile.toString());
+        try {
+            db.initialize();
+            PoolStats started = db.getPoolStats();
+            assertThat(started.open()).isEqualTo(1);
+            assertThat(started.connectionsOpened()).isEqualTo(1);
+
+            int size = started.maxPoolSize();
+            List<Connection> held = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                held.add(db.getReadConnection());
+            }
+            assertThat(db.getPoolStats().open()).isEqualTo(size);
+            // 上限に達した後は増えずに待ち、返却された接続を受け取る
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                db.releaseConnection(held.remove(0));
+            });
+            releaser.start();
+            held.add(db.getReadConnection());
+            releaser.join();
+            assertThat(db.getPoolStats().open()).isEqualTo(size);
+            held.forEach(db::releaseConnection);
+
+            Thread.sleep(5);
+            assertThat(db.closeIdleConnections()).isEqualTo(size - 1);
+            PoolStats shrunk = db.getPoolStats();
+            assertThat(shrunk.open()).isEqualTo(1);
+            assertThat(shrunk.idle()).isEqualTo(1);
+            assertThat(shrunk.idleClosed()).isEqualTo(size - 1);
+            // 閉じた後も必要になれば開き直す
+            Connection conn = db.getConnection();
+            Connection second = db.getConnection();
+            assertThat(db.getPoolStats().open()).isEqualTo(2);
+            db.releaseConnection(conn);
+            db.releaseConnection(second);
+        } finally {
+            config.setProperty("database.pool.idle.timeout.ms", "60000");
+            db.close();
+        }
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("バックグラウンド移行のチャンクは書き込みトランザクションの後ろに並び、終わってから書く")
+    void testBackgroundMigrationQueuesBehindWriter() throws Exception {
+        Database db = new Database(dbFile.toString());
+        try {
+            db.initialize();
+            TransactionManager tm = new TransactionManager(db);
+            CountDownLatch inTransaction = new CountDownLatch(1);
+            CountDownLatch finish = new CountDownLatch(1);
+            Thread writer = new Thread(() -> {
+                try {
+                    tm.executeInTransaction(() -> {
+                        inTransaction.countDown();
+                        try {
+                            finish.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+            inTransaction.await();
+            List<Throwable> failures = new ArrayList<>();
+            Thread migration = new Thread(() -> {
+                try {
+                    db.completeBackgroundMigrations();
+                } catch (DatabaseException e) {
+                    failures.add(e);
+                }
+            });
+            migration.start();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!db.writeLock().hasQueuedThread(migration) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(db.writeLock().hasQueuedThread(migration)).isTrue();
+
+            finish.countDown();
+            writer.join();
+            migration.join(10_000);
+            assertThat(failures).isEmpty();
+            assertThat(db.isBackgroundMigrationPending()).isFalse();
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    @Order(16)
+    @DisplayName("インポート中に異常終了して止まったままの全文検索索引の自動併合は、次の起動で既定値に戻る")
+    void testInitializeRestoresPausedAutomerge() throws Exception {
+        Database db = new Database(dbFile.toString());
+        try {
+            db.initialize();
+            new NotesDao(db, new TransactionManager(db)).pauseIndexMerges();
+            assertThat(automerge(db, "notes_fts")).isZero();
+        } finally {
+            // resumeIndexMerges を呼ばずに閉じる
+            db.close();
+        }
+
+        Database reopened = new Database(dbFile.toString());
+        try {
+            reopened.initialize();
+            assertThat(automerge(reopened, "notes_fts")).isEqualTo(Database.FTS_DEFAULT_AUTOMERGE);
+            Integer trigram = automerge(reopened, "notes_trigram");
+            assertThat(trigram).isIn(null, Database.FTS_DEFAULT_AUTOMERGE);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // FTS5 の %_config に保存された automerge（表が無ければ null）
+    private static Integer automerge(Database db, String table) throws Exception {
+        Connection conn = db.getConnection();
+        try (Statement st = conn.createStatement()) {
+            try (ResultSet exists = st.executeQuery("SELECT 1 FROM sqlite_master WHERE name = '" + table + "_config'")) {
+                if (!exists.next()) {
+                    return null;
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT v FROM " + table + "_config WHERE k = 'automerge'")) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        } finally {
+            db.releaseConnection(conn);
+        }
+    }
+
+    // NotesDao#update と同じ形の UPDATE を繰り返し、total_changes()（トリガー内の書き込みを含む）の増分を返す
+    private static long touchUpdatedAt(Connection conn, int updates) throws SQLException {
+        long before = totalChanges(conn);
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE notes SET title=?, body=?, updated_at=? WHERE id=1")) {
+            for (int i = 1; i <= updates; i++) {
+                ps.setString(1, "タイトル");
+                ps.setString(2, "本文 alpha");
+                ps.setLong(3, i);
+                ps.executeUpdate();
+            }
+        }
+        return totalChanges(conn) - before;
+    }
+
+    private static long totalChanges(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT total_changes()")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
 }
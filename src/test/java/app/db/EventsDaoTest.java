@@ -8,9 +8,13 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -327,4 +331,75 @@ class EventsDaoTest {
         assertThat(percentResults).extracting(Event::getTitle).containsExactly("達成率100%");
         assertThat(underscoreResults).extracting(Event::getTitle).containsExactly("タスク_A_レビュー");
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(17)
+    @DisplayName("R*Tree 索引使用時も境界条件は秒単位で正確に判定される")
+    void testListBetweenWithIntervalIndexKeepsExactBounds() throws Exception {
+        testDb.getDatabase().completeBackgroundMigrations();
+        long base = 1_735_689_600L; // float では 128 秒単位に丸められる大きさ
+
+        eventsDao.insert("直前に終了", base - 60, base);
+        eventsDao.insert("1秒だけ重なる", base - 60, base + 1);
+        eventsDao.insert("範囲内", base + 600, base + 1200);
+        eventsDao.insert("終了時刻ちょうどに開始", base + 3600, base + 3700);
+        eventsDao.insert("範囲外", base + 86_400, base + 90_000);
+
+        List<Event> events = eventsDao.listBetween(base, base + 3600);
+
+        assertThat(events).extracting(Event::getTitle).containsExactly("1秒だけ重なる", "範囲内");
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("予定の更新・削除は R*Tree 索引にも反映され、範囲検索は索引を使う")
+    void testIntervalIndexFollowsUpdatesAndDeletes() throws Exception {
+        testDb.getDatabase().completeBackgroundMigrations();
+        long base = 1_735_689_600L;
+        long moved = eventsDao.insert("移動する予定", base, base + 3600);
+        long removed = eventsDao.insert("削除する予定", base, base + 3600);
+
+        Event event = eventsDao.get(moved);
+        event.setStartEpochSec(base + 7 * 86_400);
+        event.setEndEpochSec(base + 7 * 86_400 + 3600);
+        eventsDao.update(event);
+        eventsDao.delete(removed);
+
+        assertThat(eventsDao.listBetween(base, base + 86_400)).isEmpty();
+        assertThat(eventsDao.listBetween(base + 7 * 86_400, base + 8 * 86_400))
+                .extracting(Event::getId).containsExactly(moved);
+
+        try (Connection conn = testDb.getConnection();
+             Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT count(*) FROM events_rtree")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(1);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = st.executeQuery("EXPLAIN QUERY PLAN SELECT e.id FROM events_rtree r " +
+                    "JOIN events e ON e.id = r.id WHERE r.end_sec > 0 AND r.start_sec < 10")) {
+                while (rs.next()) {
+                    plan.append(rs.getString("detail")).append('\n');
+                }
+            }
+            assertThat(plan.toString()).contains("VIRTUAL TABLE INDEX");
+        }
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("開始時刻が同じ予定は、R*Tree 索引の有無にかかわらず ID 順に返る")
+    void testListBetweenOrdersTiesById() throws Exception {
+        long base = 1_735_689_600L;
+        long[] ids = new long[6];
+        // Different lengths spread the entries over the R*Tree
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = eventsDao.insert("同時刻" + i, base, base + 600L * (ids.length - i));
+        }
+        List<Long> expected = Arrays.stream(ids).boxed().toList();
+
+        assertThat(eventsDao.listBetween(base, base + 60)).extracting(Event::getId).containsExactlyElementsOf(expected);
+        testDb.getDatabase().completeBackgroundMigrations();
+        assertThat(eventsDao.listBetween(base, base + 60)).extracting(Event::getId).containsExactlyElementsOf(expected);
+    }
+}
@@ -0,0 +1,133 @@
+package app.db;
+
+import app.exception.DataAccessException;
+import app.model.Event;
+import app.testutil.TestDataFactory;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * GroupCommitWriter のテスト
+ */
+class GroupCommitWriterTest {
+
+    private TestDatabase testDb;
+    private TransactionManager transactionManager;
+    private EventsDao eventsDao;
+    private GroupCommitWriter writer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDb = new TestDatabase();
+        transactionManager = new TransactionManager(testDb.getDatabase());
+        eventsDao = new EventsDao(testDb.getDatabase(), transactionManager);
+        writer = new GroupCommitWriter(transactionManager, 64, 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.close();
+        }
+        if (testDb != null) {
+            testDb.close();
+        }
+    }
+
+    @Test
+    @DisplayName("同時に投入された変更は少数のトランザクションにまとめてコミットされる")
+    void batchesConcurrentMutations() throws Exception {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Event e = TestDataFactory.createEvent("まとめて" + i, 9, 10);
+            futures.add(writer.submit(() -> eventsDao.insert(e.getTitle(), e.getStartEpochSec(), e.getEndEpochSec())));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        assertThat(futures).allSatisfy(f -> assertThat(f.join()).isGreaterThan(0));
+        assertThat(writer.getCommittedMutations()).isEqualTo(50);
+        assertThat(writer.getCommittedBatches()).isLessThan(50);
+        assertThat(eventsDao.searchByTitle("まとめて", 100)).hasSize(50);
+    }
+
+    @Test
+    @DisplayName("1件の失敗は同じバッチの他の変更を巻き戻さない")
+    void failingMutationDoesNotAbortBatch() throws Exception {
+        Event e = TestDataFactory.createEvent("成功", 9, 10);
+        CompletableFuture<Long> ok = writer.submit(() -> eventsDao.insert(e.getTitle(), e.getStartEpochSec(), e.getEndEpochSec()));
+        CompletableFuture<Object> failing = writer.submit(() -> {
+            eventsDao.delete(999_999L);
+            return null;
+        });
+
+        assertThat(ok.get(10, TimeUnit.SECONDS)).isGreaterThan(0);
+        assertThatThrownBy(() -> failing.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(DataAccessException.class);
+        assertThat(eventsDao.get(ok.join())).isNotNull();
+    }
+
+    @Test
+    @DisplayName("close はキューに残った変更を書き込んでから停止する")
+    void closeDrainsQueue() throws Exception {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Event e = TestDataFactory.createEvent("終了前" + i, 9, 10);
+            futures.add(writer.submit(() -> eventsDao.insert(e.getTitle(), e.getStartEpochSec(), e.getEndEpochSec())));
+        }
+        writer.close();
+
+        assertThat(futures).allSatisfy(f -> assertThat(f).isCompleted());
+        assertThat(eventsDao.searchByTitle("終了前", 100)).hasSize(10);
+        assertThat(writer.submit(() -> null)).isCompletedExceptionally();
+    }
+
+    @Test
+    @DisplayName("close と同時に投入された変更も、書き込まれるか失敗するかのどちらかで必ず完了する")
+    void submitRacingCloseAlwaysCompletes() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            GroupCommitWriter racing = new GroupCommitWriter(transactionManager, 8, 1);
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<Object>> futures = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread submitter = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 50; i++) {
+                        futures.add(racing.submit(() -> null));
+                    }
+                });
+                submitter.start();
+                submitters.add(submitter);
+            }
+            start.countDown();
+            racing.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            // Before the fix a submit that passed the running check could enqueue after the final drain
+            CompletableFuture.allOf(futures.stream()
+                    .map(f -> f.exceptionally(e -> null))
+                    .toArray(CompletableFuture<?>[]::new)).get(10, TimeUnit.SECONDS);
+            assertThat(racing.getQueuedCount()).isZero();
+        }
+    }
+}
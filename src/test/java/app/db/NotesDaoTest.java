@@ -2,6 +2,8 @@ package app.db;
 
 import app.exception.DataAccessException;
 import app.model.Note;
+import app.model.NoteSearchResult;
+import app.model.NoteSummary;
 import app.testutil.TestDataFactory;
 import app.testutil.TestDatabase;
 import org.junit.jupiter.api.*;
@@ -9,9 +11,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -314,4 +322,236 @@ class NotesDaoTest {
         assertThat(percentResults).extracting(Note::getTitle).containsExactly("進捗率100%");
         assertThat(underscoreResults).extracting(Note::getTitle).containsExactly("タスク_A_メモ");
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(16)
+    @DisplayName("一覧用の射影は本文の先頭だけを抜粋として返す")
+    void testListRecentSummariesReturnsSnippetOnly() throws DataAccessException {
+        Note longNote = TestDataFactory.createNote("長いメモ", "あ".repeat(5000));
+        Note shortNote = TestDataFactory.createNote("短いメモ", "短い本文");
+        longNote.setUpdatedAt(100);
+        shortNote.setUpdatedAt(200);
+        notesDao.insert(longNote);
+        notesDao.insert(shortNote);
+
+        List<NoteSummary> summaries = notesDao.listRecentSummaries(10);
+
+        assertThat(summaries).extracting(NoteSummary::title).containsExactly("短いメモ", "長いメモ");
+        assertThat(summaries.get(0).snippet()).isEqualTo("短い本文");
+        assertThat(summaries.get(1).snippet()).hasSize(NoteSummary.SNIPPET_LENGTH);
+        assertThat(summaries.get(1).updatedAt()).isEqualTo(100);
+        assertThat(notesDao.getById(summaries.get(1).id()).getBody()).hasSize(5000);
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("射影での検索は FTS と LIKE フォールバックの両方で動作する")
+    void testSearchSummaries() throws DataAccessException {
+        notesDao.insert(TestDataFactory.createNote("Java入門", "Java programming basics"));
+        notesDao.insert(TestDataFactory.createNote("料理", "カレーの作り方"));
+
+        List<NoteSummary> ftsResults = notesDao.searchSummaries("programming", 10);
+        // 日本語の部分一致は FTS の unicode61 トークナイザでは見つからず LIKE にフォールバックする
+        List<NoteSummary> likeResults = notesDao.searchSummaries("作り", 10);
+
+        assertThat(ftsResults).extracting(NoteSummary::title).containsExactly("Java入門");
+        assertThat(likeResults).extracting(NoteSummary::title).containsExactly("料理");
+        assertThat(likeResults.get(0).snippet()).isEqualTo("カレーの作り方");
+        assertThat(notesDao.searchSummaries("  ", 10)).hasSize(2);
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("最近のメモのページ取得は (updated_at DESC, id) の複合索引を使う")
+    void testRecentPageUsesCompositeIndex() throws Exception {
+        Connection conn = null;
+        try {
+            conn = testDb.getDatabase().getConnection();
+            StringBuilder plan = new StringBuilder();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN SELECT id FROM notes " +
+                         "WHERE updated_at <= 100 AND (updated_at < 100 OR id > 5) ORDER BY updated_at DESC, id ASC LIMIT 10")) {
+                while (rs.next()) {
+                    plan.append(rs.getString("detail")).append('\n');
+                }
+            }
+            assertThat(plan.toString()).contains("idx_notes_updated_desc_id").doesNotContain("TEMP B-TREE");
+        } finally {
+            if (conn != null) {
+                testDb.getDatabase().releaseConnection(conn);
+            }
+        }
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("関連度順検索はタイトルの一致を重く評価し、一致箇所をハイライトする")
+    void testSearchRankedWeightsTitleAndHighlights() throws DataAccessException {
+        Note bodyHit = TestDataFactory.createNote("雑記", "kotlin と java の比較 " + "filler ".repeat(40) + "kotlin");
+        Note titleHit = TestDataFactory.createNote("Kotlin tips", "小さなメモ");
+        bodyHit.setUpdatedAt(200);
+        titleHit.setUpdatedAt(100);
+        notesDao.insert(bodyHit);
+        notesDao.insert(titleHit);
+
+        List<NoteSearchResult> titleFirst = notesDao.searchRanked("kotlin", 10, 10.0, 1.0);
+        List<NoteSearchResult> bodyFirst = notesDao.searchRanked("kotlin", 10, 0.0, 1.0);
+
+        assertThat(titleFirst).extracting(NoteSearchResult::title).containsExactly("Kotlin tips", "雑記");
+        assertThat(bodyFirst).extracting(NoteSearchResult::title).startsWith("雑記");
+        NoteSearchResult top = titleFirst.get(0);
+        assertThat(top.highlightedTitle())
+                .isEqualTo(NoteSearchResult.HIGHLIGHT_START + "Kotlin" + NoteSearchResult.HIGHLIGHT_END + " tips");
+        assertThat(top.rank()).isLessThan(titleFirst.get(1).rank());
+        NoteSearchResult body = titleFirst.get(1);
+        assertThat(body.snippet()).contains(NoteSearchResult.HIGHLIGHT_START + "kotlin" + NoteSearchResult.HIGHLIGHT_END);
+        assertThat(body.snippet()).endsWith(NoteSearchResult.ELLIPSIS);
+        assertThat(notesDao.searchRanked("kotlin", 1, 10.0, 1.0)).hasSize(1);
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("関連度順検索は日本語の部分一致で LIKE にフォールバックし、一致箇所周辺を抜粋する")
+    void testSearchRankedFallsBackToLikeWithSnippet() throws DataAccessException {
+        notesDao.insert(TestDataFactory.createNote("料理メモ", "い".repeat(100) + "カレーの作り方" + "う".repeat(100)));
+
+        List<NoteSearchResult> results = notesDao.searchRanked("作り", 10, 10.0, 1.0);
+
+        assertThat(results).hasSize(1);
+        String snippet = results.get(0).snippet();
+        assertThat(snippet).startsWith(NoteSearchResult.ELLIPSIS).endsWith(NoteSearchResult.ELLIPSIS);
+        assertThat(snippet).contains("カレーの" + NoteSearchResult.HIGHLIGHT_START + "作り" + NoteSearchResult.HIGHLIGHT_END + "方");
+        assertThat(results.get(0).highlightedTitle()).isEqualTo("料理メモ");
+        assertThat(notesDao.searchRanked(" ", 10, 10.0, 1.0)).isEmpty();
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("3文字以上の日本語クエリはトライグラム索引で部分一致検索される")
+    void testJapaneseQueryUsesTrigramIndex() throws Exception {
+        testDb.getDatabase().completeBackgroundMigrations();
+        notesDao.insert(TestDataFactory.createNote("料理メモ", "カレーの作り方と隠し味"));
+        notesDao.insert(TestDataFactory.createNote("買い物", "玉ねぎ、にんじん"));
+
+        List<NoteSearchResult> ranked = notesDao.searchRanked("作り方", 10, 10.0, 1.0);
+
+        assertThat(ranked).extracting(NoteSearchResult::title).containsExactly("料理メモ");
+        // LIKE フォールバックの rank は 0、FTS (bm25) は負の値になる
+        assertThat(ranked.get(0).rank()).isNegative();
+        assertThat(ranked.get(0).snippet())
+                .contains(NoteSearchResult.HIGHLIGHT_START + "作り方" + NoteSearchResult.HIGHLIGHT_END);
+        assertThat(notesDao.searchSummaries("料理メ 隠し味", 10)).extracting(NoteSummary::title).containsExactly("料理メモ");
+        // 3文字未満の語は、トライグラム索引で絞り込んだメモに対して照合される
+        assertThat(notesDao.planSearch("メモ 隠し味")).isEqualTo(SearchStrategy.TRIGRAM);
+        assertThat(notesDao.searchSummaries("メモ 隠し味", 10)).extracting(NoteSummary::title).containsExactly("料理メモ");
+        assertThat(notesDao.searchNotes("隠し味 肉", 10)).isEmpty();
+        assertThat(notesDao.searchRanked("カレー 作り", 10, 10.0, 1.0)).extracting(NoteSearchResult::title)
+                .containsExactly("料理メモ");
+        assertThat(notesDao.searchNotes("にんじん", 10)).extracting(Note::getTitle).containsExactly("買い物");
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("トライグラム索引を使うのは日本語を含み3文字以上の語があるクエリだけで、短い語は LIKE で照合する")
+    void testTrigramMatchExpression() {
+        assertThat(SearchPlanner.trigramMatch("作り方")).isEqualTo("\"作り方\"");
+        assertThat(SearchPlanner.trigramMatch(" Java入門  \"基礎\" ")).isEqualTo("\"Java入門\" \"\"\"基礎\"\"\"");
+        assertThat(SearchPlanner.trigramMatch("作り")).isNull();
+        assertThat(SearchPlanner.trigramMatch("programming")).isNull();
+        assertThat(SearchPlanner.trigramMatch("カレー 肉")).isEqualTo("\"カレー\"");
+        assertThat(SearchPlanner.shortTerms(SearchStrategy.TRIGRAM, " カレー 肉 玉ね ")).containsExactly("肉", "玉ね");
+        assertThat(SearchPlanner.shortTerms(SearchStrategy.LIKE, "カレー 肉")).isEmpty();
+    }
+
+    @Test
+    @Order(23)
+    @DisplayName("検索方式はクエリの特徴から1つだけ選ばれ、方式ごとの件数とヒット率が集計される")
+    void testSearchPlannerChoosesOneStrategyAndRecordsStats() throws Exception {
+        testDb.getDatabase().completeBackgroundMigrations();
+        notesDao.insert(TestDataFactory.createNote("Java入門", "Java programming basics"));
+        notesDao.insert(TestDataFactory.createNote("進捗率100%", "カレーの作り方"));
+
+        assertThat(notesDao.planSearch("programming")).isEqualTo(SearchStrategy.FTS);
+        assertThat(notesDao.planSearch("作り方")).isEqualTo(SearchStrategy.TRIGRAM);
+        assertThat(notesDao.planSearch("作り")).isEqualTo(SearchStrategy.LIKE);
+        assertThat(notesDao.planSearch("100%")).isEqualTo(SearchStrategy.LIKE);
+
+        notesDao.searchNotes("programming", 10);
+        // FTS で見つからなくても LIKE で検索し直さない（単語の前方一致のみ）
+        assertThat(notesDao.searchNotes("gramming", 10)).isEmpty();
+        notesDao.searchNotes("作り方", 10);
+        notesDao.searchSummaries("100%", 10);
+
+        var stats = notesDao.getSearchPlanner().getStats();
+        assertThat(stats.get(SearchStrategy.FTS).queries()).isEqualTo(2);
+        assertThat(stats.get(SearchStrategy.FTS).hitRate()).isEqualTo(0.5);
+        assertThat(stats.get(SearchStrategy.TRIGRAM).hitQueries()).isEqualTo(1);
+        assertThat(stats.get(SearchStrategy.LIKE).rows()).isEqualTo(1);
+        assertThat(stats.get(SearchStrategy.LIKE).totalNanos()).isPositive();
+    }
+
+    @Test
+    @Order(24)
+    @DisplayName("更新日時が同じメモは、一覧・キーセットのページ・検索のどれでも ID の昇順に並ぶ")
+    void testTiesOrderedByIdEverywhere() throws DataAccessException {
+        for (int i = 0; i < 5; i++) {
+            Note note = TestDataFactory.createNote("同時刻" + i, "共通の本文");
+            note.setUpdatedAt(500);
+            notesDao.insert(note);
+        }
+        List<Long> listed = notesDao.listRecentSummaries(0).stream().map(NoteSummary::id).toList();
+
+        List<NoteSummary> first = notesDao.pageRecentSummaries(null, 2);
+        NoteSummary last = first.get(first.size() - 1);
+        List<NoteSummary> second = notesDao.pageRecentSummaries(new KeysetCursor(last.updatedAt(), last.id()), 10);
+        List<Long> paged = new ArrayList<>(first.stream().map(NoteSummary::id).toList());
+        second.forEach(summary -> paged.add(summary.id()));
+
+        assertThat(listed).isSorted().hasSize(5);
+        assertThat(paged).containsExactlyElementsOf(listed);
+        assertThat(notesDao.listRecent(0)).extracting(Note::getId).containsExactlyElementsOf(listed);
+        assertThat(notesDao.searchSummaries("共通", 0)).extracting(NoteSummary::id).containsExactlyElementsOf(listed);
+    }
+
+    @Test
+    @Order(25)
+    @DisplayName("トランザクション外の書き込みは書き込みロックを待ち、読み取りは待たない")
+    void testWritesOutsideTransactionTakeTheWriteLock() throws Exception {
+        long existing = notesDao.insert(TestDataFactory.createNote("既存", "本文"));
+        var writeLock = testDb.getDatabase().writeLock();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            writeLock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                writeLock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        try {
+            var insert = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return notesDao.insertAll(List.of(TestDataFactory.createNote("一括", "")));
+                } catch (DataAccessException e) {
+                    throw new CompletionException(e);
+                }
+            });
+
+            assertThat(notesDao.getById(existing).getTitle()).isEqualTo("既存");
+            Thread.sleep(200);
+            assertThat(insert).isNotDone();
+
+            release.countDown();
+            assertThat(insert.get(5, TimeUnit.SECONDS)).hasSize(1);
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+}
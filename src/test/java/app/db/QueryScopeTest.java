@@ -0,0 +1,186 @@
+package app.db;
+
+import app.exception.DataAccessException;
+import app.exception.QueryCancelledException;
+import app.exception.QueryTimeoutException;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * QueryScope のテスト（取り消し・期限切れによる実行中クエリの中断）
+ */
+class QueryScopeTest {
+
+    // Counts forever unless interrupted
+    private static final String ENDLESS_SQL =
+            "WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM c) SELECT COUNT(*) FROM c WHERE x < 0";
+
+    private TestDatabase testDatabase;
+    private Database db;
+    private TransactionManager transactionManager;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDatabase = new TestDatabase();
+        db = testDatabase.getDatabase();
+        // Otherwise a maintenance run may hold a connection for a migration chunk while active() is checked
+        db.completeBackgroundMigrations();
+        transactionManager = new TransactionManager(db);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        if (testDatabase != null) {
+            testDatabase.close();
+        }
+    }
+
+    @Test
+    @DisplayName("取り消すと実行中の SQL が中断され、接続はプールに戻り、次のクエリは普通に動く")
+    void cancelInterruptsRunningStatement() throws Exception {
+        QueryScope scope = new QueryScope();
+        CountDownLatch running = new CountDownLatch(1);
+        AtomicReference<Connection> used = new AtomicReference<>();
+        CompletableFuture<Long> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scope.run(() -> transactionManager.executeInReadOnlyTransaction(() -> {
+                    used.set(transactionManager.getCurrentConnection());
+                    running.countDown();
+                    return count(transactionManager.getCurrentConnection(), ENDLESS_SQL);
+                }));
+            } catch (DataAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }, executor);
+        running.await();
+        Thread.sleep(100);
+
+        assertThat(scope.cancel()).isTrue();
+        assertThat(scope.cancel()).isFalse();
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .cause().cause().isInstanceOf(QueryCancelledException.class);
+        assertThat(db.getPoolStats().active()).isZero();
+        // 取り消しは接続の異常ではないため、次回の貸し出し時の検証対象にしない
+        assertThat(db.stateOf(used.get()).suspect).isFalse();
+        long one = transactionManager.executeInReadOnlyTransaction(() ->
+                count(transactionManager.getCurrentConnection(), "SELECT 1"));
+        assertThat(one).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("取り消し済みの範囲では接続を借りずに QueryCancelledException になる")
+    void cancelledScopeDoesNotAcquire() throws Exception {
+        QueryScope scope = new QueryScope();
+        scope.cancel();
+        long acquires = db.getPoolStats().acquireWait().count();
+
+        assertThatThrownBy(() -> scope.run(() -> "never"))
+                .isInstanceOf(QueryCancelledException.class);
+        assertThat(db.getPoolStats().acquireWait().count()).isEqualTo(acquires);
+    }
+
+    @Test
+    @DisplayName("supplyAsync の Future を取り消すと実行中の読み取りが中断され、接続が返される")
+    void cancellingFutureInterruptsDaoRead() throws Exception {
+        NotesDao notesDao = new NotesDao(db, transactionManager);
+        CountDownLatch running = new CountDownLatch(1);
+        // Stands in for a long FTS/LIKE scan on a pooled connection
+        CompletableFuture<Long> future = QueryScope.supplyAsync(() ->
+                transactionManager.executeInReadOnlyTransaction(() -> {
+                    running.countDown();
+                    return count(transactionManager.getCurrentConnection(), ENDLESS_SQL);
+                }), executor);
+        running.await();
+        Thread.sleep(100);
+
+        assertThat(future.cancel(true)).isTrue();
+
+        assertThatThrownBy(future::join).isInstanceOf(CancellationException.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (db.getPoolStats().active() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(db.getPoolStats().active()).isZero();
+        assertThat(notesDao.listRecent(10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("期限付きの範囲では実行中の SQL が SQLite の中で打ち切られ、QueryTimeoutException になって回数が数えられる")
+    void deadlineInterruptsRunningStatement() throws Exception {
+        long timeouts = db.getQueryTimeouts(QueryClass.SCAN);
+        long start = System.nanoTime();
+
+        // SCAN has no limit of its own, so the scope's 200 ms applies
+        assertThatThrownBy(() -> new QueryScope(200).run(() -> transactionManager.executeInReadOnlyTransaction(() ->
+                count(transactionManager.getCurrentConnection(), ENDLESS_SQL))))
+                .isInstanceOfSatisfying(QueryTimeoutException.class,
+                        e -> assertThat(e.getTimeoutMillis()).isEqualTo(200));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(db.getQueryTimeouts(QueryClass.SCAN)).isEqualTo(timeouts + 1);
+        assertThat(db.getPoolStats().active()).isZero();
+        long one = transactionManager.executeInReadOnlyTransaction(() ->
+                count(transactionManager.getCurrentConnection(), "SELECT 1"));
+        assertThat(one).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("期限付きの範囲では接続の取得待ちも期限で打ち切られ、5秒待たずに QueryTimeoutException になる")
+    void deadlineBoundsConnectionWait() throws Exception {
+        NotesDao notesDao = new NotesDao(db, transactionManager);
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < db.getPoolStats().maxPoolSize(); i++) {
+                held.add(db.getConnection());
+            }
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> new QueryScope(100).run(() -> notesDao.getById(1)))
+                    .isInstanceOf(QueryTimeoutException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        } finally {
+            held.forEach(db::releaseConnection);
+        }
+        assertThat(notesDao.getById(1)).isNull();
+    }
+
+    // Runs sql the way the DAOs do: under the time limit of its kind, interruptions mapped by the pool
+    private long count(Connection conn, String sql) throws DataAccessException {
+        db.armDeadline(conn, QueryClass.SCAN);
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            DataAccessException interrupted = db.interruption(conn, e);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+            throw new DataAccessException("集計に失敗しました", e);
+        } finally {
+            db.disarmDeadline(conn);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package app.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * SchemaMigrator のテスト
+ */
+class SchemaMigratorTest {
+
+    private Path tempDir;
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("hiyori-migration-");
+        conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("migration.db"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (conn != null) {
+            conn.close();
+        }
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                    // 一時ファイルの削除失敗はテスト結果に影響しない
+                }
+            });
+        }
+    }
+
+    @Test
+    @DisplayName("標準の移行で新規データベースが最新バージョンになる")
+    void standardMigrationsReachLatestVersion() throws Exception {
+        SchemaMigrator migrator = SchemaMigrator.standard();
+
+        List<Migration> applied = migrator.migrate(conn);
+
+        assertThat(applied).extracting(Migration::version).isSortedAccordingTo(Integer::compare);
+        assertThat(migrator.getCurrentVersion(conn)).isEqualTo(migrator.getLatestVersion());
+        assertThat(migrator.pending(conn)).isEmpty();
+        assertThat(migrator.migrate(conn)).isEmpty();
+        assertThat(tableExists("notes_fts")).isTrue();
+    }
+
+    @Test
+    @DisplayName("失敗した移行だけが巻き戻り、それ以前のバージョンは確定する")
+    void failingMigrationRollsBackOnlyItself() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(List.of(
+                new Migration(1, "create a", c -> SchemaMigrations.exec(c, "CREATE TABLE a(x INTEGER)")),
+                new Migration(2, "create b then fail", c -> SchemaMigrations.exec(c,
+                        "CREATE TABLE b(x INTEGER)",
+                        "INSERT INTO missing_table VALUES (1)"))
+        ), List.of());
+
+        assertThatThrownBy(() -> migrator.migrate(conn))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("version 2");
+
+        assertThat(migrator.getCurrentVersion(conn)).isEqualTo(1);
+        assertThat(tableExists("a")).isTrue();
+        assertThat(tableExists("b")).isFalse();
+        assertThat(conn.getAutoCommit()).isTrue();
+    }
+
+    @Test
+    @DisplayName("ドライランは移行内容を返すがスキーマもバージョンも変更しない")
+    void dryRunLeavesDatabaseUntouched() throws Exception {
+        SchemaMigrator migrator = SchemaMigrator.standard();
+
+        List<Migration> planned = migrator.dryRun(conn);
+
+        assertThat(planned).hasSize(migrator.getLatestVersion());
+        assertThat(migrator.getCurrentVersion(conn)).isZero();
+        assertThat(tableExists("notes")).isFalse();
+    }
+
+    @Test
+    @DisplayName("アプリケーションより新しいスキーマバージョンは拒否される")
+    void newerSchemaIsRejected() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA user_version = 999");
+        }
+        assertThatThrownBy(() -> SchemaMigrator.standard().migrate(conn))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("newer");
+    }
+
+    @Test
+    @DisplayName("バックグラウンド移行はチャンク単位で進み、中断後も続きから再開する")
+    void backgroundMigrationRunsInChunks() throws Exception {
+        AtomicInteger chunks = new AtomicInteger();
+        SchemaMigrator migrator = copyMigrator(chunks);
+        migrator.migrate(conn);
+        assertThat(migrator.hasPendingBackgroundWork(conn)).isTrue();
+        assertThat(countRows("dst")).isZero();
+
+        assertThat(migrator.runBackgroundChunk(conn, 10)).isTrue();
+        assertThat(countRows("dst")).isEqualTo(10);
+
+        // 新しいインスタンス（再起動相当）でも保存されたカーソルから続ける
+        SchemaMigrator restarted = copyMigrator(chunks);
+        while (restarted.runBackgroundChunk(conn, 10)) {
+            // 完了まで進める
+        }
+        assertThat(countRows("dst")).isEqualTo(25);
+        assertThat(chunks.get()).isEqualTo(4);
+        assertThat(restarted.hasPendingBackgroundWork(conn)).isFalse();
+        assertThat(SchemaMigrator.isBackgroundComplete(conn, "copy_src")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Database の初期化後、バックグラウンド移行は保守スレッドで完了する")
+    void databaseRunsBackgroundMigrationAfterStartup() throws Exception {
+        Path dbFile = tempDir.resolve("startup.db");
+        Database db = new Database(dbFile.toString(), copyMigrator(new AtomicInteger()));
+        db.initialize();
+        try {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (db.isBackgroundMigrationPending() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(db.isBackgroundMigrationPending()).isFalse();
+
+            Connection c = db.getConnection();
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM dst")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(25);
+            } finally {
+                db.releaseConnection(c);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    @DisplayName("既存メモはトライグラム索引へバックフィルされ、その間の更新・削除でも索引が壊れない")
+    void trigramBackfillIndexesExistingNotes() throws Exception {
+        SchemaMigrator full = SchemaMigrator.standard();
+        List<Migration> beforeTrigram = full.pending(conn).stream().filter(m -> m.version() < 5).toList();
+        new SchemaMigrator(beforeTrigram, List.of()).migrate(conn);
+        SchemaMigrations.exec(conn,
+                "INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (1, '献立', 'カレーの作り方', 0, 0)",
+                "INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (2, '買い物', '玉ねぎとにんじん', 0, 0)",
+                "INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (3, '削除予定', '古い作り方', 0, 0)");
+
+        full.migrate(conn);
+        // バックフィル前の更新・削除・追加
+        SchemaMigrations.exec(conn,
+                "UPDATE notes SET body = '肉じゃがの作り方' WHERE id = 2",
+                "DELETE FROM notes WHERE id = 3",
+                "INSERT INTO notes(id, title, body, created_at, updated_at) VALUES (4, '新規', '親子丼の作り方', 0, 0)");
+        while (full.runBackgroundChunk(conn, 1)) {
+            // 完了まで進める
+        }
+
+        assertThat(SchemaMigrator.isBackgroundComplete(conn, SchemaMigrations.NOTES_TRIGRAM_BACKFILL)).isTrue();
+        assertThat(countRows("notes_trigram_pending")).isZero();
+        SchemaMigrations.exec(conn, "INSERT INTO notes_trigram(notes_trigram, rank) VALUES ('integrity-check', 1)");
+        List<Long> ids = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT rowid FROM notes_trigram WHERE notes_trigram MATCH '\"作り方\"' ORDER BY rowid")) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        assertThat(ids).containsExactly(1L, 2L, 4L);
+    }
+
+    // v1 で 25 行の src を作り、v2 で dst への複製をバックグラウンド移行として登録する
+    private static SchemaMigrator copyMigrator(AtomicInteger chunks) {
+        List<Migration> migrations = new ArrayList<>();
+        migrations.add(new Migration(1, "create src", c -> {
+            SchemaMigrations.exec(c, "CREATE TABLE src(id INTEGER PRIMARY KEY, v TEXT)");
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO src(v) VALUES (?)")) {
+                for (int i = 0; i < 25; i++) {
+                    ps.setString(1, "row" + i);
+                    ps.executeUpdate();
+                }
+            }
+        }));
+        migrations.add(new Migration(2, "copy src to dst", c -> {
+            SchemaMigrations.exec(c, "CREATE TABLE dst(id INTEGER PRIMARY KEY, v TEXT)");
+            SchemaMigrator.enqueueBackground(c, "copy_src");
+        }));
+        BackgroundMigration copy = new BackgroundMigration("copy_src", (c, cursor, chunkSize) -> {
+            chunks.incrementAndGet();
+            long last = cursor;
+            try (PreparedStatement select = c.prepareStatement("SELECT id, v FROM src WHERE id > ? ORDER BY id LIMIT ?");
+                 PreparedStatement insert = c.prepareStatement("INSERT INTO dst(id, v) VALUES (?, ?)")) {
+                select.setLong(1, cursor);
+                select.setInt(2, chunkSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        last = rs.getLong(1);
+                        insert.setLong(1, last);
+                        insert.setString(2, rs.getString(2));
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            return last == cursor ? BackgroundMigration.DONE : last;
+        });
+        return new SchemaMigrator(migrations, List.of(copy));
+    }
+
+    private boolean tableExists(String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE name=?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private int countRows(String table) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -7,6 +7,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -15,6 +18,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class TransactionManagerTest {
 
@@ -74,4 +78,124 @@ class TransactionManagerTest {
 
         assertThat(maxConcurrent.get()).isGreaterThanOrEqualTo(2);
     }
+
+    @Test
+    @DisplayName("書き込みトランザクションは専用の書き込み接続を使い回す")
+    void writeTransactionsReuseDedicatedWriterConnection() throws Exception {
+        Connection first = transactionManager.executeInTransaction(() -> transactionManager.getCurrentConnection());
+        Connection second = transactionManager.executeInTransaction(() -> transactionManager.getCurrentConnection());
+        Connection reader = transactionManager.executeInReadOnlyTransaction(() -> transactionManager.getCurrentConnection());
+
+        assertThat(second).isSameAs(first);
+        assertThat(reader).isNotSameAs(first);
+    }
+
+    @Test
+    @DisplayName("読み取り専用トランザクションの接続では書き込みできない")
+    void readOnlyTransactionRejectsWrites() {
+        assertThatThrownBy(() -> transactionManager.executeInReadOnlyTransaction(() -> {
+            try (Statement st = transactionManager.getCurrentConnection().createStatement()) {
+                st.executeUpdate("INSERT INTO events(title, start_epoch_sec, end_epoch_sec) VALUES('x', 1, 2)");
+            } catch (SQLException e) {
+                throw new DataAccessException("書き込みに失敗しました", e);
+            }
+            return null;
+        })).isInstanceOf(DataAccessException.class);
+    }
+
+    @Test
+    @DisplayName("読み取り専用トランザクション内で書き込みトランザクションは開始できない")
+    void writeInsideReadOnlyTransactionIsRejected() {
+        assertThatThrownBy(() -> transactionManager.executeInReadOnlyTransaction(() ->
+                transactionManager.executeInTransaction(() -> null)))
+                .isInstanceOf(DataAccessException.class)
+                .hasMessageContaining("読み取り専用");
+    }
+
+    @Test
+    @DisplayName("書き込みトランザクション中でも読み取りは待たされない")
+    void readsProceedWhileWriterHoldsTransaction() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch readDone = new CountDownLatch(1);
+        try {
+            Future<Void> writer = executor.submit(() -> {
+                transactionManager.executeInTransaction(() -> {
+                    try (Statement st = transactionManager.getCurrentConnection().createStatement()) {
+                        st.executeUpdate("INSERT INTO events(title, start_epoch_sec, end_epoch_sec) VALUES('w', 1, 2)");
+                    } catch (SQLException e) {
+                        throw new DataAccessException("書き込みに失敗しました", e);
+                    }
+                    writing.countDown();
+                    try {
+                        readDone.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                return null;
+            });
+
+            writing.await();
+            Integer count = transactionManager.executeInReadOnlyTransaction(() -> {
+                try (Statement st = transactionManager.getCurrentConnection().createStatement();
+                     var rs = st.executeQuery("SELECT COUNT(*) FROM events")) {
+                    rs.next();
+                    return rs.getInt(1);
+                } catch (SQLException e) {
+                    throw new DataAccessException("読み取りに失敗しました", e);
+                }
+            });
+            readDone.countDown();
+            writer.get();
+
+            // 未コミットの書き込みは見えない（WAL スナップショット）
+            assertThat(count).isZero();
+        } finally {
+            readDone.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("スナップショット内の読み取りは途中でコミットされた書き込みを見ない")
+    void snapshotIgnoresWritesCommittedDuringIt() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int[] counts = transactionManager.executeInSnapshot(() -> {
+                int before = countEvents();
+                try {
+                    // 書き込みはスナップショットに待たされずにコミットできる
+                    executor.submit(() -> {
+                        transactionManager.executeInTransaction(() -> {
+                            try (Statement st = transactionManager.getCurrentConnection().createStatement()) {
+                                st.executeUpdate("INSERT INTO events(title, start_epoch_sec, end_epoch_sec) VALUES('w', 1, 2)");
+                            } catch (SQLException e) {
+                                throw new DataAccessException("書き込みに失敗しました", e);
+                            }
+                        });
+                        return null;
+                    }).get();
+                } catch (Exception e) {
+                    throw new DataAccessException("書き込みに失敗しました", e);
+                }
+                return new int[] {before, countEvents()};
+            });
+
+            assertThat(counts[1]).isEqualTo(counts[0]);
+            assertThat(transactionManager.executeInReadOnlyTransaction(this::countEvents)).isEqualTo(counts[0] + 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private int countEvents() throws DataAccessException {
+        try (Statement st = transactionManager.getCurrentConnection().createStatement();
+             var rs = st.executeQuery("SELECT COUNT(*) FROM events")) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            throw new DataAccessException("読み取りに失敗しました", e);
+        }
+    }
 }
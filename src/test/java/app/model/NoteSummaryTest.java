@@ -0,0 +1,37 @@
+package app.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * NoteSummary のテスト
+ */
+class NoteSummaryTest {
+
+    @Test
+    @DisplayName("抜粋は SQL の substr と同じくコードポイント単位で切り詰められる")
+    void snippetCountsCodePoints() {
+        Note note = new Note();
+        note.setId(1);
+        note.setTitle("絵文字");
+        // 1文字が UTF-16 で2単位になる文字だけの本文
+        note.setBody("😀".repeat(NoteSummary.SNIPPET_LENGTH + 5));
+
+        String snippet = NoteSummary.of(note).snippet();
+
+        assertThat(snippet.codePointCount(0, snippet.length())).isEqualTo(NoteSummary.SNIPPET_LENGTH);
+        assertThat(snippet).isEqualTo("😀".repeat(NoteSummary.SNIPPET_LENGTH));
+    }
+
+    @Test
+    @DisplayName("上限以下の本文はそのまま抜粋になる")
+    void shortBodyIsKept() {
+        Note note = new Note();
+        note.setBody("😀".repeat(NoteSummary.SNIPPET_LENGTH));
+
+        assertThat(NoteSummary.of(note).snippet()).isEqualTo(note.getBody());
+        assertThat(NoteSummary.prefix("abc", 5)).isEqualTo("abc");
+    }
+}
@@ -5,6 +5,7 @@ import app.db.EventsDao;
 import app.db.TransactionManager;
 import app.exception.DataAccessException;
 import app.model.Event;
+import app.model.Page;
 import app.testutil.TestDataFactory;
 import app.testutil.TestDatabase;
 import org.junit.jupiter.api.*;
@@ -17,7 +18,9 @@ import org.mockito.quality.Strictness;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -464,4 +467,138 @@ class EventServiceTest {
         // 後続テストに影響させないため、元に戻す
         AppConfig.getInstance().setProperty("event.default.duration.minutes", "90");
     }
+
+    @Test
+    @Order(25)
+    @DisplayName("予定は開始時刻順にキーセット方式でページングできる")
+    void testEventPages() throws DataAccessException {
+        long base = 1_735_689_600L;
+        eventsDao.insert("範囲前", base - 3600, base - 1800);
+        for (int i = 0; i < 12; i++) {
+            // 2件ずつ同じ開始時刻にする
+            long start = base + (i / 2) * 3600L;
+            eventsDao.insert("予定" + i, start, start + 1800);
+        }
+
+        List<Event> all = new ArrayList<>();
+        String token = null;
+        do {
+            Page<Event> page = eventService.getEventPage(base, token, 5);
+            assertThat(page.items().size()).isLessThanOrEqualTo(5);
+            all.addAll(page.items());
+            token = page.nextPageToken();
+        } while (token != null);
+
+        assertThat(all).hasSize(12);
+        assertThat(all).extracting(Event::getTitle).doesNotContain("範囲前");
+        assertThat(all).extracting(Event::getId).doesNotHaveDuplicates();
+        assertThat(all).extracting(Event::getStartEpochSec).isSorted();
+        assertThatThrownBy(() -> eventService.getEventPage(base, "broken", 5))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @Order(26)
+    @DisplayName("読み込み済みの週はキャッシュから返され、作成・更新・削除は差分で反映される")
+    void testWeekCacheAppliesMutations() throws DataAccessException {
+        long week = 1_735_516_800L;
+        long nextWeek = week + 7 * 86_400L;
+        Event meeting = eventService.createEvent("会議", week + 3600, week + 7200);
+        EventRangeCache cache = eventService.getRangeCache();
+
+        assertThat(eventService.getEventsBetween(week, nextWeek)).extracting(Event::getTitle).containsExactly("会議");
+        // DAO を直接使った書き込みはキャッシュを通らないため、キャッシュから答えたことが分かる
+        eventsDao.insert("直接追加", week + 60, week + 600);
+        assertThat(eventService.getEventsBetween(week, nextWeek)).extracting(Event::getTitle).containsExactly("会議");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        Event lunch = eventService.createEvent("昼食", week, week + 1800);
+        assertThat(eventService.getEventsBetween(week, nextWeek)).extracting(Event::getTitle).containsExactly("昼食", "会議");
+
+        // 次の週へ移動した予定は元の週から消える
+        meeting.setStartEpochSec(nextWeek + 3600);
+        meeting.setEndEpochSec(nextWeek + 7200);
+        eventService.updateEvent(meeting);
+        assertThat(eventService.getEventsBetween(week, nextWeek)).extracting(Event::getTitle).containsExactly("昼食");
+
+        eventService.deleteEvent(lunch.getId());
+        assertThat(eventService.getEventsBetween(week, nextWeek)).isEmpty();
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Order(27)
+    @DisplayName("前後の週を先読みすると、その週の表示はデータベースに問い合わせない")
+    void testPrefetchAdjacentWeeks() throws Exception {
+        long week = 1_735_516_800L;
+        long weekSeconds = 7 * 86_400L;
+        eventsDao.insert("来週の予定", week + weekSeconds + 3600, week + weekSeconds + 7200);
+
+        eventService.prefetchEventsBetween(week - weekSeconds, week).get(5, TimeUnit.SECONDS);
+        eventService.prefetchEventsBetween(week + weekSeconds, week + 2 * weekSeconds)
+                .get(5, TimeUnit.SECONDS);
+        EventRangeCache cache = eventService.getRangeCache();
+        assertThat(cache.size()).isEqualTo(2);
+
+        assertThat(eventService.getEventsBetween(week + weekSeconds, week + 2 * weekSeconds))
+                .extracting(Event::getTitle).containsExactly("来週の予定");
+        assertThat(eventService.getEventsBetween(week - weekSeconds, week)).isEmpty();
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isZero();
+
+        // 読み込み中に書き込みがあった結果は登録しない
+        long stale = cache.generation();
+        cache.remove(999L);
+        cache.putLoaded(week, week + weekSeconds, List.of(), stale);
+        assertThat(cache.contains(week, week + weekSeconds)).isFalse();
+    }
+
+    @Test
+    @Order(28)
+    @DisplayName("複数の予定を一括で作成・更新・削除でき、読み込み済みの週にも反映される")
+    void testBulkEvents() throws DataAccessException {
+        long week = 1_735_516_800L;
+        long nextWeek = week + 7 * 86_400L;
+        assertThat(eventService.getEventsBetween(week, nextWeek)).isEmpty();
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Event e = new Event();
+            e.setTitle("予定" + i);
+            e.setStartEpochSec(week + i * 600L);
+            e.setEndEpochSec(week + i * 600L + 600);
+            events.add(e);
+        }
+        List<Event> created = eventService.createEvents(events);
+
+        assertThat(created).extracting(Event::getId).isSorted().doesNotHaveDuplicates();
+        assertThat(eventService.getEventsBetween(week, nextWeek)).hasSize(600);
+        assertThat(eventsDao.get(created.get(10).getId()).getTitle()).isEqualTo("予定10");
+
+        created.get(0).setTitle("変更");
+        eventService.updateEvents(List.of(created.get(0)));
+        assertThat(eventsDao.get(created.get(0).getId()).getTitle()).isEqualTo("変更");
+
+        eventService.deleteEvents(created.stream().map(Event::getId).toList());
+        assertThat(eventService.getEventsBetween(week, nextWeek)).isEmpty();
+        assertThat(eventsDao.listBetween(week, nextWeek)).isEmpty();
+    }
+
+    @Test
+    @Order(29)
+    @DisplayName("時間が不正な予定を含む一括作成は何も書き込まない")
+    void testBulkCreateValidatesAllFirst() throws DataAccessException {
+        Event valid = new Event();
+        valid.setTitle("正常");
+        valid.setStartEpochSec(1_735_516_800L);
+        valid.setEndEpochSec(1_735_516_800L + 3600);
+        Event invalid = new Event();
+        invalid.setTitle("逆転");
+        invalid.setStartEpochSec(1_735_516_800L + 3600);
+        invalid.setEndEpochSec(1_735_516_800L);
+
+        assertThatThrownBy(() -> eventService.createEvents(List.of(valid, invalid)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(eventsDao.listBetween(0, Long.MAX_VALUE)).isEmpty();
+    }
 }
@@ -0,0 +1,189 @@
+package app.service;
+
+import app.db.EventsDao;
+import app.db.NotesDao;
+import app.db.TransactionManager;
+import app.exception.DataAccessException;
+import app.model.Event;
+import app.model.Note;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * ExportService のテスト
+ */
+class ExportServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TestDatabase sourceDb;
+    private TestDatabase targetDb;
+    private TransactionManager transactionManager;
+    private NoteService noteService;
+    private EventService eventService;
+    private ExportService exportService;
+    private NoteService importedNotes;
+    private EventsDao importedEventsDao;
+    private ImportService importService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sourceDb = new TestDatabase();
+        transactionManager = new TransactionManager(sourceDb.getDatabase());
+        NotesDao notesDao = new NotesDao(sourceDb.getDatabase(), transactionManager);
+        EventsDao eventsDao = new EventsDao(sourceDb.getDatabase(), transactionManager);
+        noteService = new NoteService(notesDao, transactionManager);
+        eventService = new EventService(eventsDao, transactionManager);
+        exportService = new ExportService(notesDao, eventsDao, transactionManager, sourceDb.getDatabase());
+
+        targetDb = new TestDatabase();
+        TransactionManager targetTx = new TransactionManager(targetDb.getDatabase());
+        NotesDao targetNotesDao = new NotesDao(targetDb.getDatabase(), targetTx);
+        importedEventsDao = new EventsDao(targetDb.getDatabase(), targetTx);
+        importedNotes = new NoteService(targetNotesDao, targetTx);
+        importService = new ImportService(importedNotes, new EventService(importedEventsDao, targetTx), targetNotesDao);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (sourceDb != null) {
+            sourceDb.close();
+        }
+        if (targetDb != null) {
+            targetDb.close();
+        }
+    }
+
+    @Test
+    @DisplayName("JSON Lines で書き出したメモと予定は、そのままインポートすると同じ内容になる")
+    void jsonlRoundTrip() throws Exception {
+        Note note = noteService.createNote("引用 \"と\" バックスラッシュ \\", "1行目\n\t2行目\u0001");
+        eventService.createEvent("会議; 定例", 1_735_689_600L, 1_735_693_200L);
+        Path file = tempDir.resolve("export.jsonl");
+
+        ExportResult result = exportService.exportJsonl(file);
+
+        assertThat(result.notes()).isEqualTo(1);
+        assertThat(result.events()).isEqualTo(1);
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8)).hasSize(2);
+        assertThat(Files.exists(tempDir.resolve("export.jsonl.tmp"))).isFalse();
+
+        ImportProgress imported = importService.importJson(file, null);
+
+        assertThat(imported.notes()).isEqualTo(1);
+        assertThat(imported.events()).isEqualTo(1);
+        Note copy = importedNotes.getRecentNotes().get(0);
+        assertThat(copy.getTitle()).isEqualTo(note.getTitle());
+        assertThat(copy.getBody()).isEqualTo(note.getBody());
+        assertThat(copy.getCreatedAt()).isEqualTo(note.getCreatedAt());
+        Event event = importedEventsDao.listBetween(0, Long.MAX_VALUE).get(0);
+        assertThat(event.getTitle()).isEqualTo("会議; 定例");
+        assertThat(event.getStartEpochSec()).isEqualTo(1_735_689_600L);
+        assertThat(event.getEndEpochSec()).isEqualTo(1_735_693_200L);
+    }
+
+    @Test
+    @DisplayName("Markdown と ICS で書き出したメモと予定は、インポートすると同じタイトル・本文・時刻になる")
+    void markdownAndIcsRoundTrip() throws Exception {
+        noteService.createNote("Shopping: milk/eggs", "- 牛乳\n- 卵\n");
+        noteService.createNote("Minutes", "\n先頭の空行も残る");
+        String longTitle = "とても長い予定のタイトル、".repeat(8) + "終わり";
+        eventService.createEvent(longTitle, 1_735_689_600L, 1_735_693_200L);
+        eventService.createEvent("改行\nあり, カンマ", 1_735_776_000L, 1_735_779_600L);
+
+        ExportResult markdown = exportService.exportMarkdown(tempDir.resolve("notes"));
+        ExportResult ics = exportService.exportIcs(tempDir.resolve("calendar.ics"));
+
+        assertThat(markdown.notes()).isEqualTo(2);
+        assertThat(ics.events()).isEqualTo(2);
+        try (var files = Files.list(tempDir.resolve("notes"))) {
+            assertThat(files.map(p -> p.getFileName().toString()))
+                    .allMatch(name -> name.endsWith(".md") && !name.contains("/") && !name.contains(":"));
+        }
+        assertThat(Files.readAllLines(tempDir.resolve("calendar.ics"), StandardCharsets.UTF_8))
+                .allMatch(line -> line.getBytes(StandardCharsets.UTF_8).length <= 75);
+
+        importService.importMarkdownFolder(tempDir.resolve("notes"), null);
+        importService.importIcs(tempDir.resolve("calendar.ics"), null);
+
+        assertThat(importedNotes.getRecentNotes())
+                .extracting(Note::getTitle, Note::getBody)
+                .containsExactlyInAnyOrder(tuple("Shopping: milk/eggs", "- 牛乳\n- 卵\n"), tuple("Minutes", "\n先頭の空行も残る"));
+        List<Event> events = new ArrayList<>(importedEventsDao.listBetween(0, Long.MAX_VALUE));
+        events.sort(Comparator.comparingLong(Event::getStartEpochSec));
+        assertThat(events).extracting(Event::getTitle).containsExactly(longTitle, "改行\nあり, カンマ");
+        assertThat(events.get(1).getStartEpochSec()).isEqualTo(1_735_776_000L);
+        assertThat(events.get(1).getEndEpochSec()).isEqualTo(1_735_779_600L);
+    }
+
+    @Test
+    @DisplayName("バックアップは書き込み中でも待たずに完了し、コミット済みの行だけを含む")
+    void backupIsConsistentWhileWriterIsOpen() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            noteService.createNote("メモ" + i, "本文".repeat(200));
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch backupDone = new CountDownLatch(1);
+        try {
+            Future<Void> writer = executor.submit(() -> {
+                transactionManager.executeInTransaction(() -> {
+                    try (Statement st = transactionManager.getCurrentConnection().createStatement()) {
+                        st.executeUpdate("INSERT INTO notes(title, body, created_at, updated_at) VALUES('未コミット', '', 1, 1)");
+                    } catch (SQLException e) {
+                        throw new DataAccessException("書き込みに失敗しました", e);
+                    }
+                    writing.countDown();
+                    try {
+                        backupDone.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                return null;
+            });
+            writing.await();
+            Path backup = tempDir.resolve("backup.db");
+
+            int pages = exportService.backup(backup);
+            backupDone.countDown();
+            writer.get();
+
+            assertThat(pages).isPositive();
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + backup);
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(title = '未コミット') FROM notes")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(200);
+                assertThat(rs.getInt(2)).isZero();
+            }
+            assertThat(Files.exists(tempDir.resolve("backup.db.tmp"))).isFalse();
+        } finally {
+            backupDone.countDown();
+            executor.shutdown();
+        }
+    }
+}
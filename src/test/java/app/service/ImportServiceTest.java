@@ -0,0 +1,213 @@
+package app.service;
+
+import app.config.AppConfig;
+import app.db.EventsDao;
+import app.db.NotesDao;
+import app.db.TransactionManager;
+import app.exception.ImportException;
+import app.model.Event;
+import app.model.Note;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * ImportService のテスト
+ */
+class ImportServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TestDatabase testDb;
+    private NotesDao notesDao;
+    private EventsDao eventsDao;
+    private NoteService noteService;
+    private ImportService importService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDb = new TestDatabase();
+        TransactionManager transactionManager = new TransactionManager(testDb.getDatabase());
+        notesDao = new NotesDao(testDb.getDatabase(), transactionManager);
+        eventsDao = new EventsDao(testDb.getDatabase(), transactionManager);
+        noteService = new NoteService(notesDao, transactionManager);
+        EventService eventService = new EventService(eventsDao, transactionManager);
+        importService = new ImportService(noteService, eventService, notesDao);
+    }
+
+    @AfterEach
+    void tearDown() {
+        AppConfig.getInstance().setProperty("import.batch.size", "500");
+        AppConfig.getInstance().setProperty("import.queue.capacity", "1000");
+        AppConfig.getInstance().setProperty("import.note.max.bytes", "1048576");
+        if (testDb != null) {
+            testDb.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Markdown フォルダは1ファイル1メモで取り込まれ、見出しがタイトルになり全文検索できる")
+    void importsMarkdownFolder() throws Exception {
+        AppConfig.getInstance().setProperty("import.note.max.bytes", "1000");
+        Path sub = Files.createDirectories(tempDir.resolve("work"));
+        Files.writeString(tempDir.resolve("a.md"), "# 買い物リスト\n\n- 牛乳\n- 卵\n", StandardCharsets.UTF_8);
+        Files.writeString(sub.resolve("minutes.txt"), "\uFEFFkickoff meeting notes", StandardCharsets.UTF_8);
+        Files.writeString(tempDir.resolve("image.png"), "not a note", StandardCharsets.UTF_8);
+        Files.writeString(tempDir.resolve("large.md"), "x".repeat(2000), StandardCharsets.UTF_8);
+        Files.write(tempDir.resolve("broken.md"), new byte[]{(byte) 0xff, (byte) 0xfe, 0x41});
+
+        ImportProgress result = importService.importMarkdownFolder(tempDir, null);
+
+        assertThat(result.notes()).isEqualTo(2);
+        assertThat(result.skipped()).isEqualTo(2);
+        List<Note> notes = noteService.getRecentNotes();
+        assertThat(notes).extracting(Note::getTitle).containsExactlyInAnyOrder("買い物リスト", "minutes");
+        Note shopping = notes.stream().filter(n -> n.getTitle().equals("買い物リスト")).findFirst().orElseThrow();
+        assertThat(shopping.getBody()).isEqualTo("- 牛乳\n- 卵\n");
+        assertThat(shopping.getCreatedAt()).isEqualTo(Files.getLastModifiedTime(tempDir.resolve("a.md")).toMillis() / 1000);
+        assertThat(notesDao.searchNotes("kickoff", 10)).extracting(Note::getTitle).containsExactly("minutes");
+    }
+
+    @Test
+    @DisplayName("ICS の VEVENT は折り返し・UTC・TZID・終日・DURATION を解釈し、不正な予定は読み飛ばされる")
+    void importsIcsEvents() throws Exception {
+        String ics = String.join("\r\n",
+                "BEGIN:VCALENDAR",
+                "VERSION:2.0",
+                "BEGIN:VEVENT",
+                "SUMMARY:定例\\, 週次",
+                " ミーティング",
+                "DTSTART:20250106T010000Z",
+                "DTEND:20250106T020000Z",
+                "BEGIN:VALARM",
+                "TRIGGER:-PT15M",
+                "DURATION:PT5M",
+                "END:VALARM",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "SUMMARY:東京での予定",
+                "DTSTART;TZID=Asia/Tokyo:20250107T090000",
+                "DURATION:PT1H30M",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "SUMMARY:祝日",
+                "DTSTART;VALUE=DATE:20250113",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "SUMMARY:逆転",
+                "DTSTART:20250108T100000Z",
+                "DTEND:20250108T090000Z",
+                "END:VEVENT",
+                "END:VCALENDAR", "");
+        Path file = tempDir.resolve("calendar.ics");
+        Files.writeString(file, ics, StandardCharsets.UTF_8);
+
+        ImportProgress result = importService.importIcs(file, null);
+
+        assertThat(result.events()).isEqualTo(3);
+        assertThat(result.skipped()).isEqualTo(1);
+        List<Event> events = new ArrayList<>(eventsDao.listBetween(0, Long.MAX_VALUE));
+        events.sort(Comparator.comparingLong(Event::getStartEpochSec));
+        assertThat(events).extracting(Event::getTitle).containsExactly("定例, 週次ミーティング", "東京での予定", "祝日");
+        assertThat(events.get(0).getStartEpochSec()).isEqualTo(1_736_125_200L);
+        assertThat(events.get(0).getEndEpochSec() - events.get(0).getStartEpochSec()).isEqualTo(3600);
+        long tokyo = LocalDateTime.of(2025, 1, 7, 9, 0).atZone(ZoneId.of("Asia/Tokyo")).toEpochSecond();
+        assertThat(events.get(1).getStartEpochSec()).isEqualTo(tokyo);
+        assertThat(events.get(1).getEndEpochSec()).isEqualTo(tokyo + 5400);
+        long holiday = LocalDate.of(2025, 1, 13).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        assertThat(events.get(2).getStartEpochSec()).isEqualTo(holiday);
+        assertThat(events.get(2).getEndEpochSec()).isEqualTo(holiday + 86_400);
+    }
+
+    @Test
+    @DisplayName("JSON ダンプは小さなバッチとキューでも全件取り込まれ、バッチごとに進捗が通知される")
+    void importsJsonDumpInBatches() throws Exception {
+        AppConfig.getInstance().setProperty("import.batch.size", "10");
+        AppConfig.getInstance().setProperty("import.queue.capacity", "1");
+        StringBuilder json = new StringBuilder("{\"version\": 1, \"notes\": [");
+        for (int i = 0; i < 95; i++) {
+            json.append(i > 0 ? "," : "")
+                    .append("{\"id\": ").append(i + 1000)
+                    .append(", \"title\": \"メモ").append(i)
+                    .append("\", \"body\": \"1行目\\n\\u65e5\\u672c \\\"引用\\\"\", \"createdAt\": 1735689600, \"updatedAt\": 1735689601,")
+                    .append(" \"tags\": [\"a\", {\"nested\": true}], \"pinned\": null}");
+        }
+        json.append("], \"events\": [")
+                .append("{\"title\": \"会議\", \"startEpochSec\": 1735689600, \"endEpochSec\": 1735693200},")
+                .append("{\"title\": \"短すぎる\", \"startEpochSec\": 1735689600, \"endEpochSec\": 1735689660},")
+                .append("{\"title\": \"時刻なし\"}")
+                .append("]}");
+        Path file = tempDir.resolve("dump.json");
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+        List<ImportProgress> reports = new ArrayList<>();
+
+        ImportProgress result = importService.importJson(file, reports::add);
+
+        assertThat(result.notes()).isEqualTo(95);
+        assertThat(result.events()).isEqualTo(1);
+        assertThat(result.skipped()).isEqualTo(2);
+        // メモ 10 件ずつ 10 バッチと予定 1 バッチ
+        assertThat(reports).hasSize(11);
+        assertThat(reports).extracting(ImportProgress::notes).isSorted();
+        Note first = noteService.getRecentNotes().stream()
+                .filter(n -> n.getTitle().equals("メモ0")).findFirst().orElseThrow();
+        assertThat(first.getBody()).isEqualTo("1行目\n日本 \"引用\"");
+        assertThat(first.getCreatedAt()).isEqualTo(1_735_689_600L);
+        assertThat(first.getUpdatedAt()).isEqualTo(1_735_689_601L);
+    }
+
+    @Test
+    @DisplayName("取り込んだメモはメモキャッシュに入らず、終了時に検索結果キャッシュの破棄と検索索引の再構築が一度だけ行われる")
+    void importRefreshesSearchCachesOnceAtTheEnd() throws Exception {
+        TransactionManager transactionManager = new TransactionManager(testDb.getDatabase());
+        NoteSearchIndex searchIndex = new NoteSearchIndex();
+        NoteService cachedService = new NoteService(notesDao, transactionManager, null, searchIndex);
+        cachedService.rebuildSearchIndex();
+        ImportService cachedImport = new ImportService(cachedService,
+                new EventService(eventsDao, transactionManager), notesDao);
+        assertThat(cachedService.getNoteSummaryPage("会議", null, 10).items()).isEmpty();
+        assertThat(cachedService.getPageCache().size()).isEqualTo(1);
+        AppConfig.getInstance().setProperty("import.batch.size", "2");
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(tempDir.resolve("m" + i + ".md"), "# 会議" + i + "\n\n議事録", StandardCharsets.UTF_8);
+        }
+
+        ImportProgress result = cachedImport.importMarkdownFolder(tempDir, null);
+
+        assertThat(result.notes()).isEqualTo(5);
+        assertThat(cachedService.getNoteCacheStats().entries()).isZero();
+        assertThat(cachedService.getPageCache().size()).isZero();
+        assertThat(cachedService.getNoteSummaryPage("会議", null, 10).items()).hasSize(5);
+        assertThat(searchIndex.search("議事録", 10, notesDao::listByIds)).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("壊れた JSON は ImportException になり、それまでのバッチは書き込まれたまま残る")
+    void malformedJsonKeepsEarlierBatches() throws Exception {
+        AppConfig.getInstance().setProperty("import.batch.size", "2");
+        Path file = tempDir.resolve("broken.json");
+        Files.writeString(file, "{\"notes\": [{\"title\": \"一\"}, {\"title\": \"二\"}, {\"title\": \"三\", \"body\": ",
+                StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> importService.importJson(file, null))
+                .isInstanceOf(ImportException.class)
+                .hasMessageContaining("Malformed JSON");
+        assertThat(noteService.getRecentNotes()).extracting(Note::getTitle).containsExactlyInAnyOrder("一", "二");
+    }
+}
@@ -0,0 +1,208 @@
+package app.service;
+
+import app.db.NotesDao;
+import app.db.TransactionManager;
+import app.model.Note;
+import app.model.NoteSearchResult;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * NoteSearchIndex のテスト
+ */
+class NoteSearchIndexTest {
+
+    private TestDatabase testDb;
+    private NotesDao notesDao;
+    private NoteSearchIndex index;
+    private NoteService noteService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDb = new TestDatabase();
+        TransactionManager transactionManager = new TransactionManager(testDb.getDatabase());
+        notesDao = new NotesDao(testDb.getDatabase(), transactionManager);
+        index = new NoteSearchIndex();
+        noteService = new NoteService(notesDao, transactionManager, null, index);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (testDb != null) {
+            testDb.close();
+        }
+    }
+
+    @Test
+    @DisplayName("起動時の構築で既存メモが索引され、部分一致と前方一致の両方で見つかる")
+    void rebuildIndexesExistingNotes() throws Exception {
+        // 索引を経由せず DAO で直接作成しておく
+        for (int i = 0; i < 1200; i++) {
+            notesDao.insert(note("メモ" + i, "本文" + i));
+        }
+        notesDao.insert(note("Kotlin 入門", "コルーチンの使い方"));
+        assertThat(index.isReady()).isFalse();
+
+        noteService.rebuildSearchIndex();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(search("ルーチン", 10)).extracting(NoteSearchResult::title).containsExactly("Kotlin 入門");
+        assertThat(search("kot", 10)).extracting(NoteSearchResult::title).containsExactly("Kotlin 入門");
+        assertThat(search("メモ119", 100)).hasSize(11);
+        NoteSearchIndexStats stats = index.getStats();
+        assertThat(stats.notes()).isEqualTo(1201);
+        assertThat(stats.grams()).isPositive();
+        assertThat(stats.estimatedBytes()).isPositive();
+        assertThat(stats.lastRebuildMillis()).isNotNegative();
+    }
+
+    @Test
+    @DisplayName("NoteService の作成・更新・削除がコミット後に索引へ反映される")
+    void serviceWritesUpdateIndexIncrementally() throws Exception {
+        noteService.rebuildSearchIndex();
+
+        Note created = noteService.createNote("買い物", "牛乳と卵");
+        assertThat(search("牛乳", 10)).extracting(NoteSearchResult::id).containsExactly(created.getId());
+
+        created.setBody("パンとバター");
+        noteService.updateNote(created);
+        assertThat(search("牛乳", 10)).isEmpty();
+        assertThat(search("バター", 10)).extracting(NoteSearchResult::id).containsExactly(created.getId());
+
+        noteService.deleteNote(created.getId());
+        assertThat(search("バター", 10)).isEmpty();
+        assertThat(index.getStats().notes()).isZero();
+    }
+
+    @Test
+    @DisplayName("タイトル一致が先に並び、一致箇所はハイライトされ本文は抜粋される")
+    void searchRanksTitleMatchesFirstAndHighlights() throws Exception {
+        noteService.rebuildSearchIndex();
+        Note bodyOnly = noteService.createNote("雑記", "あ".repeat(50) + "Java の話" + "い".repeat(100));
+        Note titled = noteService.createNote("Java メモ", "短い");
+
+        List<NoteSearchResult> results = noteService.quickSearch("java");
+
+        assertThat(results).extracting(NoteSearchResult::id).containsExactly(titled.getId(), bodyOnly.getId());
+        assertThat(results.get(0).highlightedTitle())
+                .isEqualTo(NoteSearchResult.HIGHLIGHT_START + "Java" + NoteSearchResult.HIGHLIGHT_END + " メモ");
+        String snippet = results.get(1).snippet();
+        assertThat(snippet).startsWith(NoteSearchResult.ELLIPSIS).endsWith(NoteSearchResult.ELLIPSIS);
+        assertThat(snippet).contains(NoteSearchResult.HIGHLIGHT_START + "Java" + NoteSearchResult.HIGHLIGHT_END);
+    }
+
+    @Test
+    @DisplayName("更新を繰り返しても削除済みスロットは詰め直され、結果は最新の内容だけを返す")
+    void repeatedUpdatesCompactDeadSlots() throws Exception {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Note n = note("タイトル" + i, "初期");
+            n.setId(notesDao.insert(n));
+            notes.add(n);
+            index.put(n);
+        }
+        for (int round = 0; round < 300; round++) {
+            for (Note n : notes) {
+                n.setBody("版" + round);
+                index.put(n);
+            }
+        }
+        for (Note n : notes) {
+            notesDao.update(n);
+        }
+
+        assertThat(search("版299", 20)).hasSize(10);
+        assertThat(search("版298", 20)).isEmpty();
+        assertThat(index.getStats().compactions()).isPositive();
+        assertThat(index.getStats().notes()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("本文は先頭だけを持ち、1〜2文字の語や先頭で確定する一致はデータベースを読まずに答える")
+    void searchAnswersFromMemoryAndReadsUnconfirmedCandidatesOnce() throws Exception {
+        noteService.rebuildSearchIndex();
+        Note split = noteService.createNote("雑記", "東京 京都");
+        Note exact = noteService.createNote("旅行", "東京都の地図");
+        long bytesBefore = index.getStats().estimatedBytes();
+        Note tail = noteService.createNote("長文", "本".repeat(10_000) + "東京都庁");
+        List<List<Long>> reads = new ArrayList<>();
+        NoteSearchIndex.NoteFetcher counting = ids -> {
+            reads.add(ids);
+            return notesDao.listByIds(ids);
+        };
+
+        assertThat(index.search("京都", 10, counting)).extracting(NoteSearchResult::id)
+                .containsExactlyInAnyOrder(split.getId(), exact.getId(), tail.getId());
+        assertThat(index.search("本", 10, counting)).extracting(NoteSearchResult::id).containsExactly(tail.getId());
+        // 「東京 京都」は本文全体を持っているのでメモリ上で外れと分かる
+        assertThat(index.search("旅行", 10, counting)).hasSize(1);
+        assertThat(reads).isEmpty();
+
+        // 先頭より後ろにしか無い3文字以上の語は、その候補だけを1回読んで確かめる
+        assertThat(index.search("東京都", 10, counting)).extracting(NoteSearchResult::id)
+                .containsExactly(exact.getId(), tail.getId());
+        assertThat(reads).containsExactly(List.of(tail.getId()));
+        // 本文の長さは索引の大きさにほとんど効かない
+        assertThat(index.getStats().estimatedBytes() - bytesBefore).isLessThan(5_000);
+    }
+
+    @Test
+    @DisplayName("再構築の読み込み中も書き込みは待たされず、その間の変更は新しい索引にも反映される")
+    void rebuildDoesNotBlockWrites() throws Exception {
+        Note kept = noteService.createNote("残る", "りんご");
+        Note deleted = noteService.createNote("消える", "みかん");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread builder = new Thread(() -> {
+            try {
+                index.rebuild((afterId, limit) -> {
+                    List<Note> chunk = notesDao.listAfterId(afterId, limit);
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return chunk;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        builder.start();
+        loading.await();
+
+        // 読み込みが止まっている間に書き込みが終わる
+        Note added = noteService.createNote("追加", "ぶどう");
+        noteService.deleteNote(deleted.getId());
+        release.countDown();
+        builder.join(5_000);
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(search("ぶどう", 10)).extracting(NoteSearchResult::id).containsExactly(added.getId());
+        assertThat(search("みかん", 10)).isEmpty();
+        assertThat(search("りんご", 10)).extracting(NoteSearchResult::id).containsExactly(kept.getId());
+    }
+
+    private List<NoteSearchResult> search(String query, int limit) throws Exception {
+        return index.search(query, limit, notesDao::listByIds);
+    }
+
+    private static Note note(String title, String body) {
+        Note note = new Note();
+        note.setTitle(title);
+        note.setBody(body);
+        note.setCreatedAt(1);
+        note.setUpdatedAt(1);
+        return note;
+    }
+}
@@ -1,10 +1,14 @@
 package app.service;
 
 import app.config.AppConfig;
+import app.db.GroupCommitWriter;
 import app.db.NotesDao;
 import app.db.TransactionManager;
 import app.exception.DataAccessException;
 import app.model.Note;
+import app.model.NoteSearchResult;
+import app.model.NoteSummary;
+import app.model.Page;
 import app.testutil.TestDataFactory;
 import app.testutil.TestDatabase;
 import org.junit.jupiter.api.*;
@@ -15,7 +19,9 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -341,4 +347,314 @@ class NoteServiceTest {
         // Then
         assertThat(results).hasSize(3);
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(18)
+    @DisplayName("グループコミット経由の非同期更新はコミット後に完了する")
+    void testUpdateNoteAsyncWithGroupCommit() throws Exception {
+        try (GroupCommitWriter writer = new GroupCommitWriter(transactionManager, 16, 10)) {
+            NoteService asyncService = new NoteService(notesDao, transactionManager, writer);
+            Note note = asyncService.createNote("非同期前", "内容");
+
+            note.setTitle("非同期後");
+            Note updated = asyncService.updateNoteAsync(note).get(10, TimeUnit.SECONDS);
+
+            assertThat(updated.getTitle()).isEqualTo("非同期後");
+            assertThat(notesDao.getById(note.getId()).getTitle()).isEqualTo("非同期後");
+            assertThat(writer.getCommittedMutations()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("キーセットページングで全件を重複・欠落なく新しい順に取得できる")
+    void testNoteSummaryPagesCoverAllNotes() throws DataAccessException {
+        // 同じ updated_at を持つメモを混ぜて第2キー（id）での並びも確認する
+        for (int i = 0; i < 25; i++) {
+            Note note = TestDataFactory.createNote("ページ" + i, "本文" + i);
+            note.setCreatedAt(1000);
+            note.setUpdatedAt(1000 + i / 3);
+            notesDao.insert(note);
+        }
+
+        List<NoteSummary> all = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page<NoteSummary> page = noteService.getNoteSummaryPage("", token, 10);
+            all.addAll(page.items());
+            token = page.nextPageToken();
+            pages++;
+        } while (token != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(all).hasSize(25);
+        assertThat(all).extracting(NoteSummary::id).doesNotHaveDuplicates();
+        for (int i = 1; i < all.size(); i++) {
+            NoteSummary prev = all.get(i - 1);
+            NoteSummary cur = all.get(i);
+            assertThat(prev.updatedAt() > cur.updatedAt()
+                    || (prev.updatedAt() == cur.updatedAt() && prev.id() < cur.id())).isTrue();
+        }
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("検索結果のページングは最初に選んだ検索方式（LIKE）のまま続く")
+    void testSearchPagesKeepFallbackStrategy() throws DataAccessException {
+        for (int i = 0; i < 7; i++) {
+            noteService.createNote("買い物メモ" + i, "牛乳と卵");
+        }
+        noteService.createNote("無関係", "別の内容");
+
+        Page<NoteSummary> first = noteService.getNoteSummaryPage("牛乳", null, 5);
+        Page<NoteSummary> second = noteService.getNoteSummaryPage("牛乳", first.nextPageToken(), 5);
+
+        assertThat(first.items()).hasSize(5);
+        assertThat(first.hasMore()).isTrue();
+        assertThat(second.items()).hasSize(2);
+        assertThat(second.hasMore()).isFalse();
+        assertThat(second.items()).extracting(NoteSummary::id)
+                .doesNotContainAnyElementsOf(first.items().stream().map(NoteSummary::id).toList());
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("不正な継続トークンや別の一覧のトークンは IllegalArgumentException になる")
+    void testInvalidPageTokenIsRejected() throws DataAccessException {
+        for (int i = 0; i < 3; i++) {
+            noteService.createNote("メモ" + i, "");
+        }
+        String recentToken = noteService.getNoteSummaryPage("", null, 1).nextPageToken();
+
+        assertThatThrownBy(() -> noteService.getNoteSummaryPage("", "not-a-token!", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> noteService.getNoteSummaryPage("メモ", recentToken, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("キャッシュ済みクエリの絞り込みは元の結果のメモだけを読み直して答える（入力中の検索と一覧のページ）")
+    void testSearchRefinementIsServedFromCache() throws DataAccessException {
+        Note room = noteService.createNote("会議メモ", "定例の会議室は3階");
+        noteService.createNote("会議の準備", "資料を印刷する");
+        noteService.createNote("買い物", "牛乳");
+        NoteSearchCache<List<NoteSearchResult>> cache = noteService.getSearchCache();
+        NoteSearchCache<Page<NoteSummary>> pageCache = noteService.getPageCache();
+
+        assertThat(noteService.quickSearch("会議")).hasSize(2);
+        assertThat(noteService.getNoteSummaryPage("会議", null, 10).items()).hasSize(2);
+        // DAO を直接使った書き込みはキャッシュを通らないため、キャッシュから答えたことが分かる
+        notesDao.insert(TestDataFactory.createNote("別の会議室", "直接追加"));
+        List<NoteSearchResult> refined = noteService.quickSearch("会議室");
+        Page<NoteSummary> refinedPage = noteService.getNoteSummaryPage("会議室", null, 10);
+
+        assertThat(refined).extracting(NoteSearchResult::id).containsExactly(room.getId());
+        assertThat(refined.get(0).snippet())
+                .contains(NoteSearchResult.HIGHLIGHT_START + "会議室" + NoteSearchResult.HIGHLIGHT_END);
+        assertThat(refinedPage.items()).extracting(NoteSummary::title).containsExactly("会議メモ");
+        assertThat(refinedPage.hasMore()).isFalse();
+        assertThat(cache.getRefinedHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(pageCache.getRefinedHitCount()).isEqualTo(1);
+        assertThat(pageCache.getMissCount()).isEqualTo(1);
+        assertThat(noteService.quickSearch("  会議室 ")).hasSize(1);
+        assertThat(noteService.getNoteSummaryPage(" 会議室", null, 10).items()).hasSize(1);
+        assertThat(cache.getExactHitCount()).isEqualTo(1);
+        assertThat(pageCache.getExactHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Order(23)
+    @DisplayName("メモの作成・更新・削除は影響するキャッシュエントリだけを破棄する")
+    void testSearchCacheIsInvalidatedPrecisely() throws DataAccessException {
+        Note meeting = noteService.createNote("会議メモ", "議題");
+        noteService.createNote("買い物", "牛乳");
+        NoteSearchCache<Page<NoteSummary>> cache = noteService.getPageCache();
+        noteService.getNoteSummaryPage("会議", null, 10);
+        noteService.getNoteSummaryPage("牛乳", null, 10);
+        noteService.getNoteSummaryPage("", null, 10);
+        assertThat(cache.size()).isEqualTo(3);
+
+        // 「牛乳」に一致するメモの作成は「会議」のエントリに影響しない（最近のメモの一覧は破棄される）
+        noteService.createNote("追加の買い物", "牛乳とパン");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(noteService.getNoteSummaryPage("牛乳", null, 10).items()).hasSize(2);
+
+        meeting.setBody("議題と牛乳");
+        noteService.updateNote(meeting);
+        assertThat(noteService.getNoteSummaryPage("会議", null, 10).items())
+                .extracting(NoteSummary::snippet).containsExactly("議題と牛乳");
+        assertThat(noteService.getNoteSummaryPage("牛乳", null, 10).items()).hasSize(3);
+
+        noteService.deleteNote(meeting.getId());
+        assertThat(noteService.getNoteSummaryPage("会議", null, 10).items()).isEmpty();
+        assertThat(noteService.getNoteSummaryPage("牛乳", null, 10).items()).hasSize(2);
+    }
+
+    @Test
+    @Order(24)
+    @DisplayName("件数上限で切り詰められた結果や続きのページからは絞り込まず、キーは継続トークンと件数を含む")
+    void testTruncatedResultsAreNotRefined() throws DataAccessException {
+        NoteSearchCache<String> cache = new NoteSearchCache<>(2);
+        cache.put(NoteSearchCache.key("会議", null, 10), "切り詰め", new long[]{1}, false, cache.generation());
+        cache.put(NoteSearchCache.key("準備", "token", 10), "続き", new long[]{2}, true, cache.generation());
+
+        assertThat(cache.supersetIds(NoteSearchCache.key("会議室", null, 10))).isNull();
+        assertThat(cache.supersetIds(NoteSearchCache.key("準備中", null, 10))).isNull();
+        assertThat(cache.get(NoteSearchCache.key("会議", null, 10))).isEqualTo("切り詰め");
+        assertThat(cache.get(NoteSearchCache.key("会議", null, 20))).isNull();
+        assertThat(cache.get(NoteSearchCache.key("準備", null, 10))).isNull();
+
+        long stale = cache.generation();
+        cache.invalidate(99L);
+        cache.put(NoteSearchCache.key("古い結果", null, 10), "古い", new long[0], true, stale);
+        assertThat(cache.get(NoteSearchCache.key("古い結果", null, 10))).isNull();
+
+        cache.put(NoteSearchCache.key("a", null, 10), "a", new long[0], true, cache.generation());
+        cache.put(NoteSearchCache.key("b", null, 10), "b", new long[0], true, cache.generation());
+        cache.put(NoteSearchCache.key("c", null, 10), "c", new long[0], true, cache.generation());
+        assertThat(cache.size()).isEqualTo(2);
+
+        // 2ページ目以降もトークンごとにキャッシュされる
+        for (int i = 0; i < 5; i++) {
+            noteService.createNote("ページ" + i, "");
+        }
+        Page<NoteSummary> first = noteService.getNoteSummaryPage("", null, 2);
+        Page<NoteSummary> second = noteService.getNoteSummaryPage("", first.nextPageToken(), 2);
+        assertThat(noteService.getNoteSummaryPage("", first.nextPageToken(), 2)).isSameAs(second);
+        assertThat(noteService.getNoteSummaryPage("", null, 3)).isNotSameAs(first);
+    }
+
+    @Test
+    @Order(25)
+    @DisplayName("取得したメモはキャッシュから返され、更新・削除はコミット後にキャッシュへ反映される")
+    void testNoteCacheReadThroughAndWriteThrough() throws DataAccessException {
+        Note created = noteService.createNote("キャッシュ", "初期の本文");
+        NoteCacheStats before = noteService.getNoteCacheStats();
+
+        Note loaded = noteService.getNote(created.getId());
+        assertThat(loaded.getBody()).isEqualTo("初期の本文");
+        assertThat(noteService.getNoteCacheStats().hits()).isEqualTo(before.hits() + 1);
+
+        // 返されたメモを書き換えてもキャッシュには影響しない
+        loaded.setBody("保存していない変更");
+        assertThat(noteService.getNote(created.getId()).getBody()).isEqualTo("初期の本文");
+
+        Note edit = new Note();
+        edit.setId(created.getId());
+        edit.setTitle("キャッシュ");
+        edit.setBody("更新後の本文");
+        edit.setUpdatedAt(created.getUpdatedAt());
+        Note stored = noteService.updateNote(edit);
+        assertThat(stored.getUpdatedAt()).isGreaterThan(created.getUpdatedAt());
+        assertThat(stored.getUpdatedAt()).isEqualTo(notesDao.getById(created.getId()).getUpdatedAt());
+        // 返されるのは呼び出し側のオブジェクトではなく、保存された行（作成日時を含む）
+        assertThat(stored).isNotSameAs(edit);
+        assertThat(stored.getCreatedAt()).isEqualTo(created.getCreatedAt());
+        assertThat(stored.getBody()).isEqualTo("更新後の本文");
+
+        Note afterUpdate = noteService.getNote(created.getId());
+        assertThat(afterUpdate.getBody()).isEqualTo("更新後の本文");
+        assertThat(afterUpdate.getCreatedAt()).isEqualTo(created.getCreatedAt());
+
+        noteService.deleteNote(created.getId());
+        assertThat(noteService.getNote(created.getId())).isNull();
+    }
+
+    @Test
+    @Order(26)
+    @DisplayName("メモキャッシュは本文の推定バイト数で上限を守り、古いものから追い出す")
+    void testNoteCacheEvictsBySize() {
+        Note small = TestDataFactory.createNote("小", "a");
+        small.setId(1);
+        long limit = NoteCache.sizeOf(small) * 3;
+        NoteCache cache = new NoteCache(limit);
+        for (long id = 1; id <= 3; id++) {
+            Note n = TestDataFactory.createNote("小", "a");
+            n.setId(id);
+            cache.put(n);
+        }
+        assertThat(cache.get(1)).isNotNull();
+
+        // 本文の大きいメモは2件分の容量を使い、最も長く使われていない 2 と 3 を追い出す
+        Note large = TestDataFactory.createNote("小", "a".repeat(65));
+        large.setId(4);
+        cache.put(large);
+
+        NoteCacheStats stats = cache.getStats();
+        assertThat(stats.evictions()).isEqualTo(2);
+        assertThat(stats.entries()).isEqualTo(2);
+        assertThat(stats.bytes()).isLessThanOrEqualTo(limit);
+        assertThat(cache.get(1)).isNotNull();
+        assertThat(cache.get(2)).isNull();
+
+        // 上限を1件で超えるメモは登録しない
+        Note huge = TestDataFactory.createNote("大", "a".repeat(10_000));
+        huge.setId(5);
+        cache.put(huge);
+        assertThat(cache.get(5)).isNull();
+
+        // 読み込み中に書き込みがあった古い内容は登録しない
+        long stale = cache.generation();
+        cache.remove(1);
+        cache.putLoaded(small, stale);
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    @Order(27)
+    @DisplayName("複数のメモを一括で作成・更新・削除でき、ID は挿入順に割り当てられる")
+    void testBulkCreateUpdateDelete() throws DataAccessException {
+        Note existing = noteService.createNote("既存", "");
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            notes.add(TestDataFactory.createNote("一括" + i, i == 700 ? "検索できる本文" : "本文"));
+        }
+        notes.add(TestDataFactory.createNote("  ", null));
+
+        List<Note> created = noteService.createNotes(notes);
+
+        assertThat(created).hasSize(1201);
+        assertThat(created).extracting(Note::getId).isSorted().doesNotHaveDuplicates()
+                .allMatch(id -> id > existing.getId());
+        assertThat(notesDao.getById(created.get(5).getId()).getTitle()).isEqualTo("一括5");
+        assertThat(created.get(1200).getTitle()).isEqualTo("無題のメモ");
+        assertThat(noteService.searchNotes("検索できる")).extracting(Note::getId).containsExactly(created.get(700).getId());
+
+        List<Note> edits = new ArrayList<>(created.subList(0, 3));
+        edits.forEach(n -> n.setBody("更新済み"));
+        noteService.updateNotes(edits);
+        assertThat(noteService.getNote(edits.get(2).getId()).getBody()).isEqualTo("更新済み");
+
+        List<Long> ids = new ArrayList<>(created.stream().map(Note::getId).toList());
+        noteService.deleteNotes(ids);
+        assertThat(noteService.getRecentNotes()).extracting(Note::getId).containsExactly(existing.getId());
+    }
+
+    @Test
+    @Order(28)
+    @DisplayName("一括更新・一括削除は見つからないメモが1件でもあればすべてロールバックされる")
+    void testBulkWritesRollBackOnMissingNote() throws DataAccessException {
+        Note first = noteService.createNote("一件目", "元の本文");
+        Note second = noteService.createNote("二件目", "元の本文");
+        Note missing = TestDataFactory.createNote("存在しない", "");
+        missing.setId(9_999);
+        first.setBody("変更");
+
+        assertThatThrownBy(() -> noteService.updateNotes(List.of(first, missing)))
+                .isInstanceOf(DataAccessException.class);
+        assertThat(notesDao.getById(first.getId()).getBody()).isEqualTo("元の本文");
+
+        assertThatThrownBy(() -> noteService.deleteNotes(List.of(second.getId(), 9_999L)))
+                .isInstanceOf(DataAccessException.class);
+        assertThat(noteService.noteExists(second.getId())).isTrue();
+
+        // 失敗したバッチがキャッシュされた文に残らず、次の一括更新に混ざらない
+        second.setBody("後の変更");
+        noteService.updateNotes(List.of(second));
+        assertThat(notesDao.getById(second.getId()).getBody()).isEqualTo("後の変更");
+        assertThat(notesDao.getById(first.getId()).getBody()).isEqualTo("元の本文");
+    }
+}
@@ -0,0 +1,169 @@
+package app.service;
+
+import app.db.NotesDao;
+import app.db.TransactionManager;
+import app.model.Note;
+import app.testutil.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * NoteUpdateCoalescer のテスト
+ */
+class NoteUpdateCoalescerTest {
+
+    private TestDatabase testDb;
+    private NotesDao notesDao;
+    private NoteService noteService;
+    private NoteUpdateCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDb = new TestDatabase();
+        TransactionManager transactionManager = new TransactionManager(testDb.getDatabase());
+        notesDao = new NotesDao(testDb.getDatabase(), transactionManager);
+        noteService = new NoteService(notesDao, transactionManager);
+        // 自動フラッシュが走らないよう長いウィンドウにする
+        coalescer = new NoteUpdateCoalescer(noteService, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) {
+            coalescer.close();
+        }
+        if (testDb != null) {
+            testDb.close();
+        }
+    }
+
+    @Test
+    @DisplayName("同じメモへの連続した更新は最新の内容だけが1回書き込まれる")
+    void coalescesRepeatedUpdates() throws Exception {
+        Note created = noteService.createNote("元のタイトル", "");
+
+        List<CompletableFuture<Note>> futures = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            futures.add(coalescer.submit(copyOf(created, "タイトル", "本文" + i)));
+        }
+        assertThat(coalescer.getPending(created.getId()).getBody()).isEqualTo("本文20");
+        assertThat(futures).noneMatch(CompletableFuture::isDone);
+
+        coalescer.flush();
+
+        assertThat(futures).allSatisfy(f -> assertThat(f.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("本文20"));
+        assertThat(coalescer.getSubmittedCount()).isEqualTo(20);
+        assertThat(coalescer.getWrittenCount()).isEqualTo(1);
+        assertThat(coalescer.getPending(created.getId())).isNull();
+        assertThat(notesDao.getById(created.getId()).getBody()).isEqualTo("本文20");
+    }
+
+    @Test
+    @DisplayName("存在しないメモが混ざっても他のメモの更新は失われない")
+    void failedNoteDoesNotLoseOthers() throws Exception {
+        Note a = noteService.createNote("A", "");
+        Note b = noteService.createNote("B", "");
+        Note missing = copyOf(a, "消えたメモ", "");
+        missing.setId(999_999L);
+
+        CompletableFuture<Note> okA = coalescer.submit(copyOf(a, "A", "更新A"));
+        CompletableFuture<Note> failing = coalescer.submit(missing);
+        CompletableFuture<Note> okB = coalescer.submit(copyOf(b, "B", "更新B"));
+        long acceptedA = coalescer.getPending(a.getId()).getUpdatedAt();
+
+        assertThatThrownBy(() -> coalescer.flush()).isInstanceOf(app.exception.DataAccessException.class);
+
+        assertThat(okA).isCompleted();
+        assertThat(okB).isCompleted();
+        assertThat(failing).isCompletedExceptionally();
+        assertThat(notesDao.getById(a.getId()).getBody()).isEqualTo("更新A");
+        assertThat(notesDao.getById(b.getId()).getBody()).isEqualTo("更新B");
+        // 再試行でも受け付け時の更新日時で書き込まれる
+        assertThat(notesDao.getById(a.getId()).getUpdatedAt()).isEqualTo(acceptedA);
+        assertThat(okA.get().getUpdatedAt()).isEqualTo(acceptedA);
+    }
+
+    @Test
+    @DisplayName("保留中の内容は受け付け時に更新日時が決まり、そのまま書き込まれる")
+    void pendingCopyIsWhatGetsWritten() throws Exception {
+        Note created = noteService.createNote("元", "");
+        Note edited = copyOf(created, "  ", "本文");
+
+        CompletableFuture<Note> future = coalescer.submit(edited);
+        edited.setBody("送信後の変更");
+        Note pending = coalescer.getPending(created.getId());
+
+        assertThat(pending.getTitle()).isEqualTo("無題のメモ");
+        assertThat(pending.getBody()).isEqualTo("本文");
+        assertThat(pending.getUpdatedAt()).isGreaterThan(created.getUpdatedAt());
+
+        coalescer.flush();
+
+        Note stored = notesDao.getById(created.getId());
+        assertThat(stored.getBody()).isEqualTo("本文");
+        assertThat(stored.getUpdatedAt()).isEqualTo(pending.getUpdatedAt());
+        assertThat(future.get().getUpdatedAt()).isEqualTo(pending.getUpdatedAt());
+    }
+
+    @Test
+    @DisplayName("close は保留中の更新を書き込んでから停止する")
+    void closeFlushesPendingUpdates() throws Exception {
+        Note created = noteService.createNote("終了前", "");
+        CompletableFuture<Note> future = coalescer.submit(copyOf(created, "終了前", "保存される"));
+
+        coalescer.close();
+
+        assertThat(future).isCompleted();
+        assertThat(notesDao.getById(created.getId()).getBody()).isEqualTo("保存される");
+        assertThat(coalescer.submit(copyOf(created, "終了後", ""))).isCompletedExceptionally();
+    }
+
+    @Test
+    @DisplayName("削除されたメモの保留中の更新は書き込まれない")
+    void discardDropsPendingUpdate() throws Exception {
+        Note created = noteService.createNote("削除予定", "");
+        CompletableFuture<Note> future = coalescer.submit(copyOf(created, "削除予定", "書き込まれない"));
+
+        coalescer.discard(created.getId());
+        noteService.deleteNote(created.getId());
+        coalescer.flush();
+
+        assertThat(future).isCompletedExceptionally();
+        assertThatThrownBy(future::join).hasCauseInstanceOf(app.exception.DataAccessException.class)
+                .hasMessageContaining("削除");
+        assertThat(coalescer.getWrittenCount()).isZero();
+        assertThat(notesDao.getById(created.getId())).isNull();
+    }
+
+    @Test
+    @DisplayName("ウィンドウ経過後に自動で書き込まれる")
+    void flushesAfterWindow() throws Exception {
+        coalescer.close();
+        coalescer = new NoteUpdateCoalescer(noteService, 20);
+        Note created = noteService.createNote("自動", "");
+
+        Note stored = coalescer.submit(copyOf(created, "自動", "自動保存")).get(5, TimeUnit.SECONDS);
+
+        assertThat(stored.getBody()).isEqualTo("自動保存");
+        assertThat(notesDao.getById(created.getId()).getBody()).isEqualTo("自動保存");
+    }
+
+    private static Note copyOf(Note source, String title, String body) {
+        Note note = new Note();
+        note.setId(source.getId());
+        note.setTitle(title);
+        note.setBody(body);
+        note.setCreatedAt(source.getCreatedAt());
+        note.setUpdatedAt(source.getUpdatedAt());
+        return note;
+    }
+}